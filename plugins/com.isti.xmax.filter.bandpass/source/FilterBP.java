@@ -1,5 +1,6 @@
 import com.isti.traceview.data.RawDataProvider;
-import com.isti.traceview.processing.IFilter;
+import com.isti.traceview.processing.IFilterStream;
+import com.isti.traceview.processing.IStreamingFilter;
 
 /**
  * <p>
@@ -20,23 +21,14 @@ import com.isti.traceview.processing.IFilter;
  * </p>
  */
 
-public class FilterBP implements IFilter {
+public class FilterBP implements IStreamingFilter {
 
 	int order = 0;
 	double cutLowFrequency = Double.NaN;
 	double cutHighFrequency = Double.NaN;
 
-	// filter coefficients for each section, array size is order parameter
-	double[] a;
-	double[] b;
-	double[] c;
-	double[] d;
-	double[] e;
-
-	/**
-	 * 20 pairs of frequency and power gain. graf(1,k) and graf(2,k) for k = 1 thru 20
-	 */
-	double[][] graf = new double[2][20];
+	// sample rate of trace given to init(), used by one-shot filtering
+	private volatile double sampleRate = Double.NaN;
 
 	public int getMaxDataLength(){
 		return Integer.MAX_VALUE;
@@ -55,11 +47,6 @@ public class FilterBP implements IFilter {
 		this.order = order;
 		this.cutLowFrequency = cutLowFrequency;
 		this.cutHighFrequency = cutHighFrequency;
-		a = new double[order];
-		b = new double[order];
-		c = new double[order];
-		d = new double[order];
-		e = new double[order];
 	}
 
 	/**
@@ -70,52 +57,14 @@ public class FilterBP implements IFilter {
 	}
 
 	/**
-	 * Bandpass butterworth digital filter design subroutine
+	 * Remembers sample rate of trace for one-shot filtering, filter coefficients are designed for
+	 * every stream
 	 * 
 	 * @param channel
 	 *            trace to retrieve information
 	 */
-	synchronized public void init(RawDataProvider channel) {
-		double sampleRate = channel.getSampleRate() / 1000.0;
-		double w1 = Math.sin(cutLowFrequency * Math.PI * sampleRate) / Math.cos(cutLowFrequency * Math.PI * sampleRate);
-		double w2 = Math.sin(cutHighFrequency * Math.PI * sampleRate) / Math.cos(cutHighFrequency * Math.PI * sampleRate);
-		double wc = w2 - w1;
-		double q = wc * wc + 2.0 * w1 * w2;
-		double s = w1 * w1 * w2 * w2;
-
-		for (int k = 0; k < order; k++) {
-			double cs = Math.cos(Math.PI * (2.0 * (k + 1 + order) - 1) / (4.0 * order));
-			double p = -2.0 * wc * cs;
-			double r = p * w1 * w2;
-			double x = 1.0 + p + q + r + s;
-			a[k] = wc * wc / x;
-			b[k] = (-4.0 - 2.0 * p + 2.0 * r + 4.0 * s) / x;
-			c[k] = (6.0 - 2.0 * q + 6.0 * s) / x;
-			d[k] = (-4.0 + 2.0 * p - 2.0 * r + 4.0 * s) / x;
-			e[k] = (1.0 - p + q - r + s) / x;
-		}
-		graf[1][0] = 0.0001;
-		graf[1][1] = 0.01;
-		graf[1][2] = 0.0316228;
-		graf[1][3] = 0.1;
-		graf[1][4] = 0.251189;
-		graf[1][5] = 0.5;
-		graf[1][6] = 0.794328;
-		graf[1][7] = 0.891251;
-		graf[1][8] = 0.954993;
-		graf[1][9] = 0.977237;
-		for (int j = 0; j < 10; j++) {
-			graf[1][19 - j] = graf[1][j];
-		}
-
-		for (int j = 0; j < 2; j++) {
-			for (int i = 0; i < 10; i++) {
-				int k = i * (1 - j) + (19 - i) * j;
-				double x = Math.pow(1.0 / graf[1][k] - 1.0, 1.0 / (4.0 * order));
-				double sq = Math.sqrt(wc * wc * x * x + 4.0 * w1 * w2);
-				graf[0][k] = Math.abs(Math.atan(0.5 * (wc * x + (2.0 * (j + 1) - 3) * sq))) / (Math.PI * sampleRate);
-			}
-		}
+	public void init(RawDataProvider channel) {
+		sampleRate = channel.getSampleRate();
 	}
 
 	/**
@@ -127,36 +76,39 @@ public class FilterBP implements IFilter {
 	 *            number of samples to filter
 	 * @return filtered data array
 	 */
-	synchronized public double[] filter(double[] data, int length) {
+	public double[] filter(double[] data, int length) {
 		if (data.length > length)
 			throw new RuntimeException("Requested filtering length exceeds provided array length");
-		int mean = new Double(demean(data, length)).intValue();
-		double[][] f = new double[order + 1][5];
-		for (int i = 0; i <= order; i++) {
-			for (int j = 0; j < 5; j++) {
-				f[i][j] = 0.0;
-			}
-		}
-		// loop over each sample in input series
-		for (int i = 0; i < length; i++) {
-			f[0][4] = data[i];
-			// Go through order filter sections.
-			for (int j = 0; j < order; j++) {
-				double temp = a[j] * (f[j][4] - f[j][2] - f[j][2] + f[j][0]);
-				f[j + 1][4] = temp - b[j] * f[j + 1][3] - c[j] * f[j + 1][2] - d[j] * f[j + 1][1] - e[j] * f[j + 1][0];
-			}
-			// Update all past values of signals.
-			for (int j = 0; j <= order; j++) {
-				f[j][0] = f[j][1];
-				f[j][1] = f[j][2];
-				f[j][2] = f[j][3];
-				f[j][3] = f[j][4];
-			}
-			data[i] = f[order][4] + mean;
-		}
+		new Stream(sampleRate, mean(data, length)).filter(data, 0, length);
 		return data;
 	}
 
+	/**
+	 * Creates stream to perform band-pass Butterworth filtering of a time series by chunks
+	 * 
+	 * @param channel
+	 *            trace to retrieve information
+	 * @param mean
+	 *            level removed from samples before filtering
+	 */
+	public IFilterStream createStream(RawDataProvider channel, double mean) {
+		return new Stream(channel.getSampleRate(), mean);
+	}
+
+	/**
+	 * Poles of band-pass sections decay not slower then poles of low-pass prototype with cutoff of
+	 * half bandwidth, exp(-2*PI*fc*sin(PI/(4*order))*t), transient is settled to 0.001 of initial
+	 * level
+	 * 
+	 * @param channel
+	 *            trace to retrieve information
+	 */
+	public int getWarmupLength(RawDataProvider channel) {
+		double cutFrequency = Math.min(cutLowFrequency, (cutHighFrequency - cutLowFrequency) / 2.0);
+		double settleTime = Math.log(1000.0) / (2.0 * Math.PI * cutFrequency * Math.sin(Math.PI / (4.0 * order)));
+		return (int) Math.ceil(settleTime * 1000.0 / channel.getSampleRate());
+	}
+
 	public String getName() {
 		return "BP";
 	}
@@ -166,18 +118,14 @@ public class FilterBP implements IFilter {
 	}
 
 	/**
-	 * remove mean from a buffer
+	 * compute mean of a buffer
 	 */
-	private double demean(double buf[], int n) {
+	private double mean(double buf[], int n) {
 		double sum = 0.0;
 		for (int i = 0; i < n; i++) {
 			sum = sum + buf[i];
 		}
-		sum = sum / n;
-		for (int i = 0; i < n; i++) {
-			buf[i] = buf[i] - sum;
-		}
-		return sum;
+		return sum / n;
 	}
 
 	public int getOrder() {
@@ -201,4 +149,71 @@ public class FilterBP implements IFilter {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return getName().hashCode() ^ order ^ Double.hashCode(cutLowFrequency) ^ (31 * Double.hashCode(cutHighFrequency));
+	}
+
+	/**
+	 * Filter state of one data stream, keeps filter coefficients and past values of signals
+	 */
+	private class Stream implements IFilterStream {
+		private double mean;
+		// restored level is integer, the same as in one-shot filtering
+		private int intMean;
+		private double[] a = new double[order];
+		private double[] b = new double[order];
+		private double[] c = new double[order];
+		private double[] d = new double[order];
+		private double[] e = new double[order];
+		private double[][] f = new double[order + 1][5];
+
+		/**
+		 * Bandpass butterworth digital filter design subroutine
+		 * 
+		 * @param sampleRate
+		 *            sample rate of trace, in milliseconds
+		 */
+		Stream(double sampleRate, double mean) {
+			this.mean = mean;
+			intMean = (int) mean;
+			double dt = sampleRate / 1000.0;
+			double w1 = Math.sin(cutLowFrequency * Math.PI * dt) / Math.cos(cutLowFrequency * Math.PI * dt);
+			double w2 = Math.sin(cutHighFrequency * Math.PI * dt) / Math.cos(cutHighFrequency * Math.PI * dt);
+			double wc = w2 - w1;
+			double q = wc * wc + 2.0 * w1 * w2;
+			double s = w1 * w1 * w2 * w2;
+			for (int k = 0; k < order; k++) {
+				double cs = Math.cos(Math.PI * (2.0 * (k + 1 + order) - 1) / (4.0 * order));
+				double p = -2.0 * wc * cs;
+				double r = p * w1 * w2;
+				double x = 1.0 + p + q + r + s;
+				a[k] = wc * wc / x;
+				b[k] = (-4.0 - 2.0 * p + 2.0 * r + 4.0 * s) / x;
+				c[k] = (6.0 - 2.0 * q + 6.0 * s) / x;
+				d[k] = (-4.0 + 2.0 * p - 2.0 * r + 4.0 * s) / x;
+				e[k] = (1.0 - p + q - r + s) / x;
+			}
+		}
+
+		public void filter(double[] data, int offset, int length) {
+			// loop over each sample in input series
+			for (int i = offset; i < offset + length; i++) {
+				f[0][4] = data[i] - mean;
+				// Go through order filter sections.
+				for (int j = 0; j < order; j++) {
+					double temp = a[j] * (f[j][4] - f[j][2] - f[j][2] + f[j][0]);
+					f[j + 1][4] = temp - b[j] * f[j + 1][3] - c[j] * f[j + 1][2] - d[j] * f[j + 1][1] - e[j] * f[j + 1][0];
+				}
+				// Update all past values of signals.
+				for (int j = 0; j <= order; j++) {
+					f[j][0] = f[j][1];
+					f[j][1] = f[j][2];
+					f[j][2] = f[j][3];
+					f[j][3] = f[j][4];
+				}
+				data[i] = f[order][4] + intMean;
+			}
+		}
+	}
 }
@@ -10,6 +10,8 @@ import javax.swing.JPanel;
 import com.isti.traceview.TraceViewException;
 import com.isti.traceview.data.RawDataProvider;
 import com.isti.traceview.processing.IFilter;
+import com.isti.traceview.processing.IFilterStream;
+import com.isti.traceview.processing.IStreamingFilter;
 import com.isti.xmax.gui.XMAXframe;
 
 import javax.swing.JTextField;
@@ -28,7 +30,7 @@ import javax.swing.border.EtchedBorder;
  * 
  * @author Max Kokoulin
  */
-public class FilterDYO extends JDialog implements IFilter, PropertyChangeListener {
+public class FilterDYO extends JDialog implements IStreamingFilter, PropertyChangeListener {
 	private static Double cutLowFrequency = null;
 	private static Double cutHighFrequency = null;
 	private static Integer order = null;
@@ -236,6 +238,14 @@ public class FilterDYO extends JDialog implements IFilter, PropertyChangeListene
 		return filter.filter(data, length);
 	}
 
+	public IFilterStream createStream(RawDataProvider channel, double mean) {
+		return ((IStreamingFilter) filter).createStream(channel, mean);
+	}
+
+	public int getWarmupLength(RawDataProvider channel) {
+		return ((IStreamingFilter) filter).getWarmupLength(channel);
+	}
+
 	public void init(RawDataProvider channel) {
 		filter.init(channel);
 	}
@@ -256,4 +266,11 @@ public class FilterDYO extends JDialog implements IFilter, PropertyChangeListene
 		else
 			return filter.equals(o);
 	}
+
+	public int hashCode() {
+		if (filter == null)
+			return 0;
+		else
+			return filter.hashCode();
+	}
 }
@@ -1,22 +1,18 @@
 
 import com.isti.traceview.data.RawDataProvider;
-import com.isti.traceview.processing.IFilter;
+import com.isti.traceview.processing.IFilterStream;
+import com.isti.traceview.processing.IStreamingFilter;
 
 /**
  * Low-pass Butterworth filter Algorithm is from Stearns, 1975
  */
 
-public class FilterLP implements IFilter {
+public class FilterLP implements IStreamingFilter {
 	int order = 0;
 	double cutFrequency = Double.NaN;
 
-	// filter coefficients, array size is order parameter
-	double[] a;
-	double[] b;
-	double[] c;
-	// 10 pairs of frequency and power gain
-	// (graf(1,k) and graf(2,k) for k=1 thru 10)
-	double[][] graf = new double[2][10];
+	// sample rate of trace given to init(), used by one-shot filtering
+	private volatile double sampleRate = Double.NaN;
 	
 	public int getMaxDataLength(){
 		return Integer.MAX_VALUE;
@@ -31,9 +27,6 @@ public class FilterLP implements IFilter {
 	public FilterLP(int order, double cutFrequency) {
 		this.order = order;
 		this.cutFrequency = cutFrequency;
-		a = new double[order];
-		b = new double[order];
-		c = new double[order];
 	}
 
 	/**
@@ -44,26 +37,14 @@ public class FilterLP implements IFilter {
 	}
 
 	/**
-	 * design routine
+	 * Remembers sample rate of trace for one-shot filtering, filter coefficients are designed for
+	 * every stream
 	 * 
 	 * @param channel
 	 *            trace to retrieve information
 	 */
-	synchronized public void init(RawDataProvider channel) {
-		double sampleRate = channel.getSampleRate() / 1000.0;
-		double wcp = Math.sin(cutFrequency * Math.PI * sampleRate) / Math.cos(cutFrequency * Math.PI * sampleRate);
-		for (int k = 0; k < order; k++) {
-			double cs = Math.cos(Math.PI * (2.0 * (k + 1 + order) - 1) / (4.0 * order));
-			double x = 1.0 / (1.0 + wcp * wcp - 2.0 * wcp * cs);
-			a[k] = wcp * wcp * x;
-			b[k] = 2.0 * (wcp * wcp - 1.0) * x;
-			c[k] = (1.0 + wcp * wcp + 2.0 * wcp * cs) * x;
-		}
-		for (int k = 0; k < 10; k++) {
-			graf[1][k] = 0.99 - 0.98 * k / 9.0;
-			double x = Math.atan(wcp * Math.pow(1.0 / graf[1][k] - 1.0, 1.0 / (4 * order)));
-			graf[0][k] = x / (Math.PI * sampleRate);
-		}
+	public void init(RawDataProvider channel) {
+		sampleRate = channel.getSampleRate();
 	}
 
 	/**
@@ -75,34 +56,37 @@ public class FilterLP implements IFilter {
 	 *            number of samples in data array
 	 * @return filtered data array
 	 */
-	synchronized public double[] filter(double[] data, int length) {
+	public double[] filter(double[] data, int length) {
 		if (data.length > length)
 			throw new RuntimeException("Requested filtering length exceeds provided array length");
-		int mean = new Double(demean(data, length)).intValue();
-		double[][] f = new double[order + 1][3];
-		for (int i = 0; i <= order; i++) {
-			for (int j = 0; j < 3; j++) {
-				f[i][j] = 0.0;
-			}
-		}
-		// loop over each sample in input series
-		for (int i = 0; i < length; i++) {
-			f[0][2] = data[i];
-			// Go through order filter sections.
-			for (int j = 0; j < order; j++) {
-				double temp = a[j] * (f[j][2] + f[j][1] + f[j][1] + f[j][0]);
-				f[j + 1][2] = temp - b[j] * f[j + 1][1] - c[j] * f[j + 1][0];
-			}
-			// Update all past values of signals.
-			for (int j = 0; j <= order; j++) {
-				f[j][0] = f[j][1];
-				f[j][1] = f[j][2];
-			}
-			data[i] = f[order][2] + mean;
-		}
+		new Stream(sampleRate, mean(data, length)).filter(data, 0, length);
 		return data;
 	}
 
+	/**
+	 * Creates stream to perform low-pass Butterworth filtering of a time series by chunks
+	 * 
+	 * @param channel
+	 *            trace to retrieve information
+	 * @param mean
+	 *            level removed from samples before filtering
+	 */
+	public IFilterStream createStream(RawDataProvider channel, double mean) {
+		return new Stream(channel.getSampleRate(), mean);
+	}
+
+	/**
+	 * Slowest pole of filter decays as exp(-2*PI*fc*sin(PI/(4*order))*t), transient is settled
+	 * to 0.001 of initial level
+	 * 
+	 * @param channel
+	 *            trace to retrieve information
+	 */
+	public int getWarmupLength(RawDataProvider channel) {
+		double settleTime = Math.log(1000.0) / (2.0 * Math.PI * cutFrequency * Math.sin(Math.PI / (4.0 * order)));
+		return (int) Math.ceil(settleTime * 1000.0 / channel.getSampleRate());
+	}
+
 	public String getName() {
 		return "LP";
 	}
@@ -112,18 +96,14 @@ public class FilterLP implements IFilter {
 	}
 
 	/**
-	 * remove mean from a buffer
+	 * compute mean of a buffer
 	 */
-	private double demean(double buf[], int n) {
+	private double mean(double buf[], int n) {
 		double sum = 0.0;
 		for (int i = 0; i < n; i++) {
 			sum = sum + buf[i];
 		}
-		sum = sum / n;
-		for (int i = 0; i < n; i++) {
-			buf[i] = buf[i] - sum;
-		}
-		return sum;
+		return sum / n;
 	}
 
 	public int getOrder() {
@@ -143,4 +123,59 @@ public class FilterLP implements IFilter {
 		}
 		return false;
 	}
+
+	public int hashCode() {
+		return getName().hashCode() ^ order ^ Double.hashCode(cutFrequency);
+	}
+
+	/**
+	 * Filter state of one data stream, keeps filter coefficients and past values of signals
+	 */
+	private class Stream implements IFilterStream {
+		private double mean;
+		// restored level is integer, the same as in one-shot filtering
+		private int intMean;
+		private double[] a = new double[order];
+		private double[] b = new double[order];
+		private double[] c = new double[order];
+		private double[][] f = new double[order + 1][3];
+
+		/**
+		 * design routine
+		 * 
+		 * @param sampleRate
+		 *            sample rate of trace, in milliseconds
+		 */
+		Stream(double sampleRate, double mean) {
+			this.mean = mean;
+			intMean = (int) mean;
+			double dt = sampleRate / 1000.0;
+			double wcp = Math.sin(cutFrequency * Math.PI * dt) / Math.cos(cutFrequency * Math.PI * dt);
+			for (int k = 0; k < order; k++) {
+				double cs = Math.cos(Math.PI * (2.0 * (k + 1 + order) - 1) / (4.0 * order));
+				double x = 1.0 / (1.0 + wcp * wcp - 2.0 * wcp * cs);
+				a[k] = wcp * wcp * x;
+				b[k] = 2.0 * (wcp * wcp - 1.0) * x;
+				c[k] = (1.0 + wcp * wcp + 2.0 * wcp * cs) * x;
+			}
+		}
+
+		public void filter(double[] data, int offset, int length) {
+			// loop over each sample in input series
+			for (int i = offset; i < offset + length; i++) {
+				f[0][2] = data[i] - mean;
+				// Go through order filter sections.
+				for (int j = 0; j < order; j++) {
+					double temp = a[j] * (f[j][2] + f[j][1] + f[j][1] + f[j][0]);
+					f[j + 1][2] = temp - b[j] * f[j + 1][1] - c[j] * f[j + 1][0];
+				}
+				// Update all past values of signals.
+				for (int j = 0; j <= order; j++) {
+					f[j][0] = f[j][1];
+					f[j][1] = f[j][2];
+				}
+				data[i] = f[order][2] + intMean;
+			}
+		}
+	}
 }
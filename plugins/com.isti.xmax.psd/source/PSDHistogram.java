@@ -0,0 +1,316 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Probability density function of channel's PSDs, McNamara-style. PSD of every processed hour is
+ * averaged over full octave around each period bin center, period bins are spaced by 1/8 octave.
+ * Averaged powers are counted in 1 dB power bins. Histogram keeps set of processed hours, so it
+ * can be saved and completed later only with new hours.
+ */
+public class PSDHistogram {
+	private static Logger lg = Logger.getLogger(PSDHistogram.class);
+	private static final int MAGIC = 0x50534448; // "PSDH"
+	private static final int VERSION = 1;
+	private static DecimalFormat periodFormat = new DecimalFormat("0.00000E00");
+
+	/**
+	 * Count of period bins in octave
+	 */
+	public static final int BINS_PER_OCTAVE = 8;
+
+	/**
+	 * Shortest and longest period bins, in 1/8 octaves from 1 s
+	 */
+	public static final int MIN_PERIOD_INDEX = -54; // 0.009 s
+	public static final int MAX_PERIOD_INDEX = 80; // 1024 s
+
+	/**
+	 * Power range, dB
+	 */
+	public static final int MIN_POWER = -200;
+	public static final int MAX_POWER = -50;
+
+	private String name;
+	private String parameters;
+	private SortedSet<Long> hours = new TreeSet<Long>();
+	private int[][] counts = new int[getPeriodBinCount()][getPowerBinCount()];
+
+	/**
+	 * @param name
+	 *            name of channel
+	 * @param parameters
+	 *            description of PSD computation parameters, histograms with different parameters
+	 *            can't be merged
+	 */
+	public PSDHistogram(String name, String parameters) {
+		this.name = name;
+		this.parameters = parameters;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParameters() {
+		return parameters;
+	}
+
+	public static int getPeriodBinCount() {
+		return MAX_PERIOD_INDEX - MIN_PERIOD_INDEX + 1;
+	}
+
+	public static int getPowerBinCount() {
+		return MAX_POWER - MIN_POWER;
+	}
+
+	/**
+	 * @return center period of bin, s
+	 */
+	public static double getPeriod(int periodBin) {
+		return Math.pow(2.0, (double) (periodBin + MIN_PERIOD_INDEX) / BINS_PER_OCTAVE);
+	}
+
+	/**
+	 * @return lower bound of power bin, dB
+	 */
+	public static int getPower(int powerBin) {
+		return MIN_POWER + powerBin;
+	}
+
+	/**
+	 * @return flag if hour starting at given time is already counted
+	 */
+	public synchronized boolean isProcessed(long hour) {
+		return hours.contains(Long.valueOf(hour));
+	}
+
+	/**
+	 * @return count of processed hours
+	 */
+	public synchronized int getHourCount() {
+		return hours.size();
+	}
+
+	/**
+	 * @return first and last processed hours, or null if histogram is empty
+	 */
+	public synchronized long[] getHourRange() {
+		if (hours.size() == 0) {
+			return null;
+		} else {
+			return new long[] { hours.first(), hours.last() };
+		}
+	}
+
+	/**
+	 * Counts hour PSD
+	 *
+	 * @param hour
+	 *            start time of hour
+	 * @param frequencies
+	 *            ascending frequencies of PSD, Hz
+	 * @param psd
+	 *            power spectra density, not in dB
+	 */
+	public synchronized void add(long hour, double[] frequencies, double[] psd) {
+		if (!hours.add(Long.valueOf(hour))) {
+			return;
+		}
+		for (int periodBin = 0; periodBin < counts.length; periodBin++) {
+			double frequency = 1.0 / getPeriod(periodBin);
+			double low = frequency / Math.sqrt(2.0);
+			double high = frequency * Math.sqrt(2.0);
+			double sum = 0.0;
+			int count = 0;
+			// zero frequency is skipped
+			for (int i = lowerBound(frequencies, low); i < frequencies.length && frequencies[i] <= high; i++) {
+				if (i > 0 && !Double.isNaN(psd[i]) && !Double.isInfinite(psd[i])) {
+					sum += psd[i];
+					count++;
+				}
+			}
+			if (count > 0 && sum > 0) {
+				int powerBin = (int) Math.floor(10.0 * Math.log10(sum / count)) - MIN_POWER;
+				if (powerBin >= 0 && powerBin < getPowerBinCount()) {
+					counts[periodBin][powerBin]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return count of hours which PSD fell into bin
+	 */
+	public synchronized int getCount(int periodBin, int powerBin) {
+		return counts[periodBin][powerBin];
+	}
+
+	/**
+	 * @return probability of power bin for period, i.e. bin count divided by total count of period
+	 */
+	public synchronized double getProbability(int periodBin, int powerBin) {
+		int total = getTotal(periodBin);
+		if (total == 0) {
+			return 0.0;
+		} else {
+			return (double) counts[periodBin][powerBin] / total;
+		}
+	}
+
+	/**
+	 * @return most probable power bin for period, or -1 if period has no data
+	 */
+	public synchronized int getMode(int periodBin) {
+		int ret = -1;
+		int max = 0;
+		for (int powerBin = 0; powerBin < counts[periodBin].length; powerBin++) {
+			if (counts[periodBin][powerBin] > max) {
+				max = counts[periodBin][powerBin];
+				ret = powerBin;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return total count of period
+	 */
+	public synchronized int getTotal(int periodBin) {
+		int ret = 0;
+		for (int powerBin = 0; powerBin < counts[periodBin].length; powerBin++) {
+			ret += counts[periodBin][powerBin];
+		}
+		return ret;
+	}
+
+	/**
+	 * Saves histogram to binary file
+	 */
+	public synchronized void save(File file) throws IOException {
+		DataOutputStream ds = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			ds.writeInt(MAGIC);
+			ds.writeInt(VERSION);
+			ds.writeUTF(name);
+			ds.writeUTF(parameters);
+			ds.writeInt(counts.length);
+			ds.writeInt(getPowerBinCount());
+			ds.writeInt(hours.size());
+			for (Long hour: hours) {
+				ds.writeLong(hour);
+			}
+			for (int periodBin = 0; periodBin < counts.length; periodBin++) {
+				for (int powerBin = 0; powerBin < counts[periodBin].length; powerBin++) {
+					ds.writeInt(counts[periodBin][powerBin]);
+				}
+			}
+		} finally {
+			ds.close();
+		}
+	}
+
+	/**
+	 * Loads histogram saved by {@link #save(File)}
+	 *
+	 * @return loaded histogram, or null if file is absent, broken, or was built with other
+	 *         parameters
+	 */
+	public static PSDHistogram load(File file, String name, String parameters) {
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream ds = null;
+		try {
+			ds = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (ds.readInt() != MAGIC || ds.readInt() != VERSION) {
+				lg.warn("Wrong PSD histogram file format: " + file);
+				return null;
+			}
+			PSDHistogram ret = new PSDHistogram(ds.readUTF(), ds.readUTF());
+			if (!ret.name.equals(name) || !ret.parameters.equals(parameters) || ds.readInt() != getPeriodBinCount()
+					|| ds.readInt() != getPowerBinCount()) {
+				lg.info("PSD histogram " + file + " was built for other channel or parameters, it will be rebuilt");
+				return null;
+			}
+			int hourCount = ds.readInt();
+			for (int i = 0; i < hourCount; i++) {
+				ret.hours.add(Long.valueOf(ds.readLong()));
+			}
+			for (int periodBin = 0; periodBin < ret.counts.length; periodBin++) {
+				for (int powerBin = 0; powerBin < ret.counts[periodBin].length; powerBin++) {
+					ret.counts[periodBin][powerBin] = ds.readInt();
+				}
+			}
+			return ret;
+		} catch (IOException e) {
+			lg.error("Can't read PSD histogram " + file + ": " + e);
+			return null;
+		} finally {
+			try {
+				if (ds != null) {
+					ds.close();
+				}
+			} catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+
+	/**
+	 * Exports non-empty bins in ascii: period, power, count and probability
+	 */
+	public synchronized void export(File file) throws IOException {
+		PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			ps.println("# " + name + ", " + hours.size() + " hours, " + parameters);
+			ps.println("# period, s; power, dB; count; probability");
+			for (int periodBin = 0; periodBin < counts.length; periodBin++) {
+				int total = getTotal(periodBin);
+				for (int powerBin = 0; powerBin < counts[periodBin].length; powerBin++) {
+					if (counts[periodBin][powerBin] > 0) {
+						ps.println(periodFormat.format(getPeriod(periodBin)) + "  " + getPower(powerBin) + "  " + counts[periodBin][powerBin] + "  "
+								+ (double) counts[periodBin][powerBin] / total);
+					}
+				}
+			}
+			if (ps.checkError()) {
+				throw new IOException("Can't write " + file);
+			}
+		} finally {
+			ps.close();
+		}
+	}
+
+	public String toString() {
+		return "PSDHistogram: " + name + ", " + getHourCount() + " hours";
+	}
+
+	/**
+	 * @return index of first frequency which is not less then value
+	 */
+	private static int lowerBound(double[] frequencies, double value) {
+		int low = 0;
+		int high = frequencies.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (frequencies[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,245 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+import com.isti.jevalresp.OutputGenerator;
+import com.isti.traceview.TraceViewException;
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.common.TimeInterval;
+import com.isti.traceview.data.PlotDataProvider;
+import com.isti.traceview.data.Segment;
+import com.isti.traceview.processing.IFilter;
+import com.isti.traceview.processing.ITransformation;
+import com.isti.traceview.processing.Spectra;
+import com.isti.traceview.processing.WelchPSD;
+import com.isti.xmax.XMAXconfiguration;
+import com.isti.xmax.gui.XMAXframe;
+
+/**
+ * Long-term PSD probability density transformation. Computes PSDs of every hour in whole time range
+ * of selected channels and counts them in {@link PSDHistogram}s, which are shown in {@link ViewPDF}.
+ * Histograms are saved in output directory, so next run processes only new hours. Channels are
+ * processed in parallel in background, graph panel filter isn't applied.
+ */
+public class TransPDF implements ITransformation {
+	private static Logger lg = Logger.getLogger(TransPDF.class);
+	private static final long HOUR = 3600000L;
+	/**
+	 * Minimal part of hour which should be covered by continuous data to compute PSD
+	 */
+	private static final double MIN_COVERAGE = 0.9;
+	/**
+	 * Count of processed hours between saving of partial results
+	 */
+	private static final int SAVE_INTERVAL = 24;
+	private static final double OVERLAP = 0.75;
+
+	// pool computing histograms of channels, shared by all runs
+	private static ExecutorService executor = null;
+
+	public void transform(List<PlotDataProvider> input, TimeInterval ti, IFilter filter, Object configuration, final JFrame parentFrame) {
+		lg.debug("PDF PLUGIN CALLED");
+		if (input.size() == 0) {
+			JOptionPane.showMessageDialog(parentFrame, "Please select channels", "PDF computation warning", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		final WelchPSD.Taper taper = TransPSD.getTaper(XMAXconfiguration.getInstance().getConfigurationAt("Configuration.Plugins.PSD"));
+		final List<PlotDataProvider> channels = new ArrayList<PlotDataProvider>(input);
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				final List<PSDHistogram> histograms = createData(channels, taper, parentFrame);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						setStatus(parentFrame, "");
+						if (histograms.size() == 0) {
+							JOptionPane.showMessageDialog(parentFrame, "Can't compute PDF for selected channels", "Warning",
+									JOptionPane.WARNING_MESSAGE);
+						} else {
+							new ViewPDF(parentFrame, histograms);
+						}
+					}
+				});
+			}
+		}, "PDF");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void setMaxDataLength(int dataLength) {
+	}
+
+	/**
+	 * Computes or completes histograms of channels in parallel
+	 *
+	 * @return histograms of channels which were processed successfully
+	 */
+	private List<PSDHistogram> createData(List<PlotDataProvider> channels, final WelchPSD.Taper taper, final JFrame parentFrame) {
+		List<PSDHistogram> ret = new ArrayList<PSDHistogram>();
+		List<Future<PSDHistogram>> futures = new ArrayList<Future<PSDHistogram>>();
+		try {
+			for (final PlotDataProvider channel: channels) {
+				futures.add(getExecutor().submit(new Callable<PSDHistogram>() {
+					public PSDHistogram call() throws Exception {
+						return createHistogram(channel, taper, parentFrame);
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					PSDHistogram histogram = futures.get(i).get();
+					if (histogram != null) {
+						ret.add(histogram);
+					}
+				} catch (ExecutionException e) {
+					lg.error("Can't compute PDF for " + channels.get(i).getName() + ": " + e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			lg.debug("PDF computation interrupted");
+		} finally {
+			for (Future<PSDHistogram> future: futures) {
+				future.cancel(true);
+			}
+		}
+		return ret;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = DaemonThreadPool.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), "PDF");
+		}
+		return executor;
+	}
+
+	/**
+	 * Loads saved histogram of channel and counts PSDs of hours which weren't processed yet
+	 */
+	private PSDHistogram createHistogram(PlotDataProvider channel, WelchPSD.Taper taper, JFrame parentFrame) throws TraceViewException {
+		TimeInterval range = channel.getTimeRange();
+		if (range == null || channel.getSampleRate() == 0) {
+			lg.warn("Channel " + channel.getName() + " has no data for PDF");
+			return null;
+		}
+		int hourLength = (int) (HOUR / channel.getSampleRate());
+		if (hourLength < 8) {
+			lg.warn("Channel " + channel.getName() + " has too low sample rate for PDF");
+			return null;
+		}
+		// McNamara: hour is split into 13 windows of quarter hour overlapped by 75%
+		WelchPSD welch = new WelchPSD(TransPSD.getPower2Length(hourLength / 4), OVERLAP, taper);
+		String parameters = "sample rate " + channel.getSampleRate() + " ms, window " + welch.getWindowLength() + ", overlap " + OVERLAP
+				+ ", taper " + taper;
+		File file = getHistogramFile(channel);
+		PSDHistogram histogram = PSDHistogram.load(file, channel.getName(), parameters);
+		if (histogram == null) {
+			histogram = new PSDHistogram(channel.getName(), parameters);
+		}
+		int processed = 0;
+		int skipped = 0;
+		long first = range.getStart() - range.getStart() % HOUR;
+		for (long hour = first; hour < range.getEnd(); hour += HOUR) {
+			if (Thread.currentThread().isInterrupted()) {
+				break;
+			}
+			if (histogram.isProcessed(hour)) {
+				continue;
+			}
+			int[] data = getHourData(channel, hour, hourLength);
+			if (data == null) {
+				skipped++;
+				continue;
+			}
+			Spectra spectra = welch.getNoiseSpectra(data, channel, new Date(hour));
+			if (spectra.getResp() == null) {
+				lg.warn(spectra.getError());
+				skipped++;
+				continue;
+			}
+			histogram.add(hour, spectra.getFrequencies(), spectra.getPSD(OutputGenerator.VELOCITY_UNIT_CONV));
+			processed++;
+			if (processed % SAVE_INTERVAL == 0) {
+				save(histogram, file);
+				setStatus(parentFrame, "PDF: " + channel.getName() + ", " + histogram.getHourCount() + " hours");
+			}
+		}
+		if (processed > 0) {
+			save(histogram, file);
+		}
+		lg.debug("PDF for " + channel.getName() + ": " + processed + " new hours, " + skipped + " hours skipped, " + histogram.getHourCount()
+				+ " total");
+		return histogram;
+	}
+
+	/**
+	 * @return continuous data of hour, or null if hour has gaps, changes of sample rate, or isn't
+	 *         covered enough
+	 */
+	private static int[] getHourData(PlotDataProvider channel, long hour, int hourLength) {
+		TimeInterval ti = new TimeInterval(hour, hour + HOUR);
+		List<Segment> segments = channel.getRawData(ti);
+		if (segments.size() == 0) {
+			return null;
+		}
+		double samplerate = segments.get(0).getSampleRate();
+		long segment_end_time = 0;
+		List<int[]> pieces = new ArrayList<int[]>();
+		int length = 0;
+		for (Segment segment: segments) {
+			if (segment.getSampleRate() != samplerate
+					|| (segment_end_time != 0 && Segment.isDataBreak(segment_end_time, segment.getStartTime().getTime(), samplerate))) {
+				return null;
+			}
+			segment_end_time = segment.getEndTime().getTime();
+			int[] piece = segment.getData(ti).data;
+			pieces.add(piece);
+			length += piece.length;
+		}
+		if (length < hourLength * MIN_COVERAGE) {
+			return null;
+		}
+		int[] ret = new int[length];
+		int pos = 0;
+		for (int[] piece: pieces) {
+			System.arraycopy(piece, 0, ret, pos, piece.length);
+			pos += piece.length;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return file to store channel histogram
+	 */
+	static File getHistogramFile(PlotDataProvider channel) {
+		return new File(XMAXconfiguration.getInstance().getOutputPath() + File.separator + "PDF_" + channel.getName().replace("/", "_") + ".dat");
+	}
+
+	private static void save(PSDHistogram histogram, File file) {
+		try {
+			histogram.save(file);
+		} catch (IOException e) {
+			lg.error("Can't save " + histogram + " to " + file + ": " + e);
+		}
+	}
+
+	private static void setStatus(final JFrame parentFrame, final String message) {
+		if (parentFrame instanceof XMAXframe) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					((XMAXframe) parentFrame).getStatusBar().setMessage(message);
+				}
+			});
+		}
+	}
+}
@@ -17,6 +17,7 @@ import com.isti.traceview.processing.IFilter;
 import com.isti.traceview.processing.ITransformation;
 import com.isti.traceview.processing.IstiUtilsMath;
 import com.isti.traceview.processing.Spectra;
+import com.isti.traceview.processing.WelchPSD;
 import com.isti.xmax.XMAXException;
 import com.isti.xmax.gui.XMAXframe;
 
@@ -27,9 +28,12 @@ import com.isti.xmax.gui.XMAXframe;
  */
 public class TransPSD implements ITransformation {
 	private static Logger lg = Logger.getLogger(TransPSD.class);
-	private static final boolean verboseDebug = false;
-	public int maxDataLength = 65536;
+	private static final String windowLengthKey = "WindowLength";
+	private static final String windowOverlapKey = "WindowOverlap";
+	private static final String taperKey = "Taper";
+	public int maxDataLength = WelchPSD.DEFAULT_WINDOW_LENGTH;
 	private int effectiveLength = 0;
+	private WelchPSD welch = null;
 
 	public void transform(List<PlotDataProvider> input, TimeInterval ti, IFilter filter, Object configuration, JFrame parentFrame) {
 		lg.debug("PSD PLUGIN CALLED!!!!!!!!!!!!!!!!!!!");
@@ -37,6 +41,7 @@ public class TransPSD implements ITransformation {
 			JOptionPane.showMessageDialog(parentFrame, "Please select channels", "PSD computation warning", JOptionPane.WARNING_MESSAGE);
 		} else {
 			try {
+				welch = createWelchPSD((Configuration) configuration);
 				List<Spectra> spList = createData(input, filter, ti, parentFrame);
 				TimeInterval effectiveInterval = new TimeInterval(ti.getStart(), ti.getStart() + new Double(input.get(0).getSampleRate()*effectiveLength).longValue());
 				ViewPSD vp = new ViewPSD(parentFrame, spList, effectiveInterval, (Configuration)configuration, input);
@@ -46,6 +51,8 @@ public class TransPSD implements ITransformation {
 				}
 			} catch (TraceViewException e) {
 				JOptionPane.showMessageDialog(parentFrame, e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
+			} catch (IllegalArgumentException e) {
+				JOptionPane.showMessageDialog(parentFrame, "Wrong PSD configuration: " + e.getMessage(), "Warning", JOptionPane.WARNING_MESSAGE);
 			}
 		}
 		((XMAXframe)parentFrame).getGraphPanel().forceRepaint();
@@ -55,6 +62,37 @@ public class TransPSD implements ITransformation {
 		this.maxDataLength = dataLength;
 	}
 
+	/**
+	 * Creates PSD engine with window parameters from plugin configuration: WindowLength (samples,
+	 * max_data_length from plugin descriptor by default), WindowOverlap (part of window) and Taper
+	 * (name of {@link WelchPSD.Taper} constant).
+	 */
+	private WelchPSD createWelchPSD(Configuration configuration) {
+		int windowLength = maxDataLength;
+		double overlap = WelchPSD.DEFAULT_OVERLAP;
+		if (configuration != null) {
+			windowLength = configuration.getInt(windowLengthKey, windowLength);
+			overlap = configuration.getDouble(windowOverlapKey, overlap);
+		}
+		return new WelchPSD(windowLength, overlap, getTaper(configuration));
+	}
+
+	/**
+	 * @return taper from plugin configuration, Hanning by default
+	 */
+	static WelchPSD.Taper getTaper(Configuration configuration) {
+		WelchPSD.Taper taper = WelchPSD.Taper.HANNING;
+		if (configuration != null) {
+			String taperName = configuration.getString(taperKey, taper.name());
+			try {
+				taper = WelchPSD.Taper.valueOf(taperName.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				lg.error("Unknown PSD taper " + taperName + ", " + taper + " is used");
+			}
+		}
+		return taper;
+	}
+
 	/**
 	 * @param input
 	 *            List of traces to process
@@ -71,16 +109,13 @@ public class TransPSD implements ITransformation {
 	private List<Spectra> createData(List<PlotDataProvider> input, IFilter filter, TimeInterval ti, JFrame parentFrame) throws TraceViewException,
 			XMAXException {
 		// lg.debug("TransPSD: createDataset started");
-		List<Spectra> dataset = new ArrayList<Spectra>();
-		ListIterator<PlotDataProvider> li = input.listIterator();
-		String respNotFound = "";
-		int userAnswer = -1;
-		while (li.hasNext()) {
-			PlotDataProvider channel = li.next();
+		List<int[]> traces = new ArrayList<int[]>();
+		for (PlotDataProvider channel: input) {
 			List<Segment> segments = channel.getRawData(ti);
 			double samplerate;
 			long segment_end_time = 0;
-			int[] intData = new int[0];
+			List<int[]> pieces = new ArrayList<int[]>();
+			int length = 0;
 			if (segments.size() > 0) {
 				samplerate = segments.get(0).getSampleRate();
 				for (Segment segment: segments) {
@@ -91,55 +126,43 @@ public class TransPSD implements ITransformation {
 						throw new XMAXException("You have gap in the data for channel " + channel.getName());
 					}
 					segment_end_time = segment.getEndTime().getTime();
-					intData = IstiUtilsMath.padArray(intData, segment.getData(ti).data);
+					int[] piece = segment.getData(ti).data;
+					pieces.add(piece);
+					length += piece.length;
 				}
-
 			} else {
 				throw new XMAXException("You have no data for channel " + channel.getName());
 			}
-			int ds;
-			if (intData.length > maxDataLength) {
-				ds = getPower2Length(maxDataLength);				
-				((XMAXframe) parentFrame).getStatusBar().setMessage(
-						"Points count (" + intData.length + ") exceeds max value for trace " + channel.getName());
-			} else {
-				ds = getPower2Length(intData.length);
-			}
-			if(ds>effectiveLength){
-				effectiveLength = ds;
+			int[] data = new int[length];
+			int pos = 0;
+			for (int[] piece: pieces) {
+				System.arraycopy(piece, 0, data, pos, piece.length);
+				pos += piece.length;
 			}
-			/*
-			 * // this code shows pop-up if point count is exceeded if (ds > maxDataLength &&
-			 * userAnswer == -1) { Object[] options = { "Proceed with ALL points", "Proceed with
-			 * first " + maxDataLength + " points", "Cancel" }; userAnswer =
-			 * JOptionPane.showOptionDialog(parentFrame, "Too many points. Computation could be
-			 * slow.", "Too many points", JOptionPane.YES_NO_CANCEL_OPTION,
-			 * JOptionPane.QUESTION_MESSAGE, null, options, options[1]); } if (userAnswer != -1) {
-			 * if (userAnswer == JOptionPane.NO_OPTION) { if (ds > maxDataLength) { ds = new
-			 * Double(Math.pow(2, new
-			 * Double(IstiUtilsMath.log2(maxDataLength)).intValue())).intValue(); } } else if
-			 * (userAnswer == JOptionPane.CANCEL_OPTION) { throw new XMAXException("Operation
-			 * cancelled"); } }
-			 */
-			lg.debug("data size = " + ds);
-			int[] data = new int[ds];
-			for (int i = 0; i < ds; i++) {
-				data[i] = intData[i];
+			if (length > effectiveLength) {
+				effectiveLength = length;
 			}
+			lg.debug("data size = " + length + ", windows count = " + welch.getWindowCount(length));
 			if (filter != null) {
 				data = new FilterFacade(filter, channel).filter(data);
 			}
-
-			Spectra spectra = IstiUtilsMath.getNoiseSpectra(data, channel.getResponse(), ti.getStartTime(), channel,
-					verboseDebug);
-			if (spectra.getResp() != null) {
-				dataset.add(spectra);
-			} else {
+			traces.add(data);
+		}
+		// windows of all channels are processed together
+		List<Spectra> dataset = welch.getNoiseSpectra(traces, input, ti.getStartTime());
+		ListIterator<PlotDataProvider> li = input.listIterator();
+		ListIterator<Spectra> si = dataset.listIterator();
+		String respNotFound = "";
+		while (li.hasNext()) {
+			PlotDataProvider channel = li.next();
+			Spectra spectra = si.next();
+			if (spectra.getResp() == null) {
 				if (respNotFound.length() > 0) {
 					respNotFound = respNotFound + ", ";
 				}
 				respNotFound = respNotFound + channel.getName();
 				li.remove();
+				si.remove();
 			}
 		}
 		if (input.size() == 0) {
@@ -0,0 +1,211 @@
+import java.awt.Color;
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.FieldPosition;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.List;
+
+import javax.swing.BoxLayout;
+import javax.swing.JDialog;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+
+import org.apache.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.NumberTickUnit;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.LookupPaintScale;
+import org.jfree.chart.renderer.xy.XYBlockRenderer;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+import org.jfree.chart.title.TextTitle;
+import org.jfree.data.Range;
+import org.jfree.data.xy.DefaultXYZDataset;
+import org.jfree.data.xy.XYSeries;
+import org.jfree.data.xy.XYSeriesCollection;
+
+import com.isti.traceview.common.TimeInterval;
+import com.isti.traceview.common.TraceViewChartPanel;
+import com.isti.traceview.gui.GraphUtil;
+import com.isti.xmax.XMAX;
+import com.isti.xmax.XMAXconfiguration;
+import com.isti.xmax.gui.XMAXframe;
+
+/**
+ * Dialog to view PSD probability density functions, one tab for each channel. Probability is shown
+ * by color, with noise models and mode of PDF.
+ */
+public class ViewPDF extends JDialog implements PropertyChangeListener {
+	private static Logger lg = Logger.getLogger(ViewPDF.class);
+	private static final double[] scaleValues = { 0.0, 0.01, 0.02, 0.05, 0.1, 0.15, 0.2, 0.3 };
+	private static final Color[] scaleColors = { new Color(160, 0, 255), Color.BLUE, Color.CYAN, Color.GREEN, Color.YELLOW, Color.ORANGE,
+			Color.RED, new Color(128, 0, 0) };
+
+	private JOptionPane optionPane;
+	private JTabbedPane tabbedPane = null;
+	private List<PSDHistogram> data = null;
+
+	public ViewPDF(Frame owner, List<PSDHistogram> data) {
+		super(owner, "PSD Probability Density", true);
+		this.data = data;
+		Object[] options = { "Close", "Export PDF", "Export GRAPH" };
+		optionPane = new JOptionPane();
+		optionPane.setVisible(false);
+		optionPane.setMessageType(JOptionPane.PLAIN_MESSAGE);
+		optionPane.setOptionType(JOptionPane.CLOSED_OPTION);
+		optionPane.setIcon(null);
+		optionPane.setOptions(options);
+		optionPane.setInitialValue(options[0]);
+		tabbedPane = new JTabbedPane();
+		for (PSDHistogram histogram: data) {
+			JPanel panel = new JPanel();
+			panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+			panel.add(new TraceViewChartPanel(createChart(histogram), true));
+			tabbedPane.addTab(histogram.getName(), panel);
+		}
+		optionPane.setMessage(tabbedPane);
+		setContentPane(optionPane);
+		optionPane.addPropertyChangeListener(this);
+		setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+		addWindowListener(new WindowAdapter() {
+			public void windowClosing(WindowEvent we) {
+				optionPane.setValue("Close");
+			}
+		});
+		pack();
+		setLocationRelativeTo(owner);
+		optionPane.setVisible(true);
+		setVisible(true);
+	}
+
+	public void propertyChange(PropertyChangeEvent e) {
+		String prop = e.getPropertyName();
+		if (isVisible() && (e.getSource() == optionPane) && (prop.equals(JOptionPane.VALUE_PROPERTY))) {
+			Object value = optionPane.getValue();
+			optionPane.setValue(JOptionPane.UNINITIALIZED_VALUE);
+			if (value.equals("Close")) {
+				setVisible(false);
+				dispose();
+			} else if (value.equals("Export PDF")) {
+				for (PSDHistogram histogram: data) {
+					File file = new File(XMAXconfiguration.getInstance().getOutputPath() + File.separator + "PDF_"
+							+ histogram.getName().replace("/", "_") + ".txt");
+					try {
+						histogram.export(file);
+					} catch (IOException e1) {
+						JOptionPane.showMessageDialog(XMAXframe.getInstance(), "Can't write file " + file + "; " + e1, "Error",
+								JOptionPane.ERROR_MESSAGE);
+					}
+				}
+				JOptionPane.showMessageDialog(XMAXframe.getInstance(), "Data exported to PDF ascii", "Message", JOptionPane.INFORMATION_MESSAGE);
+			} else if (value.equals("Export GRAPH")) {
+				File exportFile = GraphUtil.saveGraphics((JPanel) tabbedPane.getSelectedComponent(), XMAX.getConfiguration().getUserDir("GRAPH"));
+				if (exportFile != null) {
+					XMAX.getConfiguration().setUserDir("GRAPH", exportFile.getParent());
+				}
+			}
+		}
+	}
+
+	private JFreeChart createChart(PSDHistogram histogram) {
+		// x values are log10 of periods, so bins have equal width
+		int periodCount = PSDHistogram.getPeriodBinCount();
+		int powerCount = PSDHistogram.getPowerBinCount();
+		double[] xValues = new double[periodCount * powerCount];
+		double[] yValues = new double[periodCount * powerCount];
+		double[] zValues = new double[periodCount * powerCount];
+		XYSeries modeSeries = new XYSeries("Mode");
+		XYSeries lowNoiseModelSeries = new XYSeries("NLNM");
+		XYSeries highNoiseModelSeries = new XYSeries("NHNM");
+		for (int periodBin = 0; periodBin < periodCount; periodBin++) {
+			double period = PSDHistogram.getPeriod(periodBin);
+			for (int powerBin = 0; powerBin < powerCount; powerBin++) {
+				int i = periodBin * powerCount + powerBin;
+				xValues[i] = Math.log10(period);
+				yValues[i] = PSDHistogram.getPower(powerBin) + 0.5;
+				zValues[i] = histogram.getProbability(periodBin, powerBin);
+			}
+			int mode = histogram.getMode(periodBin);
+			if (mode >= 0) {
+				modeSeries.add(Math.log10(period), PSDHistogram.getPower(mode) + 0.5);
+			}
+			double lowModel = NoiseModel.fnlnm(period);
+			if (lowModel != 0.0) {
+				lowNoiseModelSeries.add(Math.log10(period), lowModel);
+			}
+			double highModel = NoiseModel.fnhnm(period);
+			if (highModel != 0.0) {
+				highNoiseModelSeries.add(Math.log10(period), highModel);
+			}
+		}
+		DefaultXYZDataset pdfDataset = new DefaultXYZDataset();
+		pdfDataset.addSeries(histogram.getName(), new double[][] { xValues, yValues, zValues });
+		LookupPaintScale paintScale = new LookupPaintScale(0.0, 1.0, Color.WHITE);
+		for (int i = 0; i < scaleValues.length; i++) {
+			// zero probability stays white
+			paintScale.add(scaleValues[i] + (i == 0 ? Double.MIN_VALUE : 0.0), scaleColors[i]);
+		}
+		XYBlockRenderer blockRenderer = new XYBlockRenderer();
+		blockRenderer.setBlockWidth(Math.log10(2.0) / PSDHistogram.BINS_PER_OCTAVE);
+		blockRenderer.setBlockHeight(1.0);
+		blockRenderer.setPaintScale(paintScale);
+
+		NumberAxis domainAxis = new NumberAxis("Period, s");
+		domainAxis.setRange(new Range(-2.0, 3.0));
+		domainAxis.setTickUnit(new NumberTickUnit(1.0, new PeriodFormat()));
+		NumberAxis rangeAxis = new NumberAxis("Power, dB");
+		rangeAxis.setRange(new Range(PSDHistogram.MIN_POWER, PSDHistogram.MAX_POWER));
+		XYPlot plot = new XYPlot(pdfDataset, domainAxis, rangeAxis, blockRenderer);
+		XYSeriesCollection lines = new XYSeriesCollection();
+		lines.addSeries(modeSeries);
+		lines.addSeries(lowNoiseModelSeries);
+		lines.addSeries(highNoiseModelSeries);
+		XYLineAndShapeRenderer lineRenderer = new XYLineAndShapeRenderer(true, false);
+		lineRenderer.setSeriesPaint(0, Color.DARK_GRAY);
+		lineRenderer.setSeriesPaint(1, Color.BLACK);
+		lineRenderer.setSeriesPaint(2, Color.BLACK);
+		plot.setDataset(1, lines);
+		plot.setRenderer(1, lineRenderer);
+		plot.setBackgroundPaint(Color.WHITE);
+		plot.setDomainGridlinePaint(Color.LIGHT_GRAY);
+		plot.setRangeGridlinePaint(Color.LIGHT_GRAY);
+		JFreeChart chart = new JFreeChart(plot);
+		chart.setBackgroundPaint(Color.white);
+		String title = histogram.getName() + ", " + histogram.getHourCount() + " hours";
+		long[] hourRange = histogram.getHourRange();
+		if (hourRange != null) {
+			title = title + " from " + TimeInterval.formatDate(new java.util.Date(hourRange[0]), TimeInterval.DateFormatType.DATE_FORMAT_NORMAL)
+					+ " to " + TimeInterval.formatDate(new java.util.Date(hourRange[1]), TimeInterval.DateFormatType.DATE_FORMAT_NORMAL);
+		}
+		chart.setTitle(new TextTitle(title, getFont()));
+		lg.debug("Chart created for " + histogram);
+		return chart;
+	}
+
+	/**
+	 * Formats log10 of period as period
+	 */
+	private static class PeriodFormat extends NumberFormat {
+		private static DecimalFormat format = new DecimalFormat("#####.##");
+
+		public StringBuffer format(double number, StringBuffer toAppendTo, FieldPosition pos) {
+			return format.format(Math.pow(10.0, number), toAppendTo, pos);
+		}
+
+		public StringBuffer format(long number, StringBuffer toAppendTo, FieldPosition pos) {
+			return format((double) number, toAppendTo, pos);
+		}
+
+		public Number parse(String source, ParsePosition parsePosition) {
+			return null;
+		}
+	}
+}
@@ -107,6 +107,27 @@ public class Configuration extends Observable {
 		EVENT
 	}
 
+	/**
+	 * Enumeration for segment samples storage modes
+	 */
+	public enum SampleStorage {
+		/**
+		 * Samples are kept in java heap arrays
+		 */
+		HEAP,
+
+		/**
+		 * Samples are kept in direct buffers outside of java heap
+		 */
+		DIRECT,
+
+		/**
+		 * Samples are kept in memory-mapped files in temporary directory, memory is bounded by OS
+		 * page cache
+		 */
+		MAPPED
+	}
+
 	/**
 	 * Name of configuration file
 	 */
@@ -187,6 +208,16 @@ public class Configuration extends Observable {
 	 */
 	private boolean showBigCursor = false;
 
+	/**
+	 * Count of worker threads used to compute graphs in background
+	 */
+	private int renderThreadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * flag if graphs are drawn coarse first and refined later after zooming or scrolling
+	 */
+	private boolean progressiveRendering = true;
+
 	/**
 	 * this values we use in mseed decompression the case of absence of blockette 1000
 	 */
@@ -197,6 +228,31 @@ public class Configuration extends Observable {
 	 */
 	private int defaultBlockLength = 4096;
 
+	/**
+	 * Count of worker threads used to parse data sources during startup
+	 */
+	private int parseThreadCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Full pathname of miniSEED index file, empty string means index isn't used
+	 */
+	private String mseedIndexFileName = "";
+
+	/**
+	 * Storage of loaded segments samples
+	 */
+	private SampleStorage sampleStorage = SampleStorage.HEAP;
+
+	/**
+	 * Maximum size of loaded segments samples in bytes, 0 means unlimited
+	 */
+	private long sampleCacheSize = Runtime.getRuntime().maxMemory() / 2;
+
+	/**
+	 * Maximum size of cached filtered segments data in bytes, 0 means unlimited
+	 */
+	private long filterCacheSize = Runtime.getRuntime().maxMemory() / 4;
+
 	private boolean useTempData = false;
 
 	private boolean useDataPath = false;
@@ -240,6 +296,15 @@ public class Configuration extends Observable {
 		this.dataPath = dataPath;
 	}
 
+	/**
+	 * Getter of the property <tt>Time interval</tt>
+	 * 
+	 * @return time interval of data to load when channels are shown, or null to load all data
+	 */
+	public TimeInterval getTimeInterval() {
+		return null;
+	}
+
 	/**
 	 * Getter of the property <tt>dataTempPath</tt>
 	 * 
@@ -498,6 +563,38 @@ public class Configuration extends Observable {
 		this.showBigCursor = sbc;
 	}
 
+	/**
+	 * Getter of property renderThreadCount.
+	 * 
+	 * @return count of worker threads used to compute graphs in background
+	 */
+	public int getRenderThreadCount() {
+		return renderThreadCount;
+	}
+
+	/**
+	 * Setter of property renderThreadCount.
+	 * 
+	 * @param renderThreadCount
+	 *            count of worker threads to compute graphs, at least 1
+	 */
+	public void setRenderThreadCount(int renderThreadCount) {
+		this.renderThreadCount = renderThreadCount < 1 ? 1 : renderThreadCount;
+	}
+
+	/**
+	 * Getter of the property <tt>progressiveRendering</tt>
+	 * 
+	 * @return flag if graphs are drawn coarse first and refined later after zooming or scrolling
+	 */
+	public boolean getProgressiveRendering() {
+		return progressiveRendering;
+	}
+
+	public void setProgressiveRendering(boolean progressiveRendering) {
+		this.progressiveRendering = progressiveRendering;
+	}
+
 	/**
 	 * Setter of property defaultCompression.
 	 * 
@@ -570,6 +667,106 @@ public class Configuration extends Observable {
 		return defaultBlockLength;
 	}
 
+	/**
+	 * Setter of property parseThreadCount.
+	 * 
+	 * @param parseThreadCount
+	 *            count of worker threads to parse data sources, 1 means sequential parsing
+	 */
+	public void setParseThreadCount(int parseThreadCount) {
+		this.parseThreadCount = parseThreadCount < 1 ? 1 : parseThreadCount;
+	}
+
+	/**
+	 * Getter of property parseThreadCount.
+	 * 
+	 * @return count of worker threads used to parse data sources during startup
+	 */
+	public int getParseThreadCount() {
+		return parseThreadCount;
+	}
+
+	/**
+	 * Getter of property mseedIndexFileName.
+	 * 
+	 * @return full pathname of file to store parsed miniSEED segments between sessions, empty
+	 *         string if index is disabled
+	 */
+	public String getMseedIndexFileName() {
+		return mseedIndexFileName;
+	}
+
+	/**
+	 * Setter of property mseedIndexFileName.
+	 * 
+	 * @param mseedIndexFileName
+	 *            full pathname of miniSEED index file, null or empty string to disable index
+	 */
+	public void setMseedIndexFileName(String mseedIndexFileName) {
+		this.mseedIndexFileName = mseedIndexFileName == null ? "" : mseedIndexFileName;
+	}
+
+	/**
+	 * Getter of property sampleStorage.
+	 * 
+	 * @return storage mode of loaded segments samples
+	 * @see SampleStorage
+	 */
+	public SampleStorage getSampleStorage() {
+		return sampleStorage;
+	}
+
+	/**
+	 * Setter of property sampleStorage.
+	 * 
+	 * @param sampleStorage
+	 *            storage mode of loaded segments samples
+	 */
+	public void setSampleStorage(SampleStorage sampleStorage) {
+		this.sampleStorage = sampleStorage;
+	}
+
+	/**
+	 * Getter of property sampleCacheSize.
+	 * 
+	 * @return maximum size of loaded segments samples in bytes, 0 means unlimited
+	 * @see com.isti.traceview.data.SampleCache
+	 */
+	public long getSampleCacheSize() {
+		return sampleCacheSize;
+	}
+
+	/**
+	 * Setter of property sampleCacheSize.
+	 * 
+	 * @param sampleCacheSize
+	 *            maximum size of loaded segments samples in bytes, 0 or negative value means
+	 *            unlimited
+	 */
+	public void setSampleCacheSize(long sampleCacheSize) {
+		this.sampleCacheSize = sampleCacheSize < 0 ? 0 : sampleCacheSize;
+	}
+
+	/**
+	 * Getter of property filterCacheSize.
+	 * 
+	 * @return maximum size of cached filtered segments data in bytes, 0 means unlimited
+	 */
+	public long getFilterCacheSize() {
+		return filterCacheSize;
+	}
+
+	/**
+	 * Setter of property filterCacheSize.
+	 * 
+	 * @param filterCacheSize
+	 *            maximum size of cached filtered segments data in bytes, 0 or negative value means
+	 *            unlimited
+	 */
+	public void setFilterCacheSize(long filterCacheSize) {
+		this.filterCacheSize = filterCacheSize < 0 ? 0 : filterCacheSize;
+	}
+
 	/**
 	 * Getter of the property <tt>useTempData</tt>
 	 * 
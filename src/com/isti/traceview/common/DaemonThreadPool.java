@@ -0,0 +1,34 @@
+package com.isti.traceview.common;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates thread pools for background computations. Threads of pools are daemons, so idle pools
+ * don't prevent application exit, and are named by pool name and thread number.
+ */
+public class DaemonThreadPool {
+
+	private DaemonThreadPool() {
+	}
+
+	/**
+	 * @param threadCount
+	 *            count of threads in pool
+	 * @param name
+	 *            prefix of threads names
+	 * @return pool with fixed count of daemon threads
+	 */
+	public static ExecutorService newFixedThreadPool(int threadCount, final String name) {
+		final AtomicInteger threadNumber = new AtomicInteger(0);
+		return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+}
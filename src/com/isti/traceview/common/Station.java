@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -102,7 +103,7 @@ public class Station implements Comparable, Serializable {
 	 *            the station name.
 	 */
 	public Station(String stationName) {
-		this(stationName, null, null, 0.0, 0.0, 0.0, 0.0, new HashSet<Channel>());
+		this(stationName, null, null, 0.0, 0.0, 0.0, 0.0, Collections.synchronizedSet(new HashSet<Channel>()));
 	}
 
 	/**
@@ -360,13 +360,19 @@ public class TimeInterval {
 		try {
 			switch (type) {
 			case DATE_FORMAT_NORMAL:
-				ret = df.parse(date);
+				synchronized (df) {
+					ret = df.parse(date);
+				}
 				break;
 			case DATE_FORMAT_MIDDLE:
-				ret = df_middle.parse(date);
+				synchronized (df_middle) {
+					ret = df_middle.parse(date);
+				}
 				break;
 			case DATE_FORMAT_LONG:
-				ret = df_long.parse(date);
+				synchronized (df_long) {
+					ret = df_long.parse(date);
+				}
 				break;
 			default:
 				lg.error("Wrong date format type: " + type);
@@ -387,13 +393,20 @@ public class TimeInterval {
 	 * @return string representation of date
 	 */
 	public static String formatDate(Date date, DateFormatType type) {
+		// SimpleDateFormat isn't thread safe, and dates are formatted from parsing threads too
 		switch (type) {
 		case DATE_FORMAT_NORMAL:
-			return df.format(date);
+			synchronized (df) {
+				return df.format(date);
+			}
 		case DATE_FORMAT_MIDDLE:
-			return df_middle.format(date);
+			synchronized (df_middle) {
+				return df_middle.format(date);
+			}
 		case DATE_FORMAT_LONG:
-			return df_long.format(date);
+			synchronized (df_long) {
+				return df_long.format(date);
+			}
 		default:
 			lg.error("Wrong date format type: " + type);
 			return null;
@@ -63,7 +63,7 @@ import java.util.Collections;
  * @see java.io.RandomAccessFile
  */
 
-public class BufferedRandomAccessFile implements DataInput, DataOutput {
+public class BufferedRandomAccessFile implements RandomAccessInput, DataOutput {
 
 	/** _more_ */
 
@@ -0,0 +1,608 @@
+package com.isti.traceview.data;
+
+import java.awt.Color;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.common.DefaultEvent;
+import com.isti.traceview.common.IEvent;
+
+/**
+ * <p>
+ * Dump of one trace in temporary storage. File is written in one pass, all multi-byte values are
+ * big-endian:
+ * </p>
+ * <ul>
+ * <li>MAGIC and VERSION</li>
+ * <li>sample block for every segment: samples encoding and count, samples; followed by summary
+ * block: all levels of segment's {@link MinMaxPyramid}</li>
+ * <li>point cache block, see {@link PlotDataProvider#initPointCache(IColorModeState)}</li>
+ * <li>directory: SNCL and trace attributes, table of original data sources, segments table,
+ * events</li>
+ * <li>directory offset and MAGIC</li>
+ * </ul>
+ * <p>
+ * Every block is prefixed with it's length.
+ * </p>
+ * <p>
+ * Samples are stored as zigzag varint encoded differences if it's smaller then raw 32-bit values.
+ * Opening of store reads only directory, samples are read from mapped file when segment is loaded,
+ * and point cache - when trace is drawn first time. Raw samples aren't copied on loading, segment
+ * reads them directly from mapped pages, see {@link Segment#setData(IntBuffer, int, int)}. Summary
+ * is read instead of samples while segment isn't loaded, see {@link ISummarySource}.
+ * </p>
+ */
+public class ChannelStore implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static Logger lg = Logger.getLogger(ChannelStore.class);
+
+	/**
+	 * Extension of channel store files in temporary storage
+	 */
+	public static final String EXTENSION = "TRC";
+
+	private static final int MAGIC = 0x54564353; // "TVCS"
+
+	private static final int VERSION = 2;
+
+	private static final byte ENCODING_RAW = 0;
+
+	private static final byte ENCODING_DELTA = 1;
+
+	private File file = null;
+
+	private long pointCacheOffset = -1;
+
+	/**
+	 * Offsets of summary blocks by offsets of segment sample blocks
+	 */
+	private Map<Long, Long> summaryOffsets = new HashMap<Long, Long>();
+
+	private transient MappedFileInput input = null;
+
+	/**
+	 * @param file
+	 *            store file
+	 */
+	public ChannelStore(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Writes trace to store file, trace should be loaded
+	 *
+	 * @param channel
+	 *            trace to write, with initialized point cache
+	 * @param file
+	 *            file to write
+	 */
+	public static void write(PlotDataProvider channel, File file) throws IOException {
+		List<Segment> segments = channel.getRawData();
+		List<ISource> sources = new ArrayList<ISource>();
+		ByteArrayOutputStream directory = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(directory);
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			FileChannel fc = fos.getChannel();
+			ByteBuffer head = ByteBuffer.allocate(8);
+			head.putInt(MAGIC).putInt(VERSION).flip();
+			writeFully(fc, head);
+			dos.writeUTF(channel.getNetworkName());
+			dos.writeUTF(channel.getStation().getName());
+			dos.writeUTF(channel.getLocationName());
+			dos.writeUTF(channel.getChannelName());
+			dos.writeUTF(channel.getSensor().name());
+			dos.writeUTF(channel.getStatus().name());
+			dos.writeInt(channel.getColor().getRGB());
+			// segments table, sample blocks are written on the fly
+			ByteArrayOutputStream table = new ByteArrayOutputStream();
+			DataOutputStream tos = new DataOutputStream(table);
+			tos.writeInt(segments.size());
+			for (Segment segment: segments) {
+				int sourceIndex = sources.indexOf(segment.getDataSource());
+				if (sourceIndex < 0) {
+					sourceIndex = sources.size();
+					sources.add(segment.getDataSource());
+				}
+				tos.writeInt(sourceIndex);
+				tos.writeLong(segment.getStartTime().getTime());
+				tos.writeDouble(segment.getSampleRate());
+				tos.writeInt(segment.getSampleCount());
+				tos.writeInt(segment.getMaxValue());
+				tos.writeInt(segment.getMinValue());
+				tos.writeInt(segment.getSourceSerialNumber());
+				tos.writeInt(segment.getChannelSerialNumber());
+				tos.writeInt(segment.getContinueAreaNumber());
+				tos.writeLong(fc.position());
+				writeFully(fc, encode(segment.getDataBuffer()));
+				MinMaxPyramid pyramid = segment.getPyramid();
+				if (pyramid == null) {
+					tos.writeLong(-1);
+				} else {
+					tos.writeLong(fc.position());
+					writeFully(fc, encode(pyramid));
+				}
+			}
+			dos.writeInt(sources.size());
+			for (ISource source: sources) {
+				dos.writeUTF(source.getFormatType().name());
+				dos.writeUTF(source instanceof SourceFile ? ((SourceFile) source).getFile().getPath() : source.getName());
+			}
+			tos.flush();
+			table.writeTo(dos);
+			List<IEvent> events = new ArrayList<IEvent>();
+			synchronized (channel.getEvents()) {
+				events.addAll(channel.getEvents());
+			}
+			dos.writeInt(events.size());
+			for (IEvent event: events) {
+				dos.writeUTF(event.getType());
+				dos.writeLong(event.getStartTime().getTime());
+				dos.writeLong(event.getDuration());
+			}
+			PlotData pointsCache = channel.getPointsCache();
+			if (pointsCache == null) {
+				dos.writeLong(-1);
+			} else {
+				dos.writeLong(fc.position());
+				writeFully(fc, encode(pointsCache));
+			}
+			dos.flush();
+			long directoryOffset = fc.position();
+			writeFully(fc, ByteBuffer.wrap(directory.toByteArray()));
+			ByteBuffer tail = ByteBuffer.allocate(12);
+			tail.putLong(directoryOffset).putInt(MAGIC).flip();
+			writeFully(fc, tail);
+		} finally {
+			fos.close();
+		}
+	}
+
+	/**
+	 * Reads store directory and creates trace without loading of data
+	 *
+	 * @param factory
+	 *            factory to create trace
+	 * @return trace with not loaded segments, or null if store can't be read
+	 */
+	public PlotDataProvider open(IChannelFactory factory) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			if (raf.length() < 20 || raf.readInt() != MAGIC) {
+				throw new IOException("not a channel store");
+			}
+			int version = raf.readInt();
+			if (version < 1 || version > VERSION) {
+				throw new IOException("unsupported channel store version");
+			}
+			raf.seek(raf.length() - 12);
+			long directoryOffset = raf.readLong();
+			if (raf.readInt() != MAGIC || directoryOffset < 8 || directoryOffset > raf.length() - 12) {
+				throw new IOException("channel store is truncated");
+			}
+			byte[] directory = new byte[(int) (raf.length() - 12 - directoryOffset)];
+			raf.seek(directoryOffset);
+			raf.readFully(directory);
+			DataInputStream dis = new DataInputStream(new ByteArrayInputStream(directory));
+			String network = dis.readUTF();
+			String station = dis.readUTF();
+			String location = dis.readUTF();
+			String channelName = dis.readUTF();
+			PlotDataProvider channel = factory.getChannel(channelName, DataModule.getOrAddStation(station), network, location);
+			channel.setSensor(Channel.Sensor.valueOf(dis.readUTF()));
+			channel.setStatus(Channel.Status.valueOf(dis.readUTF()));
+			channel.setColor(new Color(dis.readInt()));
+			List<ISource> sources = new ArrayList<ISource>();
+			int sourceCount = dis.readInt();
+			for (int i = 0; i < sourceCount; i++) {
+				ISource.FormatType formatType = ISource.FormatType.valueOf(dis.readUTF());
+				sources.add(new StoredSource(new File(dis.readUTF()), formatType, this));
+			}
+			int segmentCount = dis.readInt();
+			for (int i = 0; i < segmentCount; i++) {
+				ISource source = sources.get(dis.readInt());
+				long startTime = dis.readLong();
+				double sampleRate = dis.readDouble();
+				int sampleCount = dis.readInt();
+				int maxValue = dis.readInt();
+				int minValue = dis.readInt();
+				int sourceSerialNumber = dis.readInt();
+				int channelSerialNumber = dis.readInt();
+				int continueAreaNumber = dis.readInt();
+				// segment's offset is the one of sample block in the store
+				Segment segment = new Segment(source, dis.readLong(), new Date(startTime), sampleRate, sampleCount, sourceSerialNumber);
+				long summaryOffset = version < 2 ? -1 : dis.readLong();
+				if (summaryOffset >= 0) {
+					summaryOffsets.put(segment.getStartOffset(), summaryOffset);
+				}
+				segment.setMaxValue(maxValue);
+				segment.setMinValue(minValue);
+				segment.setChannelSerialNumber(channelSerialNumber);
+				segment.setContinueAreaNumber(continueAreaNumber);
+				channel.addSegment(segment);
+			}
+			int eventCount = dis.readInt();
+			Set<IEvent> events = new HashSet<IEvent>();
+			for (int i = 0; i < eventCount; i++) {
+				String type = dis.readUTF();
+				long startTime = dis.readLong();
+				long duration = dis.readLong();
+				// other events are bound to application objects and are restored by application
+				if (type.equals("DEFAULT")) {
+					DefaultEvent event = new DefaultEvent(new Date(startTime));
+					event.setDuration(duration);
+					events.add(event);
+				}
+			}
+			channel.addEvents(events);
+			pointCacheOffset = dis.readLong();
+			channel.setChannelStore(this);
+			lg.debug("Opened " + this + ": " + channel + ", " + segmentCount + " segments");
+			return channel;
+		} catch (IOException e) {
+			lg.error("Can't open channel store " + file + ": " + e);
+		} catch (IllegalArgumentException e) {
+			lg.error("Can't open channel store " + file + ": " + e);
+		} finally {
+			try {
+				if (raf != null) {
+					raf.close();
+				}
+			} catch (IOException e) {
+				// do nothing
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads point cache stored with trace
+	 *
+	 * @return point cache, or null if it's absent or can't be read
+	 */
+	public PlotData readPointCache() {
+		if (pointCacheOffset < 0) {
+			return null;
+		}
+		try {
+			ByteBuffer bb = readBlock(pointCacheOffset);
+			String label = readUTF(bb);
+			Color traceColor = readColor(bb);
+			Color labelColor = readColor(bb);
+			int pixelCount = bb.getInt();
+			int size = bb.getInt();
+			int[] pixelStarts = new int[pixelCount + 1];
+			bb.asIntBuffer().get(pixelStarts);
+			bb.position(bb.position() + 4 * pixelStarts.length);
+			double[][] values = new double[3][size];
+			for (double[] column: values) {
+				bb.asDoubleBuffer().get(column);
+				bb.position(bb.position() + 8 * size);
+			}
+			int[][] numbers = new int[3][size];
+			for (int[] column: numbers) {
+				bb.asIntBuffer().get(column);
+				bb.position(bb.position() + 4 * size);
+			}
+			// points are added in the same order, so summary values are the same as in original
+			PlotData ret = new PlotData(label, traceColor, pixelCount);
+			ret.setLabelColor(labelColor);
+			for (int pixel = 0; pixel < pixelCount; pixel++) {
+				ret.addPixel();
+				for (int i = pixelStarts[pixel]; i < pixelStarts[pixel + 1]; i++) {
+					ret.addPoint(values[0][i], values[1][i], values[2][i], numbers[0][i], numbers[1][i], numbers[2][i]);
+				}
+			}
+			lg.debug("Point cache read from " + this);
+			return ret;
+		} catch (IOException e) {
+			lg.error("Can't read point cache from " + file + ": " + e);
+			return null;
+		}
+	}
+
+	public String toString() {
+		return "ChannelStore: " + file;
+	}
+
+	/**
+	 * Reads summary of segment from it's summary block
+	 *
+	 * @return summary detached from samples, or null if it's absent or can't be read
+	 */
+	MinMaxPyramid loadSummary(Segment segment) {
+		Long offset = summaryOffsets.get(segment.getStartOffset());
+		if (offset == null) {
+			return null;
+		}
+		try {
+			ByteBuffer bb = readBlock(offset);
+			int length = bb.getInt();
+			int levelCount = bb.getInt();
+			int[] binSizes = new int[levelCount];
+			int[][] mins = new int[levelCount][];
+			int[][] maxs = new int[levelCount][];
+			double[][] sums = new double[levelCount][];
+			for (int level = 0; level < levelCount; level++) {
+				binSizes[level] = bb.getInt();
+				int binCount = bb.getInt();
+				mins[level] = new int[binCount];
+				maxs[level] = new int[binCount];
+				sums[level] = new double[binCount];
+				bb.asIntBuffer().get(mins[level]);
+				bb.position(bb.position() + 4 * binCount);
+				bb.asIntBuffer().get(maxs[level]);
+				bb.position(bb.position() + 4 * binCount);
+				bb.asDoubleBuffer().get(sums[level]);
+				bb.position(bb.position() + 8 * binCount);
+			}
+			if (length != segment.getSampleCount()) {
+				throw new IOException("summary of " + length + " samples, expected " + segment.getSampleCount());
+			}
+			lg.debug("Summary of " + segment + " read from " + this);
+			return new MinMaxPyramid(length, binSizes, mins, maxs, sums);
+		} catch (IOException e) {
+			lg.error("Can't read summary of " + segment + " from " + file + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Loads segment samples from it's sample block
+	 */
+	void load(Segment segment) {
+		try {
+			ByteBuffer bb = readBlock(segment.getStartOffset());
+			byte encoding = bb.get();
+			int count = bb.getInt();
+			if (encoding == ENCODING_RAW && count == segment.getSampleCount()) {
+				// min and max values are known from segments table
+				segment.setData(bb.asIntBuffer(), segment.getMinValue(), segment.getMaxValue());
+				return;
+			}
+			int[] data = new int[segment.getSampleCount()];
+			count = Math.min(count, data.length);
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			if (encoding == ENCODING_RAW) {
+				bb.asIntBuffer().get(data, 0, count);
+			} else if (encoding == ENCODING_DELTA) {
+				int value = 0;
+				for (int i = 0; i < count; i++) {
+					int zigzag = 0;
+					int shift = 0;
+					int b;
+					do {
+						b = bb.get();
+						zigzag |= (b & 0x7f) << shift;
+						shift += 7;
+					} while ((b & 0x80) != 0);
+					value += (zigzag >>> 1) ^ -(zigzag & 1);
+					data[i] = value;
+				}
+			} else {
+				throw new IOException("unknown samples encoding " + encoding);
+			}
+			for (int i = 0; i < data.length; i++) {
+				if (data[i] < min) {
+					min = data[i];
+				}
+				if (data[i] > max) {
+					max = data[i];
+				}
+			}
+			segment.setData(data, min, max);
+		} catch (IOException e) {
+			lg.error("Can't load " + segment + " from " + file + ": " + e);
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reads block from mapped store file, blocks can be read by several threads concurrently
+	 *
+	 * @param offset
+	 *            offset of block's length prefix
+	 * @return view of block content, not copied
+	 */
+	private ByteBuffer readBlock(long offset) throws IOException {
+		MappedFileInput input = getInput();
+		int length = input.slice(offset, 4).getInt();
+		return input.slice(offset + 4, length);
+	}
+
+	private synchronized MappedFileInput getInput() throws IOException {
+		if (input == null) {
+			input = new MappedFileInput(file);
+		}
+		return input;
+	}
+
+	/**
+	 * Encodes samples block, as differences if it's shorter then raw values
+	 */
+	private static ByteBuffer encode(IntBuffer samples) {
+		int count = samples.remaining();
+		// encoding stops as soon as it becomes longer then raw values
+		byte[] delta = new byte[4 * count + 5];
+		int pos = 0;
+		int previous = 0;
+		for (int i = 0; i < count && pos < 4 * count; i++) {
+			int value = samples.get(samples.position() + i);
+			int diff = value - previous;
+			previous = value;
+			int zigzag = (diff << 1) ^ (diff >> 31);
+			while ((zigzag & ~0x7f) != 0) {
+				delta[pos++] = (byte) ((zigzag & 0x7f) | 0x80);
+				zigzag >>>= 7;
+			}
+			delta[pos++] = (byte) zigzag;
+		}
+		ByteBuffer ret;
+		if (pos < 4 * count) {
+			ret = ByteBuffer.allocate(9 + pos);
+			ret.putInt(5 + pos).put(ENCODING_DELTA).putInt(count).put(delta, 0, pos);
+		} else {
+			ret = ByteBuffer.allocate(9 + 4 * count);
+			ret.putInt(5 + 4 * count).put(ENCODING_RAW).putInt(count);
+			ret.asIntBuffer().put(samples.duplicate());
+			ret.position(ret.limit());
+		}
+		ret.flip();
+		return ret;
+	}
+
+	/**
+	 * Encodes summary block, arrays of every level are stored one after another
+	 */
+	private static ByteBuffer encode(MinMaxPyramid pyramid) {
+		int size = 8;
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			size += 8 + 16 * pyramid.getMins(level).length;
+		}
+		ByteBuffer ret = ByteBuffer.allocate(4 + size);
+		ret.putInt(size);
+		ret.putInt(pyramid.getSampleCount()).putInt(pyramid.getLevelCount());
+		for (int level = 0; level < pyramid.getLevelCount(); level++) {
+			int[] mins = pyramid.getMins(level);
+			ret.putInt(pyramid.getBinSize(level)).putInt(mins.length);
+			ret.asIntBuffer().put(mins);
+			ret.position(ret.position() + 4 * mins.length);
+			ret.asIntBuffer().put(pyramid.getMaxs(level));
+			ret.position(ret.position() + 4 * mins.length);
+			ret.asDoubleBuffer().put(pyramid.getSums(level));
+			ret.position(ret.position() + 8 * mins.length);
+		}
+		ret.flip();
+		return ret;
+	}
+
+	/**
+	 * Encodes point cache block, point attributes are stored by columns
+	 */
+	private static ByteBuffer encode(PlotData points) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(header);
+		dos.writeUTF(points.getLabel());
+		writeColor(dos, points.getTraceColor());
+		writeColor(dos, points.getLabelColor());
+		dos.flush();
+		int pixelCount = points.getPointCount();
+		int size = pixelCount == 0 ? 0 : points.getPixelEnd(pixelCount - 1);
+		ByteBuffer ret = ByteBuffer.allocate(4 + header.size() + 8 + 4 * (pixelCount + 1) + 36 * size);
+		ret.putInt(ret.capacity() - 4);
+		ret.put(header.toByteArray());
+		ret.putInt(pixelCount).putInt(size);
+		for (int pixel = 0; pixel < pixelCount; pixel++) {
+			ret.putInt(points.getPixelStart(pixel));
+		}
+		ret.putInt(size);
+		for (int i = 0; i < size; i++) {
+			ret.putDouble(points.getTop(i));
+		}
+		for (int i = 0; i < size; i++) {
+			ret.putDouble(points.getBottom(i));
+		}
+		for (int i = 0; i < size; i++) {
+			ret.putDouble(points.getMean(i));
+		}
+		for (int i = 0; i < size; i++) {
+			ret.putInt(points.getSegmentNumber(i));
+		}
+		for (int i = 0; i < size; i++) {
+			ret.putInt(points.getContinueAreaNumber(i));
+		}
+		for (int i = 0; i < size; i++) {
+			ret.putInt(points.getRawDataProviderNumber(i));
+		}
+		ret.flip();
+		return ret;
+	}
+
+	private static void writeColor(DataOutputStream dos, Color color) throws IOException {
+		dos.writeBoolean(color != null);
+		dos.writeInt(color == null ? 0 : color.getRGB());
+	}
+
+	private static Color readColor(ByteBuffer bb) {
+		boolean present = bb.get() != 0;
+		int rgb = bb.getInt();
+		return present ? new Color(rgb, true) : null;
+	}
+
+	private static String readUTF(ByteBuffer bb) throws IOException {
+		byte[] bytes = new byte[2 + (bb.getShort(bb.position()) & 0xffff)];
+		bb.get(bytes);
+		return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+	}
+
+	private static void writeFully(FileChannel fc, ByteBuffer bb) throws IOException {
+		while (bb.hasRemaining()) {
+			fc.write(bb);
+		}
+	}
+
+	/**
+	 * Data source of stored segment. It's equal to original data source, so data module doesn't
+	 * parse original source again, but loads samples from the store.
+	 */
+	private static class StoredSource extends SourceFile implements ISummarySource {
+		private static final long serialVersionUID = 1L;
+
+		private FormatType formatType;
+
+		private ChannelStore store;
+
+		StoredSource(File file, FormatType formatType, ChannelStore store) {
+			super(file);
+			this.formatType = formatType;
+			this.store = store;
+		}
+
+		public FormatType getFormatType() {
+			return formatType;
+		}
+
+		public Set<RawDataProvider> parse(DataModule dataModule) {
+			// segments are already restored from the store
+			return new HashSet<RawDataProvider>();
+		}
+
+		public void load(Segment segment) {
+			store.load(segment);
+		}
+
+		public MinMaxPyramid loadSummary(Segment segment) {
+			return store.loadSummary(segment);
+		}
+
+		public String toString() {
+			return "StoredSource: file " + getFile().getName() + ", " + store;
+		}
+	}
+}
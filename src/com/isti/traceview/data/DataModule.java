@@ -10,12 +10,20 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -53,8 +61,19 @@ public class DataModule extends Observable {
 	 */
 	private List<PlotDataProvider> channels;
 
+	/**
+	 * Index of found channels by SNCL, to find channel without scanning of channels list. Should
+	 * contain the same set of channels as channels list.
+	 */
+	private ConcurrentMap<PlotDataProvider, PlotDataProvider> channelIndex;
+
 	List<Response> responses;
 
+	/**
+	 * Index of cashed responses by SNCL, to find response without scanning of responses list
+	 */
+	private Map<String, Response> responseIndex;
+
 	// Information about current channel set
 	private int markerPosition;
 	private int windowSize;
@@ -74,9 +93,11 @@ public class DataModule extends Observable {
 	public DataModule() {
 		allChannelsTI = new TimeInterval();
 		channels = Collections.synchronizedList(new ArrayList<PlotDataProvider>());
+		channelIndex = new ConcurrentHashMap<PlotDataProvider, PlotDataProvider>();
 		markerPosition = 0;
 		dataSources = new ArrayList<ISource>();
 		responses = new ArrayList<Response>();
+		responseIndex = new HashMap<String, Response>();
 	}
 
 	/**
@@ -97,7 +118,9 @@ public class DataModule extends Observable {
 	 */
 	public void loadData() throws TraceViewException {
         lg.debug("\n== Enter DataModule.loadData()\n");
-     // -t: Read serialized PlotDataProviders from TEMP_DATA
+		// index responses in background while data are loading
+		ResponseCatalog.getInstance().refresh();
+     // -t: Open dumped PlotDataProviders from TEMP_DATA, data are read when channel is shown
 		if (TraceView.getConfiguration().getUseTempData()) {
             lg.debug("-t: Read from temp storage\n");
             System.out.format("     -t: Read from temp storage\n");
@@ -105,15 +128,18 @@ public class DataModule extends Observable {
 				storage = new TemporaryStorage(TraceView.getConfiguration().getDataTempPath());
 			}
 			for (String tempFileName : storage.getAllTempFiles()) {
-                lg.debug("PDP.load: tempFileName=" + tempFileName);
-                System.out.format("         Read serialized file:%s\n", tempFileName);
-				PlotDataProvider channel = PlotDataProvider.load(tempFileName);
+                lg.debug("ChannelStore.open: tempFileName=" + tempFileName);
+                System.out.format("         Open dumped file:%s\n", tempFileName);
+				PlotDataProvider channel = new ChannelStore(new File(tempFileName)).open(channelFactory);
+				if (channel == null) {
+					continue;
+				}
              // MTH:
                 if (TraceView.getConfiguration().getUseDataPath()) {
                     lg.debug("== loadData(): -t AND -d chosen --> null PlotDataProvider's pointsCache");
                     channel.nullPointsCache();
                 }
-				if ((channels.indexOf(channel) <= 0)) {
+				if (!channelIndex.containsKey(channel)) {
 					addChannel(channel);
 				}
 			}
@@ -153,6 +179,7 @@ public class DataModule extends Observable {
 		from = 0;
 		to = 0;
 		channels.clear();
+		channelIndex.clear();
 		dataSources.clear();
 		stations.clear();
 		loadData();
@@ -176,7 +203,7 @@ public class DataModule extends Observable {
         loadData();
         lg.debug("== DataModule.dumpData() call DataModule.loadData() DONE");
 
-        System.out.format("     -T: Serialize data to temp storage ");
+        System.out.format("     -T: Dump data to temp storage ");
 
 		if (storage == null) {
             lg.debug("== DataModule.dumpData() storage == null --> new TemporaryStorage()");
@@ -212,19 +239,31 @@ public class DataModule extends Observable {
 		    storage.delAllTempFiles();
         }
 
-		Iterator<PlotDataProvider> it = getAllChannels().iterator();
-		while (it.hasNext()) {
-			PlotDataProvider channel = it.next();
-            lg.debug("== DataModule.dumpData() call channel.load() for channel=" + channel);
-			channel.load();
-            lg.debug("== DataModule.dumpData() call channel.load() DONE for channel=" + channel);
-			channel.initPointCache(colorMode);
-            System.out.format("         Serialize to file:%s\n", storage.getSerialFileName(channel));
-			channel.dump(storage.getSerialFileName(channel));
-			it.remove();
-            //MTH: not sure why this is needed
-			//channel.drop();
-			//channel = null;
+		// channels are loaded and written in parallel, by the same count of threads as used for parsing
+		List<PlotDataProvider> toDump = new ArrayList<PlotDataProvider>(getAllChannels());
+		int threadCount = Math.max(1, Math.min(TraceView.getConfiguration().getParseThreadCount(), toDump.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			List<Future<PlotDataProvider>> results = new ArrayList<Future<PlotDataProvider>>();
+			for (PlotDataProvider channel : toDump) {
+				results.add(executor.submit(new DumpTask(channel, colorMode)));
+			}
+			for (int i = 0; i < toDump.size(); i++) {
+				PlotDataProvider channel = toDump.get(i);
+				try {
+					results.get(i).get();
+				} catch (ExecutionException e) {
+					lg.error("Can't dump " + channel + ": " + e.getCause());
+				} catch (InterruptedException e) {
+					lg.error("Dumping of " + channel + " was interrupted");
+				}
+				synchronized (channels) {
+					channels.remove(channel);
+					channelIndex.remove(channel);
+				}
+			}
+		} finally {
+			executor.shutdown();
 		}
         //printAllChannels();
         lg.debug("== DataModule.dumpData() EXIT");
@@ -254,6 +293,7 @@ public class DataModule extends Observable {
 			lg.debug("Parsing file " + datafile.getName());
 			changedChannels = datafile.parse(this);
 			dataSources.add(datafile);
+			saveMseedIndex();
 			checkDataIntegrity(changedChannels);
 			if (!isChangedAllChannelsTI()) {
 				setChanged();
@@ -265,26 +305,56 @@ public class DataModule extends Observable {
 	}
 
 	/**
-	 * Add list of data sources to data module
+	 * Add list of data sources to data module. Sources are parsed in parallel by pool of
+	 * {@link Configuration#getParseThreadCount()} threads, results are merged in the order of
+	 * given list.
 	 * 
 	 * @param datafiles
 	 *            sources list to add
 	 * @return list of {@link RawDataProvider}s found in the sources
 	 */
 	public Set<RawDataProvider> addDataSources(List<ISource> datafiles) {
-		boolean wasAdded = false;
 		Set<RawDataProvider> changedChannels = new HashSet<RawDataProvider>();
 
 		lg.debug("DataModule.addDataSources() begin");
-		for (ISource datafile : datafiles) {
+		List<ISource> toParse = new ArrayList<ISource>();
+		for (ISource datafile : new LinkedHashSet<ISource>(datafiles)) {
 			if (!isSourceLoaded(datafile)) {
+				toParse.add(datafile);
+			}
+		}
+		int threadCount = Math.min(TraceView.getConfiguration().getParseThreadCount(), toParse.size());
+		if (threadCount <= 1) {
+			for (ISource datafile : toParse) {
 				lg.debug("Parsing " + datafile.getName());
-				wasAdded = true;
 				changedChannels.addAll(datafile.parse(this));
 				dataSources.add(datafile);
 			}
+		} else {
+			lg.debug("Parsing " + toParse.size() + " sources using " + threadCount + " threads");
+			ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+			try {
+				List<Future<Set<RawDataProvider>>> results = new ArrayList<Future<Set<RawDataProvider>>>();
+				for (ISource datafile : toParse) {
+					results.add(executor.submit(new ParseTask(datafile)));
+				}
+				for (int i = 0; i < toParse.size(); i++) {
+					try {
+						changedChannels.addAll(results.get(i).get());
+						// failed sources aren't marked as loaded, so they will be parsed again
+						dataSources.add(toParse.get(i));
+					} catch (ExecutionException e) {
+						lg.error("Can't parse " + toParse.get(i).getName() + ": " + e.getCause());
+					} catch (InterruptedException e) {
+						lg.error("Parsing of " + toParse.get(i).getName() + " was interrupted");
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
 		}
-		if (wasAdded) {
+		if (toParse.size() > 0) {
+			saveMseedIndex();
 			checkDataIntegrity(changedChannels);
 			if (!isChangedAllChannelsTI()) {
 				setChanged();
@@ -296,6 +366,56 @@ public class DataModule extends Observable {
 		return changedChannels;
 	}
 
+	/**
+	 * Writes miniSEED index on disk, if index is enabled
+	 */
+	private void saveMseedIndex() {
+		MseedIndex index = MseedIndex.getInstance();
+		if (index != null) {
+			index.save();
+		}
+	}
+
+	/**
+	 * Task to parse one data source in the parsing thread pool
+	 */
+	private class ParseTask implements Callable<Set<RawDataProvider>> {
+		private ISource datafile;
+
+		public ParseTask(ISource datafile) {
+			this.datafile = datafile;
+		}
+
+		public Set<RawDataProvider> call() {
+			lg.debug("Parsing " + datafile.getName());
+			return datafile.parse(DataModule.this);
+		}
+	}
+
+	/**
+	 * Task to load and dump one channel in the dumping thread pool. Channel's data are dropped
+	 * after dumping to free memory for other channels.
+	 */
+	private class DumpTask implements Callable<PlotDataProvider> {
+		private PlotDataProvider channel;
+		private IColorModeState colorMode;
+
+		public DumpTask(PlotDataProvider channel, IColorModeState colorMode) {
+			this.channel = channel;
+			this.colorMode = colorMode;
+		}
+
+		public PlotDataProvider call() {
+			lg.debug("== DataModule.dumpData() call channel.load() for channel=" + channel);
+			channel.load();
+			channel.initPointCache(colorMode);
+			System.out.format("         Dump to file:%s\n", storage.getSerialFileName(channel));
+			channel.dump(storage.getSerialFileName(channel));
+			channel.drop();
+			return channel;
+		}
+	}
+
 	/**
 	 * Returns flag if already loaded channels contain this source
 	 */
@@ -316,6 +436,7 @@ public class DataModule extends Observable {
 				lg.warn("Deleting " + channel.toString()
 						+ " due to absence of data");
 				channels.remove(channel);
+				channelIndex.remove(channel);
 			} else {
 				channel.sort();
 			}
@@ -352,7 +473,7 @@ public class DataModule extends Observable {
 	 *            name of station
 	 * @return Station as class
 	 */
-	public static Station getOrAddStation(String stationName) {
+	public static synchronized Station getOrAddStation(String stationName) {
 		Station station = stations.get(stationName.trim());
 		if (station == null) {
 			station = addStation(stationName.trim());
@@ -393,6 +514,7 @@ public class DataModule extends Observable {
 		synchronized (channels) {
 			lg.debug("DataModule.addChannel() begin");
 			channels.add(channel);
+			channelIndex.put(channel, channel);
 			for (ISource src : channel.getSources()) {
 				if (!isSourceLoaded(src)) {
 					dataSources.add(src);
@@ -412,6 +534,7 @@ public class DataModule extends Observable {
 		synchronized (channels) {
 			lg.debug("DataModule.deleteChannel() begin");
 			channels.remove(channel);
+			channelIndex.remove(channel);
 			if (!isChangedAllChannelsTI()) {
 				setChanged();
 				notifyObservers(channel);
@@ -429,6 +552,9 @@ public class DataModule extends Observable {
 	public void deleteChannels(List<PlotDataProvider> toDelete) {
 		synchronized (channels) {
 			channels.removeAll(toDelete);
+			for (PlotDataProvider channel : toDelete) {
+				channelIndex.remove(channel);
+			}
 			if (!isChangedAllChannelsTI()) {
 				setChanged();
 				notifyObservers(toDelete);
@@ -457,11 +583,15 @@ public class DataModule extends Observable {
 		PlotDataProvider channel = channelFactory.getChannel(
 				channelName.trim(), station, networkName.trim(), locationName
 						.trim());
+		PlotDataProvider found = channelIndex.get(channel);
+		if (found != null) {
+			return found;
+		}
 		synchronized (channels) {
-			int i = channels.indexOf(channel);
-			if (i >= 0) {
-				// lg.debug("DataModule.getOrAddChannel() end");
-				return channels.get(i);
+			// check again under lock: other parsing thread could add it
+			found = channelIndex.get(channel);
+			if (found != null) {
+				return found;
 			} else {
 				addChannel(channel);
 				// lg.debug("DataModule.getOrAddChannel() end");
@@ -489,16 +619,8 @@ public class DataModule extends Observable {
 		PlotDataProvider channel = channelFactory.getChannel(
 				channelName.trim(), station, networkName.trim(), locationName
 						.trim());
-		synchronized (channels) {
-			int i = channels.indexOf(channel);
-			if (i >= 0) {
-				// lg.debug("DataModule.getChannel() end");
-				return channels.get(i);
-			} else {
-				// lg.debug("DataModule.getChannel() end");
-				return null;
-			}
-		}
+		// lg.debug("DataModule.getChannel() end");
+		return channelIndex.get(channel);
 	}
 
 	/**
@@ -802,56 +924,16 @@ public class DataModule extends Observable {
 
 	public static String getResponseFile(String network, String station,
 			String location, String channel) throws TraceViewException {
-		List<String> respFiles = new ArrayList<String>();
-		addRespFiles(TraceView.getConfiguration().getConfigFileDir(), network, station, location, channel, respFiles);
-		if (respFiles.size() > 0)
-			return respFiles.get(0);
-		addRespFiles("./", network, station, location, channel, respFiles);
-		if (respFiles.size() > 0)
-			return respFiles.get(0);
-		addRespFiles(TraceView.getConfiguration().getResponsePath(), network, station, location, channel, respFiles);
-		return respFiles.size() == 0 ? null : respFiles.get(0);
+		ResponseCatalog.Entry entry = ResponseCatalog.getInstance().getEntry(network, station, location, channel);
+		return entry == null ? null : entry.getFile().getAbsolutePath();
 	}
 
 	public static List<String> getAllResponseFiles() throws TraceViewException {
 		List<String> respFiles = new ArrayList<String>();
-		addRespFiles(TraceView.getConfiguration().getConfigFileDir(), respFiles);
-		addRespFiles("./", respFiles);
-		addRespFiles(TraceView.getConfiguration().getResponsePath(), respFiles);
-		return respFiles;
-	}
-
-	private static void addRespFiles(String dirname, String network,
-			String station, String location, String channel,
-			List<String> whereToAdd) throws TraceViewException {
-		File f = new File(dirname);
-		if (f.isDirectory()) {
-			File[] dir = f.listFiles();
-			if (dir.length > 0) {
-				for (int i = 0; i < dir.length; i++) {
-					if (!dir[i].isDirectory()
-							&& dir[i].getName().matches(
-									"^RESP\\." + network + "\\." + station
-											+ "\\." + location + "\\."
-											+ channel + "$")) {
-						String absPath = dir[i].getAbsolutePath();
-						// if (!whereToAdd.contains(absPath)) {
-						whereToAdd.add(absPath);
-						// ! System.out.println("Response file added: " +
-						// dir[i].getAbsolutePath());
-						// }
-					}
-				}
-			}
-		} else {
-			throw new TraceViewException("Loading responses from " + dirname
-					+ ": is not directory");
+		for (ResponseCatalog.Entry entry : ResponseCatalog.getInstance().getEntries()) {
+			respFiles.add(entry.getFile().getAbsolutePath());
 		}
-	}
-
-	private static void addRespFiles(String dirname, List<String> whereToAdd)
-			throws TraceViewException {
-		addRespFiles(dirname, ".*", ".*", ".*", ".*", whereToAdd);
+		return respFiles;
 	}
 
 	/**
@@ -877,16 +959,12 @@ public class DataModule extends Observable {
 	 * @return response class
 	 */
 	public Response getResponse(String network, String station,	String location, String channel) {
-		Response resp = new Response(network, station, location, channel, null,	null);
-
 		// try to load from files
 		try {
-			String respFile = getResponseFile(network, station, location, channel);
-			if (respFile != null) {
-				File f = new File(respFile);
-				resp = Response.getResponse(f);
+			ResponseCatalog.Entry entry = ResponseCatalog.getInstance().getEntry(network, station, location, channel);
+			if (entry != null) {
+				Response resp = entry.getResponse();
 				if (resp != null) {
-					System.out.println("Response loaded from file: " + respFile);
 					return resp;
 				}
 			}
@@ -944,14 +1022,19 @@ public class DataModule extends Observable {
 	 * @return response class
 	 */
 	public Response getResponseCashed(String network, String station, String location, String channel) {
-		Response resp = new Response(network, station, location, channel, null,	null);
-		int i = responses.indexOf(resp);
-		if (i >= 0) {
-			return responses.get(i);
-		} else {
-			resp = getResponse(network, station, location, channel);
-			responses.add(resp);
-			return resp;
+		String name = "RESP." + network + "." + station + "." + location + "." + channel;
+		synchronized (responses) {
+			if (responseIndex.containsKey(name)) {
+				return responseIndex.get(name);
+			}
+		}
+		Response resp = getResponse(network, station, location, channel);
+		synchronized (responses) {
+			if (!responseIndex.containsKey(name)) {
+				responseIndex.put(name, resp);
+				responses.add(resp);
+			}
+			return responseIndex.get(name);
 		}
 	}
 
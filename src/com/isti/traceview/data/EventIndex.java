@@ -0,0 +1,127 @@
+package com.isti.traceview.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import com.isti.traceview.common.IEvent;
+
+/**
+ * Immutable interval index of events, to find events overlapping time slice without scanning of
+ * all events. Events are sorted by start time and stored as implicit balanced binary tree, every
+ * node keeps maximum end time of its subtree. Queries take O(log n + k) for k found events.
+ */
+class EventIndex {
+	private final IEvent[] events;
+	private final long[] starts;
+	private final long[] ends;
+
+	/**
+	 * Maximum end time of subtree with root in this position
+	 */
+	private final long[] maxEnds;
+
+	/**
+	 * @param events
+	 *            events to index, caller should hold lock of synchronized collection
+	 */
+	EventIndex(Collection<IEvent> events) {
+		this.events = events.toArray(new IEvent[events.size()]);
+		// stable sort, events with equal start times keep collection order
+		Arrays.sort(this.events, new Comparator<IEvent>() {
+			public int compare(IEvent e1, IEvent e2) {
+				long t1 = e1.getStartTime().getTime();
+				long t2 = e2.getStartTime().getTime();
+				return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+			}
+		});
+		starts = new long[this.events.length];
+		ends = new long[this.events.length];
+		maxEnds = new long[this.events.length];
+		for (int i = 0; i < this.events.length; i++) {
+			starts[i] = this.events[i].getStartTime().getTime();
+			ends[i] = starts[i] + this.events[i].getDuration();
+		}
+		fillMaxEnds(0, this.events.length);
+	}
+
+	/**
+	 * @return count of indexed events
+	 */
+	int size() {
+		return events.length;
+	}
+
+	/**
+	 * Finds events which start inside time range
+	 *
+	 * @param after
+	 *            events should start after this time
+	 * @param until
+	 *            events should start not later then this time
+	 * @param whereToAdd
+	 *            list to add found events in start time order
+	 */
+	void findStarted(long after, long until, List<IEvent> whereToAdd) {
+		for (int i = upperBound(after); i < starts.length && starts[i] <= until; i++) {
+			whereToAdd.add(events[i]);
+		}
+	}
+
+	/**
+	 * Finds events which began not later then given time and continue after it
+	 *
+	 * @param time
+	 *            time to check
+	 * @param whereToAdd
+	 *            list to add found events in start time order
+	 */
+	void findContinued(long time, List<IEvent> whereToAdd) {
+		findContinued(0, events.length, time, whereToAdd);
+	}
+
+	private void findContinued(int low, int high, long time, List<IEvent> whereToAdd) {
+		if (low >= high) {
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		if (maxEnds[mid] <= time) {
+			// nothing in subtree lasts after time
+			return;
+		}
+		findContinued(low, mid, time, whereToAdd);
+		if (starts[mid] <= time) {
+			if (ends[mid] > time) {
+				whereToAdd.add(events[mid]);
+			}
+			findContinued(mid + 1, high, time, whereToAdd);
+		}
+	}
+
+	private long fillMaxEnds(int low, int high) {
+		if (low >= high) {
+			return Long.MIN_VALUE;
+		}
+		int mid = (low + high) >>> 1;
+		maxEnds[mid] = Math.max(ends[mid], Math.max(fillMaxEnds(low, mid), fillMaxEnds(mid + 1, high)));
+		return maxEnds[mid];
+	}
+
+	/**
+	 * @return index of first event starting after given time
+	 */
+	private int upperBound(long time) {
+		int low = 0;
+		int high = starts.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
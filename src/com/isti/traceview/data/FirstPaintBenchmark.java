@@ -0,0 +1,96 @@
+package com.isti.traceview.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.isti.traceview.TraceView;
+import com.isti.traceview.common.Configuration;
+import com.isti.traceview.gui.ColorModeBySegment;
+import com.isti.traceview.gui.IColorModeState;
+
+/**
+ * Regression benchmark for time-to-first-paint of a channel screen. Fills the screen with
+ * channels found in the given data files, parsing them again into separate data modules if they
+ * hold less channels than requested, and measures time from the start of loading until every
+ * channel has produced its first plot data for the whole time range.
+ * <p>
+ * Usage: FirstPaintBenchmark [data path mask] [channel count] [point count]
+ */
+public class FirstPaintBenchmark {
+
+	private static final String DEFAULT_DATA_PATH = "resources/DATA/*.mseed";
+
+	private static final int DEFAULT_CHANNEL_COUNT = 50;
+
+	/**
+	 * Pixel width of a typical channel view
+	 */
+	private static final int DEFAULT_POINT_COUNT = 1000;
+
+	public static void main(String[] args) throws Exception {
+		String dataPath = args.length > 0 ? args[0] : DEFAULT_DATA_PATH;
+		int channelCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CHANNEL_COUNT;
+		final int pointCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_POINT_COUNT;
+
+		Configuration conf = new Configuration();
+		conf.setDataPath(dataPath);
+		conf.setMseedIndexFileName("");
+		conf.setUseTempData(false);
+		TraceView.setConfiguration(conf);
+
+		long parseStart = System.nanoTime();
+		List<PlotDataProvider> channels = new ArrayList<PlotDataProvider>();
+		while (channels.size() < channelCount) {
+			DataModule dataModule = new DataModule();
+			TraceView.setDataModule(dataModule);
+			dataModule.addDataSources(SourceFile.getDataFiles(dataPath));
+			List<PlotDataProvider> found = dataModule.getAllChannels();
+			if (found.size() == 0) {
+				System.out.println("No channels found in " + dataPath);
+				return;
+			}
+			for (PlotDataProvider channel: found) {
+				if (channels.size() < channelCount) {
+					channels.add(channel);
+				}
+			}
+		}
+		long parseTime = System.nanoTime() - parseStart;
+
+		final IColorModeState colorMode = new ColorModeBySegment();
+		ExecutorService executor = Executors.newFixedThreadPool(conf.getRenderThreadCount());
+		try {
+			long paintStart = System.nanoTime();
+			List<Future<Long>> results = new ArrayList<Future<Long>>();
+			for (final PlotDataProvider channel: channels) {
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() throws Exception {
+						long start = System.nanoTime();
+						channel.load(null);
+						channel.getPlotData(channel.getTimeRange(), pointCount, null, null, colorMode);
+						return System.nanoTime() - start;
+					}
+				}));
+			}
+			long maxChannelTime = 0;
+			long sumChannelTime = 0;
+			for (Future<Long> result: results) {
+				long channelTime = result.get();
+				maxChannelTime = Math.max(maxChannelTime, channelTime);
+				sumChannelTime += channelTime;
+			}
+			long paintTime = System.nanoTime() - paintStart;
+			System.out.println("Channels: " + channels.size() + ", points: " + pointCount);
+			System.out.println("Parse time, ms: " + parseTime / 1000000);
+			System.out.println("Time to first paint, ms: " + paintTime / 1000000);
+			System.out.println("Slowest channel, ms: " + maxChannelTime / 1000000 + ", average channel, ms: "
+					+ sumChannelTime / channels.size() / 1000000);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
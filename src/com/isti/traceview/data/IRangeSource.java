@@ -0,0 +1,20 @@
+package com.isti.traceview.data;
+
+/**
+ * Data source which can load part of segment's samples without loading of whole segment. Used to
+ * serve {@link Segment#getData(double, double)} for segments which samples aren't kept in memory.
+ */
+public interface IRangeSource extends ISource {
+	/**
+	 * Loads range of segment samples from this data source
+	 *
+	 * @param segment
+	 *            segment to load
+	 * @param startIndex
+	 *            index of first sample in the segment
+	 * @param count
+	 *            count of samples to load
+	 * @return array of count samples
+	 */
+	public int[] load(Segment segment, int startIndex, int count);
+}
@@ -0,0 +1,17 @@
+package com.isti.traceview.data;
+
+/**
+ * Data source which keeps min/max summary of segments, so segment can be drawn without loading of
+ * it's samples. Used by {@link Segment#getPyramid()} for segments which samples aren't kept in
+ * memory.
+ */
+public interface ISummarySource extends ISource {
+	/**
+	 * Loads summary of segment samples from this data source
+	 *
+	 * @param segment
+	 *            segment to load summary
+	 * @return summary detached from samples, or null if data source has no summary of segment
+	 */
+	public MinMaxPyramid loadSummary(Segment segment);
+}
@@ -0,0 +1,352 @@
+package com.isti.traceview.data;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Read-only file input via memory mapping. Data are read directly from mapped file pages, without
+ * intermediate buffer copying and without locking, so instance shouldn't be shared between threads.
+ * Readers of one file share mapping by positional {@link #slice(long, int)}, or by views with own
+ * position, see {@link #view(long)}.
+ * </p>
+ * <p>
+ * Files bigger then 1 Gb are mapped as several regions, reads across region boundary are served
+ * byte by byte.
+ * </p>
+ */
+public class MappedFileInput implements RandomAccessInput {
+	private static final int REGION_SIZE = 1 << 30;
+
+	private MappedByteBuffer[] regions = null;
+
+	private long length = 0;
+
+	private long position = 0;
+
+	private boolean bigEndian = true;
+
+	/**
+	 * @param file
+	 *            file to map, in read-only mode
+	 */
+	public MappedFileInput(File file) throws IOException {
+		// mapping stays valid after file is closed, so opened input doesn't hold file descriptor
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			length = channel.size();
+			regions = new MappedByteBuffer[(int) ((length + REGION_SIZE - 1) / REGION_SIZE)];
+			for (int i = 0; i < regions.length; i++) {
+				long start = (long) i * REGION_SIZE;
+				regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @param fileName
+	 *            pathname of file to map, in read-only mode
+	 */
+	public MappedFileInput(String fileName) throws IOException {
+		this(new File(fileName));
+	}
+
+	private MappedFileInput(MappedFileInput source, long pos) {
+		regions = source.regions;
+		length = source.length;
+		bigEndian = source.bigEndian;
+		position = pos;
+	}
+
+	/**
+	 * Returns input reading the same mapped file with own position. Several threads can read one
+	 * mapping concurrently, each by it's own view. Byte order of view is the same as input's one
+	 * and shouldn't be changed, closing of view doesn't close input.
+	 *
+	 * @param pos
+	 *            initial position of view
+	 */
+	public MappedFileInput view(long pos) throws IOException {
+		if (pos < 0) {
+			throw new IOException("Negative seek offset " + pos);
+		}
+		return new MappedFileInput(this, pos);
+	}
+
+	public void seek(long pos) throws IOException {
+		if (pos < 0) {
+			throw new IOException("Negative seek offset " + pos);
+		}
+		position = pos;
+	}
+
+	public long getFilePointer() {
+		return position;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	public void order(int endian) {
+		bigEndian = (endian == BufferedRandomAccessFile.BIG_ENDIAN);
+		for (MappedByteBuffer region: regions) {
+			region.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Closes input. Mapped pages are released by garbage collector after this.
+	 */
+	public void close() throws IOException {
+		regions = new MappedByteBuffer[0];
+	}
+
+	/**
+	 * Returns view of next len bytes starting from current position, and moves position after it.
+	 * Bytes are not copied if they are placed in one mapped region.
+	 *
+	 * @param len
+	 *            count of bytes
+	 * @return buffer with requested bytes between it's position and limit, byte order is the same
+	 *         as input's one
+	 */
+	public ByteBuffer slice(int len) throws IOException {
+		ByteBuffer ret;
+		ByteBuffer region = region(len);
+		if (region != null) {
+			ret = region.duplicate();
+			int offset = regionOffset();
+			ret.limit(offset + len);
+			ret.position(offset);
+			ret = ret.slice();
+			position += len;
+		} else {
+			byte[] data = new byte[len];
+			readFully(data);
+			ret = ByteBuffer.wrap(data);
+		}
+		ret.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return ret;
+	}
+
+	/**
+	 * Returns view of len bytes starting from given position. Current position isn't used and isn't
+	 * changed, so this method may be called by several threads concurrently.
+	 *
+	 * @param pos
+	 *            position of first byte
+	 * @param len
+	 *            count of bytes
+	 * @return buffer with requested bytes between it's position and limit, byte order is the same
+	 *         as input's one
+	 */
+	public ByteBuffer slice(long pos, int len) throws IOException {
+		if (pos < 0 || pos + len > length) {
+			throw new EOFException("Reading " + len + " bytes from position " + pos + " beyond end of file " + length);
+		}
+		ByteBuffer ret;
+		MappedByteBuffer[] regions = this.regions;
+		int offset = (int) (pos % REGION_SIZE);
+		ByteBuffer region = regions[(int) (pos / REGION_SIZE)].duplicate();
+		if (offset + len <= region.limit()) {
+			region.limit(offset + len);
+			region.position(offset);
+			ret = region.slice();
+		} else {
+			byte[] data = new byte[len];
+			int off = 0;
+			while (off < len) {
+				region = regions[(int) ((pos + off) / REGION_SIZE)].duplicate();
+				region.position((int) ((pos + off) % REGION_SIZE));
+				int count = Math.min(len - off, region.remaining());
+				region.get(data, off, count);
+				off += count;
+			}
+			ret = ByteBuffer.wrap(data);
+		}
+		ret.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		return ret;
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		checkAvailable(len);
+		while (len > 0) {
+			ByteBuffer region = regions[(int) (position / REGION_SIZE)].duplicate();
+			region.position(regionOffset());
+			int count = Math.min(len, region.remaining());
+			region.get(b, off, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	public int skipBytes(int n) {
+		int ret = (int) Math.max(0, Math.min(n, length - position));
+		position += ret;
+		return ret;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		checkAvailable(1);
+		byte ret = regions[(int) (position / REGION_SIZE)].get(regionOffset());
+		position++;
+		return ret;
+	}
+
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xff;
+	}
+
+	public short readShort() throws IOException {
+		short ret;
+		ByteBuffer region = region(2);
+		if (region != null) {
+			ret = region.getShort(regionOffset());
+			position += 2;
+		} else {
+			ret = (short) readAcrossRegions(2);
+		}
+		return ret;
+	}
+
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xffff;
+	}
+
+	public char readChar() throws IOException {
+		return (char) readShort();
+	}
+
+	public int readInt() throws IOException {
+		int ret;
+		ByteBuffer region = region(4);
+		if (region != null) {
+			ret = region.getInt(regionOffset());
+			position += 4;
+		} else {
+			ret = (int) readAcrossRegions(4);
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads n integers into array
+	 */
+	public void readInt(int[] pa, int start, int n) throws IOException {
+		ByteBuffer region = region(4 * n);
+		if (region != null) {
+			ByteBuffer view = region.duplicate().order(region.order());
+			view.position(regionOffset());
+			view.asIntBuffer().get(pa, start, n);
+			position += 4 * n;
+		} else {
+			for (int i = 0; i < n; i++) {
+				pa[start + i] = readInt();
+			}
+		}
+	}
+
+	public long readLong() throws IOException {
+		long ret;
+		ByteBuffer region = region(8);
+		if (region != null) {
+			ret = region.getLong(regionOffset());
+			position += 8;
+		} else {
+			ret = readAcrossRegions(8);
+		}
+		return ret;
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * Reads line until '\n' char, the same way as {@link BufferedRandomAccessFile#readLine()}
+	 */
+	public String readLine() throws IOException {
+		if (position >= length) {
+			return null;
+		}
+		StringBuffer input = new StringBuffer();
+		while (position < length) {
+			int c = readUnsignedByte();
+			if (c == '\n') {
+				break;
+			}
+			input.append((char) c);
+		}
+		return input.toString();
+	}
+
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
+
+	public String toString() {
+		return "MappedFileInput: length " + length + ", position " + position;
+	}
+
+	private void checkAvailable(int n) throws EOFException {
+		if (position + n > length) {
+			throw new EOFException("Reading " + n + " bytes from position " + position + " beyond end of file " + length);
+		}
+	}
+
+	/**
+	 * @return region of current position if it contains n bytes from current position, null if
+	 *         requested bytes cross region boundary
+	 */
+	private ByteBuffer region(int n) throws EOFException {
+		checkAvailable(n);
+		ByteBuffer region = regions[(int) (position / REGION_SIZE)];
+		if (regionOffset() + n <= region.limit()) {
+			return region;
+		} else {
+			return null;
+		}
+	}
+
+	private int regionOffset() {
+		return (int) (position % REGION_SIZE);
+	}
+
+	private long readAcrossRegions(int n) throws IOException {
+		long ret = 0;
+		if (bigEndian) {
+			for (int i = 0; i < n; i++) {
+				ret = (ret << 8) | readUnsignedByte();
+			}
+		} else {
+			for (int i = 0; i < n; i++) {
+				ret = ret | ((long) readUnsignedByte() << (8 * i));
+			}
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,347 @@
+package com.isti.traceview.data;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Multi-resolution summary of segment data. Level 0 holds minimum, maximum and sum for every
+ * {@link #BASE_BIN_SIZE} samples, every next level summarizes {@link #FACTOR} bins of previous
+ * one.
+ * </p>
+ * <p>
+ * Summary for any samples range is computed from the coarsest bins which fit into the range, finer
+ * levels and raw samples are used only on the range edges. So the cost of one pixel doesn't depend
+ * on zoom.
+ * </p>
+ * <p>
+ * Pyramid can be detached from samples, see {@link #detach()} and {@link Builder}. Detached
+ * pyramid occupies about 1/12 of samples size and uses whole level 0 bins on the range edges, so
+ * summary of range is widened by less than {@link #BASE_BIN_SIZE} samples on each side.
+ * </p>
+ */
+public class MinMaxPyramid {
+	/**
+	 * Count of samples in level 0 bin
+	 */
+	public static final int BASE_BIN_SIZE = 64;
+
+	/**
+	 * Decimation factor between levels
+	 */
+	public static final int FACTOR = 4;
+
+	private IntBuffer data;
+
+	private int length;
+
+	private int[] binSizes;
+
+	private int[][] mins;
+
+	private int[][] maxs;
+
+	private double[][] sums;
+
+	/**
+	 * @param data
+	 *            samples to summarize between buffer's position and limit, buffer is referenced,
+	 *            not copied
+	 */
+	public MinMaxPyramid(IntBuffer data) {
+		this.data = data.slice();
+		length = this.data.limit();
+		int binCount = (length + BASE_BIN_SIZE - 1) / BASE_BIN_SIZE;
+		int[] mins0 = new int[binCount];
+		int[] maxs0 = new int[binCount];
+		double[] sums0 = new double[binCount];
+		for (int bin = 0; bin < binCount; bin++) {
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			double sum = 0.0;
+			int end = Math.min(length, (bin + 1) * BASE_BIN_SIZE);
+			for (int i = bin * BASE_BIN_SIZE; i < end; i++) {
+				int value = this.data.get(i);
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+				sum += value;
+			}
+			mins0[bin] = min;
+			maxs0[bin] = max;
+			sums0[bin] = sum;
+		}
+		buildLevels(mins0, maxs0, sums0);
+	}
+
+	/**
+	 * Creates detached pyramid from level 0 bins, see {@link Builder}
+	 */
+	private MinMaxPyramid(int length, int[] mins0, int[] maxs0, double[] sums0) {
+		this.length = length;
+		buildLevels(mins0, maxs0, sums0);
+	}
+
+	/**
+	 * Creates detached pyramid from all levels, for example read from storage
+	 */
+	MinMaxPyramid(int length, int[] binSizes, int[][] mins, int[][] maxs, double[][] sums) {
+		this.length = length;
+		this.binSizes = binSizes;
+		this.mins = mins;
+		this.maxs = maxs;
+		this.sums = sums;
+	}
+
+	/**
+	 * Computes levels from level 0 bins. Level 0 has partial last bin, other levels summarize only
+	 * full bins.
+	 */
+	private void buildLevels(int[] mins0, int[] maxs0, double[] sums0) {
+		int levelCount = 1;
+		for (long binSize = BASE_BIN_SIZE * FACTOR; binSize <= length; binSize *= FACTOR) {
+			levelCount++;
+		}
+		binSizes = new int[levelCount];
+		mins = new int[levelCount][];
+		maxs = new int[levelCount][];
+		sums = new double[levelCount][];
+		binSizes[0] = BASE_BIN_SIZE;
+		mins[0] = mins0;
+		maxs[0] = maxs0;
+		sums[0] = sums0;
+		for (int level = 1; level < levelCount; level++) {
+			binSizes[level] = binSizes[level - 1] * FACTOR;
+			int binCount = length / binSizes[level];
+			mins[level] = new int[binCount];
+			maxs[level] = new int[binCount];
+			sums[level] = new double[binCount];
+			for (int bin = 0; bin < binCount; bin++) {
+				int min = Integer.MAX_VALUE;
+				int max = Integer.MIN_VALUE;
+				double sum = 0.0;
+				for (int i = bin * FACTOR; i < (bin + 1) * FACTOR; i++) {
+					if (mins[level - 1][i] < min) {
+						min = mins[level - 1][i];
+					}
+					if (maxs[level - 1][i] > max) {
+						max = maxs[level - 1][i];
+					}
+					sum += sums[level - 1][i];
+				}
+				mins[level][bin] = min;
+				maxs[level][bin] = max;
+				sums[level][bin] = sum;
+			}
+		}
+	}
+
+	/**
+	 * @return count of summarized samples
+	 */
+	public int getSampleCount() {
+		return length;
+	}
+
+	/**
+	 * @return true if pyramid keeps summarized samples, false if it's detached
+	 */
+	public boolean hasData() {
+		return data != null;
+	}
+
+	/**
+	 * @return read-only view of summarized samples, or null if pyramid is detached
+	 */
+	public IntBuffer getData() {
+		return data == null ? null : data.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return pyramid sharing summary with this one, without reference to samples
+	 */
+	public MinMaxPyramid detach() {
+		return new MinMaxPyramid(length, binSizes, mins, maxs, sums);
+	}
+
+	/**
+	 * @return size of summary arrays, in bytes
+	 */
+	public long getSummarySize() {
+		long ret = 0;
+		for (int level = 0; level < binSizes.length; level++) {
+			ret += mins[level].length * 16L;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return raw sample value, or mean value of level 0 bin containing sample if pyramid is
+	 *         detached
+	 */
+	public int getValue(int index) {
+		if (data == null) {
+			int bin = index / BASE_BIN_SIZE;
+			return (int) Math.round(sums[0][bin] / getBinLength(bin));
+		}
+		return data.get(index);
+	}
+
+	/**
+	 * Accumulates summary of samples range
+	 *
+	 * @param from
+	 *            index of first sample, inclusive
+	 * @param to
+	 *            index of last sample, exclusive
+	 * @param acc
+	 *            array of 4 elements to accumulate: maximum, minimum, sum and count of samples
+	 */
+	public void aggregate(int from, int to, double[] acc) {
+		aggregate(from, to, binSizes.length - 1, acc);
+	}
+
+	private void aggregate(int from, int to, int level, double[] acc) {
+		if (from >= to) {
+			return;
+		}
+		if (level < 0 && data == null) {
+			// range edge, whole level 0 bins are used instead of samples
+			int firstBin = from / BASE_BIN_SIZE;
+			int lastBin = (to - 1) / BASE_BIN_SIZE;
+			for (int bin = firstBin; bin <= lastBin; bin++) {
+				if (maxs[0][bin] > acc[0]) {
+					acc[0] = maxs[0][bin];
+				}
+				if (mins[0][bin] < acc[1]) {
+					acc[1] = mins[0][bin];
+				}
+				acc[2] += sums[0][bin];
+				acc[3] += getBinLength(bin);
+			}
+			return;
+		}
+		if (level < 0) {
+			for (int i = from; i < to; i++) {
+				int value = data.get(i);
+				if (value > acc[0]) {
+					acc[0] = value;
+				}
+				if (value < acc[1]) {
+					acc[1] = value;
+				}
+				acc[2] += value;
+			}
+			acc[3] += to - from;
+			return;
+		}
+		int binSize = binSizes[level];
+		int firstBin = (from + binSize - 1) / binSize;
+		int lastBin = to / binSize;
+		if (firstBin >= lastBin) {
+			aggregate(from, to, level - 1, acc);
+			return;
+		}
+		aggregate(from, firstBin * binSize, level - 1, acc);
+		for (int bin = firstBin; bin < lastBin; bin++) {
+			if (maxs[level][bin] > acc[0]) {
+				acc[0] = maxs[level][bin];
+			}
+			if (mins[level][bin] < acc[1]) {
+				acc[1] = mins[level][bin];
+			}
+			acc[2] += sums[level][bin];
+		}
+		acc[3] += (lastBin - firstBin) * binSize;
+		aggregate(lastBin * binSize, to, level - 1, acc);
+	}
+
+	/**
+	 * @return count of samples in level 0 bin, the last bin can be partial
+	 */
+	private int getBinLength(int bin) {
+		return Math.min(length, (bin + 1) * BASE_BIN_SIZE) - bin * BASE_BIN_SIZE;
+	}
+
+	int getLevelCount() {
+		return binSizes.length;
+	}
+
+	int getBinSize(int level) {
+		return binSizes[level];
+	}
+
+	int[] getMins(int level) {
+		return mins[level];
+	}
+
+	int[] getMaxs(int level) {
+		return maxs[level];
+	}
+
+	double[] getSums(int level) {
+		return sums[level];
+	}
+
+	/**
+	 * Builds detached pyramid from samples given by parts, so samples don't need to be in memory
+	 * all at once
+	 */
+	public static class Builder {
+		private int length;
+
+		private int count = 0;
+
+		private int[] mins;
+
+		private int[] maxs;
+
+		private double[] sums;
+
+		/**
+		 * @param length
+		 *            count of samples to summarize
+		 */
+		public Builder(int length) {
+			this.length = length;
+			int binCount = (length + BASE_BIN_SIZE - 1) / BASE_BIN_SIZE;
+			mins = new int[binCount];
+			maxs = new int[binCount];
+			sums = new double[binCount];
+			Arrays.fill(mins, Integer.MAX_VALUE);
+			Arrays.fill(maxs, Integer.MIN_VALUE);
+		}
+
+		/**
+		 * Adds next samples
+		 */
+		public void add(int[] samples) {
+			if (count + samples.length > length) {
+				throw new IllegalArgumentException("Too many samples: " + (count + samples.length) + ", expected " + length);
+			}
+			for (int value: samples) {
+				int bin = count++ / BASE_BIN_SIZE;
+				if (value < mins[bin]) {
+					mins[bin] = value;
+				}
+				if (value > maxs[bin]) {
+					maxs[bin] = value;
+				}
+				sums[bin] += value;
+			}
+		}
+
+		/**
+		 * @return detached pyramid of added samples
+		 */
+		public MinMaxPyramid build() {
+			if (count != length) {
+				throw new IllegalStateException("Only " + count + " samples of " + length + " were added");
+			}
+			return new MinMaxPyramid(length, mins, maxs, sums);
+		}
+	}
+}
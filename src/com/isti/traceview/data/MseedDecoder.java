@@ -0,0 +1,201 @@
+package com.isti.traceview.data;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.CodecException;
+import edu.iris.dmc.seedcodec.SteimException;
+import edu.iris.dmc.seedcodec.UnsupportedCompressionType;
+
+/**
+ * <p>
+ * Decoder of miniSEED record data for most used encodings: Steim1, Steim2, 16 and 32 bit integers.
+ * </p>
+ * <p>
+ * Samples are written directly to caller's array, data minimum and maximum are computed in the same
+ * pass. Decoder doesn't allocate memory, so it can be used for every record during segment loading.
+ * </p>
+ */
+public class MseedDecoder {
+	private static final int FRAME_SIZE = 64;
+
+	/**
+	 * @return flag if this decoder supports given encoding
+	 */
+	public static boolean isSupported(int encoding) {
+		return encoding == B1000Types.STEIM1 || encoding == B1000Types.STEIM2 || encoding == B1000Types.INTEGER
+				|| encoding == B1000Types.SHORT;
+	}
+
+	/**
+	 * Decodes record data
+	 *
+	 * @param src
+	 *            record data bytes
+	 * @param encoding
+	 *            encoding format from blockette 1000, see {@link B1000Types}
+	 * @param bigEndian
+	 *            word order from blockette 1000
+	 * @param numSamples
+	 *            count of samples in the record
+	 * @param dest
+	 *            array to store samples
+	 * @param destOffset
+	 *            position in dest to store first sample
+	 * @param minMax
+	 *            two-elements array of current minimum and maximum, updated by decoded samples
+	 * @return count of decoded samples, may be less then numSamples if dest has no enough space
+	 * @throws CodecException
+	 *             if encoding is unsupported or data are corrupted
+	 */
+	public static int decode(byte[] src, int encoding, boolean bigEndian, int numSamples, int[] dest, int destOffset, int[] minMax)
+			throws CodecException {
+		int count = Math.min(numSamples, dest.length - destOffset);
+		if (count <= 0) {
+			return 0;
+		}
+		switch (encoding) {
+		case B1000Types.STEIM1:
+			return decodeSteim(src, false, bigEndian, count, dest, destOffset, minMax);
+		case B1000Types.STEIM2:
+			return decodeSteim(src, true, bigEndian, count, dest, destOffset, minMax);
+		case B1000Types.INTEGER:
+			return decodeInt(src, 4, bigEndian, count, dest, destOffset, minMax);
+		case B1000Types.SHORT:
+			return decodeInt(src, 2, bigEndian, count, dest, destOffset, minMax);
+		default:
+			throw new UnsupportedCompressionType("Encoding " + encoding + " isn't supported by MseedDecoder");
+		}
+	}
+
+	private static int decodeInt(byte[] src, int size, boolean bigEndian, int count, int[] dest, int destOffset, int[] minMax)
+			throws CodecException {
+		if (src.length < count * size) {
+			throw new CodecException("Record data are too short: " + src.length + " bytes for " + count + " samples");
+		}
+		int min = minMax[0];
+		int max = minMax[1];
+		for (int i = 0; i < count; i++) {
+			int value = size == 4 ? getInt(src, i * 4, bigEndian) : getShort(src, i * 2, bigEndian);
+			dest[destOffset + i] = value;
+			if (value < min) {
+				min = value;
+			}
+			if (value > max) {
+				max = value;
+			}
+		}
+		minMax[0] = min;
+		minMax[1] = max;
+		return count;
+	}
+
+	/**
+	 * Decodes Steim1 or Steim2 frames. Differences are integrated on the fly, first difference of
+	 * record is replaced by forward integration constant.
+	 */
+	private static int decodeSteim(byte[] src, boolean steim2, boolean bigEndian, int count, int[] dest, int destOffset, int[] minMax)
+			throws SteimException {
+		int frameCount = src.length / FRAME_SIZE;
+		if (frameCount == 0) {
+			throw new SteimException("Record data contain no Steim frames");
+		}
+		int pos = 0; // count of decoded samples
+		int last = 0;
+		int min = minMax[0];
+		int max = minMax[1];
+		for (int frame = 0; frame < frameCount && pos < count; frame++) {
+			int frameOffset = frame * FRAME_SIZE;
+			int nibbles = getInt(src, frameOffset, bigEndian);
+			// in the first frame words 1 and 2 are integration constants
+			for (int word = frame == 0 ? 3 : 1; word < 16 && pos < count; word++) {
+				int nibble = (nibbles >>> (30 - 2 * word)) & 0x03;
+				if (nibble == 0) {
+					continue;
+				}
+				int w = getInt(src, frameOffset + word * 4, bigEndian);
+				int diffCount;
+				int bits;
+				if (nibble == 1) {
+					diffCount = 4;
+					bits = 8;
+				} else if (!steim2) {
+					if (nibble == 2) {
+						diffCount = 2;
+						bits = 16;
+					} else {
+						diffCount = 1;
+						bits = 32;
+					}
+				} else {
+					int dnib = (w >>> 30) & 0x03;
+					if (nibble == 2) {
+						if (dnib == 1) {
+							diffCount = 1;
+							bits = 30;
+						} else if (dnib == 2) {
+							diffCount = 2;
+							bits = 15;
+						} else if (dnib == 3) {
+							diffCount = 3;
+							bits = 10;
+						} else {
+							throw new SteimException("Wrong Steim2 dnib 0 for nibble 2, frame " + frame + ", word " + word);
+						}
+					} else {
+						if (dnib == 0) {
+							diffCount = 5;
+							bits = 6;
+						} else if (dnib == 1) {
+							diffCount = 6;
+							bits = 5;
+						} else if (dnib == 2) {
+							diffCount = 7;
+							bits = 4;
+						} else {
+							throw new SteimException("Wrong Steim2 dnib 3 for nibble 3, frame " + frame + ", word " + word);
+						}
+					}
+				}
+				for (int i = 0; i < diffCount && pos < count; i++) {
+					// extract and sign-extend i-th difference, counting from most significant bits
+					int shift = (diffCount - 1 - i) * bits;
+					int diff = bits == 32 ? w : (w << (32 - bits - shift)) >> (32 - bits);
+					if (pos == 0) {
+						last = getInt(src, 4, bigEndian);
+					} else {
+						last = last + diff;
+					}
+					dest[destOffset + pos] = last;
+					pos++;
+					if (last < min) {
+						min = last;
+					}
+					if (last > max) {
+						max = last;
+					}
+				}
+			}
+		}
+		if (pos < count) {
+			throw new SteimException("Number of samples decompressed doesn't match number in header: " + pos + " != " + count);
+		}
+		minMax[0] = min;
+		minMax[1] = max;
+		return pos;
+	}
+
+	private static int getInt(byte[] src, int offset, boolean bigEndian) {
+		if (bigEndian) {
+			return (src[offset] << 24) | ((src[offset + 1] & 0xff) << 16) | ((src[offset + 2] & 0xff) << 8) | (src[offset + 3] & 0xff);
+		} else {
+			return (src[offset + 3] << 24) | ((src[offset + 2] & 0xff) << 16) | ((src[offset + 1] & 0xff) << 8) | (src[offset] & 0xff);
+		}
+	}
+
+	private static int getShort(byte[] src, int offset, boolean bigEndian) {
+		if (bigEndian) {
+			return (short) ((src[offset] << 8) | (src[offset + 1] & 0xff));
+		} else {
+			return (short) ((src[offset + 1] << 8) | (src[offset] & 0xff));
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package com.isti.traceview.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceView;
+
+/**
+ * <p>
+ * Persistent index of parsed miniSEED files.
+ * </p>
+ * <p>
+ * Keeps segments table for every parsed file together with file's size and modification time. If
+ * file wasn't changed since last parsing, segments are restored from the index without reading of
+ * file's records. Index keeps segments for all channels found in the file, so it stays valid if
+ * configuration filters were changed.
+ * </p>
+ */
+public class MseedIndex {
+	private static Logger lg = Logger.getLogger(MseedIndex.class);
+
+	private static final int MAGIC = 0x4D534958; // "MSIX"
+
+	private static final int VERSION = 1;
+
+	private static MseedIndex instance = null;
+
+	private File indexFile = null;
+
+	/**
+	 * Index content, keys are canonical file paths
+	 */
+	private Map<String, Entry> entries = null;
+
+	private boolean changed = false;
+
+	/**
+	 * Description of segment stored in the index
+	 */
+	public static class SegmentDescription {
+		private String network;
+		private String station;
+		private String location;
+		private String channel;
+		private long startOffset;
+		private long startTime;
+		private double sampleRate;
+		private int sampleCount;
+
+		public SegmentDescription(String network, String station, String location, String channel, long startOffset, long startTime,
+				double sampleRate, int sampleCount) {
+			this.network = network;
+			this.station = station;
+			this.location = location;
+			this.channel = channel;
+			this.startOffset = startOffset;
+			this.startTime = startTime;
+			this.sampleRate = sampleRate;
+			this.sampleCount = sampleCount;
+		}
+
+		public String getNetwork() {
+			return network;
+		}
+
+		public String getStation() {
+			return station;
+		}
+
+		public String getLocation() {
+			return location;
+		}
+
+		public String getChannel() {
+			return channel;
+		}
+
+		/**
+		 * @return offset of segment's first block in the file
+		 */
+		public long getStartOffset() {
+			return startOffset;
+		}
+
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * @return sample rate, in milliseconds per sample
+		 */
+		public double getSampleRate() {
+			return sampleRate;
+		}
+
+		public int getSampleCount() {
+			return sampleCount;
+		}
+	}
+
+	/**
+	 * Index record for one file
+	 */
+	private static class Entry {
+		private long length;
+		private long lastModified;
+		private List<SegmentDescription> segments;
+
+		private Entry(long length, long lastModified, List<SegmentDescription> segments) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.segments = segments;
+		}
+
+		private boolean matches(File file) {
+			return file.length() == length && file.lastModified() == lastModified;
+		}
+	}
+
+	/**
+	 * @param indexFile
+	 *            file to store index
+	 */
+	public MseedIndex(File indexFile) {
+		this.indexFile = indexFile;
+		entries = new HashMap<String, Entry>();
+		read();
+	}
+
+	/**
+	 * @return index defined in the configuration, or null if index is disabled
+	 */
+	public static synchronized MseedIndex getInstance() {
+		String fileName = TraceView.getConfiguration().getMseedIndexFileName();
+		if (fileName.equals("")) {
+			return null;
+		}
+		if (instance == null || !instance.indexFile.equals(new File(fileName))) {
+			instance = new MseedIndex(new File(fileName));
+		}
+		return instance;
+	}
+
+	/**
+	 * @return flag if file has actual record in the index
+	 */
+	public synchronized boolean contains(File file) {
+		Entry entry = entries.get(getKey(file));
+		return entry != null && entry.matches(file);
+	}
+
+	/**
+	 * @param file
+	 *            data file
+	 * @return list of segments stored for this file, or null if file is absent in the index or was
+	 *         changed since it was indexed
+	 */
+	public synchronized List<SegmentDescription> getSegments(File file) {
+		Entry entry = entries.get(getKey(file));
+		if (entry != null && entry.matches(file)) {
+			return entry.segments;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores segments list of parsed file. Index isn't written on disk until {@link #save()} call.
+	 *
+	 * @param file
+	 *            parsed data file
+	 * @param segments
+	 *            list of all segments found in the file
+	 */
+	public synchronized void put(File file, List<SegmentDescription> segments) {
+		entries.put(getKey(file), new Entry(file.length(), file.lastModified(), segments));
+		changed = true;
+	}
+
+	/**
+	 * Writes index on disk, if it was changed. Records for files which don't exist any more are
+	 * dropped.
+	 */
+	public synchronized void save() {
+		if (!changed) {
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			if (!new File(it.next().getKey()).exists()) {
+				it.remove();
+			}
+		}
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream dos = null;
+		try {
+			dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(entries.size());
+			for (Map.Entry<String, Entry> me: entries.entrySet()) {
+				Entry entry = me.getValue();
+				dos.writeUTF(me.getKey());
+				dos.writeLong(entry.length);
+				dos.writeLong(entry.lastModified);
+				dos.writeInt(entry.segments.size());
+				for (SegmentDescription sd: entry.segments) {
+					dos.writeUTF(sd.network);
+					dos.writeUTF(sd.station);
+					dos.writeUTF(sd.location);
+					dos.writeUTF(sd.channel);
+					dos.writeLong(sd.startOffset);
+					dos.writeLong(sd.startTime);
+					dos.writeDouble(sd.sampleRate);
+					dos.writeInt(sd.sampleCount);
+				}
+			}
+			dos.close();
+			dos = null;
+			if (indexFile.exists() && !indexFile.delete()) {
+				lg.error("Can't replace miniSEED index " + indexFile);
+				return;
+			}
+			if (!tmpFile.renameTo(indexFile)) {
+				lg.error("Can't rename " + tmpFile + " to " + indexFile);
+				return;
+			}
+			changed = false;
+			lg.debug("miniSEED index saved: " + entries.size() + " files");
+		} catch (IOException e) {
+			lg.error("Can't write miniSEED index " + indexFile + ": " + e);
+		} finally {
+			if (dos != null) {
+				try {
+					dos.close();
+				} catch (IOException e) {
+				}
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private void read() {
+		if (!indexFile.exists()) {
+			return;
+		}
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+				lg.warn("Unknown format of miniSEED index " + indexFile + ", index will be rebuilt");
+				return;
+			}
+			int entryCount = dis.readInt();
+			for (int i = 0; i < entryCount; i++) {
+				String key = dis.readUTF();
+				long length = dis.readLong();
+				long lastModified = dis.readLong();
+				int segmentCount = dis.readInt();
+				List<SegmentDescription> segments = new ArrayList<SegmentDescription>(segmentCount);
+				for (int j = 0; j < segmentCount; j++) {
+					segments.add(new SegmentDescription(dis.readUTF(), dis.readUTF(), dis.readUTF(), dis.readUTF(), dis.readLong(), dis
+							.readLong(), dis.readDouble(), dis.readInt()));
+				}
+				entries.put(key, new Entry(length, lastModified, segments));
+			}
+			lg.debug("miniSEED index loaded: " + entries.size() + " files");
+		} catch (FileNotFoundException e) {
+			lg.error("Can't find miniSEED index: " + e);
+		} catch (IOException e) {
+			lg.error("Can't read miniSEED index " + indexFile + ", index will be rebuilt: " + e);
+			entries.clear();
+		} finally {
+			try {
+				if (dis != null) {
+					dis.close();
+				}
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private static String getKey(File file) {
+		try {
+			return file.getCanonicalPath();
+		} catch (IOException e) {
+			return file.getAbsolutePath();
+		}
+	}
+}
@@ -1,23 +1,60 @@
 package com.isti.traceview.data;
 
 import java.awt.Color;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * Represents list of {@link PlotDataPoint}s prepared to render whole graph
- * 
+ * <p>
+ * Represents data points prepared to render whole graph. Each pixel of graph contains one data
+ * point of several overlayed segments. Data point is a vertical line from minimal to maximal value
+ * for time range represented by the pixel.
+ * </p>
+ * <p>
+ * Points are stored in columnar form: parallel primitive arrays for point attributes and array of
+ * pixels' first point indexes, so graph of any width is kept in several arrays instead of object per
+ * point. Events are stored only for pixels which have them.
+ * </p>
+ *
  * @author Max Kokoulin
  */
 
-public class PlotData implements Comparable {
+public class PlotData implements Comparable, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int INITIAL_CAPACITY = 16;
 
 	/**
-	 * List of arrays of data points. PlotDataPoint[] contains one data points of several overlayed segments.
-	 * 
-	 * @uml.property name="plotDataPoints" multiplicity="(0 -1)" dimension="1"
+	 * Index of first point for every pixel, pixel's points are placed between pixelStarts[x] and
+	 * pixelStarts[x+1]
+	 */
+	private int[] pixelStarts;
+
+	private int pixelCount = 0;
+
+	/*
+	 * Point attributes, index is point number in whole graph
+	 */
+	private double[] tops;
+	private double[] bottoms;
+	private double[] means;
+	private int[] segmentNumbers;
+	private int[] continueAreaNumbers;
+	private int[] rawDataProviderNumbers;
+
+	private int size = 0;
+
+	/*
+	 * Sparse events storage: sorted numbers of pixels with events and events for them
 	 */
-	private List<PlotDataPoint[]> pixels;
+	private int[] eventPixels = new int[0];
+	private List<Set<EventWrapper>> eventSets = new ArrayList<Set<EventWrapper>>();
+	private int eventPixelCount = 0;
 
 	/*
 	 * Max and min boundaries of data range - to not iterate twice during repaint
@@ -38,44 +75,228 @@ public class PlotData implements Comparable {
 	 *            This label will be printed on graph
 	 */
 	public PlotData(String label, Color traceColor) {
-		pixels = new ArrayList<PlotDataPoint[]>();
+		this(label, traceColor, INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param label
+	 *            This label will be printed on graph
+	 * @param pixelCapacity
+	 *            expected count of pixels, to allocate arrays once
+	 */
+	public PlotData(String label, Color traceColor, int pixelCapacity) {
 		this.label = label;
 		this.traceColor = traceColor;
+		int capacity = Math.max(pixelCapacity, 1);
+		pixelStarts = new int[capacity + 1];
+		tops = new double[capacity];
+		bottoms = new double[capacity];
+		means = new double[capacity];
+		segmentNumbers = new int[capacity];
+		continueAreaNumbers = new int[capacity];
+		rawDataProviderNumbers = new int[capacity];
 	}
 
 	/**
-	 * Getter of the property <tt>points</tt>
-	 * 
-	 * @return Returns list of points.
-	 * @uml.property name="points"
+	 * Starts new pixel, subsequent {@link #addPoint(double, double, double, int, int, int)} calls
+	 * add points to it
 	 */
-	public List<PlotDataPoint[]> getPixels() {
-		return pixels;
+	public void addPixel() {
+		if (pixelCount + 1 == pixelStarts.length) {
+			pixelStarts = Arrays.copyOf(pixelStarts, pixelStarts.length * 2);
+		}
+		pixelCount++;
+		pixelStarts[pixelCount] = size;
 	}
 
-	// PlotDataPoint is filled when top and bottom differs from init values.
-	// mean - mean value on interval corresponding this data point
+	/**
+	 * Adds pixel with one empty point, i.e. gap in the data
+	 */
+	public void addEmptyPixel() {
+		addPixel();
+		addEmptyPoint();
+	}
 
 	/**
-	 * Add data point to this list
+	 * Add data point to the last pixel
+	 *
+	 * @param top
+	 *            maximum value in representing section
+	 * @param bottom
+	 *            minimum value in representing section
+	 * @param mean
+	 *            mean of raw trace data in representing section
+	 * @param segmentNumber
+	 *            sequential number of segment in trace, to which this point belongs
+	 * @param continueAreaNumber
+	 *            sequential number of continue data area in trace, to which this point belongs
+	 * @param rawDataProviderNumber
+	 *            sequential number of raw data provider in trace, to which this point belongs
 	 */
-	public void addPixel(PlotDataPoint[] pixelPoints) {
-		pixels.add(pixelPoints);
-		for(PlotDataPoint point:pixelPoints){
-			if (point.getMean() != Double.POSITIVE_INFINITY) {
-				sum = sum + point.getMean();
-				ampSum = ampSum + (point.getTop() - point.getBottom());
-				filledPointCount++;
-			}
-			if (point.getTop() > max) {
-				max = point.getTop();
-			}
-			if (point.getBottom() < min) {
-				min = point.getBottom();
+	public void addPoint(double top, double bottom, double mean, int segmentNumber, int continueAreaNumber, int rawDataProviderNumber) {
+		if (size == tops.length) {
+			int capacity = tops.length * 2;
+			tops = Arrays.copyOf(tops, capacity);
+			bottoms = Arrays.copyOf(bottoms, capacity);
+			means = Arrays.copyOf(means, capacity);
+			segmentNumbers = Arrays.copyOf(segmentNumbers, capacity);
+			continueAreaNumbers = Arrays.copyOf(continueAreaNumbers, capacity);
+			rawDataProviderNumbers = Arrays.copyOf(rawDataProviderNumbers, capacity);
+		}
+		tops[size] = top;
+		bottoms[size] = bottom;
+		means[size] = mean;
+		segmentNumbers[size] = segmentNumber;
+		continueAreaNumbers[size] = continueAreaNumber;
+		rawDataProviderNumbers[size] = rawDataProviderNumber;
+		size++;
+		pixelStarts[pixelCount] = size;
+		if (mean != Double.POSITIVE_INFINITY) {
+			sum = sum + mean;
+			ampSum = ampSum + (top - bottom);
+			filledPointCount++;
+		}
+		if (top > max) {
+			max = top;
+		}
+		if (bottom < min) {
+			min = bottom;
+		}
+	}
+
+	/**
+	 * Add empty data point to the last pixel
+	 */
+	public void addEmptyPoint() {
+		addPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1);
+	}
+
+	/**
+	 * Sets events found inside time range of the last pixel
+	 */
+	public void setEvents(Set<EventWrapper> events) {
+		if (events == null || events.size() == 0) {
+			return;
+		}
+		int pixel = pixelCount - 1;
+		if (eventPixelCount > 0 && eventPixels[eventPixelCount - 1] == pixel) {
+			eventSets.set(eventPixelCount - 1, events);
+			return;
+		}
+		if (eventPixelCount == eventPixels.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, eventPixels.length * 2);
+			eventPixels = Arrays.copyOf(eventPixels, capacity);
+		}
+		eventPixels[eventPixelCount] = pixel;
+		eventSets.add(events);
+		eventPixelCount++;
+	}
+
+	/**
+	 * Stretches or shrinks plot data to other count of pixels, each pixel of result gets points of
+	 * nearest pixel of this plot data. Used to show coarse graph while full resolution one is
+	 * computed.
+	 *
+	 * @param count
+	 *            count of pixels in the result
+	 * @return new plot data with the same label and colors
+	 */
+	public PlotData resample(int count) {
+		PlotData ret = new PlotData(label, traceColor, count);
+		ret.labelColor = labelColor;
+		int previous = -1;
+		for (int x = 0; x < count; x++) {
+			int pixel = (int) ((long) x * pixelCount / count);
+			ret.addPixel();
+			if (pixel < pixelCount) {
+				for (int i = getPixelStart(pixel); i < getPixelEnd(pixel); i++) {
+					ret.addPoint(tops[i], bottoms[i], means[i], segmentNumbers[i], continueAreaNumbers[i], rawDataProviderNumbers[i]);
+				}
+				// events are drawn once, in the first of stretched pixels
+				if (pixel != previous) {
+					ret.setEvents(findEvents(pixel));
+				}
 			}
+			previous = pixel;
+		}
+		return ret;
+	}
+
+	/**
+	 * @return index of first point of pixel
+	 */
+	public int getPixelStart(int pixel) {
+		return pixelStarts[pixel];
+	}
+
+	/**
+	 * @return index after last point of pixel
+	 */
+	public int getPixelEnd(int pixel) {
+		return pixelStarts[pixel + 1];
+	}
+
+	/**
+	 * @return maximum value in section represented by point with given index
+	 */
+	public double getTop(int index) {
+		return tops[index];
+	}
+
+	/**
+	 * @return minimum value in section represented by point with given index
+	 */
+	public double getBottom(int index) {
+		return bottoms[index];
+	}
+
+	/**
+	 * @return mean of raw trace data in section represented by point with given index
+	 */
+	public double getMean(int index) {
+		return means[index];
+	}
+
+	/**
+	 * @return number of segment to which point with given index belongs.
+	 */
+	public int getSegmentNumber(int index) {
+		return segmentNumbers[index];
+	}
+
+	/**
+	 * @return number of continue data area to which point with given index belongs.
+	 */
+	public int getContinueAreaNumber(int index) {
+		return continueAreaNumbers[index];
+	}
+
+	/**
+	 * @return number of raw data provider to which point with given index belongs.
+	 */
+	public int getRawDataProviderNumber(int index) {
+		return rawDataProviderNumbers[index];
+	}
+
+	/**
+	 * @return set of events found inside time range of pixel, empty set if events absent
+	 */
+	public Set<EventWrapper> getEvents(int pixel) {
+		Set<EventWrapper> ret = findEvents(pixel);
+		if (ret == null) {
+			return Collections.synchronizedSortedSet(new TreeSet<EventWrapper>());
+		} else {
+			return ret;
 		}
 	}
 
+	/**
+	 * @return flag if pixel has events
+	 */
+	public boolean hasEvents(int pixel) {
+		return findEvents(pixel) != null;
+	}
+
 	/**
 	 * @return max data value in whole data set
 	 */
@@ -113,10 +334,10 @@ public class PlotData implements Comparable {
 	}
 
 	/**
-	 * @return count of points
+	 * @return count of pixels
 	 */
 	public int getPointCount() {
-		return pixels.size();
+		return pixelCount;
 	}
 
 	/**
@@ -132,7 +353,7 @@ public class PlotData implements Comparable {
 	public Color getLabelColor() {
 		return labelColor;
 	}
-	
+
 	/**
 	 * @param color
 	 *            to draw label
@@ -148,7 +369,7 @@ public class PlotData implements Comparable {
 	public void setTraceColor(Color color) {
 		traceColor = color;
 	}
-	
+
 	/**
 	 * @return color to draw trace in manual mode
 	 */
@@ -179,4 +400,13 @@ public class PlotData implements Comparable {
 			return -1;
 		}
 	}
+
+	private Set<EventWrapper> findEvents(int pixel) {
+		int pos = Arrays.binarySearch(eventPixels, 0, eventPixelCount, pixel);
+		if (pos >= 0) {
+			return eventSets.get(pos);
+		} else {
+			return null;
+		}
+	}
 }
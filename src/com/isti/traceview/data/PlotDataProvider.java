@@ -1,12 +1,8 @@
 package com.isti.traceview.data;
 
 import java.awt.Color;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -18,6 +14,9 @@ import java.util.Observer;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 
@@ -27,7 +26,6 @@ import com.isti.traceview.common.Station;
 import com.isti.traceview.common.TimeInterval;
 import com.isti.traceview.gui.ColorModeBySource;
 import com.isti.traceview.gui.IColorModeState;
-import com.isti.traceview.processing.FilterFacade;
 import com.isti.traceview.processing.IFilter;
 import com.isti.traceview.processing.Rotation;
 
@@ -59,6 +57,11 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 */
 	private static final int initPointCount = 10000;
 
+	/**
+	 * Time to wait for data loading before pixelization, in seconds
+	 */
+	private static final int loadWaitTimeout = 30;
+
 	/**
 	 * Set of events attached to this data provider
 	 * 
@@ -69,6 +72,11 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 */
 	protected transient SortedSet<IEvent> events;
 
+	/**
+	 * Interval index of events to find events of time slice, built on demand
+	 */
+	private transient volatile EventIndex eventIndex = null;
+
 	/**
 	 * Time of last access to data
 	 */
@@ -80,10 +88,14 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	private transient TimeInterval viewingInterval = null;
 
 	/**
-	 * List of precalculated {@link PlotDataPoint}s on the full time range of channel to use on
-	 * wide zooms
+	 * Precalculated data points on the full time range of channel to use on wide zooms
 	 */
-	private List<PlotDataPoint[]> pointsCache = null;
+	private volatile PlotData pointsCache = null;
+
+	/**
+	 * Store in temporary storage this trace was opened from, to read point cache from it
+	 */
+	private transient volatile ChannelStore channelStore = null;
 	
 	/**
 	 * May be used by ColorModeByTrace to color trace in manual mode.
@@ -137,6 +149,8 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 * @throws TraceViewException
 	 */
 	public PlotData getPlotData(TimeInterval ti, int pointCount, Rotation rotation, IFilter filter, IColorModeState colorMode) throws TraceViewException {
+		// shown data shouldn't be evicted
+		SampleCache.getInstance().pin(this, ti);
 		if (rotation == null) {
 			return getPlotData(ti, pointCount, filter, colorMode);
 		} else {
@@ -159,60 +173,60 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	private PlotData getPlotData(TimeInterval ti, int pointCount, IFilter filter, IColorModeState colorMode) {
 		lg.debug("getPlotData: " + this + "; " + ti + "(" + ti.getStart() + "-" + ti.getEnd() + ")" + "; pointCount " + pointCount);
 
-		// This list used when we cannot use pointsCache due to too small zoom, calculated every
-		// time afresh.
-		List<PlotDataPoint[]> points = null;
-
-		if (pointsCache == null) {
-			initPointCache(colorMode);
+		// Points to compute slices from: pointsCache, or, when we cannot use pointsCache due to too
+		// small zoom, points calculated every time afresh. Pixels after the end of points are gaps.
+		PlotData points = null;
+		int pointsOffset = 0;
+		int pointsSize = 0;
+
+		// local reference, cache can be reset by other thread
+		PlotData cache = pointsCache;
+		if (cache == null) {
+			ChannelStore store = channelStore;
+			if (store != null) {
+				pointsCache = store.readPointCache();
+				channelStore = null;
+			}
+			if (pointsCache == null) {
+				initPointCache(colorMode);
+			}
+			cache = pointsCache;
 		}
 
 		// Time range need to be pixelized - intersection of requested pixalization range and
 		// channel's time range
-		PlotData ret = new PlotData(this.getName(), this.getColor());
+		PlotData ret = new PlotData(this.getName(), this.getColor(), pointCount);
 
 		TimeInterval effectiveTimeRange = TimeInterval.getIntersect(ti, getTimeRange());
 		if (effectiveTimeRange != null) {
-			if ((pointCount > pointsCache.size() * new Double(effectiveTimeRange.getDuration()) / new Double(getTimeRange().getDuration()))
+			if ((pointCount > cache.getPointCount() * new Double(effectiveTimeRange.getDuration()) / new Double(getTimeRange().getDuration()))
 					|| filter != null) {
 //System.out.format("== getPlotData: pointCount > pointsCache.size !!\n");
 				points = pixelize(effectiveTimeRange, new Double(2 * pointCount * effectiveTimeRange.getDuration()
 						/ new Double(ti.getDuration()).intValue()).intValue(), filter, colorMode);
+				pointsSize = points.getPointCount();
 			} else {
-				points = new ArrayList<PlotDataPoint[]>();
+				points = cache;
 				int startIndex = new Double((effectiveTimeRange.getStart() - getTimeRange().getStart()) * initPointCount
 						/ getTimeRange().getDuration()).intValue();
 //System.out.format("== getPlotData: startIndex=[ %d]\n", startIndex);
 				if (startIndex < 0) {
-					for (int i = -startIndex; i < 0; i++) {
-						// lg.debug("getPlotData: add empty points in the beginning");
-						PlotDataPoint[] intervalPoints = new PlotDataPoint[1];
-						intervalPoints[0] = new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
-						points.add(intervalPoints);
-					}
 					startIndex = 0;
 				}
 				int endIndex = new Double((effectiveTimeRange.getEnd() - getTimeRange().getStart()) * initPointCount / getTimeRange().getDuration())
 						.intValue();
 //System.out.format("== getPlotData: endIndex=[ %d ] initPointCount=[%d]\n", endIndex, initPointCount);
-				if (endIndex > initPointCount) {
-// MTH: We don't seem to go in here
-//System.out.format("== getPlotData: endIndex > initPointCount\n");
-					points.addAll(pointsCache.subList(startIndex, initPointCount));
-					for (int i = initPointCount; i < endIndex; i++) {
-						// lg.debug("getPlotData: add empty points in the end");
-						PlotDataPoint[] intervalPoints = new PlotDataPoint[1];
-						intervalPoints[0] = new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
-						points.add(intervalPoints);
-					}
-				} else {
-//System.out.format("== getPlotData: points.addAll\n");
-					points.addAll(pointsCache.subList(startIndex, endIndex));
-				}
+				// cached points are used in place, without copying
+				pointsOffset = startIndex;
+				pointsSize = endIndex - startIndex;
 				// lg.debug("Use data points from cache to calculate data, indexes: " + startIndex +
 				// "-" + endIndex);
 			}
 			double timeRatio = (ti.getDuration()) / new Double(pointCount);
+			// slice accumulators are reused for all pixels
+			List<SliceData> slices = new ArrayList<SliceData>();
+			EventIndex eventIndex = getEventIndex();
+			List<IEvent> sliceEvents = new ArrayList<IEvent>();
 			for (int i = 0; i < pointCount; i++) {
 				// we divide requested time range into pointCount time slices and calculate data to
 				// display for every slice
@@ -221,57 +235,79 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 				if (!((startSlice >= effectiveTimeRange.getEnd() && endSlice >= effectiveTimeRange.getEnd()) || (startSlice <= effectiveTimeRange
 						.getStart() && endSlice <= effectiveTimeRange.getStart()))) {
 					// if effective time range intersects this time slice
-					int startIndex = new Long(Math.round(new Double((startSlice - effectiveTimeRange.getStart()) * points.size())
+					int startIndex = new Long(Math.round(new Double((startSlice - effectiveTimeRange.getStart()) * pointsSize)
 							/ new Double(effectiveTimeRange.getDuration()))).intValue();
 					if (startIndex < 0) {
 						startIndex = 0;
 					}
-					int endIndex = new Long(Math.round(new Double((endSlice - effectiveTimeRange.getStart()) * points.size())
+					int endIndex = new Long(Math.round(new Double((endSlice - effectiveTimeRange.getStart()) * pointsSize)
 							/ new Double(effectiveTimeRange.getDuration()))).intValue();
-					if (endIndex > points.size()) {
-						endIndex = points.size();
+					if (endIndex > pointsSize) {
+						endIndex = pointsSize;
 					}
-					if ((startIndex == endIndex) && (endIndex != points.size())) {
+					if ((startIndex == endIndex) && (endIndex != pointsSize)) {
 						// to avoid gaps on very large zoom
 						endIndex = endIndex + 1;
 					}
-					List<PlotDataPoint[]> data = points.subList(startIndex, endIndex);
-					List<SliceData> sliceDataList = new ArrayList<SliceData>();
-					int j =0;
-					for (PlotDataPoint[] sublist: data) {
-						int k =0;
-						for(PlotDataPoint value: sublist){
-							//lg.debug("Index " + (startIndex + j) + ", set " + k + ", value " + value);
-							if(sliceDataList.size()<=k){
-								sliceDataList.add(new SliceData());
-							}							
-							if (value.getTop() > sliceDataList.get(k).top) {
-								sliceDataList.get(k).top = value.getTop();
+					int sliceCount = 0;
+					for (int j = pointsOffset + startIndex; j < pointsOffset + endIndex; j++) {
+						if (j >= points.getPointCount()) {
+							// gap after the end of cached points
+							if (sliceCount == 0) {
+								if (slices.size() == 0) {
+									slices.add(new SliceData());
+								}
+								slices.get(0).reset();
+								sliceCount++;
+							}
+							continue;
+						}
+						int k = 0;
+						for (int index = points.getPixelStart(j); index < points.getPixelEnd(j); index++) {
+							//lg.debug("Index " + j + ", set " + k + ", top " + points.getTop(index));
+							if (sliceCount <= k) {
+								if (slices.size() <= k) {
+									slices.add(new SliceData());
+								}
+								slices.get(k).reset();
+								sliceCount++;
+							}
+							SliceData slice = slices.get(k);
+							if (points.getTop(index) > slice.top) {
+								slice.top = points.getTop(index);
 							}
-							if (value.getBottom() < sliceDataList.get(k).bottom) {
-								sliceDataList.get(k).bottom = value.getBottom();
+							if (points.getBottom(index) < slice.bottom) {
+								slice.bottom = points.getBottom(index);
 							}
-							if (value.getMean() != Double.POSITIVE_INFINITY) {
-								sliceDataList.get(k).sum = sliceDataList.get(k).sum + value.getMean();
-								sliceDataList.get(k).segmentNumber = value.getSegmentNumber();
-								sliceDataList.get(k).continueAreaNumber = value.getContinueAreaNumber();
-								sliceDataList.get(k).rdpNumber = value.getRawDataProviderNumber();
-								sliceDataList.get(k).dataPointCount++;
+							if (points.getMean(index) != Double.POSITIVE_INFINITY) {
+								slice.sum = slice.sum + points.getMean(index);
+								slice.segmentNumber = points.getSegmentNumber(index);
+								slice.continueAreaNumber = points.getContinueAreaNumber(index);
+								slice.rdpNumber = points.getRawDataProviderNumber(index);
+								slice.dataPointCount++;
 							}
 							k++;
 						}
-						j++;
 					}
-					if (events == null) {
-						events = Collections.synchronizedSortedSet(new TreeSet<IEvent>()); // class was deserialized
-					}
-					SortedSet<EventWrapper> evts = new TreeSet<EventWrapper>();
-					for (IEvent event: events) {
-						long eventTime = event.getStartTime().getTime();
-						if (eventTime > startSlice && eventTime <= endSlice) {
+					// allocated only for slices with events
+					SortedSet<EventWrapper> evts = null;
+					if (eventIndex.size() > 0) {
+						// event times are integer, so comparison with floor of slice bounds is the same
+						long sliceStart = (long) Math.floor(startSlice);
+						sliceEvents.clear();
+						eventIndex.findStarted(sliceStart, (long) Math.floor(endSlice), sliceEvents);
+						for (IEvent event: sliceEvents) {
+							if (evts == null) {
+								evts = new TreeSet<EventWrapper>();
+							}
 							evts.add(new EventWrapper(event, true));
-						} else if (!((eventTime >= endSlice && eventTime + event.getDuration() >= endSlice || (eventTime <= startSlice && eventTime
-								+ event.getDuration() <= startSlice)))) {
+						}
+						sliceEvents.clear();
+						eventIndex.findContinued(sliceStart, sliceEvents);
+						for (IEvent event: sliceEvents) {
+							if (evts == null) {
+								evts = new TreeSet<EventWrapper>();
+							}
 							evts.add(new EventWrapper(event, false));
 						}
 					}
@@ -284,24 +320,19 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 
 					//lg.debug("getPlotData: PlotDataProvider " + this + ": Adding plot data points set " + i + "; time " + TimeInterval.formatDate(new Date(new Double(startSlice).longValue()),TimeInterval.DateFormatType.DATE_FORMAT_NORMAL) + " - " +
 					//TimeInterval.formatDate(new Date(new Double(endSlice).longValue()),TimeInterval.DateFormatType.DATE_FORMAT_NORMAL) + "(" + startSlice + "-" + endSlice+ ")" + ", for indexes " + startIndex + " - " + endIndex);
-					PlotDataPoint[] pdpArray = new PlotDataPoint[sliceDataList.size()];
-					int m = 0;
-					for(SliceData sliceData:sliceDataList){
-						pdpArray[m] = sliceData.getPoint(evts);
-						//lg.debug("Added point " + m + ": " + pdpArray[m].toString());
-						m++;
+					ret.addPixel();
+					for (int m = 0; m < sliceCount; m++) {
+						slices.get(m).addPoint(ret);
 					}
-					ret.addPixel(pdpArray);
-					if (evts.size() > 0) {
+					if (evts != null) {
+						ret.setEvents(evts);
 						lg.debug("Event time: "
 								+ TimeInterval.formatDate(evts.first().getEvent().getStartTime(), TimeInterval.DateFormatType.DATE_FORMAT_NORMAL)
 								+ "(" + evts.first().getEvent().getStartTime().getTime() + ")" + "; point number " + ret.getPointCount());
 					}
 				} else {
 					//lg.debug("if effective time range doesn't contain this time slice - added empty point");
-					PlotDataPoint[] pdpArray = new PlotDataPoint[1];
-					pdpArray[0] = new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
-					ret.addPixel(pdpArray);
+					ret.addEmptyPixel();
 				}
 			}
 			lastAccessed = new Date();
@@ -321,32 +352,46 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 *            Requested count of points
 	 * @param filter
 	 *            filter to apply to raw data before pixelization
-	 * @return List of PlotDataPoint
+	 * @return pixelized data
 	 */
-	private List<PlotDataPoint[]> pixelize(TimeInterval ti, int pointCount, IFilter filter, IColorModeState colorMode) {
+	private PlotData pixelize(TimeInterval ti, int pointCount, IFilter filter, IColorModeState colorMode) {
 		lg.debug("pixelizing " + this +"; "+ ti + "; "+ "pointCount " + pointCount);
-		List<PlotDataPoint[]> pointSet = Collections.synchronizedList(new ArrayList<PlotDataPoint[]>());
+		PlotData pointSet = new PlotData(getName(), getColor(), pointCount);
 		// waiting if data still is not loaded
-		int attemptCount = 0;
-		while (!isLoaded()) {
+		if (!isLoaded()) {
+			lg.debug("Channel " + this + " getPlotData() is waiting for data loading");
+			long waitStart = System.currentTimeMillis();
 			try {
-				if (attemptCount > 60)
-					throw new RuntimeException("Channel " + this + " wait for data more than " + attemptCount + " seconds");
-				lg.debug("Channel " + this + " getPlotData() is waiting for data loading");
-				Thread.sleep(500);
-				attemptCount++;
+				getLoadFuture().get(loadWaitTimeout, TimeUnit.SECONDS);
+			} catch (TimeoutException e) {
+				throw new RuntimeException("Channel " + this + " wait for data more than " + loadWaitTimeout + " seconds");
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Channel " + this + " data loading failed: " + e.getCause(), e.getCause());
 			} catch (InterruptedException e) {
-				// do nothing
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Channel " + this + " was interrupted while waiting for data");
 			}
+			lg.debug("Channel " + this + " waited for data loading " + (System.currentTimeMillis() - waitStart) + " ms");
 		}
-		List<SegmentData> rawData = new ArrayList<SegmentData>();
 		List<Segment> segments = getRawData(ti);
+		PlotData summaryPointSet = pixelizeSummary(ti, pointCount, segments, filter, colorMode);
+		if (summaryPointSet != null) {
+			lg.debug("pixelizing end " + this + ", used data summaries");
+			return summaryPointSet;
+		}
+		List<SegmentData> rawData = new ArrayList<SegmentData>();
 		//combine segments if no gap and colormode is not by source, to correct filtering
 		for (int i = 0; i<segments.size(); i++) {
 			//ALL requested for pixelization time range in this segment
 			Segment segment = segments.get(i);
 			TimeInterval currentSegmentDataTI = TimeInterval.getIntersect(ti, new TimeInterval(segment.getStartTime(), segment.getEndTime()));
-			SegmentData segmentData = segment.getData(currentSegmentDataTI);
+			SegmentData segmentData = null;
+			if (filter == null) {
+				segmentData = segment.getData(currentSegmentDataTI);
+			} else {
+				// filtered data are taken from cache, only pages with requested range are filtered
+				segmentData = getFilteredData(segment, currentSegmentDataTI, filter);
+			}
 			if(i==0 || colorMode instanceof ColorModeBySource || Segment.isDataBreak(segments.get(i-1).getEndTime().getTime(), segmentData.startTime, segmentData.sampleRate)){
 				rawData.add(segmentData);
 			} else {
@@ -358,24 +403,14 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 				}
 			}
 		}
-		//filtering
-		if(filter!=null){
-			FilterFacade ff = new FilterFacade(filter, this);
-			List<SegmentData> filteredRawData = new ArrayList<SegmentData>();
-			for(SegmentData segmentData: rawData){
-				filteredRawData.add(new SegmentData(segmentData.startTime, segmentData.sampleRate, segmentData.sourceSerialNumber, segmentData.channelSerialNumber, segmentData.continueAreaNumber, segmentData.previous, segmentData.next, ff.filter(segmentData.data)));
-			}
-			rawData = filteredRawData;
-		}
-		double interval = (ti.getDuration()) / new Double(pointCount);
+		double interval = ti.getDuration() / (double) pointCount;
 		double time = ti.getStart();
 		for (int i = 0; i < pointCount; i++) {
 			//lg.debug("Iteration # "+ i + ", processing interval " + time + " - " + (time+interval));
 			//segments which has data in the interval
 			SegmentData[] intervalData = getSegmentData(rawData, time, time + interval);
 			if (intervalData != null) {
-				int k = 0;
-				PlotDataPoint[] intervalPoints = new PlotDataPoint[intervalData.length];
+				pointSet.addPixel();
 				for (SegmentData segData: intervalData) {
 					TimeInterval currentSegmentDataTI = new TimeInterval(segData.startTime, segData.endTime());
 					//lg.debug("Processing segment " + segment + "on interval " + currentSegmentDataTI);
@@ -402,30 +437,25 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 							}
 							sum = sum + value;
 						}
-						intervalPoints[k] = new PlotDataPoint(top, bottom, sum / rawDataPointCount, segData.channelSerialNumber, segData.sourceSerialNumber, segData.continueAreaNumber, null);
-						//lg.debug("Data present, point " + k + " added: " + intervalPoints[k]);
+						pointSet.addPoint(top, bottom, sum / rawDataPointCount, segData.channelSerialNumber, segData.sourceSerialNumber, segData.continueAreaNumber);
 					} else {
 						
-						if (currentSegmentDataTI.isContain(new Double(time).longValue())) {
+						if (currentSegmentDataTI.isContain((long) time)) {
 							rawDataPointCount = 1;
 
 							double value = segData.interpolateValue(time);
-							//lg.debug("Interpolated value, point " + k + " added: " + value);
-							intervalPoints[k] = new PlotDataPoint(value, value, value, segData.channelSerialNumber, segData.sourceSerialNumber, segData.continueAreaNumber, null);
+							//lg.debug("Interpolated value added: " + value);
+							pointSet.addPoint(value, value, value, segData.channelSerialNumber, segData.sourceSerialNumber, segData.continueAreaNumber);
 
 						} else {
-							//lg.debug("Interpolated value, point " + k + " absent");
-							intervalPoints[k] = new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
+							//lg.debug("Interpolated value absent");
+							pointSet.addEmptyPoint();
 						}
 					}
-					k++;
 				}
-				pointSet.add(intervalPoints);
 			} else {
 				//lg.debug("Pixelizing : segment null");
-				PlotDataPoint[] intervalPoints = new PlotDataPoint[1];
-				intervalPoints[0]=new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
-				pointSet.add(intervalPoints);
+				pointSet.addEmptyPixel();
 			}
 			time = time + interval;
 		}
@@ -434,6 +464,164 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	}
 
 
+	/**
+	 * Pixelize raw data using segments' {@link MinMaxPyramid}s, without scanning of raw samples.
+	 * Produces the same points as {@link #pixelize(TimeInterval, int, IFilter, IColorModeState)}.
+	 * If filter is set, summaries of cached filtered data pages are used. Summaries detached from samples
+	 * are used only if pixel is wider than their bins, so points differ from raw ones less than by
+	 * one bin on pixel edges.
+	 * 
+	 * @return pixelized data, or null if some segments have no summary
+	 */
+	private PlotData pixelizeSummary(TimeInterval ti, int pointCount, List<Segment> segments, IFilter filter, IColorModeState colorMode) {
+		List<SummaryRun> runs = new ArrayList<SummaryRun>();
+		for (int i = 0; i < segments.size(); i++) {
+			Segment segment = segments.get(i);
+			boolean coarse = ti.getDuration() / segment.getSampleRate() / pointCount >= MinMaxPyramid.BASE_BIN_SIZE;
+			if (filter == null && !coarse && !segment.isResident()) {
+				// raw path reads only pixelized range
+				return null;
+			}
+			// the same range as Segment.getData(TimeInterval) returns
+			int[] range = segment.getSampleRange(ti.getStart(), ti.getEnd());
+			MinMaxPyramid[] pyramids = null;
+			if (filter == null) {
+				MinMaxPyramid pyramid = segment.getPyramid();
+				if (pyramid == null || pyramid.getSampleCount() == 0 || pyramid.getSampleCount() != segment.getSampleCount()
+						|| (!coarse && !pyramid.hasData())) {
+					return null;
+				}
+				pyramids = new MinMaxPyramid[] { pyramid };
+			} else if (segment.getSampleCount() == 0) {
+				return null;
+			} else {
+				// filtered data are cached by pages, only pages with range are filtered
+				pyramids = getFilteredPages(segment, range[0], range[1], filter);
+			}
+			long pieceStart = (long) (segment.getStartTime().getTime() + range[0] * segment.getSampleRate());
+			if (i == 0 || colorMode instanceof ColorModeBySource
+					|| Segment.isDataBreak(segments.get(i - 1).getEndTime().getTime(), pieceStart, segment.getSampleRate())) {
+				runs.add(new SummaryRun(pieceStart, segment));
+			}
+			// index of first sample of every summary in segment
+			int base = filter == null ? 0 : range[0] / Segment.PAGE_SIZE * Segment.PAGE_SIZE;
+			for (MinMaxPyramid pyramid: pyramids) {
+				int from = Math.max(range[0], base);
+				int to = Math.min(range[1], base + pyramid.getSampleCount());
+				runs.get(runs.size() - 1).addPiece(pyramid, from - base, to - base);
+				base += pyramid.getSampleCount();
+			}
+		}
+		PlotData pointSet = new PlotData(getName(), getColor(), pointCount);
+		double[] acc = new double[4];
+		double interval = ti.getDuration() / (double) pointCount;
+		double time = ti.getStart();
+		for (int i = 0; i < pointCount; i++) {
+			double end = (i == (pointCount - 1)) ? ti.getEnd() : time + interval;
+			pointSet.addPixel();
+			for (SummaryRun run: runs) {
+				long runEnd = run.endTime();
+				if (!SegmentData.isIntersect(run.startTime, runEnd, time, time + interval)) {
+					continue;
+				}
+				// the same indexes as SegmentData.getData(double, double) computes
+				int[] indexes = SegmentData.getIndexes(run.startTime, run.sampleRate, run.length, time, end);
+				if (indexes[0] <= indexes[1]) {
+					acc[0] = Double.NEGATIVE_INFINITY;
+					acc[1] = Double.POSITIVE_INFINITY;
+					acc[2] = 0.0;
+					acc[3] = 0.0;
+					run.aggregate(indexes[0], indexes[1] + 1, acc);
+					pointSet.addPoint(acc[0], acc[1], acc[2] / acc[3], run.channelSerialNumber, run.sourceSerialNumber, run.continueAreaNumber);
+				} else if (new TimeInterval(run.startTime, runEnd).isContain((long) time)) {
+					double value = run.interpolateValue(time);
+					pointSet.addPoint(value, value, value, run.channelSerialNumber, run.sourceSerialNumber, run.continueAreaNumber);
+				} else {
+					pointSet.addEmptyPoint();
+				}
+			}
+			if (pointSet.getPixelStart(i) == pointSet.getPixelEnd(i)) {
+				pointSet.addEmptyPoint();
+			}
+			time = time + interval;
+		}
+		return pointSet;
+	}
+
+	/**
+	 * Continuous data to pixelize from summaries - parts of one or several adjacent segments. The
+	 * same as merged {@link SegmentData} in the pixelize().
+	 */
+	private static class SummaryRun {
+		long startTime;
+		double sampleRate;
+		int length = 0;
+		int sourceSerialNumber;
+		int channelSerialNumber;
+		int continueAreaNumber;
+		List<MinMaxPyramid> pyramids = new ArrayList<MinMaxPyramid>();
+		List<int[]> ranges = new ArrayList<int[]>(); // start index in pyramid and run index of piece start
+
+		SummaryRun(long startTime, Segment segment) {
+			this.startTime = startTime;
+			this.sampleRate = segment.getSampleRate();
+			this.sourceSerialNumber = segment.getSourceSerialNumber();
+			this.channelSerialNumber = segment.getChannelSerialNumber();
+			this.continueAreaNumber = segment.getContinueAreaNumber();
+		}
+
+		void addPiece(MinMaxPyramid pyramid, int from, int to) {
+			pyramids.add(pyramid);
+			ranges.add(new int[] { from, length });
+			length += to - from;
+		}
+
+		long endTime() {
+			return SegmentData.getEndTime(startTime, sampleRate, length);
+		}
+
+		/**
+		 * Accumulates summary of run samples from index from, inclusive, to index to, exclusive
+		 */
+		void aggregate(int from, int to, double[] acc) {
+			for (int i = 0; i < pyramids.size(); i++) {
+				int pieceStart = ranges.get(i)[1];
+				int pieceEnd = i + 1 < ranges.size() ? ranges.get(i + 1)[1] : length;
+				int start = Math.max(from, pieceStart);
+				int end = Math.min(to, pieceEnd);
+				if (start < end) {
+					int offset = ranges.get(i)[0] - pieceStart;
+					pyramids.get(i).aggregate(start + offset, end + offset, acc);
+				}
+			}
+		}
+
+		int getValue(int index) {
+			int i = pyramids.size() - 1;
+			while (ranges.get(i)[1] > index) {
+				i--;
+			}
+			return pyramids.get(i).getValue(ranges.get(i)[0] + index - ranges.get(i)[1]);
+		}
+
+		/**
+		 * The same as {@link SegmentData#interpolateValue(double)}
+		 */
+		double interpolateValue(double time) {
+			int nextIndex = (int) ((time - startTime) / sampleRate + 1);
+			if (nextIndex >= length) {
+				nextIndex = length - 1;
+			}
+			int prevIndex = 0;
+			if (nextIndex < 1) {
+				nextIndex = 0;
+			} else {
+				prevIndex = nextIndex - 1;
+			}
+			return getValue(prevIndex) + (getValue(nextIndex) - getValue(prevIndex)) * (time - startTime - sampleRate * prevIndex)
+					/ (sampleRate * (nextIndex - prevIndex));
+		}
+	}
 
 	/**
 	 * @param sps
@@ -451,9 +639,7 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 		Iterator<SegmentData> it = sps.iterator();
 		while (it.hasNext()) {
 			SegmentData segData = it.next();
-			long retStart = segData.startTime;
-			long retEnd = segData.endTime();
-			if (!((start >= retEnd && end >= retEnd) || (start <= retStart && end <= retStart))) {
+			if (SegmentData.isIntersect(segData.startTime, segData.endTime(), start, end)) {
 				ret.add(segData);
 			}
 		}
@@ -524,12 +710,28 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 */
 	public SortedSet<IEvent> getEvents(Date time, long precision) {
 		SortedSet<IEvent> ret = Collections.synchronizedSortedSet(new TreeSet<IEvent>());
-		for (IEvent event: events) {
-			if (event.getStartTime().getTime() > time.getTime() && event.getStartTime().getTime() < time.getTime() + 2 * precision) {
-				ret.add(event);
+		List<IEvent> found = new ArrayList<IEvent>();
+		getEventIndex().findStarted(time.getTime(), time.getTime() + 2 * precision - 1, found);
+		ret.addAll(found);
+		return ret;
+	}
+
+	/**
+	 * @return interval index of events, rebuilt after events change
+	 */
+	private EventIndex getEventIndex() {
+		if (events == null) {
+			events = Collections.synchronizedSortedSet(new TreeSet<IEvent>()); // class was deserialized
+		}
+		EventIndex index = eventIndex;
+		// size check catches changes made through the set returned by getEvents()
+		if (index == null || index.size() != events.size()) {
+			synchronized (events) {
+				index = new EventIndex(events);
 			}
+			eventIndex = index;
 		}
-		return ret;
+		return index;
 	}
 
 	/**
@@ -543,6 +745,7 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 		if (events == null) {
 			events = Collections.synchronizedSortedSet(new TreeSet<IEvent>());
 		}
+		eventIndex = null;
 		return events.add(event);
 	}
 
@@ -557,6 +760,7 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 		if (events == null) {
 			events = Collections.synchronizedSortedSet(new TreeSet<IEvent>());
 		}
+		eventIndex = null;
 		return events.remove(event);
 	}
 
@@ -570,6 +774,7 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 		if (events == null) {
 			events = Collections.synchronizedSortedSet(new TreeSet<IEvent>());
 		}
+		eventIndex = null;
 		events.addAll(evt);
 	}
 
@@ -616,71 +821,36 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	}
 
 	/**
-	 * Dumps trace to file in temporary storage in internal format
+	 * Dumps trace to file in temporary storage in internal format, see {@link ChannelStore}. Trace
+	 * should be loaded.
+	 * 
+	 * @param serialFileName
+	 *            file name without extension
 	 */
 	public void dump(String serialFileName) {
-		ObjectOutputStream out = null;
+		File file = new File(serialFileName + "." + ChannelStore.EXTENSION);
 		try {
-            lg.debug("== PDP.dump() -- ENTER: serfialFileName=" + serialFileName);
-			out = new ObjectOutputStream(new FileOutputStream(serialFileName + ".SER"));
-			setDataStream(serialFileName + ".DATA");
-			synchronized (this) {
-				lg.info("Serializing " + this + " to file " + serialFileName);
-				//System.out.println("== PDP.dump() --> out.writeObject\n");
-				out.writeObject(this);
-				//System.out.println("== PDP.dump() --> out.writeObject DONE\n");
-				notifyAll();
-			}
-		} catch (Exception ex) {
+			lg.info("Dumping " + this + " to file " + file);
+			ChannelStore.write(this, file);
+		} catch (IOException ex) {
 			lg.error("Can't save channel: " + ex);
-		} finally {
-			try {
-				//System.out.println("== PDP.dump() --> setDataStream(null) and do out.close()");
-				setDataStream(null);
-				out.close();
-			} catch (IOException e) {
-				// Do nothing
-			}
+			file.delete();
 		}
-        lg.debug("== PDP.dump() -- EXIT");
 	}
 
 	/**
-	 * Loads trace from serialized file in temporary storage
+	 * @return precalculated data points, or null if they aren't computed
 	 */
-	public static PlotDataProvider load(String fileName) {
-        lg.debug("\n== PlotDataProvider.load() -- ENTER: Deserialize channel from file:" + fileName);
-		PlotDataProvider channel = null;
-		ObjectInputStream ois = null;
-		String serialDataFileName = TemporaryStorage.getDataFileName(fileName);
-		try {
-			Object objRead = null;
-			ois = new ObjectInputStream(new FileInputStream(fileName));
-            lg.debug("== PlotDataProvider.load(): call ois.readObject()");
-			objRead = ois.readObject();
-            lg.debug("== PlotDataProvider.load(): call ois.readObject() DONE");
-			channel = (PlotDataProvider) objRead;
-			channel.setStation(DataModule.getOrAddStation(channel.getStation().getName()));
-//MTH: added Segment.isLoaded boolean
-            List<Segment> segs = channel.getRawData();
-            for (Segment seg : segs) {
-                seg.setIsLoaded(true);
-            }
-		} catch (FileNotFoundException e) {
-			lg.error(e);
-		} catch (IOException e) {
-			lg.error(e);
-		} catch (ClassNotFoundException e) {
-			lg.error(e);
-		} finally {
-			try {
-				ois.close();
-			} catch (IOException e) {
-				// Do nothing
-			}
-		}
-        lg.debug("== PlotDataProvider.load(fileName=%s) -- EXIT\n");
-		return channel;
+	PlotData getPointsCache() {
+		return pointsCache;
+	}
+
+	/**
+	 * Sets store in temporary storage this trace was opened from, point cache will be read from it
+	 * when needed
+	 */
+	void setChannelStore(ChannelStore store) {
+		channelStore = store;
 	}
 
 	/**
@@ -716,10 +886,20 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 		int segmentNumber = -1;
 		int continueAreaNumber = -1;
 		int rdpNumber = -1;
-		
-		PlotDataPoint getPoint(SortedSet<EventWrapper> evts){
+
+		void reset() {
+			top = Double.NEGATIVE_INFINITY;
+			bottom = Double.POSITIVE_INFINITY;
+			sum = 0.0;
+			dataPointCount = 0;
+			segmentNumber = -1;
+			continueAreaNumber = -1;
+			rdpNumber = -1;
+		}
+
+		void addPoint(PlotData data) {
 			double mean = dataPointCount == 0.0 ? Double.POSITIVE_INFINITY : sum / new Double(dataPointCount);
-			return new PlotDataPoint(top, bottom, mean, segmentNumber, continueAreaNumber, rdpNumber, evts);
+			data.addPoint(top, bottom, mean, segmentNumber, continueAreaNumber, rdpNumber);
 		}
 	}
 
@@ -729,5 +909,6 @@ public class PlotDataProvider extends RawDataProvider implements Observer {
 	 */
     public void nullPointsCache() {
         pointsCache = null;
+        channelStore = null;
     }
 }
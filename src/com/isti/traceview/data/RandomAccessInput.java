@@ -0,0 +1,39 @@
+package com.isti.traceview.data;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * Readable data input with random access, to use files either via buffered reads or via memory
+ * mapping
+ */
+public interface RandomAccessInput extends DataInput {
+	/**
+	 * Sets the file-pointer offset, measured from the beginning of the file
+	 */
+	public void seek(long pos) throws IOException;
+
+	/**
+	 * @return current offset in the file
+	 */
+	public long getFilePointer() throws IOException;
+
+	/**
+	 * @return length of the file in bytes
+	 */
+	public long length() throws IOException;
+
+	/**
+	 * Sets byte order for subsequent numeric reads
+	 *
+	 * @param endian
+	 *            {@link BufferedRandomAccessFile#BIG_ENDIAN} or
+	 *            {@link BufferedRandomAccessFile#LITTLE_ENDIAN}
+	 */
+	public void order(int endian);
+
+	/**
+	 * Releases resources associated with this input
+	 */
+	public void close() throws IOException;
+}
@@ -1,17 +1,24 @@
 package com.isti.traceview.data;
 
 import java.io.DataOutputStream;
-import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.log4j.Logger;
 
@@ -52,13 +59,24 @@ public class RawDataProvider extends Channel {
 	protected List<SegmentCache> rawData;
 
 	private boolean loadingStarted = false;
-	private boolean loaded = false;
+	private volatile boolean loaded = false;
 
+	// completes when data loading for this provider is finished
+	private transient CompletableFuture<RawDataProvider> loadFuture = null;
 
+	// serializes filtering of segments data
+	private transient Object filterLock = new Object();
+
+	// direct access to caches of segments, guarded by rawData lock and rebuilt on demand after
+	// deserialization
+	private transient Map<Segment, SegmentCache> segmentCaches = null;
+
+	// set once filtered data were cached, until then there is nothing to invalidate
+	private transient volatile boolean filterUsed = false;
+
+	// filter transient of very low frequencies can be longer, it stays visible on start of filtered range
+	private static final int MAX_WARMUP_LENGTH = 16 * Segment.PAGE_SIZE;
 
-	// Used to store dataStream file name and restore it after serialization
-	private String serialFile = null;
-	private transient BufferedRandomAccessFile serialStream = null;
 	public RawDataProvider(String channelName, Station station, String networkName, String locationName) {
 		super(channelName, station, networkName, locationName);
 		rawData = new ArrayList<SegmentCache>();
@@ -119,6 +137,219 @@ public class RawDataProvider extends Channel {
 		}
 	}
 	
+	/**
+	 * Returns filtered data of segment in given time range. Data are filtered and cached by pages of
+	 * {@link Segment#PAGE_SIZE} samples, only pages with requested range are filtered. Filtering
+	 * starts before them inside continuous data area to hide filter transient, so following
+	 * requests with equal filter don't repeat filtering, and whole area isn't read.
+	 * 
+	 * @param segment
+	 *            segment of this provider
+	 * @param ti
+	 *            requested time range
+	 * @param filter
+	 *            filter to apply
+	 * @return filtered data, the same range as {@link Segment#getData(TimeInterval)} returns
+	 */
+	public SegmentData getFilteredData(Segment segment, TimeInterval ti, IFilter filter) {
+		int[] range = segment.getSampleRange(ti.getStart(), ti.getEnd());
+		// neighbor samples are returned too
+		int from = Math.max(0, range[0] - 1);
+		int to = Math.min(segment.getSampleCount(), range[1] + 1);
+		int[] samples = new int[Math.max(0, to - from)];
+		MinMaxPyramid[] pages = getFilteredPages(segment, from, to, filter);
+		for (int i = 0; i < pages.length; i++) {
+			int pageStart = (from / Segment.PAGE_SIZE + i) * Segment.PAGE_SIZE;
+			int start = Math.max(from, pageStart);
+			int end = Math.min(to, pageStart + pages[i].getSampleCount());
+			IntBuffer page = pages[i].getData();
+			page.position(start - pageStart);
+			page.get(samples, start - from, end - start);
+		}
+		return segment.getData(ti, IntBuffer.wrap(samples), from);
+	}
+
+	/**
+	 * Returns min/max summaries of filtered segment data pages, filtered data are computed and
+	 * cached the same way as in {@link #getFilteredData(Segment, TimeInterval, IFilter)}
+	 * 
+	 * @param from
+	 *            index of first sample
+	 * @param to
+	 *            index after last sample
+	 * @return summaries of pages from page with sample from to page with sample to-1, each summary
+	 *         keeps filtered samples of page
+	 */
+	MinMaxPyramid[] getFilteredPages(Segment segment, int from, int to, IFilter filter) {
+		if (from >= to) {
+			return new MinMaxPyramid[0];
+		}
+		int firstPage = from / Segment.PAGE_SIZE;
+		MinMaxPyramid[] ret = new MinMaxPyramid[(to - 1) / Segment.PAGE_SIZE - firstPage + 1];
+		SegmentCache cache = getSegmentCache(segment);
+		boolean complete = cache != null && cache.getFilteredPages(filter, firstPage, ret);
+		for (int i = 0; i < ret.length; i++) {
+			if (ret[i] != null) {
+				SampleCache.getInstance().filterHit(segment, firstPage + i);
+			}
+		}
+		if (!complete) {
+			filterPages(segment, firstPage, ret, filter);
+		}
+		return ret;
+	}
+
+	/**
+	 * Filters absent pages of segment data, pages are filtered as part of continuous data area
+	 * containing the segment. Filtered pages of this provider's segments are cached.
+	 * 
+	 * @param firstPage
+	 *            number of first page in pages array
+	 * @param pages
+	 *            filtered pages, absent ones are filled
+	 */
+	private void filterPages(Segment segment, int firstPage, MinMaxPyramid[] pages, IFilter filter) {
+		synchronized (getFilterLock()) {
+			// other thread could filter the same pages while we wait
+			SegmentCache cache = getSegmentCache(segment);
+			if (cache != null && cache.getFilteredPages(filter, firstPage, pages)) {
+				return;
+			}
+			List<Segment> area = new ArrayList<Segment>();
+			synchronized (rawData) {
+				int index = rawData.indexOf(cache);
+				if (index < 0) {
+					// segment isn't in this provider
+					area.add(segment);
+				} else {
+					int first = index;
+					while (first > 0 && !isDataBreak(rawData.get(first - 1).getSegment(), rawData.get(first).getSegment())) {
+						first--;
+					}
+					int last = index;
+					while (last < rawData.size() - 1 && !isDataBreak(rawData.get(last).getSegment(), rawData.get(last + 1).getSegment())) {
+						last++;
+					}
+					for (SegmentCache sc: rawData.subList(first, last + 1)) {
+						area.add(sc.getSegment());
+					}
+				}
+			}
+			int start = 0;
+			while (pages[start] != null) {
+				start++;
+			}
+			int end = pages.length - 1;
+			while (pages[end] != null) {
+				end--;
+			}
+			FilterFacade facade = new FilterFacade(filter, this);
+			// preceding data of area are filtered first, their filtered values are dropped
+			List<int[]> pieces = new ArrayList<int[]>();
+			int warmup = Math.min(facade.getWarmupLength(), MAX_WARMUP_LENGTH);
+			int index = area.indexOf(segment);
+			Segment previous = segment;
+			int previousEnd = (firstPage + start) * Segment.PAGE_SIZE;
+			while (warmup > 0) {
+				int previousStart = Math.max(0, previousEnd - warmup);
+				if (previousStart < previousEnd) {
+					pieces.add(0, previous.getSamples(previousStart, previousEnd));
+					warmup -= previousEnd - previousStart;
+				}
+				if (index == 0) {
+					break;
+				}
+				index--;
+				previous = area.get(index);
+				previousEnd = previous.getSampleCount();
+			}
+			int warmupPieces = pieces.size();
+			for (int page = firstPage + start; page <= firstPage + end; page++) {
+				int pageStart = page * Segment.PAGE_SIZE;
+				pieces.add(segment.getSamples(pageStart, Math.min(segment.getSampleCount(), pageStart + Segment.PAGE_SIZE)));
+			}
+			lg.debug("Filtering pages " + (firstPage + start) + "-" + (firstPage + end) + " of " + segment + " by " + filter.getName());
+			facade.filter(pieces, getMean(area));
+			for (int i = start; i <= end; i++) {
+				int[] filtered = pieces.get(warmupPieces + i - start);
+				SampleCache.getInstance().filterMiss(segment, firstPage + i);
+				if (pages[i] == null) {
+					pages[i] = new MinMaxPyramid(IntBuffer.wrap(filtered));
+					if (cache != null) {
+						filterUsed = true;
+						SampleCache.getInstance().addFiltered(segment, firstPage + i, cache.putFilteredPage(filter, firstPage + i, pages[i]));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes mean value of continuous data area from segments summaries, so all parts of area are
+	 * filtered with the same level
+	 * 
+	 * @return mean value, or NaN if some segment has no summary
+	 */
+	private static double getMean(List<Segment> area) {
+		double[] acc = { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0.0, 0.0 };
+		for (Segment segment: area) {
+			MinMaxPyramid pyramid = segment.getPyramid();
+			if (pyramid == null || pyramid.getSampleCount() != segment.getSampleCount()) {
+				return Double.NaN;
+			}
+			pyramid.aggregate(0, pyramid.getSampleCount(), acc);
+		}
+		return acc[3] > 0 ? acc[2] / acc[3] : Double.NaN;
+	}
+
+	/**
+	 * Drops cached page of segment filtered data, called by {@link SampleCache}
+	 */
+	void dropFilteredPage(Segment segment, int page) {
+		SegmentCache cache = getSegmentCache(segment);
+		if (cache != null) {
+			cache.dropFilteredPage(page);
+		}
+	}
+
+	/**
+	 * Drops cached filtered data of all segments
+	 */
+	public void clearFilteredData() {
+		if (!filterUsed) {
+			return;
+		}
+		synchronized (rawData) {
+			for (SegmentCache sc: rawData) {
+				sc.clearFilteredData();
+			}
+		}
+	}
+
+	private SegmentCache getSegmentCache(Segment segment) {
+		synchronized (rawData) {
+			if (segmentCaches == null) {
+				segmentCaches = new IdentityHashMap<Segment, SegmentCache>();
+				for (SegmentCache sc: rawData) {
+					segmentCaches.put(sc.getSegment(), sc);
+				}
+			}
+			return segmentCaches.get(segment);
+		}
+	}
+
+	private static boolean isDataBreak(Segment previous, Segment next) {
+		return Segment.isDataBreak(previous.getEndTime().getTime(), next.getStartTime().getTime(), next.getSampleRate());
+	}
+
+	private synchronized Object getFilterLock() {
+		// lock is transient, restore it after deserialization
+		if (filterLock == null) {
+			filterLock = new Object();
+		}
+		return filterLock;
+	}
+
 	public int getDataLength(TimeInterval ti){
 		int dataLength = 0;
 		for(Segment segment: getRawData(ti)){
@@ -142,8 +373,14 @@ public class RawDataProvider extends Channel {
 	 */
 	public void addSegment(Segment segment) {
 		synchronized (rawData) {
-			rawData.add(new SegmentCache(segment));
+			SegmentCache sc = new SegmentCache(segment);
+			rawData.add(sc);
+			if (segmentCaches != null) {
+				segmentCaches.put(segment, sc);
+			}
 			segment.setRawDataProvider(this);
+			// continuous data areas could change
+			clearFilteredData();
 		}
 		setSampleRate(segment.getSampleRate());
 		lg.debug(segment + " added to " + this);
@@ -190,12 +427,18 @@ public class RawDataProvider extends Channel {
 	 * clears this provider, drops all data
 	 */
 	public void drop() {
+		SampleCache.getInstance().unpin(this);
 		synchronized (rawData) {
 			for (SegmentCache sc: rawData) {
 				sc.drop();
 			}
 			loaded = false;
 		}
+		synchronized (this) {
+			if (loadFuture != null && loadFuture.isDone()) {
+				loadFuture = null;
+			}
+		}
 		setChanged();
 		notifyObservers(getTimeRange());
 	}
@@ -217,15 +460,50 @@ public class RawDataProvider extends Channel {
 		}
 	}
 
+	/**
+	 * Returns future to wait for data loading without polling. Loading itself is started by
+	 * {@link #load()} or {@link #load(TimeInterval)}, usually via LoadDataCommand.
+	 * 
+	 * @return future which completes when data provider is loaded
+	 */
+	public synchronized CompletableFuture<RawDataProvider> getLoadFuture() {
+		if (loadFuture == null) {
+			loadFuture = new CompletableFuture<RawDataProvider>();
+		}
+		if (loaded) {
+			loadFuture.complete(this);
+		}
+		return loadFuture;
+	}
+
 	/**
 	 * Load data into this data provider from data sources
 	 * 
 	 * @param ti
+	 *            time interval to load, or null to load all data. Segments which sources can read
+	 *            samples range aren't loaded - their samples are read on request, only pages
+	 *            inside interval are read now. The same is done for segments too big for
+	 *            {@link SampleCache}, they are read by pages.
 	 */
 	public void loadData(TimeInterval ti) {
         lg.debug("== RawDataProvider.loadData(): ENTER");
 		for (SegmentCache sc: rawData) {
             Segment seg = sc.getSegment();
+            if (ti != null && seg.getDataSource() instanceof IRangeSource) {
+                seg.deferLoad();
+                if (ti.isIntersect(new TimeInterval(seg.getStartTime(), seg.getEndTime()))) {
+                    lg.debug("== RDP.loadData(): Read pages in requested interval:" + seg.toString() );
+                    seg.loadPages(ti);
+                } else {
+                    lg.debug("== RDP.loadData(): Segment is out of requested interval:" + seg.toString() );
+                }
+                continue;
+            }
+            if (!seg.getIsLoaded() && SampleCache.getInstance().isPaged(seg)) {
+                lg.debug("== RDP.loadData(): Segment will be read by pages:" + seg.toString() );
+                seg.deferLoad();
+                continue;
+            }
             if (!seg.getIsLoaded()) {
                 lg.debug("== RDP.loadData(): Load Segment:" + seg.toString() );
 			    seg.load();
@@ -235,10 +513,6 @@ public class RawDataProvider extends Channel {
             else {
                 lg.debug("== RDP.loadData(): Segment is ALREADY loaded:" + seg.toString() );
                 //System.out.format("== RawDataProvider.loadData(): Segment is Already Loaded:%s\n", seg.toString() );
-                // MTH: This is another place we *could* load the points into a serialized provider (from .DATA)
-                //      in order to have the segment's int[] data filled before serialization, but we're
-                //      doing this instead via PDP.initPointCache() --> PDP.pixelize(ti) --> Segment.getData(ti)
-                //seg.loadDataInt();
             }
 		}
         lg.debug("== RawDataProvider.loadData(): EXIT");
@@ -269,69 +543,22 @@ public class RawDataProvider extends Channel {
 		return ret;
 	}
 
-	/**
-	 * Sets data stream to serialize this provider
-	 * 
-	 * @param dataStream
-	 */
-	public void setDataStream(Object dataStream) {
-        lg.debug("== RDP.setDataStream(Object dataStream) ENTER");
-		try {
-			if (dataStream == null) {
-                lg.debug("== RDP.setDataStream(null) dataStream == null --> serialStream.close()");
-				try {
-					this.serialStream.close();
-					this.serialStream = null;
-				} catch (IOException e) {
-					// do nothing
-				}
-			} else {
-				if (dataStream instanceof String) {
-					this.serialFile = (String) dataStream;
-                    lg.debug("== RDP.setDataStream(Object) dataStream == instanceof String --> set serialFile=" + serialFile);
-				}
-                // MTH: This is a little redundant sicne readObject() already wraps the serialFile in a 
-                //      BufferedRandomAccessFile before using it to call setDataStream(raf) ...
-				BufferedRandomAccessFile raf = new BufferedRandomAccessFile(serialFile, "rw");
-				raf.order(BufferedRandomAccessFile.BIG_ENDIAN);
-				this.serialStream = raf;
-			}
-			for (SegmentCache sc: rawData) {
-                lg.debug("== RDP.setDataStream(Object) --> sc.setDataStream(serialStream)");
-				sc.setDataStream(serialStream);
-			}
-            lg.debug("== RDP.setDataStream() -- DONE");
-		} catch (FileNotFoundException e) {
-			lg.error(e);
-		} catch (IOException e) {
-			lg.error(e);
-		}
-	}
-
-	/**
-	 * @return data stream where this provider was serialized
-	 */
-	public BufferedRandomAccessFile getDataStream() {
-		return serialStream;
-	}
-
-	/**
-	 * @return flag if this provider was serialized
-	 */
-	public boolean isSerialized() {
-		return serialStream == null;
-	}
-
 	/**
 	 * Loads all data to this provider from it's data sources
 	 */
 	public void load() {
 		synchronized (rawData) {
 			loadingStarted = true;
-			loadData(null);
+			try {
+				loadData(null);
+			} catch (RuntimeException e) {
+				getLoadFuture().completeExceptionally(e);
+				throw e;
+			}
 			loaded = true;
 			setChanged();
 		}
+		getLoadFuture().complete(this);
 		notifyObservers(getTimeRange());
 	}
 
@@ -341,10 +568,16 @@ public class RawDataProvider extends Channel {
 	public void load(TimeInterval ti) {
 		synchronized (rawData) {
 			loadingStarted = true;
-			loadData(ti);
+			try {
+				loadData(ti);
+			} catch (RuntimeException e) {
+				getLoadFuture().completeExceptionally(e);
+				throw e;
+			}
 			loaded = true;
 			setChanged();
 		}
+		getLoadFuture().complete(this);
 		notifyObservers(getTimeRange());
 	}
 
@@ -502,6 +735,7 @@ System.out.println("== Segment dumpMseed ENTER");
 	 */
 	public void sort() {
 		Collections.sort(rawData);
+		clearFilteredData();
 		// setting channel serial numbers in segments
 		Segment previousSegment = null;
 		int segmentNumber = 0;
@@ -555,15 +789,6 @@ System.out.println("== Segment dumpMseed ENTER");
 			return -1;
 	}
 
-	/**
-	 * Get name of file to serialize this RawDataProvider in the temporary storage
-	 * 
-	 * @return
-	 */
-	public String getSerialFileName() {
-		return getName() + ".SER";
-	}
-
 	/**
 	 * Special serialization handler
 	 * 
@@ -589,30 +814,24 @@ System.out.println("== Segment dumpMseed ENTER");
 	 */
 	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
 		lg.debug("== RDP.readObject() Deserializing RawDataProvider" + toString());
-        // MTH: Once we've read in the .SER file, serialFile(=... .DATA) will be set
         lg.debug("== RDP.readObject() in.defaultReadObject()");
 		in.defaultReadObject();
         lg.debug("== RDP.readObject() in.defaultReadObject() DONE");
-		if (serialFile != null) {
-			serialStream = new BufferedRandomAccessFile(serialFile, "rw");
-			serialStream.order(BufferedRandomAccessFile.BIG_ENDIAN);
-			setDataStream(serialStream);
-		}
         lg.debug("== RDP.readObject() EXIT");
 	}
 
 	/**
-	 * internal class to hold original segment (cache(0)) and it's images processed by filters. Also
-	 * may define caching policy.
+	 * internal class to hold original segment and it's data processed by filters. Filtered data are
+	 * kept by pages of {@link Segment#PAGE_SIZE} samples and keyed by filter, so filters with equal
+	 * parameters share them. Size of filtered data is bounded by {@link SampleCache}.
 	 */
 	private class SegmentCache implements Serializable, Comparable {
 		private Segment initialData;
-		private transient List<Segment> filterCache;
+		private transient Map<IFilter, MinMaxPyramid[]> filterCache;
 
 		public SegmentCache(Segment segment) {
 			initialData = segment;
-			filterCache = new ArrayList<Segment>();
-			;
+			filterCache = new HashMap<IFilter, MinMaxPyramid[]>();
 		}
 
 		/**
@@ -621,18 +840,94 @@ System.out.println("== Segment dumpMseed ENTER");
 		 * @param segment
 		 */
 		public void setData(Segment segment) {
-			initialData = segment;
-			filterCache.clear();
+			clearFilteredData();
+			synchronized (rawData) {
+				segmentCaches = null;
+				initialData = segment;
+			}
 		}
 
 		/**
-		 * Sets data stream to serialize this SegmentCache
+		 * Copies cached pages of segment data filtered by given filter, absent pages and pages
+		 * filtered before segment was changed are left null
 		 * 
-		 * @param dataStream
-		 *            stream to serialize
+		 * @param firstPage
+		 *            number of first page in pages array
+		 * @return true if all pages were found
+		 */
+		public synchronized boolean getFilteredPages(IFilter filter, int firstPage, MinMaxPyramid[] pages) {
+			MinMaxPyramid[] cached = filterCache == null ? null : filterCache.get(filter);
+			boolean ret = true;
+			for (int i = 0; i < pages.length; i++) {
+				int page = firstPage + i;
+				int length = Math.min(Segment.PAGE_SIZE, initialData.getSampleCount() - page * Segment.PAGE_SIZE);
+				if (cached != null && page < cached.length && cached[page] != null && cached[page].getSampleCount() == length) {
+					pages[i] = cached[page];
+				} else {
+					ret = false;
+				}
+			}
+			return ret;
+		}
+
+		/**
+		 * Caches page of filtered segment data
+		 * 
+		 * @return size of page filtered by all filters, in bytes
+		 */
+		public synchronized long putFilteredPage(IFilter filter, int page, MinMaxPyramid data) {
+			if (filterCache == null) {
+				filterCache = new HashMap<IFilter, MinMaxPyramid[]>();
+			}
+			MinMaxPyramid[] cached = filterCache.get(filter);
+			if (cached == null || page >= cached.length) {
+				int count = (initialData.getSampleCount() + Segment.PAGE_SIZE - 1) / Segment.PAGE_SIZE;
+				cached = cached == null ? new MinMaxPyramid[Math.max(count, page + 1)] : Arrays.copyOf(cached, Math.max(count, page + 1));
+				filterCache.put(filter, cached);
+			}
+			cached[page] = data;
+			long ret = 0;
+			for (MinMaxPyramid[] filtered: filterCache.values()) {
+				if (page < filtered.length && filtered[page] != null) {
+					ret += filtered[page].getSampleCount() * 4L + filtered[page].getSummarySize();
+				}
+			}
+			return ret;
+		}
+
+		/**
+		 * Drops page of filtered data for all filters, page is already removed from sample cache
 		 */
-		public void setDataStream(BufferedRandomAccessFile dataStream) {
-			initialData.setDataStream(dataStream);
+		public synchronized void dropFilteredPage(int page) {
+			if (filterCache != null) {
+				for (MinMaxPyramid[] filtered: filterCache.values()) {
+					if (page < filtered.length) {
+						filtered[page] = null;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Drops all filtered data, sample cache is updated only for pages which were cached
+		 */
+		public void clearFilteredData() {
+			Set<Integer> dropped = new HashSet<Integer>();
+			synchronized (this) {
+				if (filterCache != null) {
+					for (MinMaxPyramid[] filtered: filterCache.values()) {
+						for (int page = 0; page < filtered.length; page++) {
+							if (filtered[page] != null) {
+								dropped.add(page);
+							}
+						}
+					}
+					filterCache.clear();
+				}
+			}
+			for (int page: dropped) {
+				SampleCache.getInstance().removeFiltered(initialData, page);
+			}
 		}
 
 		/**
@@ -648,9 +943,7 @@ System.out.println("== Segment dumpMseed ENTER");
 		 * Clears all data
 		 */
 		public void drop() {
-			for (int i = 0; i < filterCache.size(); i++) {
-				filterCache.remove(i);
-			}
+			clearFilteredData();
 			this.getSegment().drop();
 		}
 
@@ -668,7 +961,16 @@ System.out.println("== Segment dumpMseed ENTER");
 				if (getSegment().getStartTime().getTime() > sc.getSegment().getStartTime().getTime()) {
 					return 1;
 				} else if (getSegment().getStartTime().getTime() == sc.getSegment().getStartTime().getTime()) {
-					return 0;
+					// sources could be parsed in any order, so break ties to keep sorting stable
+					int ret = getSegment().getDataSource().getName().compareTo(sc.getSegment().getDataSource().getName());
+					if (ret != 0) {
+						return ret;
+					}
+					if (getSegment().getStartOffset() > sc.getSegment().getStartOffset()) {
+						return 1;
+					} else if (getSegment().getStartOffset() == sc.getSegment().getStartOffset()) {
+						return 0;
+					}
 				}
 				return -1;
 			} else
@@ -6,7 +6,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.Date;
 
 import org.apache.log4j.Logger;
@@ -14,7 +13,6 @@ import org.apache.log4j.Logger;
 import com.isti.traceview.TraceView;
 import com.isti.traceview.TraceViewException;
 import com.isti.traceview.processing.IstiUtilsMath;
-import com.isti.traceview.processing.RunEvalResp;
 
 import edu.sc.seis.fissuresUtil.freq.Cmplx;
 
@@ -25,7 +23,6 @@ import edu.sc.seis.fissuresUtil.freq.Cmplx;
  */
 public class Response {
 	private static Logger lg = Logger.getLogger(Response.class);
-	private static final boolean verboseDebug = false;
 	
 	String network = null;
 	String station = null;
@@ -93,21 +90,20 @@ public class Response {
 	 * @throws TraceViewException
 	 */
 	public Cmplx[] getResp(Date date, double minFreqValue, double maxFreqValue, int len) throws TraceViewException {
-		RunEvalResp evalResp = new RunEvalResp(false, verboseDebug);
-		return evalResp.generateResponse(minFreqValue, maxFreqValue, len, date, new StringReader(getContent()));
+		return ResponseCache.getInstance().getResponse(this, date, minFreqValue, maxFreqValue, len).getResp();
 	}
 
 	public double[] getRespAmp(Date date, double minFreqValue, double maxFreqValue, int len) throws TraceViewException {
-		RunEvalResp evalResp = new RunEvalResp(false, verboseDebug);
-		double[] respAmp = IstiUtilsMath.getSpectraAmplitude(evalResp.generateResponse(minFreqValue, maxFreqValue, len, date, new StringReader(getContent())));
+		ResponseCache.Evaluated evalResp = ResponseCache.getInstance().getResponse(this, date, minFreqValue, maxFreqValue, len);
+		double[] respAmp = evalResp.getRespAmp();
 		if (respAmp.length != len) {
 			throw new TraceViewException(getLocalFileName() + ": The length of the RESPONSE AMPLITUDE (" + respAmp.length + ") does not match the number of frequencies ("
 					+ len + ")");
 		}
 		// Calper = 1/calibration frequency (Frequency of sensitivity)
-		final double calper = Math.pow(evalResp.frequencyOfSensitivity, -1.0);
+		final double calper = Math.pow(evalResp.getFrequencyOfSensitivity(), -1.0);
 		// Calval = 1/overal sensitivity (Sensitivity)
-		final double calib = Math.pow(evalResp.sensitivity, -1.0);
+		final double calib = Math.pow(evalResp.getSensitivity(), -1.0);
 		if (IstiUtilsMath.calibAmpResp(respAmp, calper, calib, minFreqValue, maxFreqValue, len) != IstiUtilsMath.ISTI_UTIL_SUCCESS) {
 			throw new TraceViewException(getLocalFileName() + ": Calibration frequency is " + calper + " outside range of <" + minFreqValue + " : " + maxFreqValue
 					+ ">: continue without proper calibration");
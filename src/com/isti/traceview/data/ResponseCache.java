@@ -0,0 +1,266 @@
+package com.isti.traceview.data;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceViewException;
+import com.isti.traceview.processing.IstiUtilsMath;
+import com.isti.traceview.processing.RunEvalResp;
+
+import edu.sc.seis.fissuresUtil.freq.Cmplx;
+
+/**
+ * <p>
+ * Two-level cache of instrument responses. First level keeps RESP epochs, parsed and normalized,
+ * for each response content, so RESP text is parsed once per epoch. Second level keeps computed
+ * complex responses for epoch, frequency grid and output units, so repeated PSD, spectra and
+ * response computations for the same instrument don't evaluate stage cascade again.
+ * </p>
+ * <p>
+ * Computed responses are bounded by total count of frequencies, least recently used are dropped.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class ResponseCache {
+	private static Logger lg = Logger.getLogger(ResponseCache.class);
+
+	/**
+	 * Maximum total count of cached response frequencies
+	 */
+	public static final long MAX_FREQUENCY_COUNT = 4 * 1024 * 1024;
+
+	private static ResponseCache instance = null;
+
+	// parsed epochs by response content
+	private Map<ContentKey, List<RunEvalResp.Epoch>> epochs = new HashMap<ContentKey, List<RunEvalResp.Epoch>>();
+
+	// computed responses in access order
+	private LinkedHashMap<ResponseKey, Evaluated> responses = new LinkedHashMap<ResponseKey, Evaluated>(16, 0.75f, true);
+
+	private long frequencyCount = 0;
+
+	private long parseCount = 0;
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	/**
+	 * Computed response with calibration values
+	 */
+	public static class Evaluated {
+		private final double[] spectra;
+		private final double sensitivity;
+		private final double frequencyOfSensitivity;
+		private final int inputUnits;
+
+		Evaluated(double[] spectra, double sensitivity, double frequencyOfSensitivity, int inputUnits) {
+			this.spectra = spectra;
+			this.sensitivity = sensitivity;
+			this.frequencyOfSensitivity = frequencyOfSensitivity;
+			this.inputUnits = inputUnits;
+		}
+
+		/**
+		 * @return new array of response values
+		 */
+		public Cmplx[] getResp() {
+			return IstiUtilsMath.toCmplx(spectra);
+		}
+
+		/**
+		 * @return response amplitudes
+		 */
+		public double[] getRespAmp() {
+			return IstiUtilsMath.getSpectraAmplitude(spectra);
+		}
+
+		public double getSensitivity() {
+			return sensitivity;
+		}
+
+		public double getFrequencyOfSensitivity() {
+			return frequencyOfSensitivity;
+		}
+
+		public int getInputUnits() {
+			return inputUnits;
+		}
+	}
+
+	private ResponseCache() {
+	}
+
+	public static synchronized ResponseCache getInstance() {
+		if (instance == null) {
+			instance = new ResponseCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets computed response, parses and evaluates it if absent in cache
+	 *
+	 * @param response
+	 *            response to compute
+	 * @param date
+	 *            time to search response epoch
+	 * @param minFreqValue
+	 *            minimum requested frequency
+	 * @param maxFreqValue
+	 *            maximum requested frequency
+	 * @param len
+	 *            length of generated response array
+	 */
+	public Evaluated getResponse(Response response, Date date, double minFreqValue, double maxFreqValue, int len) throws TraceViewException {
+		RunEvalResp evalResp = new RunEvalResp(false, false);
+		RunEvalResp.Epoch epoch = getEpoch(response, date, evalResp);
+		ResponseKey key = new ResponseKey(epoch, minFreqValue, maxFreqValue, len, evalResp.getOutUnitsConvIdx());
+		synchronized (this) {
+			Evaluated ret = responses.get(key);
+			if (ret != null) {
+				hitCount++;
+				return ret;
+			}
+			missCount++;
+		}
+		Cmplx[] spectra = evalResp.generateResponse(minFreqValue, maxFreqValue, len, epoch);
+		if (spectra == null) {
+			throw new TraceViewException(response.getLocalFileName() + ": can't generate frequencies for response");
+		}
+		Evaluated ret = new Evaluated(IstiUtilsMath.toInterleaved(spectra), evalResp.sensitivity, evalResp.frequencyOfSensitivity,
+				evalResp.inputUnits);
+		synchronized (this) {
+			Evaluated previous = responses.put(key, ret);
+			if (previous != null) {
+				frequencyCount -= previous.spectra.length / 2;
+			}
+			frequencyCount += spectra.length;
+			Iterator<Evaluated> it = responses.values().iterator();
+			while (frequencyCount > MAX_FREQUENCY_COUNT && it.hasNext()) {
+				Evaluated victim = it.next();
+				if (victim != ret) {
+					it.remove();
+					frequencyCount -= victim.spectra.length / 2;
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Drops all cached epochs and responses
+	 */
+	public synchronized void clear() {
+		epochs.clear();
+		responses.clear();
+		frequencyCount = 0;
+	}
+
+	public synchronized String toString() {
+		return "ResponseCache: " + epochs.size() + " responses, " + parseCount + " epochs parsed; " + responses.size() + " computed, "
+				+ frequencyCount + " frequencies, hits " + hitCount + ", misses " + missCount;
+	}
+
+	/**
+	 * Finds parsed epoch of response for date, parses it if absent
+	 */
+	private RunEvalResp.Epoch getEpoch(Response response, Date date, RunEvalResp evalResp) throws TraceViewException {
+		if (response.getContent() == null) {
+			throw new TraceViewException(response.getLocalFileName() + ": response content is absent");
+		}
+		ContentKey key = new ContentKey(response.getLocalFileName(), response.getContent());
+		synchronized (this) {
+			List<RunEvalResp.Epoch> list = epochs.get(key);
+			if (list != null) {
+				for (RunEvalResp.Epoch epoch: list) {
+					if (epoch.contains(date)) {
+						return epoch;
+					}
+				}
+			}
+		}
+		// parsing is done outside of lock, concurrent parsing of the same epoch is harmless
+		RunEvalResp.Epoch epoch = evalResp.parseResponse(date, new StringReader(response.getContent()));
+		synchronized (this) {
+			List<RunEvalResp.Epoch> list = epochs.get(key);
+			if (list == null) {
+				list = new ArrayList<RunEvalResp.Epoch>();
+				epochs.put(key, list);
+			}
+			list.add(epoch);
+			parseCount++;
+		}
+		lg.debug("Parsed " + epoch + " of " + response.getLocalFileName());
+		return epoch;
+	}
+
+	/**
+	 * Key of response content: SNCL and RESP text
+	 */
+	private static class ContentKey {
+		private final String name;
+		private final String content;
+
+		ContentKey(String name, String content) {
+			this.name = name;
+			this.content = content;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof ContentKey) {
+				ContentKey k = (ContentKey) o;
+				return name.equals(k.name) && content.equals(k.content);
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			return name.hashCode() * 31 + content.hashCode();
+		}
+	}
+
+	/**
+	 * Key of computed response: epoch, frequency grid and units
+	 */
+	private static class ResponseKey {
+		private final RunEvalResp.Epoch epoch;
+		private final double minFreqValue;
+		private final double maxFreqValue;
+		private final int len;
+		private final int units;
+
+		ResponseKey(RunEvalResp.Epoch epoch, double minFreqValue, double maxFreqValue, int len, int units) {
+			this.epoch = epoch;
+			this.minFreqValue = minFreqValue;
+			this.maxFreqValue = maxFreqValue;
+			this.len = len;
+			this.units = units;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof ResponseKey) {
+				ResponseKey k = (ResponseKey) o;
+				return epoch == k.epoch && minFreqValue == k.minFreqValue && maxFreqValue == k.maxFreqValue && len == k.len && units == k.units;
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(minFreqValue) * 31 + Double.doubleToLongBits(maxFreqValue);
+			return (System.identityHashCode(epoch) * 31 + (int) (bits ^ (bits >>> 32))) * 31 + len * 7 + units;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.isti.traceview.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceView;
+import com.isti.traceview.TraceViewException;
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.common.TimeInterval;
+
+/**
+ * <p>
+ * Index of RESP files found in configuration directory, current directory and configured
+ * responses directory, in this priority order. Index maps SNCL to file and keeps epochs listed in
+ * file, so response lookup doesn't scan directories.
+ * </p>
+ * <p>
+ * Index is built in background, lookups wait for it. Directories are checked on each lookup, and
+ * index is rebuilt if directories list or content was changed. Loaded responses are kept in index
+ * entries and reloaded if file was modified.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class ResponseCatalog {
+	private static Logger lg = Logger.getLogger(ResponseCatalog.class);
+
+	private static ResponseCatalog instance = null;
+
+	private ExecutorService executor = null;
+
+	private Future<Index> index = null;
+
+	/**
+	 * Indexed RESP file
+	 */
+	public static class Entry {
+		private final File file;
+		private final String name;
+		private List<TimeInterval> epochs;
+		private long lastModified;
+		private Response response = null;
+
+		Entry(File file) {
+			this.file = file;
+			this.name = file.getName();
+			this.lastModified = file.lastModified();
+			this.epochs = readEpochs(file);
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * @return file name, i.e. RESP.NET.STA.LOC.CHAN
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return response epochs listed in file
+		 */
+		public synchronized List<TimeInterval> getEpochs() {
+			return epochs;
+		}
+
+		/**
+		 * @return flag if some epoch of file contains given time
+		 */
+		public synchronized boolean isCovered(Date date) {
+			for (TimeInterval epoch: epochs) {
+				if (epoch.isContain(date)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @return response loaded from file, or null if file can't be read. Response is loaded once
+		 *         and reloaded only if file was modified.
+		 */
+		public synchronized Response getResponse() {
+			long modified = file.lastModified();
+			if (response == null || modified != lastModified) {
+				if (modified != lastModified) {
+					lastModified = modified;
+					epochs = readEpochs(file);
+				}
+				response = Response.getResponse(file);
+				lg.debug("Response loaded from file: " + file);
+			}
+			return response;
+		}
+
+		public String toString() {
+			return "ResponseCatalog.Entry: " + file + ", " + epochs.size() + " epochs";
+		}
+	}
+
+	/**
+	 * Built index, isn't changed after building
+	 */
+	private static class Index {
+		private final List<String> directories;
+		private final long[] stamps;
+		private final Map<String, Entry> entries = new HashMap<String, Entry>();
+		private final List<Entry> allEntries = new ArrayList<Entry>();
+
+		Index(List<String> directories) {
+			this.directories = directories;
+			this.stamps = getStamps(directories);
+		}
+	}
+
+	private ResponseCatalog() {
+	}
+
+	public static synchronized ResponseCatalog getInstance() {
+		if (instance == null) {
+			instance = new ResponseCatalog();
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts rebuilding of index in background
+	 */
+	public synchronized void refresh() {
+		if (executor == null) {
+			executor = DaemonThreadPool.newFixedThreadPool(1, "ResponseCatalog");
+		}
+		final List<String> directories = getDirectories();
+		index = executor.submit(new Callable<Index>() {
+			public Index call() {
+				return build(directories);
+			}
+		});
+	}
+
+	/**
+	 * Finds RESP file for SNCL
+	 *
+	 * @return index entry, or null if response file isn't found
+	 */
+	public Entry getEntry(String network, String station, String location, String channel) throws TraceViewException {
+		return getIndex().entries.get("RESP." + network + "." + station + "." + location + "." + channel);
+	}
+
+	/**
+	 * @return all found RESP files, including ones hidden by files with the same name in directories
+	 *         with higher priority
+	 */
+	public List<Entry> getEntries() throws TraceViewException {
+		return Collections.unmodifiableList(getIndex().allEntries);
+	}
+
+	/**
+	 * Gets current index, rebuilds it if directories were changed
+	 */
+	private Index getIndex() throws TraceViewException {
+		Future<Index> future;
+		synchronized (this) {
+			if (index == null) {
+				refresh();
+			}
+			future = index;
+		}
+		Index ret = waitFor(future);
+		if (!ret.directories.equals(getDirectories()) || !Arrays.equals(ret.stamps, getStamps(ret.directories))) {
+			lg.debug("Response directories changed, rebuilding catalog");
+			synchronized (this) {
+				if (index == future) {
+					refresh();
+				}
+				future = index;
+			}
+			ret = waitFor(future);
+		}
+		return ret;
+	}
+
+	private static Index waitFor(Future<Index> future) throws TraceViewException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TraceViewException("Response catalog building interrupted");
+		} catch (ExecutionException e) {
+			throw new TraceViewException("Can't build response catalog: " + e.getCause());
+		}
+	}
+
+	private static Index build(List<String> directories) {
+		long start = System.currentTimeMillis();
+		Index ret = new Index(directories);
+		for (String dirname: directories) {
+			File dir = new File(dirname);
+			File[] files = dir.listFiles();
+			if (files == null) {
+				lg.error("Loading responses from " + dirname + ": is not directory");
+				continue;
+			}
+			for (File file: files) {
+				if (!file.isDirectory() && file.getName().startsWith("RESP.") && file.getName().split("\\.", -1).length >= 5) {
+					Entry entry = new Entry(file.getAbsoluteFile());
+					ret.allEntries.add(entry);
+					if (!ret.entries.containsKey(entry.getName())) {
+						ret.entries.put(entry.getName(), entry);
+					}
+				}
+			}
+		}
+		lg.debug("Response catalog built: " + ret.entries.size() + " responses, " + ret.allEntries.size() + " files, "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return ret;
+	}
+
+	/**
+	 * @return directories to search responses in priority order
+	 */
+	private static List<String> getDirectories() {
+		List<String> ret = new ArrayList<String>();
+		ret.add(TraceView.getConfiguration().getConfigFileDir());
+		ret.add("./");
+		ret.add(TraceView.getConfiguration().getResponsePath());
+		return ret;
+	}
+
+	private static long[] getStamps(List<String> directories) {
+		long[] ret = new long[directories.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = new File(directories.get(i)).lastModified();
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads epochs from blockettes 52 of RESP file
+	 */
+	private static List<TimeInterval> readEpochs(File file) {
+		List<TimeInterval> ret = new ArrayList<TimeInterval>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader(file));
+			String line = null;
+			Date start = null;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("B052F22")) {
+					start = parseEpochDate(line);
+				} else if (line.startsWith("B052F23") && start != null) {
+					Date end = parseEpochDate(line);
+					ret.add(new TimeInterval(start.getTime(), end == null ? Long.MAX_VALUE : end.getTime()));
+					start = null;
+				}
+			}
+		} catch (IOException e) {
+			lg.error("Can't read response epochs from " + file + ": " + e);
+		} finally {
+			try {
+				if (reader != null) {
+					reader.close();
+				}
+			} catch (IOException e) {
+				// do nothing
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return date from blockette field, or null if date is absent, as "No Ending Time"
+	 */
+	private static Date parseEpochDate(String line) {
+		int pos = line.indexOf(':');
+		if (pos < 0) {
+			return null;
+		}
+		String value = line.substring(pos + 1).trim();
+		if (value.length() == 0 || !Character.isDigit(value.charAt(0))) {
+			return null;
+		}
+		return TimeInterval.parseDate(value, TimeInterval.DateFormatType.DATE_FORMAT_MIDDLE);
+	}
+}
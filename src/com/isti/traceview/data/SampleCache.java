@@ -0,0 +1,410 @@
+package com.isti.traceview.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceView;
+import com.isti.traceview.common.TimeInterval;
+
+/**
+ * <p>
+ * Global cache of loaded segments samples, bounded by size in bytes. When loaded data exceed
+ * configured size, samples of least recently used segments are dropped, and loaded again from data
+ * source on next access, see {@link Segment#getData()}. So archives bigger then available memory
+ * can be browsed.
+ * </p>
+ * <p>
+ * Segments inside pinned time ranges of data providers, usually visible ranges, are never evicted.
+ * Segments mapped from temporary storage aren't tracked by cache, their data are read directly
+ * from dump file pages.
+ * </p>
+ * <p>
+ * Segments too big to be kept in cache entirely are read by pages, see {@link Segment#deferLoad()}.
+ * Pages are cached and evicted in the same way as whole segments data, pinned are only pages
+ * inside pinned time ranges.
+ * </p>
+ * <p>
+ * Filtered segments data, kept by {@link RawDataProvider} by pages of {@link Segment#PAGE_SIZE}
+ * samples, are bounded separately in the same way.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class SampleCache {
+	private static Logger lg = Logger.getLogger(SampleCache.class);
+
+	/**
+	 * Segments which data are bigger then this part of cache size are read by pages
+	 */
+	public static final int PAGED_SEGMENT_PART = 4;
+
+	private static SampleCache instance = null;
+
+	// segments data and pages in access order, values are sizes in bytes
+	private LinkedHashMap<Entry, Long> segments = new LinkedHashMap<Entry, Long>(16, 0.75f, true);
+
+	// pages of filtered segments data in access order, values are sizes in bytes
+	private LinkedHashMap<Entry, Long> filteredPages = new LinkedHashMap<Entry, Long>(16, 0.75f, true);
+
+	private Map<RawDataProvider, TimeInterval> pins = new HashMap<RawDataProvider, TimeInterval>();
+
+	private long size = 0;
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	private long evictionCount = 0;
+
+	private long filteredSize = 0;
+
+	private long filterHitCount = 0;
+
+	private long filterMissCount = 0;
+
+	private long filterEvictionCount = 0;
+
+	private SampleCache() {
+	}
+
+	public static synchronized SampleCache getInstance() {
+		if (instance == null) {
+			instance = new SampleCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds segment with just loaded data to cache, evicts least recently used segments if cache size
+	 * is exceeded
+	 */
+	public void add(Segment segment) {
+		put(new Entry(segment, -1), segment.getSampleCount() * 4L);
+	}
+
+	/**
+	 * Adds just loaded page of segment samples to cache, evicts least recently used data if cache
+	 * size is exceeded
+	 */
+	void addPage(Segment segment, int page) {
+		put(new Entry(segment, page), Math.min(Segment.PAGE_SIZE, segment.getSampleCount() - page * Segment.PAGE_SIZE) * 4L);
+	}
+
+	/**
+	 * Removes segment from cache without dropping it's data
+	 */
+	public synchronized void remove(Segment segment) {
+		Long previous = segments.remove(new Entry(segment, -1));
+		if (previous != null) {
+			size -= previous;
+		}
+	}
+
+	/**
+	 * Removes page of segment samples from cache without dropping it
+	 */
+	synchronized void removePage(Segment segment, int page) {
+		Long previous = segments.remove(new Entry(segment, page));
+		if (previous != null) {
+			size -= previous;
+		}
+	}
+
+	/**
+	 * Marks access to loaded segment data
+	 */
+	synchronized void hit(Segment segment) {
+		if (segments.get(new Entry(segment, -1)) != null) {
+			hitCount++;
+		}
+	}
+
+	/**
+	 * Marks access to cached page of segment samples
+	 */
+	synchronized void hitPage(Segment segment, int page) {
+		if (segments.get(new Entry(segment, page)) != null) {
+			hitCount++;
+		}
+	}
+
+	/**
+	 * @return true if segment is too big to keep it's whole data in cache and data source can read
+	 *         it's samples by pages
+	 */
+	public boolean isPaged(Segment segment) {
+		return segment.getDataSource() instanceof IRangeSource && isTooBig(segment.getSampleCount());
+	}
+
+	/**
+	 * @return true if samples are too many to keep them in cache at once with data of other
+	 *         segments
+	 */
+	boolean isTooBig(long sampleCount) {
+		long maxSize = getMaxSize();
+		return maxSize > 0 && sampleCount * 4L > maxSize / PAGED_SEGMENT_PART;
+	}
+
+	/**
+	 * Marks access to evicted segment data, segment should be added again after reloading
+	 */
+	synchronized void miss(Segment segment) {
+		missCount++;
+	}
+
+	/**
+	 * Adds size of just computed page of filtered segment data, drops least recently used filtered
+	 * pages if filtered data size is exceeded
+	 * 
+	 * @param segment
+	 *            segment which filtered data are kept
+	 * @param page
+	 *            page number
+	 * @param bytes
+	 *            size of page filtered by all filters
+	 */
+	void addFiltered(Segment segment, int page, long bytes) {
+		List<Entry> victims = null;
+		synchronized (this) {
+			Entry added = new Entry(segment, page);
+			Long previous = filteredPages.put(added, bytes);
+			if (previous != null) {
+				filteredSize -= previous;
+			}
+			filteredSize += bytes;
+			long maxSize = getMaxFilteredSize();
+			if (maxSize > 0 && filteredSize > maxSize) {
+				victims = new ArrayList<Entry>();
+				Iterator<Map.Entry<Entry, Long>> it = filteredPages.entrySet().iterator();
+				while (filteredSize > maxSize && it.hasNext()) {
+					Map.Entry<Entry, Long> me = it.next();
+					Entry victim = me.getKey();
+					if (!victim.equals(added) && !isPinned(victim)) {
+						it.remove();
+						filteredSize -= me.getValue();
+						filterEvictionCount++;
+						victims.add(victim);
+					}
+				}
+			}
+		}
+		if (victims != null) {
+			for (Entry victim: victims) {
+				victim.segment.getRawDataProvider().dropFilteredPage(victim.segment, victim.page);
+			}
+			lg.debug("Evicted " + victims.size() + " filtered pages, " + this);
+		}
+	}
+
+	/**
+	 * Removes page of filtered segment data from accounting
+	 */
+	synchronized void removeFiltered(Segment segment, int page) {
+		Long previous = filteredPages.remove(new Entry(segment, page));
+		if (previous != null) {
+			filteredSize -= previous;
+		}
+	}
+
+	/**
+	 * Marks access to page of filtered segment data found in cache
+	 */
+	synchronized void filterHit(Segment segment, int page) {
+		filteredPages.get(new Entry(segment, page));
+		filterHitCount++;
+	}
+
+	/**
+	 * Marks access to page of filtered segment data which should be computed
+	 */
+	synchronized void filterMiss(Segment segment, int page) {
+		filterMissCount++;
+	}
+
+	/**
+	 * Protects data provider's segments inside time range from eviction, replaces previous pinned
+	 * range of this provider
+	 */
+	public synchronized void pin(RawDataProvider rdp, TimeInterval ti) {
+		pins.put(rdp, ti);
+	}
+
+	/**
+	 * Removes eviction protection from data provider's segments
+	 */
+	public synchronized void unpin(RawDataProvider rdp) {
+		pins.remove(rdp);
+	}
+
+	/**
+	 * @return total size of cached samples, in bytes
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return count of accesses to segment data found in cache
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * @return count of accesses to evicted segment data, which caused reloading
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * @return count of evicted segments and pages
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * @return total size of cached filtered data, in bytes
+	 */
+	public synchronized long getFilteredSize() {
+		return filteredSize;
+	}
+
+	/**
+	 * @return count of accesses to filtered pages found in cache
+	 */
+	public synchronized long getFilterHitCount() {
+		return filterHitCount;
+	}
+
+	/**
+	 * @return count of accesses to filtered pages which caused filtering
+	 */
+	public synchronized long getFilterMissCount() {
+		return filterMissCount;
+	}
+
+	/**
+	 * @return count of evicted filtered pages
+	 */
+	public synchronized long getFilterEvictionCount() {
+		return filterEvictionCount;
+	}
+
+	public synchronized String toString() {
+		return "SampleCache: " + segments.size() + " segments and pages, size " + size + " of " + getMaxSize() + " bytes, hits " + hitCount
+				+ ", misses " + missCount + ", evictions " + evictionCount + "; filtered " + filteredPages.size() + " pages, size "
+				+ filteredSize + " of " + getMaxFilteredSize() + " bytes, hits " + filterHitCount + ", misses " + filterMissCount
+				+ ", evictions " + filterEvictionCount;
+	}
+
+	private boolean isPinned(Segment segment) {
+		TimeInterval ti = pins.get(segment.getRawDataProvider());
+		return ti != null && ti.isIntersect(new TimeInterval(segment.getStartTime(), segment.getEndTime()));
+	}
+
+	private boolean isPinned(Entry entry) {
+		if (entry.page < 0) {
+			return isPinned(entry.segment);
+		}
+		TimeInterval ti = pins.get(entry.segment.getRawDataProvider());
+		if (ti == null) {
+			return false;
+		}
+		long start = entry.segment.getStartTime().getTime();
+		double sampleRate = entry.segment.getSampleRate();
+		return ti.isIntersect(new TimeInterval((long) (start + entry.page * Segment.PAGE_SIZE * sampleRate), (long) (start
+				+ (entry.page + 1) * Segment.PAGE_SIZE * sampleRate)));
+	}
+
+	/**
+	 * Adds cached data, evicts least recently used data if cache size is exceeded
+	 */
+	private void put(Entry entry, long bytes) {
+		List<Entry> victims = null;
+		synchronized (this) {
+			Long previous = segments.put(entry, bytes);
+			if (previous != null) {
+				size -= previous;
+			}
+			size += bytes;
+			long maxSize = getMaxSize();
+			if (maxSize > 0 && size > maxSize) {
+				victims = new ArrayList<Entry>();
+				Iterator<Map.Entry<Entry, Long>> it = segments.entrySet().iterator();
+				while (size > maxSize && it.hasNext()) {
+					Map.Entry<Entry, Long> me = it.next();
+					Entry victim = me.getKey();
+					if (!victim.equals(entry) && !isPinned(victim)) {
+						it.remove();
+						size -= me.getValue();
+						evictionCount++;
+						victims.add(victim);
+					}
+				}
+			}
+		}
+		// data are evicted outside of cache lock, segment calls cache under own lock
+		if (victims != null) {
+			for (Entry victim: victims) {
+				if (victim.page < 0) {
+					victim.segment.evict();
+				} else {
+					victim.segment.evictPage(victim.page);
+				}
+			}
+			lg.debug("Evicted " + victims.size() + " segments and pages, " + this);
+		}
+	}
+
+	/**
+	 * Cached data: whole data of segment, or page of segment samples
+	 */
+	private static class Entry {
+		private final Segment segment;
+		// page number, -1 for whole segment data
+		private final int page;
+
+		Entry(Segment segment, int page) {
+			this.segment = segment;
+			this.page = page;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Entry) {
+				Entry e = (Entry) o;
+				return segment == e.segment && page == e.page;
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			return System.identityHashCode(segment) * 31 + page;
+		}
+	}
+
+	private static long getMaxSize() {
+		if (TraceView.getConfiguration() == null) {
+			return 0;
+		} else {
+			return TraceView.getConfiguration().getSampleCacheSize();
+		}
+	}
+
+	private static long getMaxFilteredSize() {
+		if (TraceView.getConfiguration() == null) {
+			return 0;
+		} else {
+			return TraceView.getConfiguration().getFilterCacheSize();
+		}
+	}
+}
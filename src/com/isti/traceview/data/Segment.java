@@ -8,12 +8,20 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.apache.log4j.Logger;
 
+import com.isti.traceview.TraceView;
+import com.isti.traceview.common.Configuration;
 import com.isti.traceview.common.TimeInterval;
 
 /**
@@ -30,11 +38,24 @@ public class Segment implements Externalizable, Cloneable {
 	 */
 	private static double gapTolerance = 1.0;
 
+	/**
+	 * Count of samples in page of segment which samples are read by pages, see
+	 * {@link #deferLoad()}
+	 */
+	public static final int PAGE_SIZE = 65536;
+
 	/**
 	 * @uml.property name="data" readOnly="true"
 	 */
 	private int[] data = null;
 
+	/**
+	 * Samples storage outside of java heap, used instead of data if configured
+	 * 
+	 * @see Configuration.SampleStorage
+	 */
+	private IntBuffer buffer = null;
+
 	private int currentPos = 0;
 
 	/**
@@ -63,11 +84,6 @@ public class Segment implements Externalizable, Cloneable {
 
 	private ISource dataSource;
 
-	/**
-	 * Offset of this segment in trace data serialized temporary file, if it exist
-	 */
-	private long startOffsetSerial;
-
 	/**
 	 * Maximal data value in segment
 	 * 
@@ -104,11 +120,38 @@ public class Segment implements Externalizable, Cloneable {
 	// map of time-offset pairs for blocks to quick find block by time
 	private SortedMap<Long, Long> blockMap = null;
 
-	private transient BufferedRandomAccessFile dataStream = null;
+	// indexes of first samples and offsets of blocks, in samples order, to quick find block by sample
+	private int[] blockSampleIndexes = null;
+	private long[] blockOffsets = null;
+	private int blockCount = 0;
 
     // MTH: Use to combine segments read with -t and -d within a single PlotDataProvider
     private boolean isLoaded = false;
 
+	// min/max summary of data, built on demand, detached from samples if they aren't in memory
+	private MinMaxPyramid pyramid = null;
+
+	// completes when segment data are loaded from data source
+	private transient CompletableFuture<Segment> loadFuture = null;
+
+	// completes when summary of not loaded segment is read, null if summary isn't being read
+	private transient CompletableFuture<MinMaxPyramid> summaryFuture = null;
+
+	// data were dropped by SampleCache and should be reloaded on access
+	private transient boolean evicted = false;
+
+	// samples are view of mapped file, they don't occupy memory and aren't tracked by SampleCache
+	private transient boolean mapped = false;
+
+	// pages of samples read from range source while whole data aren't loaded, absent pages are null
+	private transient int[][] pages = null;
+
+	// pages being read from range source, by page number
+	private transient Map<Integer, CompletableFuture<int[]>> pageFutures = null;
+
+	// completes when evicted data are reloaded, null if data aren't being reloaded
+	private transient CompletableFuture<Segment> reloadFuture = null;
+
 	/**
 	 * @param dataSource
 	 *            data source containing this segment
@@ -160,7 +203,7 @@ public class Segment implements Externalizable, Cloneable {
 	 * @return segment data end time
 	 */
 	public Date getEndTime() {
-		long time = new Double((sampleRate * sampleCount)).longValue();
+		long time = (long) (sampleRate * sampleCount);
 		return new Date(getStartTime().getTime() + time);
 	}
 
@@ -225,52 +268,17 @@ public class Segment implements Externalizable, Cloneable {
 		this.rdp = rawDataProvider;
 	}
 
-	/**
-     * MTH: Currently not using this since serialized data is being
-     *      read in dumpData() --> InitCache --> Segment.getData()
-     *
-	 * Load the int[] data from a .DATA file into this Segment data[]
-     *      Needed so that -T will work with existing serialized data
-	 */
-	public int[] loadDataInt() {
-        int[] ret = null;
-		if (dataStream == null) {
-            System.out.println("== Segment.loadDataInt() ERROR: dataStream == null!! --> Exiting");
-            System.exit(0);
-		} else {
-			ret = new int[sampleCount];
-			try {
-				dataStream.seek(startOffsetSerial);
-				for (int i = 0; i < sampleCount; i++) {
-					ret[i] = dataStream.readInt();
-				}
-			} catch (IOException e) {
-				lg.error(e);
-			}
-            // Copy into this Segment's int[] data:
-            data = new int[sampleCount];
-            System.arraycopy(ret, 0, data, 0, sampleCount);
-		}
-	    return ret;
-	}
-
-
 	/**
 	 * Reads all data from loaded segment
 	 */
 	public SegmentData getData() {
-		if (dataStream == null) {
-			return new SegmentData(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, data);
+		IntBuffer samples = acquire();
+		if (samples == null || samples.hasArray()) {
+			return new SegmentData(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber,
+					samples == null ? null : samples.array());
 		} else {
-			int[] ret = new int[sampleCount];
-			try {
-				dataStream.seek(startOffsetSerial);
-				for (int i = 0; i < sampleCount; i++) {
-					ret[i] = dataStream.readInt();
-				}
-			} catch (IOException e) {
-				lg.error(e);
-			}
+			int[] ret = new int[samples.limit()];
+			samples.get(ret);
 			return new SegmentData(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, ret);
 		}
 	}
@@ -283,7 +291,8 @@ public class Segment implements Externalizable, Cloneable {
 	}
 
 	/**
-	 * returns array of data in requested time range, from loaded segment.
+	 * returns array of data in requested time range, from loaded segment. If segment data aren't
+	 * in memory and data source is {@link IRangeSource}, only requested range is read from source.
 	 * 
 	 * @param start
 	 *            start time in milliseconds
@@ -291,110 +300,301 @@ public class Segment implements Externalizable, Cloneable {
 	 *            end time in milliseconds
 	 */
 	public SegmentData getData(double start, double end) {
+		return getData(start, end, null, 0);
+	}
+
+	/**
+	 * Returns range of samples array aligned with this segment, for example filtered segment data.
+	 * Range is computed the same way as in {@link #getData(double, double)}.
+	 * 
+	 * @param ti
+	 *            requested time range
+	 * @param samples
+	 *            buffer of values which correspond to segment samples, it should contain requested
+	 *            range and neighbor samples, it's position isn't changed
+	 * @param base
+	 *            index of segment sample which corresponds to first value in samples buffer
+	 */
+	public SegmentData getData(TimeInterval ti, IntBuffer samples, int base) {
+		return getData(ti.getStart(), ti.getEnd(), samples.duplicate(), base);
+	}
+
+	/**
+	 * @param samples
+	 *            external samples to read instead of segment data, or null
+	 * @param base
+	 *            index of segment sample which corresponds to first value in external samples
+	 */
+	private SegmentData getData(double start, double end, IntBuffer samples, int base) {
 		// lg.debug("startTime=" + startTime +", endTime=" + getEndTime().getTime());
-		int[] ret = null;
 		int previous = Integer.MAX_VALUE;
 		int next = Integer.MAX_VALUE;
+		int[] range = getSampleRange(start, end);
+		int startIndex = range[0];
+		int endIndex = range[1];
+		if (samples == null) {
+			if (!isResident() && dataSource instanceof IRangeSource) {
+				// reading only pages with requested range and neighbor samples, without loading of whole segment
+				base = Math.max(0, startIndex - 1);
+				samples = IntBuffer.wrap(getPagedData(base, Math.min(sampleCount, endIndex + 1)));
+			} else {
+				samples = acquire();
+			}
+		}
+		int[] ret = new int[endIndex - startIndex];
+		lg.debug("Getting segment data: startindex " + startIndex + ", endindex " + endIndex);
+		samples.position(startIndex - base);
+		samples.get(ret);
+		if(startIndex>0) previous = samples.get(startIndex-1-base);
+		if (endIndex<sampleCount) next = samples.get(endIndex-base);
+		return new SegmentData((long) (startTime + startIndex * sampleRate), sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, previous, next, ret);
+	}
+
+	/**
+	 * Computes range of samples which {@link #getData(double, double)} returns, at least one sample
+	 * if segment isn't empty
+	 * 
+	 * @param start
+	 *            start time in milliseconds
+	 * @param end
+	 *            end time in milliseconds
+	 * @return index of first sample and index after last sample
+	 */
+	int[] getSampleRange(double start, double end) {
 		double startt = Math.max(startTime, start);
 		double endt = Math.min(getEndTime().getTime(), end);
-		int startIndex = new Double((startt - startTime) / sampleRate).intValue();
-		//int startIndex = new Long(Math.round(new Double((startt - startTime) / sampleRate))).intValue();
-		int endIndex = new Double((endt - startTime) / sampleRate).intValue();
-		if (startIndex != endIndex) {
-			ret = new int[endIndex - startIndex];
-			lg.debug("Getting segment data: startindex " + startIndex + ", endindex " + endIndex);
-			if (dataStream == null) {
-                lg.debug("== Segment.getData(): dataStream == null --> Get points from RAM data[] " +
-                "startTime=" + startTime + " endTime=" + getEndTime().getTime());
-				// we use internal data in the ram
-				for (int i = startIndex; i < endIndex; i++) {
-					ret[i - startIndex] = data[i];
+		int startIndex = Math.max(0, Math.min((int) ((startt - startTime) / sampleRate), sampleCount - 1));
+		int endIndex = Math.min(Math.max((int) ((endt - startTime) / sampleRate), startIndex + 1), sampleCount);
+		return new int[] { startIndex, endIndex };
+	}
+
+	/**
+	 * @return read-only view of all loaded samples, samples aren't copied. Position of returned
+	 *         buffer is 0 and limit is count of loaded samples.
+	 */
+	public IntBuffer getDataBuffer() {
+		IntBuffer ret = acquire();
+		if (ret == null) {
+			ret = IntBuffer.allocate(0);
+		} else {
+			ret.limit(Math.min(currentPos, ret.capacity()));
+		}
+		return ret.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Loads segment data from memory from data source
+	 */
+	public void load() {
+//System.out.format("== Segment.load() --> dataSource.load(this): dataSource=[%s]\n", dataSource);
+		try {
+			dataSource.load(this);
+		} catch (RuntimeException e) {
+			getLoadFuture().completeExceptionally(e);
+			throw e;
+		}
+		dropPages();
+		if (!mapped) {
+			SampleCache.getInstance().add(this);
+		}
+		getLoadFuture().complete(this);
+	}
+
+	/**
+	 * Returns min/max summary of segment data. If samples aren't in memory, summary is read from
+	 * {@link ISummarySource}, or is computed from pages of {@link IRangeSource} without loading of
+	 * whole data. Such summary is detached from samples, see {@link MinMaxPyramid#detach()}.
+	 * 
+	 * @return min/max summary of segment data, or null if data aren't completely loaded
+	 */
+	public MinMaxPyramid getPyramid() {
+		synchronized (this) {
+			if (pyramid != null && (pyramid.hasData() || !isResident())) {
+				return pyramid;
+			}
+		}
+		if (!isResident() && (dataSource instanceof ISummarySource || dataSource instanceof IRangeSource)) {
+			MinMaxPyramid ret = readSummary();
+			if (ret != null) {
+				return ret;
+			}
+		}
+		IntBuffer samples = acquire();
+		synchronized (this) {
+			// samples are complete if they fill whole storage, and weren't evicted after acquire()
+			if ((pyramid == null || !pyramid.hasData()) && samples != null && currentPos == samples.capacity() && currentPos > 0) {
+				pyramid = new MinMaxPyramid(samples);
+			}
+			return pyramid;
+		}
+	}
+
+	/**
+	 * Reads detached summary of not loaded segment, concurrent callers wait for the same reading
+	 * 
+	 * @return summary, or null if data source can't provide it
+	 */
+	private MinMaxPyramid readSummary() {
+		CompletableFuture<MinMaxPyramid> future = null;
+		boolean reading = false;
+		synchronized (this) {
+			if (summaryFuture == null) {
+				summaryFuture = new CompletableFuture<MinMaxPyramid>();
+				reading = true;
+			}
+			future = summaryFuture;
+		}
+		if (reading) {
+			try {
+				MinMaxPyramid summary = null;
+				if (dataSource instanceof ISummarySource) {
+					summary = ((ISummarySource) dataSource).loadSummary(this);
 				}
-				if(startIndex>0) previous = data[startIndex-1];
-				if (endIndex<sampleCount) next = data[endIndex];
-			} else {
-				// we use serialized data file
-                lg.debug("== Segment.getData(): dataStream is NOT null --> Load points from dataStream.readInt() to data[] " +
-                "startTime=" + startTime + " endTime=" + getEndTime().getTime());
-				try {
-					if(startIndex>0){
-						dataStream.seek(startOffsetSerial + startIndex * 4 - 4);
-						previous = dataStream.readInt();
+				if (summary == null && dataSource instanceof IRangeSource) {
+					summary = buildPagedSummary();
+				}
+				synchronized (this) {
+					if (pyramid == null) {
+						pyramid = summary;
 					} else {
-						dataStream.seek(startOffsetSerial);
-					}					
-					for (int i = startIndex; i < endIndex; i++) {
-						ret[i - startIndex] = dataStream.readInt();
+						summary = pyramid;
 					}
-					if(endIndex<sampleCount){
-						next = dataStream.readInt(); 
-					}
-            // MTH: Use this if we are in the -T mode and we need to load existing serialized data (from .DATA)
-                    if (com.isti.traceview.TraceView.getConfiguration().getDumpData()) {
-                        lg.debug("== Segment.getData(): We are in -T dataDump mode --> read this Segment from dataStream");
-                        if (data == null) {
-                            if (ret.length != sampleCount) {
-          lg.debug("== Segment.getData(): Warning: sampleCount != data.length");
-          System.out.format("== Segment.getData(): Warning: sampleCount=[%d pnts] BUT data.length=[%d pnts]\n", sampleCount, ret.length);
-                            }
-                            //data = new int[sampleCount];
-                            data = new int[ret.length];
-                            System.arraycopy(ret, 0, data, 0, ret.length);
-                        }
-                        else {
-        System.out.println("== Segment.getData(): We are in -T dataDump mode but data IS NOT null!!!");
-                        }
-                    }
-				} catch (IOException e) {
-					lg.error(e);
+					summaryFuture = null;
+				}
+				future.complete(summary);
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					summaryFuture = null;
 				}
+				future.completeExceptionally(e);
+				throw e;
 			}
-		} else {
-			if (dataStream == null) {
-				ret = new int[1];				
-				ret[0] = data[startIndex];
-				if(startIndex>0) previous = data[startIndex-1];
-				if (endIndex<sampleCount) next = data[endIndex];
-			} else {
-				try {
-					if(startIndex>0){
-						dataStream.seek(startOffsetSerial + startIndex * 4 - 4);
-						previous = dataStream.readInt();
-					} else {
-						dataStream.seek(startOffsetSerial);
-					}	
-					ret[0] = dataStream.readInt();
-					if(endIndex<sampleCount){
-						next = dataStream.readInt(); 
-					}
-				} catch (IOException e) {
-					lg.error(e);
+		}
+		return join(future);
+	}
+
+	/**
+	 * Computes summary reading segment by pages, pages which aren't in memory are read, but not kept
+	 */
+	private MinMaxPyramid buildPagedSummary() {
+		lg.debug("Computing summary by pages " + this);
+		MinMaxPyramid.Builder builder = new MinMaxPyramid.Builder(sampleCount);
+		for (int first = 0; first < sampleCount; first += PAGE_SIZE) {
+			int[] samples = null;
+			synchronized (this) {
+				if (pages != null) {
+					samples = pages[first / PAGE_SIZE];
 				}
 			}
+			if (samples == null) {
+				samples = ((IRangeSource) dataSource).load(this, first, Math.min(PAGE_SIZE, sampleCount - first));
+			}
+			builder.add(samples);
 		}
-		return new SegmentData(new Double(startTime + startIndex*sampleRate).longValue(), sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, previous, next, ret);
+		MinMaxPyramid ret = builder.build();
+		if (sampleCount > 0) {
+			double[] acc = { Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0.0, 0.0 };
+			ret.aggregate(0, sampleCount, acc);
+			synchronized (this) {
+				setMaxValue((int) acc[0]);
+				setMinValue((int) acc[1]);
+			}
+		}
+		return ret;
 	}
 
 	/**
-	 * Loads segment data from memory from data source
+	 * Waits for future, exception of computation is thrown as is
 	 */
-	public void load() {
-//System.out.format("== Segment.load() --> dataSource.load(this): dataSource=[%s]\n", dataSource);
-		dataSource.load(this);
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return future which completes when segment data are loaded from data source
+	 */
+	public synchronized CompletableFuture<Segment> getLoadFuture() {
+		if (loadFuture == null) {
+			loadFuture = new CompletableFuture<Segment>();
+			if (isLoaded) {
+				loadFuture.complete(this);
+			}
+		}
+		return loadFuture;
 	}
 
 	/**
 	 * Adds sample to the end of segment data
 	 */
 	public synchronized void addDataPoint(int value) {
-		if(data==null){
-			data = new int[sampleCount];
+		if (data == null && buffer == null) {
+			allocate(sampleCount);
+		}
+		if (buffer == null) {
+			data[currentPos++] = value;
+		} else {
+			buffer.put(currentPos++, value);
 		}
-		data[currentPos++] = value;
 		setMaxValue(value);
 		setMinValue(value);
 	}
 
+	/**
+	 * Sets whole segment data at once, array is used as segment storage without copying if samples
+	 * are kept in java heap, otherwise array is copied to off-heap storage
+	 * 
+	 * @param data
+	 *            array of segment samples
+	 * @param minValue
+	 *            minimal value in data
+	 * @param maxValue
+	 *            maximal value in data
+	 */
+	public synchronized void setData(int[] data, int minValue, int maxValue) {
+		if (TraceView.getConfiguration() == null
+				|| TraceView.getConfiguration().getSampleStorage() == Configuration.SampleStorage.HEAP) {
+			this.data = data;
+			buffer = null;
+		} else {
+			store(data, data.length);
+		}
+		mapped = false;
+		pyramid = null;
+		currentPos = data.length;
+		setMaxValue(maxValue);
+		setMinValue(minValue);
+	}
+
+	/**
+	 * Sets whole segment data as view of external storage, for example of mapped file. Samples
+	 * aren't copied, ranges requested by {@link #getData(double, double)} are read directly from
+	 * storage, and several threads can read it concurrently.
+	 * 
+	 * @param samples
+	 *            read-only buffer of segment samples between position 0 and limit
+	 * @param minValue
+	 *            minimal value in data
+	 * @param maxValue
+	 *            maximal value in data
+	 */
+	synchronized void setData(IntBuffer samples, int minValue, int maxValue) {
+		SampleCache.getInstance().remove(this);
+		data = null;
+		buffer = samples;
+		mapped = true;
+		pyramid = null;
+		currentPos = samples.limit();
+		setMaxValue(maxValue);
+		setMinValue(minValue);
+	}
+
 	/**
 	 * Getter of the property <tt>sampleRate</tt>
 	 * 
@@ -436,11 +636,25 @@ public class Segment implements Externalizable, Cloneable {
 	 * Clears segment data
 	 */
 	public void drop() {
-		for (int i = 0; i < currentPos; i++) {
-			data[i] = 0;
+		SampleCache.getInstance().remove(this);
+		dropPages();
+		if (data != null) {
+			for (int i = 0; i < currentPos; i++) {
+				data[i] = 0;
+			}
 		}
 		data = null;
+		// off-heap memory is freed when buffer is collected
+		buffer = null;
 		currentPos = 0;
+		synchronized (this) {
+			evicted = false;
+			mapped = false;
+			pyramid = null;
+			if (loadFuture != null && loadFuture.isDone()) {
+				loadFuture = null;
+			}
+		}
 	}
 
 	/**
@@ -489,12 +703,56 @@ public class Segment implements Externalizable, Cloneable {
 		}
 	}
 	
-	public void addBlockDescription(long startTime, long offset){
+	public synchronized void addBlockDescription(long startTime, long offset){
 		if(blockMap == null){
 			blockMap = new TreeMap<Long, Long>();
 		}
 		blockMap.put(startTime, offset);
 	}
+
+	/**
+	 * Adds offset of data block to find block by sample index, blocks should be added in order of
+	 * samples
+	 * 
+	 * @param sampleIndex
+	 *            index of block's first sample in the segment
+	 * @param offset
+	 *            block offset in data source
+	 */
+	public synchronized void addBlockOffset(int sampleIndex, long offset) {
+		if (blockCount > 0 && sampleIndex <= blockSampleIndexes[blockCount - 1]) {
+			// block is already known
+			return;
+		}
+		if (blockSampleIndexes == null || blockCount == blockSampleIndexes.length) {
+			int size = blockCount == 0 ? 16 : blockCount * 2;
+			blockSampleIndexes = blockSampleIndexes == null ? new int[size] : Arrays.copyOf(blockSampleIndexes, size);
+			blockOffsets = blockOffsets == null ? new long[size] : Arrays.copyOf(blockOffsets, size);
+		}
+		blockSampleIndexes[blockCount] = sampleIndex;
+		blockOffsets[blockCount] = offset;
+		blockCount++;
+	}
+
+	/**
+	 * Finds data block containing sample with given index, using descriptions added by
+	 * {@link #addBlockOffset(int, long)}
+	 * 
+	 * @param sampleIndex
+	 *            index of sample in the segment
+	 * @return array of index of block's first sample and block offset, or null if blocks of segment
+	 *         are unknown
+	 */
+	public synchronized long[] findBlock(int sampleIndex) {
+		if (blockCount == 0 || blockSampleIndexes[0] != 0) {
+			return null;
+		}
+		int pos = Arrays.binarySearch(blockSampleIndexes, 0, blockCount, sampleIndex);
+		if (pos < 0) {
+			pos = Math.max(0, -pos - 2);
+		}
+		return new long[] { blockSampleIndexes[pos], blockOffsets[pos] };
+	}
 	
 	public String getBlockHeaderText(long time){
 		if(blockMap != null){
@@ -509,26 +767,13 @@ public class Segment implements Externalizable, Cloneable {
 		return "Segment: startTime "
 				+ TimeInterval.formatDate(new Date(startTime), TimeInterval.DateFormatType.DATE_FORMAT_NORMAL)
 				+ ", endTime "
-				+ TimeInterval.formatDate(new Date(new Double(startTime + sampleRate * sampleCount).longValue()),
+				+ TimeInterval.formatDate(new Date((long) (startTime + sampleRate * sampleCount)),
 						TimeInterval.DateFormatType.DATE_FORMAT_NORMAL) + ", sampleRate " + sampleRate + ", sampleCount " + sampleCount
 				+ ", startOffset " + startOffset + ", maxValue " + maxValue + ", minValue " + minValue + ", rdpNumber " + sourceSerialNumber
 				+ ", serialNumber " + channelSerialNumber + ", isLoaded=" + isLoaded + ";";
 				//+ ", serialNumber " + channelSerialNumber + ";";
 	}
 
-	/**
-	 * Sets data stream to serialize this segment
-	 * 
-	 * @param dataStream
-	 */
-	public void setDataStream(BufferedRandomAccessFile dataStream) {
-		this.dataStream = dataStream;
-	}
-    // MTH:
-	public BufferedRandomAccessFile getDataStream() {
-		return dataStream;
-	}
-
 	/**
 	 * Special deserialization handler
 	 * 
@@ -547,16 +792,17 @@ public class Segment implements Externalizable, Cloneable {
 		startOffset = in.readLong();
 		maxValue = in.readInt();
 		minValue = in.readInt();
-		startOffsetSerial = in.readLong();
 		sourceSerialNumber = in.readInt();
 		channelSerialNumber = in.readInt();
 		continueAreaNumber = in.readInt();
-
-		// we don't load serialized channel data at start time - we do it when we need it
-		//data = new int[sampleCount];
-		//for (int i = 0; i < sampleCount; i++) {
-		//data[i] = inData.readInt();
-		//MTH: This should be data[i] = dataStream.readInt();
+		int count = in.readInt();
+		if (count > 0) {
+			int[] samples = new int[count];
+			for (int i = 0; i < count; i++) {
+				samples[i] = in.readInt();
+			}
+			store(samples, count);
+		}
 
         lg.debug("== Segment readExternal() - Exit: Deserialized " + this);
 	}
@@ -574,7 +820,6 @@ public class Segment implements Externalizable, Cloneable {
         lg.debug("    Segment:" + this.toString() );
         lg.debug("    Segment: ObjectOutputStream:" + out.toString() );
         lg.debug("    Segment: dataSource:"  + dataSource );
-        lg.debug("    Segment: dataStream:"  + dataStream );
         lg.debug("    Segment: sampleCount:" + sampleCount );
 
 		out.writeObject(dataSource);
@@ -585,12 +830,14 @@ public class Segment implements Externalizable, Cloneable {
 		out.writeLong(startOffset);
 		out.writeInt(maxValue);
 		out.writeInt(minValue);
-		out.writeLong(dataStream.getFilePointer());
 		out.writeInt(sourceSerialNumber);
 		out.writeInt(channelSerialNumber);
 		out.writeInt(continueAreaNumber);
-		for (int i = 0; i < sampleCount; i++) {
-			dataStream.writeInt(data[i]);
+		IntBuffer samples = acquire();
+		int count = samples == null ? 0 : samples.capacity();
+		out.writeInt(count);
+		for (int i = 0; i < count; i++) {
+			out.writeInt(samples.get(i));
 		}
         lg.debug("== Segment: writeExternal() --> DONE");
 	}
@@ -630,6 +877,298 @@ public class Segment implements Externalizable, Cloneable {
 		return (firstEndTime - secondStartTime) > (gapTolerance * 2.0 * sampleRate);
 	}
 
+	/**
+	 * Drops segment data to free memory, data will be reloaded from data source on next access.
+	 * Called by {@link SampleCache}.
+	 */
+	synchronized void evict() {
+		// data being reloaded are published by reloading thread
+		if (dataSource != null && (data != null || buffer != null) && reloadFuture == null) {
+			data = null;
+			buffer = null;
+			// summary is small and is kept to draw segment without reloading
+			pyramid = pyramid == null ? null : pyramid.detach();
+			currentPos = 0;
+			evicted = true;
+		}
+	}
+
+	/**
+	 * Marks segment to load it's data from data source on first access, instead of loading them
+	 * now. Ranges requested by {@link #getData(double, double)} are read by pages of
+	 * {@link #PAGE_SIZE} samples if data source is {@link IRangeSource}, so only pages around
+	 * requested ranges are kept in memory. Whole data are loaded by {@link #getData()}.
+	 */
+	public synchronized void deferLoad() {
+		if (dataSource != null && data == null && buffer == null) {
+			evicted = true;
+		}
+	}
+
+	/**
+	 * Reads pages with samples in time range, if segment data aren't in memory and data source is
+	 * {@link IRangeSource}. Pages aren't read if they can't stay in {@link SampleCache} together,
+	 * they will be read on request.
+	 * 
+	 * @param ti
+	 *            time range to read
+	 */
+	public void loadPages(TimeInterval ti) {
+		if (isResident() || !(dataSource instanceof IRangeSource)) {
+			return;
+		}
+		int[] range = getSampleRange(ti.getStart(), ti.getEnd());
+		int firstPage = range[0] / PAGE_SIZE;
+		int lastPage = (range[1] - 1) / PAGE_SIZE;
+		if (range[0] < range[1] && !SampleCache.getInstance().isTooBig((lastPage - firstPage + 1L) * PAGE_SIZE)) {
+			for (int page = firstPage; page <= lastPage; page++) {
+				acquirePage(page);
+			}
+		}
+	}
+
+	/**
+	 * Reads range of samples. If segment data aren't in memory and data source is
+	 * {@link IRangeSource}, only pages with requested range are read.
+	 * 
+	 * @param from
+	 *            index of first sample
+	 * @param to
+	 *            index after last sample
+	 * @return copy of samples in range
+	 */
+	int[] getSamples(int from, int to) {
+		if (!isResident() && dataSource instanceof IRangeSource) {
+			return getPagedData(from, to);
+		}
+		IntBuffer samples = acquire();
+		int[] ret = new int[to - from];
+		samples.position(from);
+		samples.get(ret);
+		return ret;
+	}
+
+	/**
+	 * Drops page of samples to free memory, page will be read again on next access. Called by
+	 * {@link SampleCache}.
+	 */
+	synchronized void evictPage(int page) {
+		if (pages != null) {
+			pages[page] = null;
+		}
+	}
+
+	/**
+	 * Reads range of samples from pages, loading absent pages from data source
+	 * 
+	 * @param from
+	 *            index of first sample
+	 * @param to
+	 *            index after last sample
+	 * @return array of samples in range
+	 */
+	private int[] getPagedData(int from, int to) {
+		int[] ret = new int[to - from];
+		for (int page = from / PAGE_SIZE; page * PAGE_SIZE < to; page++) {
+			int[] samples = acquirePage(page);
+			int pageStart = page * PAGE_SIZE;
+			int start = Math.max(from, pageStart);
+			int end = Math.min(to, pageStart + samples.length);
+			System.arraycopy(samples, start - pageStart, ret, start - from, end - start);
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns page of samples, reading it from data source if it's absent
+	 */
+	private int[] acquirePage(int page) {
+		int[] ret = null;
+		CompletableFuture<int[]> future = null;
+		boolean reading = false;
+		synchronized (this) {
+			if (pages == null) {
+				pages = new int[(sampleCount + PAGE_SIZE - 1) / PAGE_SIZE][];
+			}
+			ret = pages[page];
+			if (ret == null) {
+				if (pageFutures == null) {
+					pageFutures = new HashMap<Integer, CompletableFuture<int[]>>();
+				}
+				future = pageFutures.get(page);
+				if (future == null) {
+					future = new CompletableFuture<int[]>();
+					pageFutures.put(page, future);
+					reading = true;
+				}
+			}
+		}
+		if (future == null) {
+			SampleCache.getInstance().hitPage(this, page);
+			return ret;
+		}
+		if (!reading) {
+			// page is being read by other thread
+			return join(future);
+		}
+		// source is read without holding segment lock, source can lock itself and call segment
+		boolean published = false;
+		try {
+			int first = page * PAGE_SIZE;
+			ret = ((IRangeSource) dataSource).load(this, first, Math.min(PAGE_SIZE, sampleCount - first));
+			synchronized (this) {
+				for (int value: ret) {
+					setMinValue(value);
+					setMaxValue(value);
+				}
+				// pages could be dropped while reading, if whole data were loaded
+				if (pages != null) {
+					pages[page] = ret;
+					published = true;
+				}
+				pageFutures.remove(page);
+			}
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				pageFutures.remove(page);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+		future.complete(ret);
+		if (published) {
+			SampleCache.getInstance().addPage(this, page);
+		}
+		return ret;
+	}
+
+	/**
+	 * Drops all pages, for example when whole data were loaded
+	 */
+	private void dropPages() {
+		int[][] dropped = null;
+		synchronized (this) {
+			dropped = pages;
+			pages = null;
+		}
+		if (dropped != null) {
+			for (int page = 0; page < dropped.length; page++) {
+				if (dropped[page] != null) {
+					SampleCache.getInstance().removePage(this, page);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if segment samples are in memory or in mapped storage
+	 */
+	synchronized boolean isResident() {
+		return data != null || buffer != null;
+	}
+
+	/**
+	 * Returns samples in ram storage, reloading them from data source if they were evicted. Returned
+	 * buffer stays valid even if segment will be evicted later.
+	 * 
+	 * @return view of whole samples storage, or null if data aren't loaded
+	 */
+	private IntBuffer acquire() {
+		IntBuffer ret = null;
+		boolean reloaded = false;
+		while (true) {
+			CompletableFuture<Segment> future = null;
+			boolean reloading = false;
+			synchronized (this) {
+				if (!evicted) {
+					ret = getStorage();
+					break;
+				}
+				if (reloadFuture == null) {
+					reloadFuture = new CompletableFuture<Segment>();
+					reloading = true;
+				}
+				future = reloadFuture;
+			}
+			if (!reloading) {
+				// waiting for reloading by other thread, data can be evicted again before we get them
+				join(future);
+				continue;
+			}
+			// source is read without holding segment lock, other callers wait for the future
+			lg.debug("Reloading evicted " + this);
+			try {
+				dataSource.load(this);
+			} catch (RuntimeException e) {
+				// failed load, for example interrupted one, is retried on next access
+				synchronized (this) {
+					reloadFuture = null;
+				}
+				future.completeExceptionally(e);
+				throw e;
+			}
+			synchronized (this) {
+				evicted = false;
+				reloadFuture = null;
+				ret = getStorage();
+			}
+			future.complete(this);
+			reloaded = true;
+			break;
+		}
+		if (reloaded) {
+			dropPages();
+			SampleCache.getInstance().miss(this);
+			SampleCache.getInstance().add(this);
+		} else if (ret != null) {
+			SampleCache.getInstance().hit(this);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return view of whole samples storage, or null if data aren't in memory
+	 */
+	private synchronized IntBuffer getStorage() {
+		if (buffer != null) {
+			return buffer.duplicate();
+		} else if (data != null) {
+			return IntBuffer.wrap(data);
+		}
+		return null;
+	}
+
+	/**
+	 * Allocates ram storage for samples, in java heap or outside of it according configuration
+	 * 
+	 * @param count
+	 *            count of samples
+	 */
+	private void allocate(int count) {
+		mapped = false;
+		if (TraceView.getConfiguration() == null
+				|| TraceView.getConfiguration().getSampleStorage() == Configuration.SampleStorage.HEAP) {
+			data = new int[count];
+			buffer = null;
+		} else {
+			buffer = TemporaryStorage.allocateSamples(count, TraceView.getConfiguration().getSampleStorage());
+			data = null;
+		}
+	}
+
+	/**
+	 * Copies samples to newly allocated ram storage
+	 */
+	private void store(int[] samples, int count) {
+		allocate(count);
+		if (buffer == null) {
+			System.arraycopy(samples, 0, data, 0, count);
+		} else {
+			buffer.put(samples, 0, count);
+			buffer.clear();
+		}
+	}
+
 	public boolean getIsLoaded() {
 		return isLoaded;
 	}
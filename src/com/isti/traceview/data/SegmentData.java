@@ -1,103 +1,138 @@
-package com.isti.traceview.data;
-
-
-public class SegmentData {
-	long startTime = 0;
-	double sampleRate = Double.POSITIVE_INFINITY;
-	int previous = Integer.MAX_VALUE;
-	int next = Integer.MAX_VALUE;
-	public int[] data = null;
-	int sourceSerialNumber = 0;
-	int channelSerialNumber = 0;
-	/**
-	 * Sequential number of continue data area in trace, to which this point belongs. 
-	 * Similar to segmentNumber, but takes into account only gaps, not overlaps 
-	 */
-	int continueAreaNumber = 0;
-
-	public SegmentData(long startTime, double sampleRate, int sourceSerialNumber, int channelSerialNumber, int continueAreaNumber, int previous, int next, int[] data) {
-		this.startTime = startTime;
-		this.sampleRate = sampleRate;
-		this.previous = previous;
-		this.next = next;
-		this.data = data;
-		this.sourceSerialNumber = sourceSerialNumber;
-		this.channelSerialNumber = channelSerialNumber;
-		this.continueAreaNumber = continueAreaNumber;
-	}
-
-	public SegmentData(long startTime, double sampleRate, int sourceSerialNumber, int channelSerialNumber, int continueAreaNumber, int[] data) {
-		this(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, Integer.MAX_VALUE, Integer.MAX_VALUE, data);
-	}
-
-	public long endTime() {
-		return new Double(startTime + sampleRate * data.length).longValue();
-	}
-
-	/**
-	 * returns subarray of data in requested time range, from array of loaded segment data.
-	 * 
-	 * @param start
-	 *            start time of requested range in milliseconds
-	 * @param end
-	 *            end time of requested range in milliseconds
-	 */
-	public SegmentData getData(double start, double end) {
-		// lg.debug("PlotDataProvider.getData(): start " + start + ", end " + end);
-		int[] ret = new int[0];
-		int _previous = Integer.MAX_VALUE;
-		int _next = Integer.MAX_VALUE;
-		double startt = Math.max(startTime, start);
-		double endt = Math.min(endTime(), end);
-		double startvalue = new Double((startt - startTime) / sampleRate);
-		int startIndex = 0;
-		if (startvalue > 0.000000001) {
-			startIndex = new Double(startvalue).intValue() + 1;
-		}
-		int endIndex = Math.min(new Double((endt - startTime) / sampleRate).intValue(), data.length - 1);
-		if (startIndex <= endIndex) {
-			ret = new int[endIndex - startIndex + 1];
-			// lg.debug("PlotDataProvider.getData()-getting segment data: startindex " + startIndex
-			// + ", endindex " + endIndex);
-			for (int i = startIndex; i <= endIndex; i++) {
-				ret[i - startIndex] = data[i];
-			}
-		}
-		if (startIndex > 0)
-			_previous = data[startIndex - 1];
-		if (endIndex < data.length-1)
-			_next = data[endIndex];
-		return new SegmentData(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, _previous, _next, ret);
-	}
-
-	/**
-	 * Computes linear interpolated value for any time on data array.
-	 * 
-	 * @param data
-	 *            array of data to interpolate
-	 * @param dataTI
-	 *            time range for this data
-	 * @param sampleRate
-	 *            data sample rate
-	 * @param time
-	 *            time argument to get interpolated value
-	 * @return
-	 */
-	public double interpolateValue(double time) {
-		// lg.debug("interpolateValue: dataLength " + data.length + ", startTime " + dataTI.getStartTime() + ", time " + time);
-		int nextIndex = new Double((time - startTime ) / sampleRate + 1).intValue();
-		if (nextIndex >= data.length) {
-			nextIndex = data.length - 1;
-		}
-		int prevIndex = 0;
-		if (nextIndex < 1) {
-			nextIndex = 0;
-		} else {
-			prevIndex = nextIndex - 1;
-		}
-		// lg.debug("prevIndex = " + prevIndex + "; nextIndex = " + nextIndex);
-		return data[prevIndex] + (data[nextIndex] - data[prevIndex]) * (time - startTime - sampleRate * prevIndex)
-				/ (sampleRate * (nextIndex - prevIndex));
-
-	}
-}
+package com.isti.traceview.data;
+
+
+public class SegmentData {
+	long startTime = 0;
+	double sampleRate = Double.POSITIVE_INFINITY;
+	int previous = Integer.MAX_VALUE;
+	int next = Integer.MAX_VALUE;
+	public int[] data = null;
+	int sourceSerialNumber = 0;
+	int channelSerialNumber = 0;
+	/**
+	 * Sequential number of continue data area in trace, to which this point belongs. 
+	 * Similar to segmentNumber, but takes into account only gaps, not overlaps 
+	 */
+	int continueAreaNumber = 0;
+
+	public SegmentData(long startTime, double sampleRate, int sourceSerialNumber, int channelSerialNumber, int continueAreaNumber, int previous, int next, int[] data) {
+		this.startTime = startTime;
+		this.sampleRate = sampleRate;
+		this.previous = previous;
+		this.next = next;
+		this.data = data;
+		this.sourceSerialNumber = sourceSerialNumber;
+		this.channelSerialNumber = channelSerialNumber;
+		this.continueAreaNumber = continueAreaNumber;
+	}
+
+	public SegmentData(long startTime, double sampleRate, int sourceSerialNumber, int channelSerialNumber, int continueAreaNumber, int[] data) {
+		this(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, Integer.MAX_VALUE, Integer.MAX_VALUE, data);
+	}
+
+	public long endTime() {
+		return getEndTime(startTime, sampleRate, data.length);
+	}
+
+	/**
+	 * @return end time of continuous data, in milliseconds
+	 */
+	static long getEndTime(long startTime, double sampleRate, int length) {
+		return (long) (startTime + sampleRate * length);
+	}
+
+	/**
+	 * @return true if continuous data from startTime to endTime have common part with time range
+	 *         from start to end
+	 */
+	static boolean isIntersect(long startTime, long endTime, double start, double end) {
+		return !((start >= endTime && end >= endTime) || (start <= startTime && end <= startTime));
+	}
+
+	/**
+	 * Computes indexes of samples in requested time range the same way as
+	 * {@link #getData(double, double)}
+	 * 
+	 * @param startTime
+	 *            start time of continuous data
+	 * @param sampleRate
+	 *            sample rate of data
+	 * @param length
+	 *            count of samples in data
+	 * @return index of first and index of last sample in range, first index is greater than last
+	 *         one if range has no samples
+	 */
+	static int[] getIndexes(long startTime, double sampleRate, int length, double start, double end) {
+		double startt = Math.max(startTime, start);
+		double endt = Math.min(getEndTime(startTime, sampleRate, length), end);
+		double startvalue = (startt - startTime) / sampleRate;
+		int startIndex = 0;
+		if (startvalue > 0.000000001) {
+			startIndex = (int) startvalue + 1;
+		}
+		int endIndex = Math.min((int) ((endt - startTime) / sampleRate), length - 1);
+		return new int[] { startIndex, endIndex };
+	}
+
+	/**
+	 * returns subarray of data in requested time range, from array of loaded segment data.
+	 * 
+	 * @param start
+	 *            start time of requested range in milliseconds
+	 * @param end
+	 *            end time of requested range in milliseconds
+	 */
+	public SegmentData getData(double start, double end) {
+		// lg.debug("PlotDataProvider.getData(): start " + start + ", end " + end);
+		int[] ret = new int[0];
+		int _previous = Integer.MAX_VALUE;
+		int _next = Integer.MAX_VALUE;
+		int[] indexes = getIndexes(startTime, sampleRate, data.length, start, end);
+		int startIndex = indexes[0];
+		int endIndex = indexes[1];
+		if (startIndex <= endIndex) {
+			ret = new int[endIndex - startIndex + 1];
+			// lg.debug("PlotDataProvider.getData()-getting segment data: startindex " + startIndex
+			// + ", endindex " + endIndex);
+			for (int i = startIndex; i <= endIndex; i++) {
+				ret[i - startIndex] = data[i];
+			}
+		}
+		if (startIndex > 0)
+			_previous = data[startIndex - 1];
+		if (endIndex < data.length-1)
+			_next = data[endIndex];
+		return new SegmentData(startTime, sampleRate, sourceSerialNumber, channelSerialNumber, continueAreaNumber, _previous, _next, ret);
+	}
+
+	/**
+	 * Computes linear interpolated value for any time on data array.
+	 * 
+	 * @param data
+	 *            array of data to interpolate
+	 * @param dataTI
+	 *            time range for this data
+	 * @param sampleRate
+	 *            data sample rate
+	 * @param time
+	 *            time argument to get interpolated value
+	 * @return
+	 */
+	public double interpolateValue(double time) {
+		// lg.debug("interpolateValue: dataLength " + data.length + ", startTime " + dataTI.getStartTime() + ", time " + time);
+		int nextIndex = (int) ((time - startTime) / sampleRate + 1);
+		if (nextIndex >= data.length) {
+			nextIndex = data.length - 1;
+		}
+		int prevIndex = 0;
+		if (nextIndex < 1) {
+			nextIndex = 0;
+		} else {
+			prevIndex = nextIndex - 1;
+		}
+		// lg.debug("prevIndex = " + prevIndex + "; nextIndex = " + nextIndex);
+		return data[prevIndex] + (data[nextIndex] - data[prevIndex]) * (time - startTime - sampleRate * prevIndex)
+				/ (sampleRate * (nextIndex - prevIndex));
+
+	}
+}
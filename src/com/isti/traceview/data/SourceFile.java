@@ -95,6 +95,10 @@ public abstract class SourceFile implements ISource {
 		}
 	}
 
+	public int hashCode() {
+		return getFile().hashCode();
+	}
+
 	/**
 	 * Searches for files according wildcarded path
 	 * 
@@ -127,8 +131,13 @@ public abstract class SourceFile implements ISource {
 	 */
 	public static List<ISource> getDataFiles(List<File> files) throws TraceViewException {
 		List<ISource> lst = new ArrayList<ISource>();
+		MseedIndex index = MseedIndex.getInstance();
 		for (File file: files) {
-			if (isIMS(file)) {
+			if (index != null && index.contains(file)) {
+				// unchanged file from previous session, no need to detect format
+				lst.add(new SourceFileMseed(file));
+				lg.debug("Indexed MSEED data file added: " + file.getAbsolutePath());
+			} else if (isIMS(file)) {
 				lst.add(new SourceFileIMS(file));
 				lg.debug("IMS data file added: " + file.getAbsolutePath());
 			} else if (isMSEED(file)) {
@@ -213,10 +222,10 @@ public abstract class SourceFile implements ISource {
 	 */
 	public static boolean isMSEED(File file) {
 		if (file.length() > 0) {
-			BufferedRandomAccessFile dis = null;
+			MappedFileInput dis = null;
 			ControlHeader ch = null;
 			try {
-				dis = new BufferedRandomAccessFile(file.getCanonicalPath(), "r");
+				dis = new MappedFileInput(file);
 				dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
 				long blockNumber = 0;
  
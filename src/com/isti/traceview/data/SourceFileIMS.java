@@ -33,9 +33,9 @@ public class SourceFileIMS extends SourceFile {
 	public Set<RawDataProvider> parse(DataModule dataModule) {
 		lg.debug("SourceFileIMS.parse begin");
 		Set<RawDataProvider> ret = new HashSet<RawDataProvider>();
-		BufferedRandomAccessFile dis = null;
+		MappedFileInput dis = null;
 		try {
-			dis = new BufferedRandomAccessFile(getFile().getCanonicalPath(), "r");
+			dis = new MappedFileInput(getFile());
 			dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
 			if (getFile().length() > 0) {
 				long currentOffset = dis.getFilePointer();
@@ -78,9 +78,9 @@ public class SourceFileIMS extends SourceFile {
 	public void load(Segment segment) {
 		lg.debug("SourceFileIMS.load(): " + this);
 		int[] data = null;
-		BufferedRandomAccessFile dis = null;
+		MappedFileInput dis = null;
 		try {
-			dis = new BufferedRandomAccessFile(getFile().getCanonicalPath(), "r");
+			dis = new MappedFileInput(getFile());
 			dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
 			if (getFile().length() > 0) {
 				dis.seek(segment.getStartOffset());
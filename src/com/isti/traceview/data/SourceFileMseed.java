@@ -6,8 +6,10 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -17,8 +19,11 @@ import com.isti.traceview.common.Station;
 import com.isti.traceview.common.TimeInterval;
 
 import edu.iris.Fissures.FissuresException;
+import edu.iris.dmc.seedcodec.CodecException;
 import edu.iris.Fissures.seismogramDC.LocalSeismogramImpl;
 import edu.sc.seis.fissuresUtil.mseed.FissuresConvert;
+import edu.sc.seis.seisFile.mseed.Blockette;
+import edu.sc.seis.seisFile.mseed.Blockette1000;
 import edu.sc.seis.seisFile.mseed.Btime;
 import edu.sc.seis.seisFile.mseed.ControlHeader;
 import edu.sc.seis.seisFile.mseed.DataHeader;
@@ -27,17 +32,24 @@ import edu.sc.seis.seisFile.mseed.SeedFormatException;
 import edu.sc.seis.seisFile.mseed.SeedRecord;
 
 /**
- * File MSEED data source
+ * File MSEED data source. Offsets of segment's records are kept in the segment, so range of
+ * samples can be read by decoding only the records covering it.
  * 
  * @author Max Kokoulin
  */
-public class SourceFileMseed extends SourceFile implements Serializable {
+public class SourceFileMseed extends SourceFile implements IRangeSource, Serializable {
 	private static Logger lg = Logger.getLogger(SourceFileMseed.class);
 
 	// used during parsing
 	private int segmentSampleCount = 0;
 	private long segmentStartTime = 0;
 	private long segmentOffset = 0;
+	private transient List<MseedIndex.SegmentDescription> parsedSegments = null;
+	// first sample index and offset of current segment's records
+	private transient List<long[]> segmentBlocks = null;
+
+	// mapped file shared by all reads, every read uses it's own view
+	private transient MappedFileInput input = null;
 
 	// -----
 
@@ -53,11 +65,32 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 	public synchronized Set<RawDataProvider> parse(DataModule dataModule) {
 		lg.debug("SourceFileMseed.parse begin " + this);
 		Set<RawDataProvider> ret = new HashSet<RawDataProvider>();
+		MseedIndex index = MseedIndex.getInstance();
+		if (index != null) {
+			List<MseedIndex.SegmentDescription> indexed = index.getSegments(getFile());
+			if (indexed != null) {
+				lg.debug("Restoring " + indexed.size() + " segments from index for " + this);
+				for (MseedIndex.SegmentDescription sd: indexed) {
+					if (matchFilters(sd.getNetwork(), sd.getStation(), sd.getLocation(), sd.getChannel())) {
+						RawDataProvider channel = dataModule.getOrAddChannel(sd.getChannel(), DataModule.getOrAddStation(sd.getStation()), sd
+								.getNetwork(), sd.getLocation());
+						channel.addSegment(new Segment(this, sd.getStartOffset(), new Date(sd.getStartTime()), sd.getSampleRate(), sd
+								.getSampleCount(), channel.getSegmentCount()));
+						ret.add(channel);
+					}
+				}
+				setParsed(true);
+				return ret;
+			}
+		}
+		boolean complete = false;
 		long blockNumber = 0;
 		long endPointer = 0;
-		BufferedRandomAccessFile dis = null;
+		MappedFileInput dis = null;
+		parsedSegments = new ArrayList<MseedIndex.SegmentDescription>();
+		segmentBlocks = new ArrayList<long[]>();
 		try {
-			dis = new BufferedRandomAccessFile(getFile().getCanonicalPath(), "r");
+			dis = new MappedFileInput(getFile());
 			dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
 			RawDataProvider currentChannel = new RawDataProvider("", new Station(""), "", "");
 			long blockEndTime = 0;
@@ -72,7 +105,8 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 				if (getFile().length() > 0) {
 					while (true) {
 						long currentOffset = dis.getFilePointer();
-						SeedRecord sr = SynchronizedSeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
+						// stream is owned by this parser, so no need of global lock here
+						SeedRecord sr = SeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
 						blockNumber++;
 						if (sr instanceof DataRecord) {
 							DataHeader dh = (DataHeader)sr.getControlHeader();
@@ -94,14 +128,12 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 									|| (!currentChannel.getNetworkName().equals(dh.getNetworkCode().trim()))
 									|| (!currentChannel.getLocationName().equals(dh.getLocationIdentifier().trim()))) {
 								// New channel detected
-								if (!skipChannel) {
-									// Add current segment to current channel and start new segment
-									if (segmentSampleCount == 0) {
-										segmentStartTime = getBlockStartTime(dh);
-									} else {
-										addSegment(currentChannel, dh, currentOffset, sampleRate, currentChannel.getSegmentCount());
-									}
-
+								// Add current segment to current channel and start new segment. Segments
+								// of skipped channels are stored in the index only.
+								if (segmentSampleCount == 0) {
+									segmentStartTime = getBlockStartTime(dh);
+								} else {
+									addSegment(currentChannel, skipChannel, dh, currentOffset, sampleRate, currentChannel.getSegmentCount());
 								}
 								sampleRate = 0.0;
 								// If new channels matches filters
@@ -134,13 +166,12 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 									if (Segment.isDataBreak(blockEndTime, getBlockStartTime(dh), sampleRate)) {
 										// Gap detected, new segment starts
 										// lg.debug("Correction " + correction);
-										if (!skipChannel) {
-											addSegment(currentChannel, dh, currentOffset, sampleRate, currentChannel.getSegmentCount());
-										}
+										addSegment(currentChannel, skipChannel, dh, currentOffset, sampleRate, currentChannel.getSegmentCount());
 									}
 								} else {
 									segmentStartTime = getBlockStartTime(dh);
 								}
+								segmentBlocks.add(new long[] { segmentSampleCount, currentOffset });
 								blockEndTime = getBlockEndTime(dh, sampleRate);
 								segmentSampleCount = segmentSampleCount + dh.getNumSamples();
 							} else {
@@ -154,9 +185,8 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 					lg.error("File " + getFile().getCanonicalPath() + " has null length");
 				}
 			} catch (EOFException ex) {
-				if (!skipChannel) {
-					addSegment(currentChannel, null, 0, sampleRate, currentChannel.getSegmentCount());
-				}
+				addSegment(currentChannel, skipChannel, null, 0, sampleRate, currentChannel.getSegmentCount());
+				complete = true;
 				lg.debug("Read " + blockNumber + " blocks");
 			}
 		} catch (FileNotFoundException e) {
@@ -172,6 +202,11 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 			} catch (IOException e) {
 			}
 		}
+		if (index != null && complete) {
+			index.put(getFile(), parsedSegments);
+		}
+		parsedSegments = null;
+		segmentBlocks = null;
 		lg.debug("SourceFileMseed.parse end " + this + " end position " + endPointer);
 		setParsed(true);
 		return ret;
@@ -180,10 +215,6 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 	public synchronized void load(Segment segment) {
 		lg.debug("SourceFileMSEED.load(): " + this + " " + segment);
 		long filePointer = 0;
-		try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e) {
-		}
 //		try{
 //			throw new Exception();
 //		} catch (Exception e){
@@ -194,21 +225,19 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 //			lg.debug(err);
 //		}
 
-		BufferedRandomAccessFile dis = null;
+		MappedFileInput dis = null;
 		int[] data = new int[segment.getSampleCount()];
+		int[] minMax = { Integer.MAX_VALUE, Integer.MIN_VALUE };
 		int currentSampleCount = 0; //Counter on the basis of data values
 		int headerSampleCount = 0; //Counter on the basis of header information
 		int blockNumber = 0;
 		try {
             lg.debug("== SourceFileMSEED.load() segment from source=" + getFile().getCanonicalPath() );
-			dis = new BufferedRandomAccessFile(getFile().getCanonicalPath(), "r");
-			dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
-			dis.seek(segment.getStartOffset());
+			dis = getInput().view(segment.getStartOffset());
 			lg.debug(this + " " + segment + " Beginning position:" + dis.getFilePointer());
 			while (currentSampleCount < segment.getSampleCount()) {
-				int blockSampleCount = 0;
 				long blockStartOffset = dis.getFilePointer();
-				SeedRecord sr = SynchronizedSeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
+				SeedRecord sr = SeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
 				blockNumber++;
 				if (sr instanceof DataRecord) {
 					DataRecord dr = (DataRecord) sr;
@@ -216,38 +245,9 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 					segment.addBlockDescription(getBlockStartTime(dr.getHeader()),blockStartOffset);
 					// lg.debug("Size: data " + dr.getDataSize() + ", header " + dr.getHeader().getSize());
 					if (dr.getHeader().getNumSamples() > 0) {
-						LocalSeismogramImpl lsi = null;
-						int intData[] = new int[dr.getHeader().getNumSamples()];
-						try {
-							if (dr.getBlockettes(1000).length == 0) {
-								DataRecord dra[] = new DataRecord[1];
-								dra[0] = dr;
-								lsi = FissuresConvert.toFissures(dra, (byte) TraceView.getConfiguration().getDefaultCompression(), (byte) 1);
-							} else {
-								lsi = FissuresConvert.toFissures(dr);
-							}
-							intData = lsi.get_as_longs();
-						} catch (FissuresException fe) {
-							lg.error("File " + getFile().getName() + ": Can't decompress data of block " + dr.getHeader().getSequenceNum() + ", setting block data to 0: " + fe);
-							for (int i = 0; i < intData.length; i++) {
-								intData[i] = 0;
-							}
-						}
-//						if(intData.length != dr.getHeader().getNumSamples()){
-//							lg.warn("data array length mismatch!!! block " + sr.getControlHeader().getSequenceNum() + ", header: " + dr.getHeader().getNumSamples() + ", array length " + intData.length);
-//						}
-						for (int sample: intData) {
-							if (currentSampleCount < segment.getSampleCount()) {
-								// lg.debug("sample" + sample);
-								data[currentSampleCount++] = sample;
-								blockSampleCount++;
-							} else {
-								lg.warn("currentSampleCount > segment.getSampleCount(): " + currentSampleCount + ", " + segment.getSampleCount() + "block " + sr.getControlHeader().getSequenceNum());
-							}
-						}
-//						if(blockSampleCount != intData.length){
-//							lg.warn("Sample count mismatch!!! block " + sr.getControlHeader().getSequenceNum() + ", headers: " + dr.getHeader().getNumSamples() + "; real "+ blockSampleCount);
-//						}
+						segment.addBlockOffset(currentSampleCount, blockStartOffset);
+						// decode straight to segment data array
+						currentSampleCount += decode(dr, data, currentSampleCount, minMax);
 					} else {
 						lg.warn("File " + getFile().getName() + ": Skipping block " + dr.getHeader().getSequenceNum() + " due to absence of data");
 					}
@@ -262,42 +262,87 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 			lg.error("Can't find file: " + e);
 			throw new RuntimeException(e);
 		} catch (IOException e) {
-			try{
-				e.printStackTrace();
-				lg.debug("ERROR:" + this + " " + segment + " Ending position " + dis.getFilePointer() + ", sampleCount read" + currentSampleCount + ", samples from headers " + headerSampleCount + ", blocks read " + blockNumber);
-				}  catch (IOException ex) {
-				}
+			e.printStackTrace();
+			lg.debug("ERROR:" + this + " " + segment + " Ending position " + dis.getFilePointer() + ", sampleCount read" + currentSampleCount + ", samples from headers " + headerSampleCount + ", blocks read " + blockNumber);
 
 			throw new RuntimeException(e);
 		} catch (SeedFormatException e) {
 			lg.error("Wrong seed format: " + e);
 			throw new RuntimeException(e);
-		} finally {
-			try {
-				dis.close();
-			} catch (IOException e) {
-			}
 		}
-		for (int value: data) {
-			segment.addDataPoint(value);
+		if (currentSampleCount < data.length) {
+			// not filled tail of array contains zeros
+			minMax[0] = Math.min(minMax[0], 0);
+			minMax[1] = Math.max(minMax[1], 0);
 		}
+		segment.setData(data, minMax[0], minMax[1]);
 
 		lg.debug("Loaded " + this + " " + segment + ", sampleCount read" + currentSampleCount + ", samples from headers " + headerSampleCount + ", blocks read " + blockNumber);
 	}
 
+	public int[] load(Segment segment, int startIndex, int count) {
+		lg.debug("SourceFileMSEED.load(): " + this + " " + segment + ", samples from " + startIndex + ", count " + count);
+		int[] ret = new int[count];
+		int[] minMax = { Integer.MAX_VALUE, Integer.MIN_VALUE };
+		int endIndex = Math.min(startIndex + count, segment.getSampleCount());
+		long[] block = segment.findBlock(startIndex);
+		MappedFileInput dis = null;
+		try {
+			dis = getInput().view(0);
+			if (block == null) {
+				// segment was restored from index, records are described once
+				describeBlocks(segment, dis);
+				block = segment.findBlock(startIndex);
+				if (block == null) {
+					block = new long[] { 0, segment.getStartOffset() };
+				}
+			}
+			// index of first sample of current record
+			int blockIndex = (int) block[0];
+			int blockNumber = 0;
+			dis.seek(block[1]);
+			while (blockIndex < endIndex) {
+				SeedRecord sr = SeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
+				blockNumber++;
+				if (sr instanceof DataRecord) {
+					DataRecord dr = (DataRecord) sr;
+					if (dr.getHeader().getNumSamples() > 0) {
+						int[] samples = new int[Math.min(dr.getHeader().getNumSamples(), segment.getSampleCount() - blockIndex)];
+						int blockSampleCount = decode(dr, samples, 0, minMax);
+						int from = Math.max(startIndex, blockIndex);
+						int to = Math.min(endIndex, blockIndex + blockSampleCount);
+						if (from < to) {
+							System.arraycopy(samples, from - blockIndex, ret, from - startIndex, to - from);
+						}
+						blockIndex += blockSampleCount;
+					}
+				}
+			}
+			lg.debug("Loaded range of " + segment + ", blocks read " + blockNumber);
+		} catch (FileNotFoundException e) {
+			lg.error("Can't find file: " + e);
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			lg.error("IO error: " + e);
+			throw new RuntimeException(e);
+		} catch (SeedFormatException e) {
+			lg.error("Wrong seed format: " + e);
+			throw new RuntimeException(e);
+		}
+		return ret;
+	}
+
 	public String toString() {
 		return "MseedRawDataProvider: file " + (getFile() == null ? "absent" : getFile().getName());
 	}
 
 	public synchronized String getBlockHeaderText(long blockStartOffset) {
-		BufferedRandomAccessFile dis = null;
+		MappedFileInput dis = null;
 		String ret = "<html><i>File type:</i>" + this.getFormatType();
 		try {
-			dis = new BufferedRandomAccessFile(getFile().getCanonicalPath(), "r");
-			dis.order(BufferedRandomAccessFile.BIG_ENDIAN);
-			dis.seek(blockStartOffset);
+			dis = getInput().view(blockStartOffset);
 			FileInputStream d = null;
-			SeedRecord sr = SynchronizedSeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
+			SeedRecord sr = SeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
 			ControlHeader ch = null;
 			ch = sr.getControlHeader();
 			//ret = ret + "<br><i>Query time: </i> " + TimeInterval.formatDate(new Date(time), TimeInterval.DateFormatType.DATE_FORMAT_MIDDLE);
@@ -325,14 +370,105 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 			ret = ret + "<br>Header block text is unavailable";
 		} catch (SeedFormatException e) {
 			ret = ret + "<br>Header block text is unavailable";
-		} finally {
+		}
+
+		return ret + "</html>";
+	}
+
+	/**
+	 * @return mapped file in big endian byte order, opened on first read
+	 */
+	private synchronized MappedFileInput getInput() throws IOException {
+		if (input == null) {
+			input = new MappedFileInput(getFile());
+			input.order(BufferedRandomAccessFile.BIG_ENDIAN);
+		}
+		return input;
+	}
+
+	/**
+	 * Decodes samples of data record into array, samples which don't fit in array are dropped
+	 * 
+	 * @param data
+	 *            array to store samples
+	 * @param offset
+	 *            position in array to store first sample
+	 * @param minMax
+	 *            min and max values, updated by decoded samples
+	 * @return count of stored samples
+	 */
+	private int decode(DataRecord dr, int[] data, int offset, int[] minMax) throws SeedFormatException {
+		int blockSampleCount = 0;
+		int encoding = TraceView.getConfiguration().getDefaultCompression();
+		boolean bigEndian = true;
+		Blockette[] b1000 = dr.getBlockettes(1000);
+		if (b1000.length > 0) {
+			encoding = ((Blockette1000) b1000[0]).getEncodingFormat();
+			bigEndian = ((Blockette1000) b1000[0]).isBigEndian();
+		}
+		if (MseedDecoder.isSupported(encoding)) {
 			try {
-				dis.close();
-			} catch (IOException e) {
+				blockSampleCount = MseedDecoder.decode(dr.getData(), encoding, bigEndian, dr.getHeader().getNumSamples(), data, offset, minMax);
+			} catch (CodecException ce) {
+				lg.error("File " + getFile().getName() + ": Can't decompress data of block " + dr.getHeader().getSequenceNum() + ", setting block data to 0: " + ce);
+				blockSampleCount = Math.min(dr.getHeader().getNumSamples(), data.length - offset);
+				for (int i = offset; i < offset + blockSampleCount; i++) {
+					data[i] = 0;
+				}
+				minMax[0] = Math.min(minMax[0], 0);
+				minMax[1] = Math.max(minMax[1], 0);
+			}
+			if (blockSampleCount < dr.getHeader().getNumSamples()) {
+				lg.warn("currentSampleCount > segment.getSampleCount(): " + (offset + blockSampleCount) + ", " + data.length + "block " + dr.getHeader().getSequenceNum());
+			}
+		} else {
+			LocalSeismogramImpl lsi = null;
+			int intData[] = new int[dr.getHeader().getNumSamples()];
+			try {
+				if (b1000.length == 0) {
+					DataRecord dra[] = new DataRecord[1];
+					dra[0] = dr;
+					lsi = FissuresConvert.toFissures(dra, (byte) TraceView.getConfiguration().getDefaultCompression(), (byte) 1);
+				} else {
+					lsi = FissuresConvert.toFissures(dr);
+				}
+				intData = lsi.get_as_longs();
+			} catch (FissuresException fe) {
+				lg.error("File " + getFile().getName() + ": Can't decompress data of block " + dr.getHeader().getSequenceNum() + ", setting block data to 0: " + fe);
+				for (int i = 0; i < intData.length; i++) {
+					intData[i] = 0;
+				}
+			}
+			for (int sample: intData) {
+				if (offset + blockSampleCount < data.length) {
+					data[offset + blockSampleCount++] = sample;
+					minMax[0] = Math.min(minMax[0], sample);
+					minMax[1] = Math.max(minMax[1], sample);
+				} else {
+					lg.warn("currentSampleCount > segment.getSampleCount(): " + (offset + blockSampleCount) + ", " + data.length + "block " + dr.getHeader().getSequenceNum());
+				}
 			}
 		}
+		return blockSampleCount;
+	}
 
-		return ret + "</html>";
+	/**
+	 * Reads headers of segment's records, without data decoding, and adds records offsets to segment
+	 */
+	private void describeBlocks(Segment segment, MappedFileInput dis) throws IOException, SeedFormatException {
+		int sampleCount = 0;
+		dis.seek(segment.getStartOffset());
+		while (sampleCount < segment.getSampleCount()) {
+			long blockStartOffset = dis.getFilePointer();
+			SeedRecord sr = SeedRecord.read(dis, TraceView.getConfiguration().getDefaultBlockLength());
+			if (sr instanceof DataRecord) {
+				DataHeader dh = ((DataRecord) sr).getHeader();
+				if (dh.getNumSamples() > 0) {
+					segment.addBlockOffset(sampleCount, blockStartOffset);
+					sampleCount += dh.getNumSamples();
+				}
+			}
+		}
 	}
 
 	private static long getBlockStartTime(DataHeader dh) {
@@ -349,11 +485,19 @@ public class SourceFileMseed extends SourceFile implements Serializable {
 		return blockStart + time;
 	}
 
-	private void addSegment(RawDataProvider channel, DataHeader dh, long currentOffset, double sampleRate, int serialNumber) {
+	private void addSegment(RawDataProvider channel, boolean skipChannel, DataHeader dh, long currentOffset, double sampleRate, int serialNumber) {
 		if (segmentSampleCount != 0) {
 			// lg.debug("Adding segment: offset " + segmentOffset);
-			Segment segment = new Segment(this, segmentOffset, new Date(segmentStartTime), sampleRate, segmentSampleCount, serialNumber);
-			channel.addSegment(segment);
+			parsedSegments.add(new MseedIndex.SegmentDescription(channel.getNetworkName(), channel.getStation().getName(), channel
+					.getLocationName(), channel.getChannelName(), segmentOffset, segmentStartTime, sampleRate, segmentSampleCount));
+			if (!skipChannel) {
+				Segment segment = new Segment(this, segmentOffset, new Date(segmentStartTime), sampleRate, segmentSampleCount, serialNumber);
+				for (long[] block: segmentBlocks) {
+					segment.addBlockOffset((int) block[0], block[1]);
+				}
+				channel.addSegment(segment);
+			}
+			segmentBlocks.clear();
 			if (dh != null) {
 				segmentSampleCount = 0;
 				segmentStartTime = getBlockStartTime(dh);
@@ -2,7 +2,11 @@ package com.isti.traceview.data;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -16,16 +20,48 @@ import org.apache.log4j.Logger;
 import com.isti.traceview.TraceView;
 
 import edu.iris.Fissures.Time;
-import edu.sc.seis.seisFile.sac.SacTimeSeries;
-import static edu.sc.seis.seisFile.sac.SacConstants.data_offset;
 
-public class SourceFileSAC extends SourceFile implements Serializable {
+/**
+ * File SAC data source. Binary header is read once during parsing, samples are read from mapped
+ * data section, either all segment or requested range of it. Both byte orders are supported.
+ */
+public class SourceFileSAC extends SourceFile implements IRangeSource, Serializable {
 
 	private static Logger lg = Logger.getLogger(SourceFileSAC.class);
 	private static final SimpleDateFormat fissTime = new SimpleDateFormat("yyyyDDD'T'HH:mm:ss.SSS'Z'"); 
 	static {
 		fissTime.setTimeZone(TimeZone.getTimeZone("GMT"));
 	}
+
+	/**
+	 * Size of binary header, data section follows it
+	 */
+	public static final int HEADER_SIZE = 632;
+
+	// offsets of used header fields
+	private static final int DELTA = 0;
+	private static final int NZYEAR = 280;
+	private static final int NZJDAY = 284;
+	private static final int NZHOUR = 288;
+	private static final int NZMIN = 292;
+	private static final int NZSEC = 296;
+	private static final int NZMSEC = 300;
+	private static final int NPTS = 316;
+	private static final int KSTNM = 440;
+	private static final int KHOLE = 464;
+	private static final int KCMPNM = 600;
+	private static final int KNETWK = 608;
+
+	/**
+	 * Byte order of file, determined during parsing
+	 */
+	private boolean littleEndian = false;
+
+	/**
+	 * Mapped file, opened on first read and shared by all reads
+	 */
+	private transient MappedFileInput input = null;
+
 	public SourceFileSAC(File file) {
 		super(file);
 		lg.debug("Created: " + this);
@@ -38,22 +74,11 @@ public class SourceFileSAC extends SourceFile implements Serializable {
 	public Set<RawDataProvider> parse(DataModule dataModule) {
 		Set<RawDataProvider> ret = new HashSet<RawDataProvider>();
 		try {
-			SacTimeSeries sac = new SacTimeSeries();
-
-			sac.read(getFile().getCanonicalPath());
-			if (getFile().length() != sac.getHeader().getNpts() * 4 + data_offset) {
-				throw new IOException(getFile().getName() + " does not appear to be a SAC file!");
-			} 
-			// sac.read(getFile());
-			String loc="";
-			if(sac.getHeader().getKinst().trim().equals("-12345")){
-				loc = sac.getHeader().getKhole().trim();
-			} else {
-				loc = sac.getHeader().getKhole().trim();
-			}
-			RawDataProvider channel = dataModule.getOrAddChannel(sac.getHeader().getKcmpnm(), DataModule.getOrAddStation(sac.getHeader().getKstnm()), sac.getHeader().getKnetwk(), loc);
+			ByteBuffer header = readHeader();
+			String loc = getString(header, KHOLE).trim();
+			RawDataProvider channel = dataModule.getOrAddChannel(getString(header, KCMPNM), DataModule.getOrAddStation(getString(header, KSTNM)), getString(header, KNETWK), loc);
 			ret.add(channel);
-			Segment segment = new Segment(this, 0, new Date(getSACtime(sac)), sac.getHeader().getDelta() * 1000, sac.getHeader().getNpts(), 0);
+			Segment segment = new Segment(this, 0, new Date(getSACtime(header)), header.getFloat(DELTA) * 1000, header.getInt(NPTS), 0);
 			channel.addSegment(segment);
 		} catch (IOException e) {
 			lg.error("IO error: " + e);
@@ -63,21 +88,44 @@ public class SourceFileSAC extends SourceFile implements Serializable {
 	
 	public void load(Segment segment){
 		lg.debug("SourceFileSAC.load(): " + this);
-		int[] data = null;
+		int[] data = load(segment, 0, segment.getSampleCount());
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int value: data) {
+			if (value < min) {
+				min = value;
+			}
+			if (value > max) {
+				max = value;
+			}
+		}
+		segment.setData(data, min, max);
+	}
+
+	public int[] load(Segment segment, int startIndex, int count) {
 		try {
-			SacTimeSeries sac = new SacTimeSeries();
-			sac.read(getFile());
-			data = new int[segment.getSampleCount()];
-			int i = 0;
-			for (float val: sac.getY()) {
-				data[i++]=new Float(val).intValue();
-			} 
+			FloatBuffer samples = getInput().slice(HEADER_SIZE + 4L * startIndex, 4 * count).asFloatBuffer();
+			float[] values = new float[count];
+			samples.get(values);
+			int[] ret = new int[count];
+			for (int i = 0; i < count; i++) {
+				ret[i] = (int) values[i];
+			}
+			return ret;
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
-		for (int value: data) {
-			segment.addDataPoint(value);
+	}
+
+	/**
+	 * @return mapped file in file's byte order, several threads can read it concurrently
+	 */
+	private synchronized MappedFileInput getInput() throws IOException {
+		if (input == null) {
+			input = new MappedFileInput(getFile());
+			input.order(littleEndian ? BufferedRandomAccessFile.LITTLE_ENDIAN : BufferedRandomAccessFile.BIG_ENDIAN);
 		}
+		return input;
 	}
 	
 	public String toString() {
@@ -88,14 +136,48 @@ public class SourceFileSAC extends SourceFile implements Serializable {
 		return new Time(fissTime.format(new Date(time)), 0); 
 	}
 
-	private static long getSACtime(SacTimeSeries sac) {
+	/**
+	 * Reads binary header and determines byte order: count of points should correspond to file
+	 * size
+	 * 
+	 * @return header in file's byte order
+	 */
+	private ByteBuffer readHeader() throws IOException {
+		byte[] buffer = new byte[HEADER_SIZE];
+		RandomAccessFile raf = new RandomAccessFile(getFile(), "r");
+		try {
+			raf.readFully(buffer);
+		} finally {
+			raf.close();
+		}
+		ByteBuffer ret = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+		long dataLength = getFile().length() - HEADER_SIZE;
+		if (ret.getInt(NPTS) * 4L != dataLength) {
+			ret.order(ByteOrder.LITTLE_ENDIAN);
+			if (ret.getInt(NPTS) * 4L != dataLength) {
+				throw new IOException(getFile().getName() + " does not appear to be a SAC file!");
+			}
+		}
+		littleEndian = ret.order() == ByteOrder.LITTLE_ENDIAN;
+		return ret;
+	}
+
+	private static String getString(ByteBuffer header, int offset) {
+		byte[] value = new byte[8];
+		for (int i = 0; i < value.length; i++) {
+			value[i] = header.get(offset + i);
+		}
+		return new String(value).trim();
+	}
+
+	private static long getSACtime(ByteBuffer header) {
 		GregorianCalendar cal = new GregorianCalendar(TraceView.timeZone);
-		cal.set(Calendar.YEAR, sac.getHeader().getNzyear());
-		cal.set(Calendar.DAY_OF_YEAR, sac.getHeader().getNzjday());
-		cal.set(Calendar.HOUR_OF_DAY, sac.getHeader().getNzhour());
-		cal.set(Calendar.MINUTE, sac.getHeader().getNzmin());
-		cal.set(Calendar.SECOND, sac.getHeader().getNzsec());
-		cal.set(Calendar.MILLISECOND, sac.getHeader().getNzmsec());
+		cal.set(Calendar.YEAR, header.getInt(NZYEAR));
+		cal.set(Calendar.DAY_OF_YEAR, header.getInt(NZJDAY));
+		cal.set(Calendar.HOUR_OF_DAY, header.getInt(NZHOUR));
+		cal.set(Calendar.MINUTE, header.getInt(NZMIN));
+		cal.set(Calendar.SECOND, header.getInt(NZSEC));
+		cal.set(Calendar.MILLISECOND, header.getInt(NZMSEC));
 		return cal.getTimeInMillis();
 	}
 }
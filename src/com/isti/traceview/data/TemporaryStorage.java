@@ -1,12 +1,21 @@
 package com.isti.traceview.data;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
 
+import com.isti.traceview.TraceView;
+import com.isti.traceview.common.Configuration;
+
 /**
  * <p>
  * This class provides space and api for work with dump trace files.
@@ -15,7 +24,11 @@ import org.apache.log4j.Logger;
  * TraceView has two-stage mode for handling with very big data sets. On first stage library parse
  * files, then loads traces one-by-one and dumps it in temporary storage. On the second stage,
  * dumped traces load very fast and don't require random access memory for row trace data keeping -
- * dumped data used as disk cache.
+ * dumped data used as disk cache. Every trace is dumped in it's own file, see {@link ChannelStore}.
+ * </p>
+ * <p>
+ * Also allocates storage for loaded segments samples outside of java heap, see
+ * {@link Configuration.SampleStorage}.
  * </p>
  * 
  * @author Max Kokoulin
@@ -31,6 +44,7 @@ public class TemporaryStorage {
 	 */
 	public TemporaryStorage(String tempdir) {
 		File[] dir;
+		boolean obsolete = false;
 		this.tempdir = tempdir;
 		files = new HashSet<File>();
 		File f = new File(tempdir);
@@ -43,24 +57,31 @@ public class TemporaryStorage {
 							// deletes all SAC files which stored in previous sessions by full seed
 							// reader
 							dir[i].delete();
-						} else if (SourceFile.getExtension(dir[i]).equals("ser")) {
+						} else if (SourceFile.getExtension(dir[i]).equals(ChannelStore.EXTENSION.toLowerCase())) {
 							files.add(dir[i]);
 							lg.debug("Tepmorary file added: " + dir[i].getName());
+						} else if (SourceFile.getExtension(dir[i]).equals("ser") || SourceFile.getExtension(dir[i]).equals("data")) {
+							// dumps of previous format are removed with other temporary files
+							files.add(dir[i]);
+							obsolete = true;
 						}
 					}
 				}
 			}
 		}
+		if (obsolete) {
+			lg.warn("Temporary storage " + tempdir + " contains dumps of previous format, they are ignored. Dump data again to use them");
+		}
 		Runtime.getRuntime().addShutdownHook(new ClearTempShutDownHook());
 	}
 
 	/**
-	 * @return
+	 * @return names of dumped traces files, which match configured filters
 	 */
 	public Set<String> getAllTempFiles() {
 		Set<String> ret = new HashSet<String>();
 		for (File file: files) {
-			if (SourceFile.matchFilters(getFileNetwork(file), getFileStation(file), getFileLocation(file), getFileChannel(file))) {
+			if (SourceFile.getExtension(file).equals(ChannelStore.EXTENSION.toLowerCase()) && SourceFile.matchFilters(getFileNetwork(file), getFileStation(file), getFileLocation(file), getFileChannel(file))) {
 				ret.add(tempdir + File.separator + file.getName());
 			}
 		}
@@ -78,12 +99,6 @@ public class TemporaryStorage {
 	public void delTempFile(File file) {
 		files.remove(file);
 		file.delete();
-		try {
-			new File(getDataFileName(file.getName())).delete();
-		} catch (Exception e) {
-			// do nothing
-		}
-		file = null;
 	}
 
 	/**
@@ -96,24 +111,56 @@ public class TemporaryStorage {
 		while (it.hasNext()) {
 			File file = it.next();
 			it.remove();
-			file.delete(); // deleting serial file
-			try { // deleting datafile, if exist
-				new File(tempdir + File.separator + getDataFileName(file.getName())).delete();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-			file = null;
+			file.delete();
 		}
 	}
 
-	public static String getDataFileName(String serialFileName) {
-		return serialFileName.substring(0, serialFileName.indexOf(".SER")) + ".DATA";
+	/**
+	 * Allocates storage for segment samples outside of java heap. Memory-mapped storage file is
+	 * deleted right after mapping, so it's space is freed by OS when buffer is collected. If file
+	 * can't be mapped, direct buffer is allocated.
+	 * 
+	 * @param count
+	 *            count of samples
+	 * @param mode
+	 *            storage mode, DIRECT or MAPPED
+	 * @return buffer with capacity of count samples, in native byte order
+	 */
+	public static IntBuffer allocateSamples(int count, Configuration.SampleStorage mode) {
+		if (mode == Configuration.SampleStorage.MAPPED) {
+			File file = null;
+			RandomAccessFile raf = null;
+			try {
+				File dir = new File(TraceView.getConfiguration().getDataTempPath());
+				if (!dir.isDirectory()) {
+					dir = new File(System.getProperty("java.io.tmpdir"));
+				}
+				file = File.createTempFile("samples", ".tmp", dir);
+				raf = new RandomAccessFile(file, "rw");
+				ByteBuffer bb = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) count * 4);
+				return bb.order(ByteOrder.nativeOrder()).asIntBuffer();
+			} catch (IOException e) {
+				lg.warn("Can't map samples storage file, using direct buffer: " + e);
+			} finally {
+				if (raf != null) {
+					try {
+						raf.close();
+					} catch (IOException e) {
+						// do nothing
+					}
+				}
+				if (file != null && !file.delete()) {
+					file.deleteOnExit();
+				}
+			}
+		}
+		return ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
 	}
 
 	/**
 	 * @param channel
 	 *            trace
-	 * @return Name of file to serialize given trace
+	 * @return Name of file to dump given trace, without extension
 	 */
 	public String getSerialFileName(Channel channel) {
 		return getTempDir() + File.separator + channel.getNetworkName() + "." + channel.getStation().getName() + "." + channel.getLocationName()
@@ -7,7 +7,7 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 
 public abstract class Block {
@@ -53,6 +53,6 @@ public abstract class Block {
 		return ret;
 	}
 	
-	public abstract void read(BufferedRandomAccessFile input) throws IMSFormatException, IOException, ParseException, CanadaException;
+	public abstract void read(RandomAccessInput input) throws IMSFormatException, IOException, ParseException, CanadaException;
 
 }
@@ -8,7 +8,7 @@ import java.text.ParseException;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class BlockSet {
 	private static Logger lg = Logger.getLogger(BlockSet.class);
@@ -39,7 +39,7 @@ public class BlockSet {
 		return chk2;
 	}
 
-	public void read(BufferedRandomAccessFile input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException {
+	public void read(RandomAccessInput input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException {
 		lg.debug("BlockSet.read begin");
 		long filePointer = 0;
 		String line = null;
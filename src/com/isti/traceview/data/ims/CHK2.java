@@ -5,7 +5,7 @@ import java.text.ParseException;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class CHK2 extends Block {
 	private static Logger lg = Logger.getLogger(CHK2.class);
@@ -19,7 +19,7 @@ public class CHK2 extends Block {
 		return chksum;
 	}
 
-	public void read(BufferedRandomAccessFile input) throws IMSFormatException, IOException, ParseException {
+	public void read(RandomAccessInput input) throws IMSFormatException, IOException, ParseException {
 		lg.debug("CHK2.read begin");
 		header = input.readLine();
 		if (!header.startsWith("CHK2")) {
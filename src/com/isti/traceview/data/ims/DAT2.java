@@ -12,7 +12,7 @@ import java.util.List;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class DAT2 extends Block {
 	private static Logger lg = Logger.getLogger(DAT2.class);
@@ -29,7 +29,7 @@ public class DAT2 extends Block {
 		return data;
 	}
 
-	public void read(BufferedRandomAccessFile input) throws IMSFormatException, IOException, ParseException, CanadaException {
+	public void read(RandomAccessInput input) throws IMSFormatException, IOException, ParseException, CanadaException {
 		lg.debug("DAT2.read begin");
 		header = input.readLine();
 		if (!header.startsWith("DAT2")) {
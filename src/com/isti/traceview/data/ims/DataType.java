@@ -8,7 +8,7 @@ import java.util.Date;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 /**
  * 	data_type type of data that follows; typical examples  
@@ -55,7 +55,7 @@ public abstract class DataType {
 		this.startOffset = startOffset;
 	}
 	
-	public static DataType readHeader(BufferedRandomAccessFile input) throws IMSFormatException, IOException {
+	public static DataType readHeader(RandomAccessInput input) throws IMSFormatException, IOException {
 		DataType ret = null;
 		long filePointer = input.getFilePointer();
 		String line = input.readLine();
@@ -87,7 +87,7 @@ public abstract class DataType {
 		return ret;
 	}
 	
-	public abstract void read(BufferedRandomAccessFile input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException;
+	public abstract void read(RandomAccessInput input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException;
 	public abstract void check() throws IMSFormatException;
 
 }
@@ -10,7 +10,7 @@ import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class DataTypeWaveform extends DataType {
 	private static Logger lg = Logger.getLogger(DataTypeWaveform.class);
@@ -26,7 +26,7 @@ public class DataTypeWaveform extends DataType {
 		return channels;
 	}
 	
-	public void read(BufferedRandomAccessFile input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException {
+	public void read(RandomAccessInput input, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException {
 		lg.debug("DataTypeWaveform.read begin");
 		long filePointer = 0;
 		try {
@@ -13,7 +13,7 @@ import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class IMSFile {
 
@@ -45,7 +45,7 @@ public class IMSFile {
 	public static IMSFile read(DataInput inStream, boolean parseOnly) throws IOException, IMSFormatException, ParseException, CanadaException {
 		IMSFile imsFile = new IMSFile();
 		lg.debug("IMSFile.read begin");
-		BufferedRandomAccessFile input = (BufferedRandomAccessFile) inStream;
+		RandomAccessInput input = (RandomAccessInput) inStream;
 		try {
 			while (true) {
 				long filePointer = input.getFilePointer();
@@ -85,7 +85,7 @@ public class IMSFile {
 		return imsFile;
 	}
 
-	private void readMessageHeader(BufferedRandomAccessFile input, long startPointer) throws IOException, IMSFormatException, ParseException {
+	private void readMessageHeader(RandomAccessInput input, long startPointer) throws IOException, IMSFormatException, ParseException {
 		long filePointer = 0;
 		while (true) {
 			filePointer = input.getFilePointer();
@@ -124,7 +124,7 @@ public class IMSFile {
 		}
 	}
 
-	private void readDataTypes(boolean parseOnly, BufferedRandomAccessFile input, long startPointer) throws IOException, IMSFormatException,
+	private void readDataTypes(boolean parseOnly, RandomAccessInput input, long startPointer) throws IOException, IMSFormatException,
 			ParseException, CanadaException {
 		long filePointer = 0;
 		try {
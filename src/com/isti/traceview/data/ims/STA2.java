@@ -6,7 +6,7 @@ import java.text.ParseException;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class STA2 extends Block {
 	private static Logger lg = Logger.getLogger(STA2.class);
@@ -46,7 +46,7 @@ public class STA2 extends Block {
 		return emplacement;
 	}
 	
-	public void read(BufferedRandomAccessFile input) throws IMSFormatException, IOException, ParseException {
+	public void read(RandomAccessInput input) throws IMSFormatException, IOException, ParseException {
 		lg.debug("STA2.read begin");
 		header = input.readLine();
 		if(!header.startsWith("STA2")){
@@ -6,7 +6,7 @@ import java.util.Date;
 
 import org.apache.log4j.Logger;
 
-import com.isti.traceview.data.BufferedRandomAccessFile;
+import com.isti.traceview.data.RandomAccessInput;
 
 public class WID2 extends Block {
 	private static Logger lg = Logger.getLogger(WID2.class);
@@ -94,7 +94,7 @@ public class WID2 extends Block {
 		return orientVer;
 	}
 
-	public void read(BufferedRandomAccessFile input) throws IMSFormatException, IOException, ParseException{
+	public void read(RandomAccessInput input) throws IMSFormatException, IOException, ParseException{
 		lg.debug("WID2.read begin");
 		header = input.readLine();
 		if(!header.startsWith("WID2")){
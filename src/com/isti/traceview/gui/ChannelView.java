@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import javax.swing.BorderFactory;
 import javax.swing.JOptionPane;
@@ -26,9 +27,9 @@ import com.isti.traceview.common.IEvent;
 import com.isti.traceview.common.TimeInterval;
 import com.isti.traceview.data.EventWrapper;
 import com.isti.traceview.data.PlotData;
-import com.isti.traceview.data.PlotDataPoint;
 import com.isti.traceview.data.PlotDataProvider;
 import com.isti.traceview.data.Segment;
+import com.isti.traceview.processing.Rotation;
 
 import java.awt.BorderLayout;
 import java.awt.Cursor;
@@ -73,7 +74,7 @@ public class ChannelView extends JPanel implements Comparable, Observer {
 	 * @uml.property name="plotDataProviders" multiplicity="(0 -1)" dimension="1"
 	 */
 	private List<PlotDataProvider> plotDataProviders = null; // @jve:decl-index=0:
-	List<PlotData> graphs = null;
+	List<PlotData> graphs = new ArrayList<PlotData>();
 	int height = 0;
 	int maxValueAllChannels = Integer.MIN_VALUE;
 	int minValueAllChannels = Integer.MAX_VALUE;
@@ -94,6 +95,18 @@ public class ChannelView extends JPanel implements Comparable, Observer {
 	private int selectionNumber = 0;
 	private boolean isDrawSelectionCheckBox = true;
 
+	/**
+	 * Parameters of the last requested background computation of graphs
+	 */
+	private RenderPipeline.Request requestedData = null;
+
+	/**
+	 * Parameters of the graphs currently shown
+	 */
+	private RenderPipeline.Request renderedData = null;
+
+	private Future<?> renderTask = null;
+
 	/**
 	 * Mouse adapter for GraphAreaPanel - internal panel containing graphs
 	 */
@@ -306,7 +319,7 @@ public class ChannelView extends JPanel implements Comparable, Observer {
 				minValueAllChannels = channel.getMinValue();
 			}
 		}
-		CommandExecutor.getInstance().execute(new LoadDataCommand(channels, null));
+		CommandExecutor.getInstance().execute(new LoadDataCommand(channels, TraceView.getConfiguration().getTimeInterval()));
 		lastClickedY = Integer.MIN_VALUE;
 	}
 
@@ -326,14 +339,13 @@ public class ChannelView extends JPanel implements Comparable, Observer {
 	}
 
 	/**
-	 * Prepares pixelized data for PlotDataProviders to draw. Should be called before paint.
+	 * Prepares pixelized data for PlotDataProviders to draw in the calling thread.
 	 */
 	public synchronized void updateData() {
 
 		int width = graphAreaPanel.getWidth();// - graphAreaPanel.getInsets().left -
 		// graphAreaPanel.getInsets().right;
 		lg.debug("Updating data " + this + "Width = " + width);
-		graphs = new ArrayList<PlotData>();
 /**
 System.out.println();
 System.out.println("== ChannelView updateData() Take a peak:");
@@ -350,26 +362,110 @@ System.out.println("== ChannelView updateData() Take a peak:");
 System.out.println("== ChannelView updateData() Done");
 System.out.println();
 **/
+		RenderPipeline.Request request = new RenderPipeline.Request(graphPanel.getTimeRange(), width, graphPanel.getRotation(), graphPanel
+				.getFilter(), graphPanel.getColorMode());
+		if (renderTask != null) {
+			renderTask.cancel(true);
+		}
+		requestedData = request;
+		setGraphs(request, computeData(request, width));
+	}
 
-		for (PlotDataProvider channel: plotDataProviders) {
+	/**
+	 * Requests background computation of pixelized data to draw. Graphs are replaced and graph
+	 * panel is repainted when computation is finished. Should be called in event dispatch thread.
+	 * 
+	 * @param force
+	 *            if false, data are not recomputed if view parameters are the same as in previous
+	 *            request
+	 */
+	public void requestData(boolean force) {
+		RenderPipeline.Request request = new RenderPipeline.Request(graphPanel.getTimeRange(), graphAreaPanel.getWidth(), graphPanel
+				.getRotation(), graphPanel.getFilter(), graphPanel.getColorMode());
+		if (!force && request.equals(requestedData)) {
+			return;
+		}
+		if (renderTask != null) {
+			renderTask.cancel(true);
+		}
+		// coarse graph is shown first only if we show another part of data
+		boolean progressive = TraceView.getConfiguration().getProgressiveRendering() && !request.isSameView(renderedData);
+		requestedData = request;
+		lg.debug("Requesting data " + this + ": " + request);
+		renderTask = RenderPipeline.getInstance().render(this, request, progressive);
+	}
+
+	/**
+	 * Computes pixelized data for PlotDataProviders, doesn't change state of this ChannelView.
+	 * 
+	 * @param request
+	 *            parameters of computation
+	 * @param pointCount
+	 *            requested count of points
+	 * @return list of pixelized data sorted by mean amplitude, or null if computing thread was
+	 *         interrupted
+	 */
+	List<PlotData> computeData(RenderPipeline.Request request, int pointCount) {
+		List<PlotDataProvider> channels = plotDataProviders;
+		List<PlotData> ret = new ArrayList<PlotData>();
+		Rotation rotation = request.getRotation();
+		for (PlotDataProvider channel: channels) {
+			if (Thread.currentThread().isInterrupted()) {
+				return null;
+			}
 			// lg.debug("processing channel: " + channel);
 			PlotData data = null;
 			try {
-				data = channel.getPlotData(graphPanel.getTimeRange(), width, graphPanel.getRotation(), graphPanel.getFilter(), graphPanel.getColorMode());
+				data = channel.getPlotData(request.getTimeRange(), pointCount, rotation, request.getFilter(), request.getColorMode());
 			} catch (TraceViewException e) {
-				graphPanel.setRotation(null);
-				JOptionPane.showMessageDialog(TraceView.getFrame(), e, "Rotation warning", JOptionPane.WARNING_MESSAGE);
+				rotation = null;
+				showRotationWarning(e);
 				try {
-					data = channel.getPlotData(graphPanel.getTimeRange(), width, null, graphPanel.getFilter(), graphPanel.getColorMode());
+					data = channel.getPlotData(request.getTimeRange(), pointCount, null, request.getFilter(), request.getColorMode());
 				} catch (TraceViewException e1) {
 					// do nothing
 				}
 			}
+			if (data != null) {
+				ret.add(data);
+			}
+		}
+		Collections.sort(ret);
+		return ret;
+	}
 
-			graphs.add(data);
-			meanValue = data.getMeanValue();
+	/**
+	 * Sets graphs computed in background and repaints graph panel. Results of stale requests are
+	 * ignored. Called in event dispatch thread.
+	 */
+	void setData(RenderPipeline.Request request, List<PlotData> data) {
+		if (request != requestedData) {
+			return;
+		}
+		setGraphs(request, data);
+		graphPanel.dataRepaint();
+	}
+
+	private void setGraphs(RenderPipeline.Request request, List<PlotData> data) {
+		graphs = data;
+		renderedData = request;
+		for (PlotData pd: data) {
+			meanValue = pd.getMeanValue();
+		}
+	}
+
+	private void showRotationWarning(final TraceViewException e) {
+		Runnable warning = new Runnable() {
+			public void run() {
+				graphPanel.setRotation(null);
+				JOptionPane.showMessageDialog(TraceView.getFrame(), e, "Rotation warning", JOptionPane.WARNING_MESSAGE);
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread()) {
+			warning.run();
+		} else {
+			SwingUtilities.invokeLater(warning);
 		}
-		Collections.sort(graphs);
 	}
 
 	/**
@@ -606,17 +702,18 @@ System.out.println();
 				lg.debug("Drawing PlotData " + i + ", " + data.getLabel() + ": max " + data.getMaxValue() + ", min " + data.getMinValue() + ", mean " + data.getMeanValue());
 				// strokes for previous pixel
 				List<Stroke> yprev = new ArrayList<Stroke>();
-				for (PlotDataPoint[] points: data.getPixels()) {
+				for (; i < data.getPointCount(); i++) {
 					int j = 0;
-					for (PlotDataPoint point: points) {
+					for (int point = data.getPixelStart(i); point < data.getPixelEnd(i); point++) {
 						//add previous stroke to list if list has unsuffisient length
 						if(yprev.size()==j || yprev.get(j)==null){
 							yprev.add(j, new Stroke());
 						}
 						Stroke current = new Stroke();
-						if (point.getSegmentNumber() >= 0) {
-							segmentColor = graphPanel.getColorMode().getSegmentColor(graphNum + point.getSegmentNumber(), graphNum + point.getRawDataProviderNumber(), graphNum + point.getContinueAreaNumber(), data.getTraceColor());
-							if (point.getSegmentNumber() == 0 && data.getLabelColor() == null) {
+						int segmentNumber = data.getSegmentNumber(point);
+						if (segmentNumber >= 0) {
+							segmentColor = graphPanel.getColorMode().getSegmentColor(graphNum + segmentNumber, graphNum + data.getRawDataProviderNumber(point), graphNum + data.getContinueAreaNumber(point), data.getTraceColor());
+							if (segmentNumber == 0 && data.getLabelColor() == null) {
 								data.setLabelColor(segmentColor);
 							}
 							g.setColor(segmentColor);
@@ -625,9 +722,9 @@ System.out.println();
 								yprev.set(j, new Stroke());
 							}
 							current.color = segmentColor;
-							current.top = scaleMode.getY(meanState.getValue(offsetState.getValue(point.getTop(), point.getSegmentNumber()), data.getMeanValue()));
-							current.bottom = scaleMode.getY(meanState.getValue(offsetState.getValue(point.getBottom(), point.getSegmentNumber()), data.getMeanValue()));
-							//lg.debug("Drawing pixel " + j + ": " + point.getTop() + "-" + point.getBottom() + ", " + current);
+							current.top = scaleMode.getY(meanState.getValue(offsetState.getValue(data.getTop(point), segmentNumber), data.getMeanValue()));
+							current.bottom = scaleMode.getY(meanState.getValue(offsetState.getValue(data.getBottom(point), segmentNumber), data.getMeanValue()));
+							//lg.debug("Drawing pixel " + j + ": " + data.getTop(point) + "-" + data.getBottom(point) + ", " + current);
 							g.drawLine(i, current.top, i, current.bottom);
 							if (i > 0) {
 								// fill vertical gaps
@@ -646,28 +743,30 @@ System.out.println();
 							yprev.set(j, new Stroke());
 						}
 						// drawing events
-						long currentTime = getTime(i);
-						for (EventWrapper eventWrapper: point.getEvents()) {
-							lg.debug("drawing event front");
-							g.setColor(eventWrapper.getEvent().getColor());
-							if (eventWrapper.getEvent().getType().equals("ARRIVAL") && graphPanel.getPhaseState()) {
-								// drawing phases
-								if (graphPanel.getSelectedEarthquakes().contains(eventWrapper.getEvent().getParameterValue("EARTHQUAKE"))
-										&& graphPanel.getSelectedPhases().contains(eventWrapper.getEvent().getParameterValue("PHASE"))) {
+						if (data.hasEvents(i)) {
+							long currentTime = getTime(i);
+							for (EventWrapper eventWrapper: data.getEvents(i)) {
+								lg.debug("drawing event front");
+								g.setColor(eventWrapper.getEvent().getColor());
+								if (eventWrapper.getEvent().getType().equals("ARRIVAL") && graphPanel.getPhaseState()) {
+									// drawing phases
+									if (graphPanel.getSelectedEarthquakes().contains(eventWrapper.getEvent().getParameterValue("EARTHQUAKE"))
+											&& graphPanel.getSelectedPhases().contains(eventWrapper.getEvent().getParameterValue("PHASE"))) {
+										g.drawLine(i, getHeight(), i, 0);
+										g.drawString((String) eventWrapper.getEvent().getParameterValue("PHASE"), i + 2, getHeight() - 5);
+									}
+								} else if (eventWrapper.getEvent().getType().equals("PICK") && graphPanel.getPickState()) {
+									// drawing picks
 									g.drawLine(i, getHeight(), i, 0);
-									g.drawString((String) eventWrapper.getEvent().getParameterValue("PHASE"), i + 2, getHeight() - 5);
+									Polygon p = new Polygon();
+									p.addPoint(i, 0);
+									p.addPoint(i + 4, 4);
+									p.addPoint(i, 8);
+									g.fillPolygon(p);
+								} else {
+									paintCustomEvent(g, eventWrapper, i, current.top, current.bottom);
+									g.setColor(segmentColor);
 								}
-							} else if (eventWrapper.getEvent().getType().equals("PICK") && graphPanel.getPickState()) {
-								// drawing picks
-								g.drawLine(i, getHeight(), i, 0);
-								Polygon p = new Polygon();
-								p.addPoint(i, 0);
-								p.addPoint(i + 4, 4);
-								p.addPoint(i, 8);
-								g.fillPolygon(p);
-							} else {
-								paintCustomEvent(g, eventWrapper, i, current.top, current.bottom);
-								g.setColor(segmentColor);
 							}
 						}
 						j++;
@@ -676,7 +775,6 @@ System.out.println();
 						yprev.set(j, new Stroke());
 						j++;
 					}
-					i++;
 				}
 				graphNum++;
 			}
@@ -910,10 +1008,8 @@ System.out.println();
 				for (PlotData data: graphs) {
 					if (data.getPointCount() > x) {
 						Set<EventWrapper> ret = new HashSet<EventWrapper>();
-						for (PlotDataPoint dp: data.getPixels().get(x)) {
-							if (dp.getEvents().size() != 0) {
-								ret.addAll(dp.getEvents());
-							}
+						if (data.hasEvents(x)) {
+							ret.addAll(data.getEvents(x));
 						}
 						if (ret.size() > 0) {
 							return ret;
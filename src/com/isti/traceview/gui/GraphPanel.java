@@ -25,6 +25,7 @@ import com.isti.traceview.common.IEvent;
 import com.isti.traceview.common.TimeInterval;
 import com.isti.traceview.common.UniqueList;
 import com.isti.traceview.data.PlotDataProvider;
+import com.isti.traceview.data.SampleCache;
 import com.isti.traceview.data.Segment;
 import com.isti.traceview.processing.IFilter;
 import com.isti.traceview.processing.Rotation;
@@ -149,6 +150,12 @@ public class GraphPanel extends JPanel implements Printable, MouseInputListener,
 	 */
 	private boolean forceRepaint = false;
 
+	/**
+	 * Flag if we need to repaint graphs because background computation of ChannelView's data was
+	 * finished
+	 */
+	private boolean dataRepaint = false;
+
 	/**
 	 * Mouse button was pressed, X coordinate.
 	 */
@@ -317,6 +324,15 @@ System.out.format("== MTH: file=%s path=%s\n", url.getFile(), url.getPath() );
 		repaint();
 	}
 
+	/**
+	 * Repaints graphs after ChannelView got new data from {@link RenderPipeline}, without new data
+	 * requests
+	 */
+	void dataRepaint() {
+		dataRepaint = true;
+		repaint();
+	}
+
 	/**
 	 * Sets factory to produce ChannelViews. Library user can define his own factory to produce
 	 * customized ChannelViews.
@@ -675,6 +691,7 @@ System.out.format("== MTH: file=%s path=%s\n", url.getFile(), url.getPath() );
 		for (ChannelView cv: channelShowSet) {
 			for (PlotDataProvider channel: cv.getPlotDataProviders()) {
 				channel.deleteObserver(cv);
+				SampleCache.getInstance().unpin(channel);
 			}
 		}
 		ChannelView.currentSelectionNumber = 0;
@@ -1234,7 +1251,7 @@ System.out.format("== MTH: file=%s path=%s\n", url.getFile(), url.getPath() );
 		paintNow = true;
 		int infoPanelWidth = channelViewFactory.getInfoAreaWidth();
 		//lg.debug("Repainting graph panel");
-		if (!mouseRepaint || forceRepaint || ChannelView.tooltipVisible) {
+		if (!mouseRepaint || forceRepaint || dataRepaint || ChannelView.tooltipVisible) {
 			//lg.debug("GraphPanel: force repaint");
 			//RepaintManager rm = RepaintManager.currentManager(this);
 			//rm.markCompletelyDirty(this);
@@ -1251,7 +1268,8 @@ System.out.format("== MTH: file=%s path=%s\n", url.getFile(), url.getPath() );
 					// end of ugly hack
 				}
 				
-				view.updateData();
+				// data are computed in background, view shows last computed ones
+				view.requestData(forceRepaint);
 			}
 			super.paint(g);
 			g.setXORMode(new Color(204, 204, 51));
@@ -1271,6 +1289,7 @@ System.out.format("== MTH: file=%s path=%s\n", url.getFile(), url.getPath() );
 			previousSelectedAreaYbegin = selectedAreaYbegin;
 			previousSelectedAreaYend = selectedAreaYend;
 			forceRepaint = false;
+			dataRepaint = false;
 		} else {
 			g.setXORMode(selectionColor);
 			//lg.debug("Repainting cursor, color " + selectionColor);
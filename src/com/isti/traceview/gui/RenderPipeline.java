@@ -0,0 +1,180 @@
+package com.isti.traceview.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceView;
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.common.TimeInterval;
+import com.isti.traceview.data.PlotData;
+import com.isti.traceview.processing.IFilter;
+import com.isti.traceview.processing.Rotation;
+
+/**
+ * <p>
+ * Computes pixelized data for {@link ChannelView}s in background threads, so zooming and
+ * scrolling don't block event dispatch thread. Views of graph panel are computed in parallel.
+ * ChannelView keeps one actual render task, task for new view parameters cancels previous one.
+ * Results are passed to views in event dispatch thread, results of stale tasks are dropped.
+ * </p>
+ * <p>
+ * In progressive mode unfiltered graph is first computed with reduced resolution and shown
+ * stretched, and then refined with full resolution. Filtered graphs are computed once, because
+ * filtering cost doesn't depend on resolution.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class RenderPipeline {
+	private static Logger lg = Logger.getLogger(RenderPipeline.class);
+
+	/**
+	 * Resolution divider for coarse stage of progressive rendering
+	 */
+	public static final int COARSE_FACTOR = 8;
+
+	private static RenderPipeline instance = null;
+
+	private ExecutorService executor = null;
+
+	/**
+	 * Parameters of plot data computation for one ChannelView
+	 */
+	public static class Request {
+		private TimeInterval timeRange;
+		private int width;
+		private Rotation rotation;
+		private IFilter filter;
+		private IColorModeState colorMode;
+
+		public Request(TimeInterval timeRange, int width, Rotation rotation, IFilter filter, IColorModeState colorMode) {
+			this.timeRange = timeRange;
+			this.width = width;
+			this.rotation = rotation;
+			this.filter = filter;
+			this.colorMode = colorMode;
+		}
+
+		public TimeInterval getTimeRange() {
+			return timeRange;
+		}
+
+		/**
+		 * @return requested count of points
+		 */
+		public int getWidth() {
+			return width;
+		}
+
+		public Rotation getRotation() {
+			return rotation;
+		}
+
+		public IFilter getFilter() {
+			return filter;
+		}
+
+		public IColorModeState getColorMode() {
+			return colorMode;
+		}
+
+		/**
+		 * @return flag if other request has the same time range and width, i.e. shows the same
+		 *         part of the data
+		 */
+		public boolean isSameView(Request r) {
+			return r != null && width == r.width && timeRange.getStart() == r.timeRange.getStart()
+					&& timeRange.getEnd() == r.timeRange.getEnd();
+		}
+
+		/**
+		 * Requests are equal if they have the same time range and width, and the same instances of
+		 * rotation, filter and color mode
+		 */
+		public boolean equals(Object o) {
+			if (o instanceof Request) {
+				Request r = (Request) o;
+				return isSameView(r) && rotation == r.rotation && filter == r.filter && colorMode == r.colorMode;
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			return (int) (timeRange.getStart() ^ timeRange.getEnd()) * 31 + width;
+		}
+
+		public String toString() {
+			return "Request: " + timeRange + ", width " + width + ", filter " + filter + ", rotation " + rotation;
+		}
+	}
+
+	private RenderPipeline(int threadCount) {
+		executor = DaemonThreadPool.newFixedThreadPool(threadCount, "Render");
+		lg.debug("RenderPipeline created with " + threadCount + " threads");
+	}
+
+	public static synchronized RenderPipeline getInstance() {
+		if (instance == null) {
+			instance = new RenderPipeline(TraceView.getConfiguration().getRenderThreadCount());
+		}
+		return instance;
+	}
+
+	/**
+	 * Submits task to compute view's plot data
+	 *
+	 * @param view
+	 *            ChannelView to compute data for
+	 * @param request
+	 *            parameters of computation
+	 * @param progressive
+	 *            if true, coarse data are computed and passed to view first
+	 * @return future to cancel the task
+	 */
+	public Future<?> render(final ChannelView view, final Request request, boolean progressive) {
+		final boolean coarseFirst = progressive && request.getFilter() == null && request.getWidth() >= COARSE_FACTOR;
+		return executor.submit(new Runnable() {
+			public void run() {
+				try {
+					if (coarseFirst) {
+						List<PlotData> coarse = view.computeData(request, request.getWidth() / COARSE_FACTOR);
+						if (coarse == null) {
+							return;
+						}
+						List<PlotData> stretched = new ArrayList<PlotData>(coarse.size());
+						for (PlotData data: coarse) {
+							stretched.add(data.resample(request.getWidth()));
+						}
+						publish(view, request, stretched);
+					}
+					List<PlotData> data = view.computeData(request, request.getWidth());
+					if (data != null) {
+						publish(view, request, data);
+					}
+				} catch (RuntimeException e) {
+					if (Thread.currentThread().isInterrupted()) {
+						lg.debug("Rendering of " + view + " cancelled: " + e);
+					} else {
+						lg.error("Can't compute plot data for " + view + ": " + e);
+					}
+				}
+			}
+		});
+	}
+
+	private static void publish(final ChannelView view, final Request request, final List<PlotData> data) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				view.setData(request, data);
+			}
+		});
+	}
+}
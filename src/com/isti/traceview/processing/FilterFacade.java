@@ -1,5 +1,8 @@
 package com.isti.traceview.processing;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
 import com.isti.traceview.TraceViewException;
@@ -8,14 +11,21 @@ import com.isti.traceview.data.RawDataProvider;
 import com.isti.traceview.data.Segment;
 
 /**
- * Facade to simplify filter operation
+ * Facade to simplify filter operation. Filters implementing {@link IStreamingFilter} process data
+ * by chunks of {@link #CHUNK_SIZE} samples, so only one chunk is converted to double at a time.
  * 
  * @author Max Kokoulin
  */
 public class FilterFacade {
 	private static Logger lg = Logger.getLogger(FilterFacade.class);
 
+	/**
+	 * Count of samples processed by streaming filter at once
+	 */
+	public static final int CHUNK_SIZE = 65536;
+
 	private IFilter filter;
+	private RawDataProvider channel;
 
 	/**
 	 * @param filter
@@ -25,6 +35,7 @@ public class FilterFacade {
 	 */
 	public FilterFacade(IFilter filter, RawDataProvider channel) {
 		this.filter = filter;
+		this.channel = channel;
 		filter.init(channel);
 	}
 
@@ -56,17 +67,23 @@ public class FilterFacade {
 	}
 
 	/**
-	 * Method to filter array of data
+	 * Method to filter array of data, data are filtered in place
 	 */
 	public int[] filter(int[] data) {
+		if (filter instanceof IStreamingFilter) {
+			List<int[]> pieces = new ArrayList<int[]>(1);
+			pieces.add(data);
+			filterStream(pieces, Double.NaN);
+			return data;
+		}
 		double[] toFilt = new double[data.length];
 		for (int i = 0; i < data.length; i++) {
-			toFilt[i] = new Double(data[i]);
+			toFilt[i] = data[i];
 		}
 		try {
 			toFilt = filter.filter(toFilt, toFilt.length);
 			for (int i = 0; i < data.length; i++) {
-				data[i] = new Double(toFilt[i]).intValue();
+				data[i] = (int) toFilt[i];
 			}
 		} catch (TraceViewException e) {
 			lg.error("Can't filter data: " + e);
@@ -75,6 +92,95 @@ public class FilterFacade {
 		return data;
 	}
 
+	/**
+	 * Filters several arrays as one continuous data, arrays are filtered in place. Streaming filter
+	 * processes arrays one by one keeping filter state between them, other filters process
+	 * concatenated data.
+	 * 
+	 * @param pieces
+	 *            consecutive pieces of data
+	 */
+	public void filter(List<int[]> pieces) {
+		filter(pieces, Double.NaN);
+	}
+
+	/**
+	 * Filters several arrays as one continuous data, arrays are filtered in place. The same as
+	 * {@link #filter(List)}, but streaming filter removes given level instead of mean of pieces, so
+	 * parts of longer data can be filtered separately.
+	 * 
+	 * @param pieces
+	 *            consecutive pieces of data
+	 * @param mean
+	 *            level removed from samples by streaming filter, or NaN to use mean of pieces
+	 */
+	public void filter(List<int[]> pieces, double mean) {
+		if (filter instanceof IStreamingFilter) {
+			filterStream(pieces, mean);
+		} else {
+			int length = 0;
+			for (int[] piece: pieces) {
+				length += piece.length;
+			}
+			int[] data = new int[length];
+			int pos = 0;
+			for (int[] piece: pieces) {
+				System.arraycopy(piece, 0, data, pos, piece.length);
+				pos += piece.length;
+			}
+			filter(data);
+			pos = 0;
+			for (int[] piece: pieces) {
+				System.arraycopy(data, pos, piece, 0, piece.length);
+				pos += piece.length;
+			}
+		}
+	}
+
+	/**
+	 * Returns count of samples which should be filtered before range of interest to hide filter
+	 * transient, if range is filtered separately from preceding data
+	 */
+	public int getWarmupLength() {
+		if (filter instanceof IStreamingFilter) {
+			return ((IStreamingFilter) filter).getWarmupLength(channel);
+		}
+		return Segment.PAGE_SIZE;
+	}
+
+	/**
+	 * Filters pieces by streaming filter, if mean isn't given it is computed over all pieces first
+	 */
+	private void filterStream(List<int[]> pieces, double mean) {
+		double sum = 0.0;
+		int length = 0;
+		for (int[] piece: pieces) {
+			if (Double.isNaN(mean)) {
+				for (int value: piece) {
+					sum = sum + value;
+				}
+			}
+			length += piece.length;
+		}
+		if (Double.isNaN(mean)) {
+			mean = sum / length;
+		}
+		IFilterStream stream = ((IStreamingFilter) filter).createStream(channel, mean);
+		double[] chunk = new double[Math.min(length, CHUNK_SIZE)];
+		for (int[] piece: pieces) {
+			for (int start = 0; start < piece.length; start += CHUNK_SIZE) {
+				int count = Math.min(CHUNK_SIZE, piece.length - start);
+				for (int i = 0; i < count; i++) {
+					chunk[i] = piece[start + i];
+				}
+				stream.filter(chunk, 0, count);
+				for (int i = 0; i < count; i++) {
+					piece[start + i] = (int) chunk[i];
+				}
+			}
+		}
+	}
+
 	/**
 	 * Method to filter whole segment
 	 */
@@ -0,0 +1,19 @@
+package com.isti.traceview.processing;
+
+/**
+ * Filtering state of one data stream, created by {@link IStreamingFilter}. Every chunk continues
+ * data of previous one. Instance isn't thread safe, every stream is processed by one thread.
+ */
+public interface IFilterStream {
+	/**
+	 * Filters next chunk of data in place
+	 * 
+	 * @param data
+	 *            array with chunk samples
+	 * @param offset
+	 *            index of first chunk sample in the array
+	 * @param length
+	 *            number of samples in chunk
+	 */
+	public void filter(double[] data, int offset, int length);
+}
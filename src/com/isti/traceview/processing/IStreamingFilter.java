@@ -0,0 +1,35 @@
+package com.isti.traceview.processing;
+
+import com.isti.traceview.data.RawDataProvider;
+
+/**
+ * Filter which can process data stream by chunks. Filter state is kept in {@link IFilterStream}
+ * between chunks, so long or live traces can be filtered in bounded memory, and one filter can
+ * process several streams in parallel.
+ * 
+ * @see FilterFacade
+ */
+public interface IStreamingFilter extends IFilter {
+	/**
+	 * Creates new stream with initial filter state. Stream designs its own coefficients for
+	 * channel's sample rate, so it doesn't depend on last {@link IFilter#init(RawDataProvider)}
+	 * call.
+	 * 
+	 * @param channel
+	 *            filtered trace
+	 * @param mean
+	 *            level removed from samples before filtering and restored after, usually mean
+	 *            value of whole data
+	 * @return stream to filter data chunks
+	 */
+	public IFilterStream createStream(RawDataProvider channel, double mean);
+
+	/**
+	 * Returns count of samples filter needs to settle from initial state, data before requested
+	 * range are filtered to hide transient when range is filtered separately
+	 * 
+	 * @param channel
+	 *            filtered trace
+	 */
+	public int getWarmupLength(RawDataProvider channel);
+}
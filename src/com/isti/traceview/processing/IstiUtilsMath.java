@@ -2,6 +2,8 @@ package com.isti.traceview.processing;
 
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.jfree.data.xy.XYSeries;
@@ -34,6 +36,20 @@ public class IstiUtilsMath {
 	 */
 	public static double ISTI_UTIL_NM2MTR = 1e9;
 
+	/**
+	 * Count of FFT plans kept in cache
+	 */
+	private static final int FFT_CACHE_SIZE = 16;
+
+	/**
+	 * FFT plans by data length, in access order
+	 */
+	private static final Map<Integer, DoubleFFT_1D> fftPlans = new LinkedHashMap<Integer, DoubleFFT_1D>(FFT_CACHE_SIZE, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Integer, DoubleFFT_1D> eldest) {
+			return size() > FFT_CACHE_SIZE;
+		}
+	};
+
 	/**
 	 * \ingroup isti_utils_public_functions \brief Function to normalize
 	 * response function using calib and calper. \note Modifies the first
@@ -292,6 +308,48 @@ public class IstiUtilsMath {
 		return ret;
 	}
 
+	/**
+	 * Compute complex deconvolution of interleaved complex arrays, see {@link #fftForward(double[])}
+	 */
+	public static final double[] complexDeconvolution(double[] f, double[] g) {
+		if (f.length != g.length)
+			throw new IllegalArgumentException("complexDeconvolution: both arrays must have same length. " + f.length / 2 + " " + g.length / 2);
+		double[] ret = new double[f.length];
+		for (int k = 0; k < f.length; k += 2) {
+			// the same computation as Cmplx.div()
+			double fr = f[k];
+			double fi = f[k + 1];
+			double gr = g[k];
+			double gi = g[k + 1];
+			if (Math.abs(gr) >= Math.abs(gi)) {
+				double q = gi / gr;
+				double d = gr + q * gi;
+				ret[k] = (fr + q * fi) / d;
+				ret[k + 1] = (fi - q * fr) / d;
+			} else {
+				double q = gr / gi;
+				double d = gi + q * gr;
+				ret[k] = (fr * q + fi) / d;
+				ret[k + 1] = (fi * q - fr) / d;
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Compute complex convolution of interleaved complex arrays, see {@link #fftForward(double[])}
+	 */
+	public static final double[] complexConvolution(double[] f, double[] g) {
+		if (f.length != g.length)
+			throw new IllegalArgumentException("complexConvolution: both arrays must have same length. " + f.length / 2 + " " + g.length / 2);
+		double[] ret = new double[f.length];
+		for (int k = 0; k < f.length; k += 2) {
+			ret[k] = f[k] * g[k] - f[k + 1] * g[k + 1];
+			ret[k + 1] = f[k + 1] * g[k] + f[k] * g[k + 1];
+		}
+		return ret;
+	}
+
 	/**
 	 * Compute amplitude of complex spectra
 	 */
@@ -303,6 +361,41 @@ public class IstiUtilsMath {
 		return ret;
 	}
 
+	/**
+	 * Compute amplitude of interleaved complex spectra, see {@link #fftForward(double[])}
+	 */
+	public static final double[] getSpectraAmplitude(double[] spectra) {
+		final double[] ret = new double[spectra.length / 2];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = Math.sqrt(spectra[2 * i] * spectra[2 * i] + spectra[2 * i + 1] * spectra[2 * i + 1]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Converts complex array to interleaved form: real and imaginary parts of each element are
+	 * placed sequentially
+	 */
+	public static double[] toInterleaved(Cmplx[] data) {
+		double[] ret = new double[data.length * 2];
+		for (int i = 0; i < data.length; i++) {
+			ret[2 * i] = data[i].r;
+			ret[2 * i + 1] = data[i].i;
+		}
+		return ret;
+	}
+
+	/**
+	 * Converts interleaved complex array to array of Cmplx
+	 */
+	public static Cmplx[] toCmplx(double[] data) {
+		Cmplx[] ret = new Cmplx[data.length / 2];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = new Cmplx(data[2 * i], data[2 * i + 1]);
+		}
+		return ret;
+	}
+
 	/**
 	 * Compute correlation
 	 */
@@ -327,11 +420,15 @@ public class IstiUtilsMath {
 			}
 		}
 		double scale = StrictMath.sqrt(sumF * sumG);
-		Cmplx fTrans[] = processFft(fdataPadded);
-		Cmplx gTrans[] = processFft(gdataPadded);
-		for (int i = 0; i < fTrans.length; i++)
-			fTrans[i] = Cmplx.mul(fTrans[i], gTrans[i].conjg());
-		double[] corr = inverseFft(fTrans);
+		double[] fTrans = fftForward(fdataPadded);
+		double[] gTrans = fftForward(gdataPadded);
+		// multiplication by conjugate
+		for (int k = 0; k < fTrans.length; k += 2) {
+			double r = fTrans[k] * gTrans[k] + fTrans[k + 1] * gTrans[k + 1];
+			fTrans[k + 1] = fTrans[k + 1] * gTrans[k] - fTrans[k] * gTrans[k + 1];
+			fTrans[k] = r;
+		}
+		double[] corr = fftInverse(fTrans);
 		double[] crosscorr = new double[2 * dataLength - 1];
 		for (int i = 0; i < dataLength; i++) {
 			crosscorr[dataLength - 1 + i] = corr[i] / scale;
@@ -408,10 +505,10 @@ public class IstiUtilsMath {
 		traceCopy = windowHanning(traceCopy);
 
 		// Do FFT and get imag and real parts of the data spectrum
-		final Cmplx[] noise_spectra = processFft(traceCopy);
+		final double[] noise_spectra = fftForward(traceCopy);
 		Cmplx[] resp = null;
 		try {
-			resp = response.getResp(date, fp.startFreq, fp.endFreq, Math.min(noise_spectra.length, fp.numFreq));
+			resp = response.getResp(date, fp.startFreq, fp.endFreq, Math.min(noise_spectra.length / 2, fp.numFreq));
 		} catch (Exception e) {
 			errString = "Can't get response for channel " + channel.getName() + ": " + e.toString();
 		}
@@ -432,35 +529,7 @@ public class IstiUtilsMath {
 	 */
 
 	public static Cmplx[] processFft(double[] indata) {
-		lg.debug("processFft begin");
-		int n = indata.length;
-		DoubleFFT_1D fft = new DoubleFFT_1D(n);
-		fft.realForward(indata);
-		Cmplx[] ret = null;
-		int l = 0;
-		if(n%2==0){
-			l = n/2;
-			ret = new Cmplx[l+1];
-			for (int k = 0; k <= l; k++) {
-				ret[k] = new Cmplx(k==l?indata[1]:indata[2*k], (k==0 || k==l) ? 0 : indata[2*k+1]);
-			}
-		} else {
-			l = (n-1)/2;
-			ret = new Cmplx[l+1];
-			for (int k = 0; k <= l; k++) {
-				double im;
-				if(k==0){
-					im=0;
-				} else if(k==l) {
-					im=indata[1];
-				} else {
-					im=indata[2*k+1];
-				}
-				ret[k] = new Cmplx(indata[2*k], im);
-			}
-		}
-		lg.debug("processFft end");
-		return ret;
+		return toCmplx(fftForward(indata));
 	}
 
 	/**
@@ -471,16 +540,74 @@ public class IstiUtilsMath {
 	 */
 	
 	public static double[] inverseFft(Cmplx[] indata) {
-		DoubleFFT_1D fft = new DoubleFFT_1D(indata.length * 2-2);
-		double[] dataToProcess = new double[indata.length * 2-2];
-		for (int k = 0; k < indata.length-1; k++) {
-			dataToProcess[2*k] = indata[k].r;
-			dataToProcess[2*k+1] = (k==0?indata[indata.length-1].r:indata[k].i);
+		return fftInverse(toInterleaved(indata));
+	}
+
+	/**
+	 * Forward FFT of real data
+	 * 
+	 * @param indata
+	 *            the input data, it is overwritten
+	 * @return interleaved complex spectra: real and imaginary parts of n/2+1 frequencies from zero to
+	 *         Nyquist
+	 */
+	public static double[] fftForward(double[] indata) {
+		int n = indata.length;
+		getFft(n).realForward(indata);
+		int l = n / 2;
+		double[] ret = new double[2 * (l + 1)];
+		ret[0] = indata[0];
+		for (int k = 1; k < l; k++) {
+			ret[2 * k] = indata[2 * k];
+			ret[2 * k + 1] = indata[2 * k + 1];
+		}
+		if (n % 2 == 0) {
+			ret[2 * l] = indata[1];
+		} else if (l > 0) {
+			ret[2 * l] = indata[2 * l];
+			ret[2 * l + 1] = indata[1];
+		}
+		return ret;
+	}
+
+	/**
+	 * Inverse FFT to real data of even length
+	 * 
+	 * @param indata
+	 *            interleaved complex spectra of n/2+1 frequencies, see {@link #fftForward(double[])}
+	 * @return real data of length n
+	 */
+	public static double[] fftInverse(double[] indata) {
+		int bins = indata.length / 2;
+		int n = bins * 2 - 2;
+		double[] dataToProcess = new double[n];
+		for (int k = 0; k < bins - 1; k++) {
+			dataToProcess[2 * k] = indata[2 * k];
+			dataToProcess[2 * k + 1] = (k == 0 ? indata[2 * (bins - 1)] : indata[2 * k + 1]);
 		}
-		fft.realInverse(dataToProcess, true);
+		getFft(n).realInverse(dataToProcess, true);
 		return dataToProcess;
 	}
 
+	/**
+	 * Gets FFT plan for data length from cache, or creates it. Plans are shared between threads, so
+	 * twiddle factors are computed once for repeated transformations.
+	 */
+	public static DoubleFFT_1D getFft(int n) {
+		DoubleFFT_1D fft = null;
+		synchronized (fftPlans) {
+			fft = fftPlans.get(n);
+		}
+		if (fft == null) {
+			// plan is created outside of lock, concurrent creation of the same plan is harmless
+			fft = new DoubleFFT_1D(n);
+			synchronized (fftPlans) {
+				fftPlans.put(n, fft);
+			}
+		}
+		return fft;
+	}
+
 	/**
 	 * Logariphm with base 2
 	 */
@@ -31,7 +31,6 @@ import com.isti.traceview.TraceView;
 import com.isti.traceview.TraceViewException;
 import com.isti.traceview.common.TimeInterval;
 import com.isti.traceview.data.PlotData;
-import com.isti.traceview.data.PlotDataPoint;
 import com.isti.traceview.data.PlotDataProvider;
 import com.isti.traceview.data.Segment;
 import com.isti.traceview.gui.IColorModeState;
@@ -169,7 +168,7 @@ public class Rotation {
 		PlotData[] tripletPlotData = new PlotData[3];
 		char channelType = channel.getType();
 		PlotData toProcess = channel.getPlotData(ti, pointCount, null, filter, colorMode);
-		PlotData ret = new PlotData(channel.getName(), channel.getColor());
+		PlotData ret = new PlotData(channel.getName(), channel.getColor(), pointCount);
 		if (channelType == 'E' || channelType == '2') {
 			tripletPlotData[0] = toProcess;
 			try{
@@ -217,54 +216,58 @@ public class Rotation {
 		} else {
 			throw new TraceViewException("Can't determine channel type for rotation: " + channel.getName());
 		}
+		PlotData dataE = tripletPlotData[0];
+		PlotData dataN = tripletPlotData[1];
+		PlotData dataZ = tripletPlotData[2];
 		for (int i = 0; i < pointCount; i++) {
 			double[][] mean = new double[3][1];
 			double[][][] cubicle = new double[8][3][1];
 			boolean allDataFound = true;
 
-			PlotDataPoint E = tripletPlotData[0].getPixels().get(i)[0];
-			PlotDataPoint N = tripletPlotData[1].getPixels().get(i)[0];
-			PlotDataPoint Z = tripletPlotData[2].getPixels().get(i)[0];
-			if ((E.getRawDataProviderNumber() >= 0) && (N.getRawDataProviderNumber() >= 0) && (Z.getRawDataProviderNumber() >= 0)) {
-				cubicle[0][0][0] = E.getBottom();
-				cubicle[0][1][0] = N.getBottom();
-				cubicle[0][2][0] = Z.getBottom();
-
-				cubicle[1][0][0] = E.getTop();
-				cubicle[1][1][0] = N.getBottom();
-				cubicle[1][2][0] = Z.getBottom();
-
-				cubicle[2][0][0] = E.getTop();
-				cubicle[2][1][0] = N.getTop();
-				cubicle[2][2][0] = Z.getBottom();
-
-				cubicle[3][0][0] = E.getBottom();
-				cubicle[3][1][0] = N.getTop();
-				cubicle[3][2][0] = Z.getBottom();
-
-				cubicle[4][0][0] = E.getTop();
-				cubicle[4][1][0] = N.getTop();
-				cubicle[4][2][0] = Z.getTop();
-
-				cubicle[5][0][0] = E.getBottom();
-				cubicle[5][1][0] = N.getTop();
-				cubicle[5][2][0] = Z.getTop();
-
-				cubicle[6][0][0] = E.getBottom();
-				cubicle[6][1][0] = N.getBottom();
-				cubicle[6][2][0] = Z.getTop();
-
-				cubicle[7][0][0] = E.getTop();
-				cubicle[7][1][0] = N.getBottom();
-				cubicle[7][2][0] = Z.getTop();
-
-				mean[0][0] = E.getMean();
-				mean[1][0] = N.getMean();
-				mean[2][0] = Z.getMean();
+			// first points of pixel in every component
+			int E = dataE.getPixelStart(i);
+			int N = dataN.getPixelStart(i);
+			int Z = dataZ.getPixelStart(i);
+			if ((dataE.getRawDataProviderNumber(E) >= 0) && (dataN.getRawDataProviderNumber(N) >= 0) && (dataZ.getRawDataProviderNumber(Z) >= 0)) {
+				cubicle[0][0][0] = dataE.getBottom(E);
+				cubicle[0][1][0] = dataN.getBottom(N);
+				cubicle[0][2][0] = dataZ.getBottom(Z);
+
+				cubicle[1][0][0] = dataE.getTop(E);
+				cubicle[1][1][0] = dataN.getBottom(N);
+				cubicle[1][2][0] = dataZ.getBottom(Z);
+
+				cubicle[2][0][0] = dataE.getTop(E);
+				cubicle[2][1][0] = dataN.getTop(N);
+				cubicle[2][2][0] = dataZ.getBottom(Z);
+
+				cubicle[3][0][0] = dataE.getBottom(E);
+				cubicle[3][1][0] = dataN.getTop(N);
+				cubicle[3][2][0] = dataZ.getBottom(Z);
+
+				cubicle[4][0][0] = dataE.getTop(E);
+				cubicle[4][1][0] = dataN.getTop(N);
+				cubicle[4][2][0] = dataZ.getTop(Z);
+
+				cubicle[5][0][0] = dataE.getBottom(E);
+				cubicle[5][1][0] = dataN.getTop(N);
+				cubicle[5][2][0] = dataZ.getTop(Z);
+
+				cubicle[6][0][0] = dataE.getBottom(E);
+				cubicle[6][1][0] = dataN.getBottom(N);
+				cubicle[6][2][0] = dataZ.getTop(Z);
+
+				cubicle[7][0][0] = dataE.getTop(E);
+				cubicle[7][1][0] = dataN.getBottom(N);
+				cubicle[7][2][0] = dataZ.getTop(Z);
+
+				mean[0][0] = dataE.getMean(E);
+				mean[1][0] = dataN.getMean(N);
+				mean[2][0] = dataZ.getMean(Z);
 			} else {
 				allDataFound = false;
 			}
-			PlotDataPoint pdp = null;
+			ret.addPixel();
 			if (allDataFound) {
 				double[][][] rotatedCubicle = new double[8][3][1];
 				for (int j = 0; j < 8; j++) {
@@ -289,18 +292,13 @@ public class Rotation {
 						bottom = rotatedCubicle[j][index][0];
 					}
 				}
-				pdp = new PlotDataPoint(top, bottom, mean[index][0], toProcess.getPixels().get(i)[0].getSegmentNumber(), 
-																	 toProcess.getPixels().get(i)[0].getRawDataProviderNumber(), 
-																	 toProcess.getPixels().get(i)[0].getContinueAreaNumber(), 
-																	 toProcess.getPixels().get(i)[0].getEvents());
-
+				int first = toProcess.getPixelStart(i);
+				ret.addPoint(top, bottom, mean[index][0], toProcess.getSegmentNumber(first), toProcess.getRawDataProviderNumber(first),
+						toProcess.getContinueAreaNumber(first));
+				ret.setEvents(toProcess.getEvents(i));
 			} else {
-				pdp = new PlotDataPoint(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, -1, -1, -1, null);
+				ret.addEmptyPoint();
 			}
-			// lg.debug("Result: " + pdp);
-			PlotDataPoint[] pdpArray = new PlotDataPoint[1];
-			pdpArray[0] = pdp;
-			ret.addPixel(pdpArray);
 		}
 		/*
 		 * lg.debug("E: " + tripletPlotData[0]); lg.debug("N: " + tripletPlotData[1]); lg.debug("Z: " +
@@ -3,9 +3,11 @@ package com.isti.traceview.processing;
 import java.io.Reader;
 import java.util.Date;
 
+import com.isti.jevalresp.ChanIdHldr;
 import com.isti.jevalresp.ComplexBlk;
 import com.isti.jevalresp.OutputGenerator;
 import com.isti.jevalresp.RespFileParser;
+import com.isti.jevalresp.RespUtils;
 import com.isti.jevalresp.RunExt;
 import com.isti.traceview.TraceViewException;
 
@@ -53,6 +55,53 @@ public class RunEvalResp extends RunExt {
 		return frequencyOfSensitivity;
 	}
 
+	/**
+	 * Response epoch parsed from RESP content and normalized, ready to compute responses for any
+	 * frequencies
+	 */
+	public static class Epoch {
+		private final Date begin;
+		private final Date end;
+		private final Date date;
+		private final OutputGenerator generator;
+
+		Epoch(Date begin, Date end, Date date, OutputGenerator generator) {
+			this.begin = begin;
+			this.end = end;
+			this.date = date;
+			this.generator = generator;
+		}
+
+		/**
+		 * @return start of epoch, or null if unknown
+		 */
+		public Date getBegin() {
+			return begin;
+		}
+
+		/**
+		 * @return end of epoch, or null if epoch isn't closed
+		 */
+		public Date getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return flag if response for given time is described by this epoch. If epoch start is
+		 *         unknown, only time for which epoch was found matches.
+		 */
+		public boolean contains(Date time) {
+			if (begin == null) {
+				return time.equals(date);
+			}
+			return !time.before(begin) && (end == null || time.before(end));
+		}
+
+		public String toString() {
+			return "Epoch: " + begin + " - " + end;
+		}
+	}
+
 	/**
 	 * Computes complex response
 	 * 
@@ -70,23 +119,31 @@ public class RunEvalResp extends RunExt {
 	 */
 	public Cmplx[] generateResponse(double minFreqValue, double maxFreqValue, int numberFreqs, Date date, Reader respReader)
 			throws TraceViewException {
-		Cmplx[] spectra = null;
+		return generateResponse(minFreqValue, maxFreqValue, numberFreqs, parseResponse(date, respReader));
+	}
+
+	/**
+	 * Parses response epoch for given date, checks and normalizes it
+	 * 
+	 * @param date
+	 *            Date for which we want compute response
+	 * @param respReader
+	 *            response reader.
+	 * @return parsed epoch to compute responses
+	 */
+	public Epoch parseResponse(Date date, Reader respReader) throws TraceViewException {
 		String[] staArr = null;
 		String[] chaArr = null;
 		String[] netArr = null;
 		String[] siteArr = null;
-		this.minFreqValue = minFreqValue;
-		this.maxFreqValue = maxFreqValue;
-		this.numberFreqs = numberFreqs;
-		if (checkGenerateFreqArray()) // check/generate frequencies array
-		{
-			final String inFName = "(reader)";
-			final RespFileParser parserObj = new RespFileParser(respReader, inFName);
-			if (parserObj.getErrorFlag()) {
-				// error creating parser object;
-				throw new TraceViewException("Error in 'stdin' data:  " + parserObj.getErrorMessage());
-			}
-			parserObj.findChannelId(staArr, chaArr, netArr, siteArr, date, null);
+		final String inFName = "(reader)";
+		final RespFileParser parserObj = new RespFileParser(respReader, inFName);
+		if (parserObj.getErrorFlag()) {
+			// error creating parser object;
+			throw new TraceViewException("Error in 'stdin' data:  " + parserObj.getErrorMessage());
+		}
+		try {
+			ChanIdHldr chanId = parserObj.findChannelId(staArr, chaArr, netArr, siteArr, date, null);
 
 			// read and parse response data from input:
 			final Response respObj = parserObj.readResponse();
@@ -105,29 +162,76 @@ public class RunEvalResp extends RunExt {
 				// normalization error; set error message
 				throw new TraceViewException("Error normalizing response from \"" + inFName + "\":  " + outGenObj.getErrorMessage());
 			}
-			// response normalized OK; calculate output:
-			if (!outGenObj.calculateResponse(frequenciesArray, logSpacingFlag, outUnitsConvIdx, startStageNum, stopStageNum)) {
-				// calculation error; set error message
-				throw new TraceViewException("Error calculating response from \"" + inFName + "\":  " + outGenObj.getErrorMessage());
-			}
-			// get the frequency of sensitivity
-			frequencyOfSensitivity = outGenObj.getCalcSenseFrequency();
-			sensitivity = outGenObj.getCalcSensitivity();
-			inputUnits = OutputGenerator.toUnitConvIndex(outGenObj.getFirstUnitProc());
-			double[] calcFreqArray = outGenObj.getCalcFreqArray();
-
-			// final AmpPhaseBlk ampPhaseArray[] = outGenObj.getAmpPhaseArray();
-			ComplexBlk[] spectraBlk = outGenObj.getCSpectraArray();
-			spectra = new Cmplx[spectraBlk.length];
-			for (int i = 0; i < spectraBlk.length; i++) {
-				spectra[i] = new Cmplx(spectraBlk[i].real, spectraBlk[i].imag);
-				if (verboseDebug)
-					System.out.println("resp[" + i + "]: r= " + spectra[i].r + ", i= " + spectra[i].i + ", freq=" + calcFreqArray[i]);
+			Date begin = null;
+			Date end = null;
+			if (chanId != null) {
+				if (chanId.channelIdObj != null && chanId.channelIdObj.begin_time != null) {
+					begin = RespUtils.fissTimeToDate(chanId.channelIdObj.begin_time);
+				}
+				if (chanId.respEndDateObj != null && chanId.respEndDateObj != RespUtils.NO_ENDDATE_OBJ) {
+					end = chanId.respEndDateObj;
+				}
 			}
+			return new Epoch(begin, end, date, outGenObj);
+		} finally {
 			parserObj.close();
-			System.out.println(outGenObj.getRespInfoString());
-			System.out.println(outGenObj.getStagesListStr());
+		}
+	}
+
+	/**
+	 * Computes complex response of parsed epoch, also fills sensitivity and units fields. Epoch
+	 * can be used by several threads.
+	 * 
+	 * @param minFreqValue
+	 *            the minimum frequency to generate output for.
+	 * @param maxFreqValue
+	 *            the maximum frequency to generate output for.
+	 * @param numberFreqs
+	 *            the number of frequencies to generate output for.
+	 * @param epoch
+	 *            parsed response
+	 * @return an array of amplitude values.
+	 */
+	public Cmplx[] generateResponse(double minFreqValue, double maxFreqValue, int numberFreqs, Epoch epoch) throws TraceViewException {
+		Cmplx[] spectra = null;
+		this.minFreqValue = minFreqValue;
+		this.maxFreqValue = maxFreqValue;
+		this.numberFreqs = numberFreqs;
+		if (checkGenerateFreqArray()) // check/generate frequencies array
+		{
+			final String inFName = "(reader)";
+			final OutputGenerator outGenObj = epoch.generator;
+			synchronized (outGenObj) {
+				// response checked OK; calculate output:
+				if (!outGenObj.calculateResponse(frequenciesArray, logSpacingFlag, outUnitsConvIdx, startStageNum, stopStageNum)) {
+					// calculation error; set error message
+					throw new TraceViewException("Error calculating response from \"" + inFName + "\":  " + outGenObj.getErrorMessage());
+				}
+				// get the frequency of sensitivity
+				frequencyOfSensitivity = outGenObj.getCalcSenseFrequency();
+				sensitivity = outGenObj.getCalcSensitivity();
+				inputUnits = OutputGenerator.toUnitConvIndex(outGenObj.getFirstUnitProc());
+				double[] calcFreqArray = outGenObj.getCalcFreqArray();
+
+				// final AmpPhaseBlk ampPhaseArray[] = outGenObj.getAmpPhaseArray();
+				ComplexBlk[] spectraBlk = outGenObj.getCSpectraArray();
+				spectra = new Cmplx[spectraBlk.length];
+				for (int i = 0; i < spectraBlk.length; i++) {
+					spectra[i] = new Cmplx(spectraBlk[i].real, spectraBlk[i].imag);
+					if (verboseDebug)
+						System.out.println("resp[" + i + "]: r= " + spectra[i].r + ", i= " + spectra[i].i + ", freq=" + calcFreqArray[i]);
+				}
+				System.out.println(outGenObj.getRespInfoString());
+				System.out.println(outGenObj.getStagesListStr());
+			}
 		}
 		return spectra;
 	}
+
+	/**
+	 * @return index of output units conversion used to compute responses
+	 */
+	public int getOutUnitsConvIdx() {
+		return outUnitsConvIdx;
+	}
 }
\ No newline at end of file
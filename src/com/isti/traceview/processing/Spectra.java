@@ -27,15 +27,16 @@ import edu.sc.seis.fissuresUtil.freq.Cmplx;
 public class Spectra {
 	private static Logger lg = Logger.getLogger(Spectra.class);
 	/**
-	 * Noise Spectra.
+	 * Noise Spectra, interleaved real and imaginary parts.
 	 */
 	Date date = null;
-	private final Cmplx[] spectra;
+	private final double[] spectra;
 	/**
 	 * The frequency array.
 	 */
 	private final double[] frequenciesArray;
 	private final Cmplx[] resp;
+	private double[] respData = null;
 	private final double sampFreq;
 	private final Channel channel;
 	private final String err;
@@ -60,6 +61,15 @@ public class Spectra {
 	 *            this string contains errors during building spectra and response.
 	 */
 	public Spectra(Date date, Cmplx[] spectra, double[] frequenciesArray, Cmplx[] resp, double sampFreq, Channel channel, String err) {
+		this(date, IstiUtilsMath.toInterleaved(spectra), frequenciesArray, resp, sampFreq, channel, err);
+	}
+
+	/**
+	 * @param spectra
+	 *            complex spectra in interleaved form, see {@link IstiUtilsMath#fftForward(double[])}
+	 * @see #Spectra(Date, Cmplx[], double[], Cmplx[], double, Channel, String)
+	 */
+	public Spectra(Date date, double[] spectra, double[] frequenciesArray, Cmplx[] resp, double sampFreq, Channel channel, String err) {
 		this.date = date;
 		this.spectra = spectra;
 		this.frequenciesArray = frequenciesArray;
@@ -77,9 +87,23 @@ public class Spectra {
 	 * Get complex spectra
 	 */
 	public Cmplx[] getSpectra() {
+		return IstiUtilsMath.toCmplx(spectra);
+	}
+
+	/**
+	 * Get complex spectra in interleaved form
+	 */
+	public double[] getSpectraData() {
 		return spectra;
 	}
 
+	/**
+	 * @return count of spectra values
+	 */
+	public int getLength() {
+		return spectra.length / 2;
+	}
+
 	/**
 	 * Get frequency array used in spectra building
 	 */
@@ -152,20 +176,20 @@ public class Spectra {
 	 * @return amplitude of complex spectra
 	 */
 	public double[] getSpectraAmp(boolean isDeconvolve, String respToConvolve) {
-		Cmplx[] processed = copyOf(spectra, spectra.length, spectra.getClass());
+		double[] processed = spectra;
 		if (isDeconvolve && resp != null) {
-			processed = IstiUtilsMath.complexDeconvolution(spectra, resp);
+			processed = IstiUtilsMath.complexDeconvolution(spectra, getRespData());
 		}
 		if (respToConvolve != null && !respToConvolve.equals("None")) {
 			File respFile = new File(TraceView.getConfiguration().getResponsePath() + File.separator + respToConvolve);
 			Response respExternal = Response.getResponse(respFile);
 			if (respExternal != null) {
 				try {
-					Cmplx[] respExt = respExternal.getResp(date, getStartFreq(), getEndFreq(), Math.min(processed.length, frequenciesArray.length));
+					Cmplx[] respExt = respExternal.getResp(date, getStartFreq(), getEndFreq(), Math.min(processed.length / 2, frequenciesArray.length));
 					// Cmplx[] respExt = respExternal.getResp(getStartFreq(), getEndFreq(), frequenciesArray.length);
 					// respExt = copyOf(respExt, Math.min(processed.length,
 					// frequenciesArray.length));
-					processed = IstiUtilsMath.complexConvolution(processed, respExt);
+					processed = IstiUtilsMath.complexConvolution(processed, IstiUtilsMath.toInterleaved(respExt));
 				} catch (TraceViewException e) {
 					lg.error("Cant convolve with response " + respToConvolve + ": " + e);
 				}
@@ -180,19 +204,19 @@ public class Spectra {
 	public double[] getPSD(int inputUnits) {
 		//log("Spectra", spectra);
 		//log("RESP", resp);
-		Cmplx[] deconvolved = IstiUtilsMath.complexDeconvolution(spectra, resp);
+		double[] deconvolved = IstiUtilsMath.complexDeconvolution(spectra, getRespData());
 		//log("Deconvolved", deconvolved);
-		double[] psd = new double[deconvolved.length];
-		for (int i = 0; i < deconvolved.length; i++) {
-			psd[i] = (deconvolved[i].r * deconvolved[i].r + deconvolved[i].i * deconvolved[i].i) / (getSampleRate() / 2.0 * getSampleRate() / 2.0) * 2.0
-					* sampFreq;
+		double[] psd = new double[deconvolved.length / 2];
+		for (int i = 0; i < psd.length; i++) {
+			psd[i] = (deconvolved[2 * i] * deconvolved[2 * i] + deconvolved[2 * i + 1] * deconvolved[2 * i + 1])
+					/ (getSampleRate() / 2.0 * getSampleRate() / 2.0) * 2.0 * sampFreq;
 		}
 		switch (inputUnits) {
 		case OutputGenerator.DISPLACE_UNIT_CONV:
-			IstiUtilsMath.dispToAccel(psd, sampFreq, spectra.length);
+			IstiUtilsMath.dispToAccel(psd, sampFreq, psd.length);
 			break;
 		case OutputGenerator.VELOCITY_UNIT_CONV:
-			IstiUtilsMath.velToAccel(psd, sampFreq, spectra.length);
+			IstiUtilsMath.velToAccel(psd, sampFreq, psd.length);
 			break;
 		default:
 			; // Do nothing
@@ -207,7 +231,7 @@ public class Spectra {
 	public XYSeries getSpectraSeries(boolean isDeconvolve, String respToConvolve) {
 		XYSeries series = new XYSeries(getName());
 		double[] out = getSpectraAmp(isDeconvolve, respToConvolve);
-		for (int i = 1; i < spectra.length; i++) {
+		for (int i = 1; i < out.length; i++) {
 			double x = 1.0 / frequenciesArray[i];
 			double y = out[i];
 			series.add(x, y);
@@ -221,7 +245,7 @@ public class Spectra {
 	public XYSeries getPSDSeries(int inputUnits) {
 		XYSeries series = new XYSeries(getName());
 		double[] out = getPSD(inputUnits);
-		for (int i = 1; i < spectra.length; i++) {
+		for (int i = 1; i < out.length; i++) {
 			double x = 1.0 / frequenciesArray[i];
 			double y = 10.0 * Math.log10(out[i]);
 			series.add(x, y);
@@ -233,8 +257,9 @@ public class Spectra {
 		try {
 			PrintStream pStr = null;
 			pStr = new PrintStream(new BufferedOutputStream(new FileOutputStream("OutFile.txt")));
-			for (int i = 0; i < spectra.length; i++) {
-				pStr.println("freq=" + frequenciesArray[i] + ", r=" + spectra[i].r + ", i=" + spectra[i].i + ", mag=" + spectra[i].mag());
+			for (int i = 0; i < getLength(); i++) {
+				pStr.println("freq=" + frequenciesArray[i] + ", r=" + spectra[2 * i] + ", i=" + spectra[2 * i + 1] + ", mag="
+						+ Math.sqrt(spectra[2 * i] * spectra[2 * i] + spectra[2 * i + 1] * spectra[2 * i + 1]));
 			}
 			pStr.close();
 		} catch (FileNotFoundException ex) {
@@ -242,6 +267,16 @@ public class Spectra {
 		}
 	}
 	
+	/**
+	 * Get response in interleaved form
+	 */
+	private synchronized double[] getRespData() {
+		if (respData == null) {
+			respData = IstiUtilsMath.toInterleaved(resp);
+		}
+		return respData;
+	}
+
 	public static void log(String name, Cmplx[] spectra){
 		System.out.println("-----------------------------------------------------------------------");
 		System.out.println(name);
@@ -0,0 +1,325 @@
+package com.isti.traceview.processing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.isti.jevalresp.RespUtils;
+import com.isti.traceview.TraceViewException;
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.data.Channel;
+import com.isti.traceview.data.Response;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import edu.sc.seis.fissuresUtil.freq.Cmplx;
+
+/**
+ * <p>
+ * Welch's averaged periodogram. Trace is split into overlapping windows, each window is demeaned,
+ * tapered and transformed, and power spectra of windows are averaged. So all samples of long trace
+ * are used, and variance of estimation decreases with count of windows.
+ * </p>
+ * <p>
+ * Windows of all processed traces are transformed in parallel, by shared pool with thread per
+ * processor. Result is returned as {@link Spectra} which amplitudes are square roots of averaged
+ * power, so PSD and deconvolution in Spectra work as for single FFT spectra.
+ * </p>
+ */
+public class WelchPSD {
+	private static Logger lg = Logger.getLogger(WelchPSD.class);
+
+	/**
+	 * Window functions from {@link IstiUtilsMath} to taper data before FFT
+	 */
+	public enum Taper {
+		NONE, HANNING, HAMMING, COSINE, TRIANGULAR, BARTLETT, GAUSS, BLACKMAN;
+
+		/**
+		 * @return window coefficients of given length
+		 */
+		public double[] getCoefficients(int length) {
+			double[] ones = new double[length];
+			Arrays.fill(ones, 1.0);
+			switch (this) {
+			case HANNING:
+				return IstiUtilsMath.windowHanning(ones);
+			case HAMMING:
+				return IstiUtilsMath.windowHamming(ones);
+			case COSINE:
+				return IstiUtilsMath.windowCosine(ones);
+			case TRIANGULAR:
+				return IstiUtilsMath.windowTriangular(ones);
+			case BARTLETT:
+				return IstiUtilsMath.windowBartlett(ones);
+			case GAUSS:
+				return IstiUtilsMath.windowGauss(ones);
+			case BLACKMAN:
+				return IstiUtilsMath.windowBlackman(ones);
+			default:
+				return ones;
+			}
+		}
+	}
+
+	public static final int DEFAULT_WINDOW_LENGTH = 32768;
+
+	public static final double DEFAULT_OVERLAP = 0.5;
+
+	private static ExecutorService executor = null;
+
+	private static int threadCount = 0;
+
+	private int windowLength;
+
+	private double overlap;
+
+	private Taper taper;
+
+	/**
+	 * @param windowLength
+	 *            count of samples in window, traces shorter then window are processed with single
+	 *            window of maximum power of 2 length
+	 * @param overlap
+	 *            part of window overlapped by next window, from 0 inclusive to 1 exclusive
+	 * @param taper
+	 *            window function
+	 */
+	public WelchPSD(int windowLength, double overlap, Taper taper) {
+		if (windowLength < 2) {
+			throw new IllegalArgumentException("Window length should be at least 2, got " + windowLength);
+		}
+		if (overlap < 0 || overlap >= 1) {
+			throw new IllegalArgumentException("Window overlap should be in [0, 1), got " + overlap);
+		}
+		this.windowLength = windowLength;
+		this.overlap = overlap;
+		this.taper = taper;
+	}
+
+	public int getWindowLength() {
+		return windowLength;
+	}
+
+	public double getOverlap() {
+		return overlap;
+	}
+
+	public Taper getTaper() {
+		return taper;
+	}
+
+	/**
+	 * @return count of samples in window used for trace of given length: configured window length,
+	 *         or greatest power of 2 which fits in shorter trace
+	 */
+	public int getWindowLength(int traceLength) {
+		if (traceLength < 2) {
+			throw new IllegalArgumentException("Trace length should be at least 2, got " + traceLength);
+		}
+		if (traceLength >= windowLength) {
+			return windowLength;
+		} else {
+			return Integer.highestOneBit(traceLength);
+		}
+	}
+
+	/**
+	 * @return count of samples between starts of neighbor windows for trace of given length
+	 */
+	public int getWindowStep(int traceLength) {
+		return Math.max(1, (int) Math.round(getWindowLength(traceLength) * (1.0 - overlap)));
+	}
+
+	/**
+	 * @return count of windows for trace of given length. If windows don't reach trace end, one more
+	 *         window is aligned to the end, so all samples are processed.
+	 */
+	public int getWindowCount(int traceLength) {
+		if (traceLength < 2) {
+			return 0;
+		}
+		int length = getWindowLength(traceLength);
+		int step = getWindowStep(traceLength);
+		int count = (traceLength - length) / step + 1;
+		if ((count - 1) * step + length < traceLength) {
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Computes averaged spectra of one trace
+	 *
+	 * @see #getNoiseSpectra(List, List, Date)
+	 */
+	public Spectra getNoiseSpectra(int[] trace, Channel channel, Date date) throws TraceViewException {
+		List<int[]> traces = new ArrayList<int[]>();
+		traces.add(trace);
+		List<Channel> channels = new ArrayList<Channel>();
+		channels.add(channel);
+		return getNoiseSpectra(traces, channels, date).get(0);
+	}
+
+	/**
+	 * Computes averaged spectra of several traces, windows of all traces are processed in parallel
+	 *
+	 * @param traces
+	 *            traces data
+	 * @param channels
+	 *            channels of traces, to get sample rates and responses
+	 * @param date
+	 *            time of beginning of traces, we will find deconvolving responses for this date.
+	 * @return list of spectra in the order of traces
+	 * @throws TraceViewException
+	 *             if computation was interrupted or failed
+	 */
+	public List<Spectra> getNoiseSpectra(List<int[]> traces, List<? extends Channel> channels, Date date) throws TraceViewException {
+		lg.debug("getNoiseSpectra begin: " + traces.size() + " traces, window " + windowLength + ", overlap " + overlap + ", taper " + taper);
+		for (int i = 0; i < traces.size(); i++) {
+			if (traces.get(i).length < 2) {
+				throw new TraceViewException("Too short trace of channel " + channels.get(i).getName() + " for PSD: "
+						+ traces.get(i).length + " samples");
+			}
+		}
+		ExecutorService pool = getExecutor();
+		List<List<Future<double[]>>> futures = new ArrayList<List<Future<double[]>>>();
+		try {
+			for (int[] trace: traces) {
+				List<Future<double[]>> traceFutures = new ArrayList<Future<double[]>>();
+				int length = getWindowLength(trace.length);
+				int step = getWindowStep(trace.length);
+				int count = getWindowCount(trace.length);
+				double[] coefficients = taper.getCoefficients(length);
+				// split trace's windows between threads
+				int chunk = Math.max(1, (count + threadCount - 1) / threadCount);
+				for (int first = 0; first < count; first += chunk) {
+					traceFutures.add(pool.submit(new WindowTask(trace, length, step, first, Math.min(first + chunk, count), coefficients)));
+				}
+				futures.add(traceFutures);
+			}
+			List<Spectra> ret = new ArrayList<Spectra>();
+			for (int i = 0; i < traces.size(); i++) {
+				ret.add(createSpectra(traces.get(i).length, futures.get(i), channels.get(i), date));
+			}
+			lg.debug("getNoiseSpectra end");
+			return ret;
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new TraceViewException("PSD computation interrupted");
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new TraceViewException("PSD computation failed: " + e.getCause());
+		}
+	}
+
+	private Spectra createSpectra(int traceLength, List<Future<double[]>> traceFutures, Channel channel, Date date)
+			throws InterruptedException, ExecutionException {
+		int length = getWindowLength(traceLength);
+		String errString = "";
+		final Response.FreqParameters fp = Response.getFreqParameters(length, 1000.0 / channel.getSampleRate());
+		final double[] frequenciesArray = RespUtils.generateFreqArray(fp.startFreq, fp.endFreq, fp.numFreq, false);
+		double[] power = null;
+		for (Future<double[]> future: traceFutures) {
+			double[] sum = future.get();
+			if (power == null) {
+				power = sum;
+			} else {
+				for (int k = 0; k < power.length; k++) {
+					power[k] += sum[k];
+				}
+			}
+		}
+		int count = getWindowCount(traceLength);
+		double[] noise_spectra = new double[power == null ? 0 : power.length * 2];
+		for (int k = 0; k < noise_spectra.length / 2; k++) {
+			noise_spectra[2 * k] = Math.sqrt(power[k] / count);
+		}
+		Cmplx[] resp = null;
+		try {
+			resp = channel.getResponse().getResp(date, fp.startFreq, fp.endFreq, Math.min(noise_spectra.length / 2, fp.numFreq));
+		} catch (Exception e) {
+			errString = "Can't get response for channel " + channel.getName() + ": " + e.toString();
+		}
+		return new Spectra(date, noise_spectra, frequenciesArray, resp, fp.sampFreq, channel, errString);
+	}
+
+	private static void cancel(List<List<Future<double[]>>> futures) {
+		for (List<Future<double[]>> traceFutures: futures) {
+			for (Future<double[]> future: traceFutures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			threadCount = Runtime.getRuntime().availableProcessors();
+			executor = DaemonThreadPool.newFixedThreadPool(threadCount, "PSD");
+			lg.debug("WelchPSD pool created with " + threadCount + " threads");
+		}
+		return executor;
+	}
+
+	/**
+	 * Sums power spectra of the range of windows
+	 */
+	private static class WindowTask implements Callable<double[]> {
+		private int[] trace;
+		private int length;
+		private int step;
+		private int firstWindow;
+		private int lastWindow;
+		private double[] coefficients;
+
+		WindowTask(int[] trace, int length, int step, int firstWindow, int lastWindow, double[] coefficients) {
+			this.trace = trace;
+			this.length = length;
+			this.step = step;
+			this.firstWindow = firstWindow;
+			this.lastWindow = lastWindow;
+			this.coefficients = coefficients;
+		}
+
+		public double[] call() {
+			DoubleFFT_1D fft = IstiUtilsMath.getFft(length);
+			double[] window = new double[length];
+			int l = length / 2;
+			double[] power = new double[l + 1];
+			for (int w = firstWindow; w < lastWindow; w++) {
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+				// last window is aligned to trace end
+				int start = Math.min(w * step, trace.length - length);
+				double sum = 0.0;
+				for (int i = 0; i < length; i++) {
+					sum += trace[start + i];
+				}
+				double mean = sum / length;
+				for (int i = 0; i < length; i++) {
+					window[i] = (trace[start + i] - mean) * coefficients[i];
+				}
+				fft.realForward(window);
+				// unpack as IstiUtilsMath.processFft() does
+				power[0] += window[0] * window[0];
+				for (int k = 1; k < l; k++) {
+					power[k] += window[2 * k] * window[2 * k] + window[2 * k + 1] * window[2 * k + 1];
+				}
+				if (length % 2 == 0) {
+					power[l] += window[1] * window[1];
+				} else {
+					power[l] += window[2 * l] * window[2 * l] + window[1] * window[1];
+				}
+			}
+			return power;
+		}
+	}
+}
@@ -132,6 +132,11 @@ public class XMAXconfiguration extends Configuration {
 			setStationInfoFileName(config.getString("Configuration.Data.StationInfoFile"));
 			setEarthquakeFileMask(config.getString("Configuration.Data.EventFileMask"));
 			setResponsePath(config.getString("Configuration.Data.ResponsePath", "/Responses"));
+			setParseThreadCount(config.getInt("Configuration.Data.ParseThreadCount", Runtime.getRuntime().availableProcessors()));
+			setMseedIndexFileName(config.getString("Configuration.Data.IndexFile", "mseed.idx"));
+			setSampleStorage(SampleStorage.values()[config.getInt("Configuration.Data.SampleStorage", 0)]);
+			setSampleCacheSize(config.getLong("Configuration.Data.SampleCacheSize", Runtime.getRuntime().maxMemory() / 2 / 1048576) * 1048576);
+			setFilterCacheSize(config.getLong("Configuration.Data.FilterCacheSize", Runtime.getRuntime().maxMemory() / 4 / 1048576) * 1048576);
 			// setAllowMultiplexedData(config.getBoolean("Configuration.Data.AllowMultiplexedData"));
 			setOutputPath(config.getString("Configuration.OutputPath"));
 			String startTimeStr = config.getString("Configuration.StartTime");
@@ -147,6 +152,8 @@ public class XMAXconfiguration extends Configuration {
 			setScaleMode(config.getString("Configuration.View.ScaleMode", "AUTO"));
 			setColorModeState(config.getString("Configuration.View.ColorMode", "SEGMENT"), false);
 			setShowBigCursor(config.getBoolean("Configuration.View.ShowBigCursor", false));
+			setRenderThreadCount(config.getInt("Configuration.View.RenderThreadCount", Runtime.getRuntime().availableProcessors()));
+			setProgressiveRendering(config.getBoolean("Configuration.View.ProgressiveRendering", true));
 			setShowStatusBar(config.getBoolean("Configuration.View.ShowStatusBar", true));
 			setShowCommandButtons(config.getBoolean("Configuration.View.ShowCommandButtons", true));
 			setShowCommandButtonsTop(config.getBoolean("Configuration.View.ShowCommandButtonsTop", false));
@@ -0,0 +1,284 @@
+package com.isti.xmax.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.common.IEvent;
+import com.isti.traceview.common.Station;
+
+import edu.sc.seis.TauP.TauModelException;
+import edu.sc.seis.TauP.TauP_Time;
+import edu.sc.seis.fissuresUtil.bag.DistAz;
+
+/**
+ * <p>
+ * Computes earthquake arrivals on stations and caches them for earthquake, station location and
+ * phases list, so channels of the same station and repeated requests don't call TauP again.
+ * </p>
+ * <p>
+ * Earthquakes are processed in parallel by pool with thread per processor. Every thread loads
+ * TauP earth model once, and corrects it for depth of each earthquake once for all stations.
+ * Cache is bounded by count of earthquake-station pairs, least recently used are dropped.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class ArrivalCache {
+	private static Logger lg = Logger.getLogger(ArrivalCache.class);
+
+	/**
+	 * Earth model used to compute travel times
+	 */
+	public static final String MODEL = "iasp91";
+
+	/**
+	 * Maximum count of cached earthquake-station pairs
+	 */
+	public static final int MAX_ENTRIES = 100000;
+
+	private static ArrivalCache instance = null;
+
+	private static ThreadLocal<TauP_Time> timeTools = new ThreadLocal<TauP_Time>();
+
+	private ExecutorService executor = null;
+
+	private int threadCount = 0;
+
+	// arrivals in access order
+	private LinkedHashMap<Key, List<IEvent>> arrivals = new LinkedHashMap<Key, List<IEvent>>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Key, List<IEvent>> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	private ArrivalCache() {
+	}
+
+	public static synchronized ArrivalCache getInstance() {
+		if (instance == null) {
+			instance = new ArrivalCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets arrivals of earthquake on station
+	 *
+	 * @return set of arrivals
+	 */
+	public SortedSet<IEvent> getArrivals(Station station, Earthquake earthquake) {
+		List<IEvent> earthquakes = new ArrayList<IEvent>();
+		earthquakes.add(earthquake);
+		return getArrivals(Collections.singleton(station), earthquakes).get(station);
+	}
+
+	/**
+	 * Gets arrivals of earthquakes on stations, computes absent arrivals in parallel
+	 *
+	 * @param stations
+	 *            stations to compute arrivals
+	 * @param earthquakes
+	 *            earthquakes to compute arrivals
+	 * @return map of station to set of its arrivals
+	 */
+	public Map<Station, SortedSet<IEvent>> getArrivals(Collection<Station> stations, List<IEvent> earthquakes) {
+		long start = System.currentTimeMillis();
+		String[] phases = Earthquake.phases.clone();
+		String phaseList = Arrays.toString(phases);
+		Map<Station, SortedSet<IEvent>> ret = new HashMap<Station, SortedSet<IEvent>>();
+		for (Station station: stations) {
+			ret.put(station, new TreeSet<IEvent>());
+		}
+		// earthquakes having stations without cached arrivals
+		Map<Earthquake, List<Station>> missed = new LinkedHashMap<Earthquake, List<Station>>();
+		synchronized (this) {
+			for (IEvent event: earthquakes) {
+				Earthquake earthquake = (Earthquake) event;
+				for (Station station: stations) {
+					List<IEvent> cached = arrivals.get(new Key(earthquake, station, phaseList));
+					if (cached != null) {
+						hitCount++;
+						ret.get(station).addAll(cached);
+					} else {
+						missCount++;
+						List<Station> list = missed.get(earthquake);
+						if (list == null) {
+							list = new ArrayList<Station>();
+							missed.put(earthquake, list);
+						}
+						list.add(station);
+					}
+				}
+			}
+		}
+		if (missed.size() > 0) {
+			Map<Key, List<IEvent>> computed = compute(missed, phases, phaseList);
+			synchronized (this) {
+				arrivals.putAll(computed);
+			}
+			for (Map.Entry<Key, List<IEvent>> entry: computed.entrySet()) {
+				ret.get(entry.getKey().station).addAll(entry.getValue());
+			}
+			lg.debug("Arrivals computed for " + missed.size() + " earthquakes, " + stations.size() + " stations in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+		return ret;
+	}
+
+	/**
+	 * Drops all cached arrivals
+	 */
+	public synchronized void clear() {
+		arrivals.clear();
+	}
+
+	public synchronized String toString() {
+		return "ArrivalCache: " + arrivals.size() + " entries, hits " + hitCount + ", misses " + missCount;
+	}
+
+	/**
+	 * Computes arrivals in parallel, earthquakes are split between threads
+	 */
+	private Map<Key, List<IEvent>> compute(Map<Earthquake, List<Station>> missed, final String[] phases, final String phaseList) {
+		Map<Key, List<IEvent>> ret = new HashMap<Key, List<IEvent>>();
+		ExecutorService pool = getExecutor();
+		List<Earthquake> list = new ArrayList<Earthquake>(missed.keySet());
+		// depth correction is the most expensive step, so neighbor depths go to the same thread
+		Collections.sort(list, new Comparator<Earthquake>() {
+			public int compare(Earthquake e1, Earthquake e2) {
+				return e1.getDepth().compareTo(e2.getDepth());
+			}
+		});
+		int chunk = Math.max(1, (list.size() + threadCount - 1) / threadCount);
+		List<Future<Map<Key, List<IEvent>>>> futures = new ArrayList<Future<Map<Key, List<IEvent>>>>();
+		for (int first = 0; first < list.size(); first += chunk) {
+			final Map<Earthquake, List<Station>> part = new LinkedHashMap<Earthquake, List<Station>>();
+			for (Earthquake earthquake: list.subList(first, Math.min(first + chunk, list.size()))) {
+				part.put(earthquake, missed.get(earthquake));
+			}
+			futures.add(pool.submit(new Callable<Map<Key, List<IEvent>>>() {
+				public Map<Key, List<IEvent>> call() throws TauModelException {
+					return computePart(part, phases, phaseList);
+				}
+			}));
+		}
+		try {
+			for (Future<Map<Key, List<IEvent>>> future: futures) {
+				ret.putAll(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lg.error("Arrivals computation interrupted");
+		} catch (ExecutionException e) {
+			lg.error("Can't compute arrivals: " + e.getCause());
+		} finally {
+			for (Future<Map<Key, List<IEvent>>> future: futures) {
+				future.cancel(true);
+			}
+		}
+		return ret;
+	}
+
+	private static Map<Key, List<IEvent>> computePart(Map<Earthquake, List<Station>> part, String[] phases, String phaseList)
+			throws TauModelException {
+		Map<Key, List<IEvent>> ret = new HashMap<Key, List<IEvent>>();
+		TauP_Time timeTool = getTimeTool();
+		timeTool.setPhaseNames(phases);
+		Double depth = null;
+		for (Map.Entry<Earthquake, List<Station>> entry: part.entrySet()) {
+			Earthquake earthquake = entry.getKey();
+			if (!earthquake.getDepth().equals(depth)) {
+				depth = earthquake.getDepth();
+				timeTool.depthCorrect(depth);
+			}
+			for (Station station: entry.getValue()) {
+				List<IEvent> list = new ArrayList<IEvent>();
+				DistAz da = new DistAz(earthquake.getLatitude(), earthquake.getLongitude(), station.getLatitude(), station.getLongitude());
+				double angle = da.getDelta();
+				timeTool.calculate(angle);
+				edu.sc.seis.TauP.Arrival[] arrivals = timeTool.getArrivals();
+				for (int i = 0; i < arrivals.length; i++) {
+					list.add(new Arrival(new Date(earthquake.getStartTime().getTime() + (long) (arrivals[i].getTime() * 1000)),
+							earthquake, arrivals[i].getName(), angle, da.getAz(), da.getBaz(), DistAz.degreesToKilometers(angle)));
+				}
+				ret.put(new Key(earthquake, station, phaseList), list);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return TauP tool of current thread, earth model is loaded once per thread
+	 */
+	private static TauP_Time getTimeTool() throws TauModelException {
+		TauP_Time ret = timeTools.get();
+		if (ret == null) {
+			ret = new TauP_Time(MODEL);
+			timeTools.set(ret);
+		}
+		return ret;
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			threadCount = Runtime.getRuntime().availableProcessors();
+			executor = DaemonThreadPool.newFixedThreadPool(threadCount, "Arrivals");
+		}
+		return executor;
+	}
+
+	/**
+	 * Key of cached arrivals: earthquake, station with its location, and phases list
+	 */
+	private static class Key {
+		private final Earthquake earthquake;
+		private final Station station;
+		private final double latitude;
+		private final double longitude;
+		private final String phaseList;
+
+		Key(Earthquake earthquake, Station station, String phaseList) {
+			this.earthquake = earthquake;
+			this.station = station;
+			this.latitude = station.getLatitude();
+			this.longitude = station.getLongitude();
+			this.phaseList = phaseList;
+		}
+
+		public boolean equals(Object o) {
+			if (o instanceof Key) {
+				Key k = (Key) o;
+				return earthquake == k.earthquake && station.equals(k.station) && latitude == k.latitude && longitude == k.longitude
+						&& phaseList.equals(k.phaseList);
+			} else {
+				return false;
+			}
+		}
+
+		public int hashCode() {
+			return (System.identityHashCode(earthquake) * 31 + station.hashCode()) * 31 + phaseList.hashCode();
+		}
+	}
+}
@@ -0,0 +1,487 @@
+package com.isti.xmax.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.isti.traceview.TraceViewException;
+import com.isti.traceview.common.DaemonThreadPool;
+import com.isti.traceview.common.IEvent;
+import com.isti.traceview.common.Wildcard;
+import com.isti.xmax.XMAX;
+import com.isti.xmax.XMAXconfiguration;
+
+/**
+ * <p>
+ * Catalog of earthquakes from Global Centroid-Moment-Tensor (CMT) NDK files. Files found by
+ * configured mask are parsed once, in parallel, and earthquakes are kept in time-sorted arrays, so
+ * time range is found by binary search. {@link Earthquake} objects are created on first request
+ * and then reused.
+ * </p>
+ * <p>
+ * Parsed content of every NDK file is saved in output directory as binary index, and is read from
+ * index while NDK file isn't changed. Loaded files are checked on every query, so files changed
+ * during session are parsed again.
+ * </p>
+ * <p>
+ * The class is implemented as a Singleton pattern.
+ * </p>
+ */
+public class EarthquakeCatalog {
+	private static Logger lg = Logger.getLogger(EarthquakeCatalog.class);
+	private static final int MAGIC = 0x4e444b49; // "NDKI"
+	private static final int VERSION = 2;
+
+	private static EarthquakeCatalog instance = null;
+
+	private String mask = null;
+
+	/**
+	 * Loaded NDK files and their content, in mask order
+	 */
+	private Map<File, Records> files = new LinkedHashMap<File, Records>();
+
+	/**
+	 * Only one refresh runs at time, so index files aren't written concurrently
+	 */
+	private final Object refreshLock = new Object();
+
+	/**
+	 * Pool parsing changed NDK files, shared by all refreshes
+	 */
+	private ExecutorService executor = null;
+
+	private long[] times = new long[0];
+	private double[] latitudes = new double[0];
+	private double[] longitudes = new double[0];
+	private double[] depths = new double[0];
+	private double[] magnitudes_mb = new double[0];
+	private double[] magnitudes_MS = new double[0];
+	private String[] codes = new String[0];
+	private String[] locations = new String[0];
+	private Earthquake[] earthquakes = new Earthquake[0];
+
+	/**
+	 * Earthquakes of one NDK file, in file order
+	 */
+	private static class Records {
+		private long fileLength;
+		private long fileModified;
+		private List<Long> times = new ArrayList<Long>();
+		private List<double[]> values = new ArrayList<double[]>();
+		private List<String> codes = new ArrayList<String>();
+		private List<String> locations = new ArrayList<String>();
+
+		Records(File file) {
+			fileLength = file.length();
+			fileModified = file.lastModified();
+		}
+
+		void add(long time, double latitude, double longitude, double depth, double magnitude_mb, double magnitude_MS, String code,
+				String location) {
+			times.add(time);
+			values.add(new double[] { latitude, longitude, depth, magnitude_mb, magnitude_MS });
+			codes.add(code);
+			locations.add(location);
+		}
+
+		int size() {
+			return times.size();
+		}
+
+		/**
+		 * @return true if file wasn't changed since these records were read
+		 */
+		boolean isActual(File file) {
+			return fileLength == file.length() && fileModified == file.lastModified();
+		}
+	}
+
+	private EarthquakeCatalog() {
+	}
+
+	public static synchronized EarthquakeCatalog getInstance() {
+		if (instance == null) {
+			instance = new EarthquakeCatalog();
+		}
+		return instance;
+	}
+
+	/**
+	 * Loads earthquakes from files matching configured mask. Files which weren't changed since
+	 * previous loading are taken from memory or read from saved indexes.
+	 */
+	public void refresh() throws TraceViewException {
+		synchronized (refreshLock) {
+			String currentMask = XMAXconfiguration.getInstance().getEarthquakeFileMask();
+			long start = System.currentTimeMillis();
+			final List<File> found = new Wildcard().getFilesByMask(currentMask);
+			Map<File, Records> loaded;
+			synchronized (this) {
+				loaded = files;
+			}
+			Map<File, Records> parsed = new LinkedHashMap<File, Records>();
+			if (found.size() > 0) {
+				List<Future<Records>> futures = new ArrayList<Future<Records>>();
+				try {
+					for (final File file: found) {
+						Records records = loaded.get(file);
+						if (records != null && records.isActual(file)) {
+							futures.add(null);
+						} else {
+							futures.add(getExecutor().submit(new Callable<Records>() {
+								public Records call() throws IOException {
+									return getRecords(file);
+								}
+							}));
+						}
+					}
+					for (int i = 0; i < futures.size(); i++) {
+						File file = found.get(i);
+						try {
+							parsed.put(file, futures.get(i) == null ? loaded.get(file) : futures.get(i).get());
+						} catch (ExecutionException e) {
+							lg.error("Can't open earthquake file " + file + "; " + e.getCause());
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new TraceViewException("Earthquakes loading interrupted");
+				} finally {
+					for (Future<Records> future: futures) {
+						if (future != null) {
+							future.cancel(true);
+						}
+					}
+				}
+			}
+			fill(parsed);
+			synchronized (this) {
+				mask = currentMask;
+			}
+			lg.debug("Earthquake catalog loaded: " + size() + " earthquakes from " + found.size() + " files in "
+					+ (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = DaemonThreadPool.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), "Earthquakes");
+		}
+		return executor;
+	}
+
+	/**
+	 * Finds earthquakes in time range, loads catalog if it wasn't loaded for configured mask or
+	 * loaded files were changed
+	 *
+	 * @param after
+	 *            earthquakes should be later then this time
+	 * @param before
+	 *            earthquakes should be earlier then this time
+	 * @return list of earthquakes ordered by time
+	 */
+	public List<IEvent> getEarthquakes(long after, long before) throws TraceViewException {
+		boolean loaded;
+		synchronized (this) {
+			loaded = mask != null && mask.equals(XMAXconfiguration.getInstance().getEarthquakeFileMask()) && isActual();
+		}
+		if (!loaded) {
+			refresh();
+		}
+		List<IEvent> ret = new ArrayList<IEvent>();
+		synchronized (this) {
+			for (int i = upperBound(after); i < times.length && times[i] < before; i++) {
+				ret.add(getEarthquake(i));
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @return count of earthquakes in catalog
+	 */
+	public synchronized int size() {
+		return times.length;
+	}
+
+	public synchronized String toString() {
+		return "EarthquakeCatalog: " + times.length + " earthquakes, mask " + mask;
+	}
+
+	/**
+	 * @return true if loaded files weren't changed since loading
+	 */
+	private synchronized boolean isActual() {
+		for (Map.Entry<File, Records> entry: files.entrySet()) {
+			if (!entry.getValue().isActual(entry.getKey())) {
+				lg.debug("Earthquake file " + entry.getKey() + " was changed");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Earthquake getEarthquake(int i) {
+		if (earthquakes[i] == null) {
+			earthquakes[i] = new Earthquake(new Date(times[i]), codes[i], latitudes[i], longitudes[i], depths[i], magnitudes_mb[i],
+					magnitudes_MS[i], locations[i]);
+		}
+		return earthquakes[i];
+	}
+
+	/**
+	 * Replaces catalog content by parsed files, earthquakes with equal times keep files order
+	 */
+	private synchronized void fill(Map<File, Records> parsed) {
+		final List<Long> allTimes = new ArrayList<Long>();
+		List<double[]> allValues = new ArrayList<double[]>();
+		List<String> allCodes = new ArrayList<String>();
+		List<String> allLocations = new ArrayList<String>();
+		files = parsed;
+		for (Records records: parsed.values()) {
+			allTimes.addAll(records.times);
+			allValues.addAll(records.values);
+			allCodes.addAll(records.codes);
+			allLocations.addAll(records.locations);
+		}
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < allTimes.size(); i++) {
+			order.add(i);
+		}
+		// stable sort
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return allTimes.get(i1).compareTo(allTimes.get(i2));
+			}
+		});
+		int count = order.size();
+		times = new long[count];
+		latitudes = new double[count];
+		longitudes = new double[count];
+		depths = new double[count];
+		magnitudes_mb = new double[count];
+		magnitudes_MS = new double[count];
+		codes = new String[count];
+		locations = new String[count];
+		earthquakes = new Earthquake[count];
+		for (int i = 0; i < count; i++) {
+			int j = order.get(i);
+			double[] values = allValues.get(j);
+			times[i] = allTimes.get(j);
+			latitudes[i] = values[0];
+			longitudes[i] = values[1];
+			depths[i] = values[2];
+			magnitudes_mb[i] = values[3];
+			magnitudes_MS[i] = values[4];
+			codes[i] = allCodes.get(j);
+			locations[i] = allLocations.get(j);
+		}
+	}
+
+	/**
+	 * @return index of first earthquake later then given time
+	 */
+	private int upperBound(long time) {
+		int low = 0;
+		int high = times.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (times[mid] <= time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Reads earthquakes of NDK file from saved index, or parses file and saves index
+	 */
+	private static Records getRecords(File file) throws IOException {
+		String path = file.getCanonicalPath();
+		File indexFile = getIndexFile(file, path);
+		Records ret = loadIndex(file, path, indexFile);
+		if (ret == null) {
+			lg.debug("Processing event file: " + file.getName());
+			ret = parse(file);
+			saveIndex(ret, path, indexFile);
+		}
+		return ret;
+	}
+
+	/**
+	 * Parses NDK file
+	 */
+	private static Records parse(File file) throws IOException {
+		// SimpleDateFormat isn't thread safe, so every file has its own
+		SimpleDateFormat df = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+		df.setTimeZone(XMAX.timeZone);
+		Records ret = new Records(file);
+		LineNumberReader r = new LineNumberReader(new FileReader(file));
+		try {
+			String[] rawData = null;
+			while ((rawData = readRawData(r))[0] != null) {
+				try {
+					// First line: Hypocenter line
+
+					// [1-4] Hypocenter reference catalog (e.g., PDE for USGS location, ISC for
+					// ISC catalog, SWE for surface-wave location, [Ekstrom, BSSA, 2006])
+					// [6-15] Date of reference event
+					// [17-26] Time of reference event
+					Date date = df.parse(rawData[0].substring(5, 26).trim());
+					// [28-33] Latitude
+					double latitude = Double.parseDouble(rawData[0].substring(27, 33).trim());
+					// [35-41] Longitude
+					double longitude = Double.parseDouble(rawData[0].substring(34, 41).trim());
+					// [43-47] Depth
+					double depth = Double.parseDouble(rawData[0].substring(42, 47).trim());
+					// [49-55] Reported magnitudes, usually mb and MS
+					double magnitude_mb = Double.parseDouble(rawData[0].substring(48, 51).trim());
+					double magnitude_MS = Double.parseDouble(rawData[0].substring(52, 55).trim());
+					// [57-80] Geographical location (24 characters)
+					String location = rawData[0].substring(56, 80).trim();
+
+					// Second line: CMT info (1)
+
+					// [1-16] CMT event name. This string is a unique CMT-event identifier. Older
+					// events have 8-character names, current ones have 14-character names.
+					String name = rawData[1].substring(0, 16).trim();
+					ret.add(date.getTime(), latitude, longitude, depth, magnitude_mb, magnitude_MS, name, location);
+				} catch (NumberFormatException e) {
+					lg.error("Can't parse earthquake, line " + (r.getLineNumber() - rawData.length) + "; " + e);
+				} catch (ParseException e) {
+					lg.error("Can't parse earthquake, line " + (r.getLineNumber() - rawData.length) + "; " + e);
+				}
+			}
+		} finally {
+			r.close();
+		}
+		return ret;
+	}
+
+	/**
+	 * Reads data for one earthquake from .NDK file. Return String[5] array contains five lines of
+	 * earquake's data
+	 */
+	private static String[] readRawData(LineNumberReader r) throws IOException {
+		String[] data = new String[5];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = r.readLine();
+		}
+		return data;
+	}
+
+	/**
+	 * @return file to store parsed content of NDK file, named after file name and hash of it's
+	 *         canonical path, so files with the same name in different directories have different
+	 *         indexes
+	 */
+	private static File getIndexFile(File file, String path) {
+		return new File(XMAXconfiguration.getInstance().getOutputPath() + File.separator + "EQ_" + file.getName() + "_"
+				+ Integer.toHexString(path.hashCode()) + ".idx");
+	}
+
+	/**
+	 * Saves parsed content of NDK file to temporary file and renames it to index file, so broken
+	 * index isn't left if writing fails. Errors are logged only.
+	 */
+	private static void saveIndex(Records records, String path, File indexFile) {
+		File tmpFile = new File(indexFile.getPath() + ".tmp");
+		try {
+			indexFile.getParentFile().mkdirs();
+			DataOutputStream ds = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				ds.writeInt(MAGIC);
+				ds.writeInt(VERSION);
+				ds.writeUTF(path);
+				ds.writeLong(records.fileLength);
+				ds.writeLong(records.fileModified);
+				ds.writeInt(records.size());
+				for (int i = 0; i < records.size(); i++) {
+					ds.writeLong(records.times.get(i));
+					for (double value: records.values.get(i)) {
+						ds.writeDouble(value);
+					}
+					ds.writeUTF(records.codes.get(i));
+					ds.writeUTF(records.locations.get(i));
+				}
+			} finally {
+				ds.close();
+			}
+			if (indexFile.exists() && !indexFile.delete()) {
+				lg.warn("Can't replace earthquakes index " + indexFile);
+			} else if (!tmpFile.renameTo(indexFile)) {
+				lg.warn("Can't rename " + tmpFile + " to " + indexFile);
+			}
+		} catch (IOException e) {
+			lg.warn("Can't save earthquakes index " + indexFile + ": " + e);
+		} finally {
+			tmpFile.delete();
+		}
+	}
+
+	/**
+	 * @return parsed content of NDK file from saved index, or null if index is absent, broken or
+	 *         NDK file was changed
+	 */
+	private static Records loadIndex(File file, String path, File indexFile) {
+		if (!indexFile.exists()) {
+			return null;
+		}
+		DataInputStream ds = null;
+		try {
+			ds = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			Records ret = new Records(file);
+			if (ds.readInt() != MAGIC || ds.readInt() != VERSION || !ds.readUTF().equals(path) || ds.readLong() != ret.fileLength
+					|| ds.readLong() != ret.fileModified) {
+				lg.debug("Earthquakes index " + indexFile + " is outdated");
+				return null;
+			}
+			int count = ds.readInt();
+			for (int i = 0; i < count; i++) {
+				long time = ds.readLong();
+				double[] values = new double[5];
+				for (int j = 0; j < values.length; j++) {
+					values[j] = ds.readDouble();
+				}
+				ret.add(time, values[0], values[1], values[2], values[3], values[4], ds.readUTF(), ds.readUTF());
+			}
+			return ret;
+		} catch (IOException e) {
+			lg.warn("Can't read earthquakes index " + indexFile + ": " + e);
+			return null;
+		} finally {
+			try {
+				if (ds != null) {
+					ds.close();
+				}
+			} catch (IOException e) {
+				// do nothing
+			}
+		}
+	}
+}
@@ -1,14 +1,20 @@
 package com.isti.xmax.data;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 
 import com.isti.traceview.common.IEvent;
 import com.isti.traceview.common.Station;
 import com.isti.traceview.common.TimeInterval;
 import com.isti.traceview.data.PlotDataProvider;
 import com.isti.xmax.XMAX;
+import com.isti.xmax.common.ArrivalCache;
 import com.isti.xmax.common.Earthquake;
 
 /**
@@ -67,11 +73,32 @@ public class XMAXChannel extends PlotDataProvider {
 	 */
 	private void computeArrivals() {
 		if (!isArrivalsComputed) {
-			for (IEvent event: XMAX.getDataModule().getEarthquakes()) {
-				Earthquake eq = (Earthquake) event;
-				addEvents(eq.computeArrivals(this));
+			List<XMAXChannel> channels = new ArrayList<XMAXChannel>();
+			channels.add(this);
+			computeArrivals(channels);
+		}
+	}
+
+	/**
+	 * Computes and adds arrivals to channels which don't have them yet. Arrivals of all stations are
+	 * computed together in parallel, channels of the same station share them.
+	 */
+	public static void computeArrivals(Collection<XMAXChannel> channels) {
+		Set<Station> stations = new HashSet<Station>();
+		for (XMAXChannel channel: channels) {
+			if (!channel.isArrivalsComputed) {
+				stations.add(channel.getStation());
+			}
+		}
+		if (stations.size() == 0) {
+			return;
+		}
+		Map<Station, SortedSet<IEvent>> arrivals = ArrivalCache.getInstance().getArrivals(stations, XMAX.getDataModule().getEarthquakes());
+		for (XMAXChannel channel: channels) {
+			if (!channel.isArrivalsComputed) {
+				channel.addEvents(arrivals.get(channel.getStation()));
+				channel.isArrivalsComputed = true;
 			}
-			isArrivalsComputed = true;
 		}
 	}
 
@@ -10,6 +10,7 @@ import com.isti.traceview.common.IEvent;
 import com.isti.traceview.data.DataModule;
 import com.isti.xmax.XMAXException;
 import com.isti.xmax.common.Earthquake;
+import com.isti.xmax.common.EarthquakeCatalog;
 import com.isti.xmax.common.Pick;
 import com.isti.xmax.common.QCIssue;
 
@@ -57,7 +58,8 @@ public class XMAXDataModule extends DataModule {
 	 */
 	public void loadData() throws TraceViewException {
 		super.loadData();
-		// Adding events
+		// Adding events, changed earthquake files are parsed again
+		EarthquakeCatalog.getInstance().refresh();
 		earthquakes = Earthquake.getEarthquakes(getAllDataTimeInterval());
 
 		// Loading picks from xml database
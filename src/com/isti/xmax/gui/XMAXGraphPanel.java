@@ -1,6 +1,8 @@
 package com.isti.xmax.gui;
 
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -34,6 +36,7 @@ public class XMAXGraphPanel extends GraphPanel {
 	 *         given time range.
 	 */
 	public Object[] getAvailableEarthquakes() {
+		computeArrivals();
 		SortedSet<IEvent> ret = new TreeSet<IEvent>();
 		for (PlotDataProvider channel: getChannelSet()) {
 			XMAXChannel ch = (XMAXChannel) channel;
@@ -49,6 +52,7 @@ public class XMAXGraphPanel extends GraphPanel {
 	 *         earthquakes.
 	 */
 	public Object[] getAvailablePhases(Object[] earthquakes) {
+		computeArrivals();
 		SortedSet<String> ret = new TreeSet<String>();
 		for (PlotDataProvider channel: getChannelSet()) {
 			XMAXChannel ch = (XMAXChannel) channel;
@@ -59,6 +63,17 @@ public class XMAXGraphPanel extends GraphPanel {
 		return ret.toArray();
 	}
 
+	/**
+	 * Computes arrivals for all loaded channels at once
+	 */
+	private void computeArrivals() {
+		List<XMAXChannel> channels = new ArrayList<XMAXChannel>();
+		for (PlotDataProvider channel: getChannelSet()) {
+			channels.add((XMAXChannel) channel);
+		}
+		XMAXChannel.computeArrivals(channels);
+	}
+
 	// selection behavior
 	public void mouseDragged(MouseEvent e) {
 		// lg.debug("XMAXGraphPanel.mouseDragged");
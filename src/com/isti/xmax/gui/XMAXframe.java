@@ -527,7 +527,12 @@ public class XMAXframe extends JFrame implements MouseInputListener, ActionListe
 			for (ChannelView channelView: selectedViews) {
 				selectedChannels.addAll(channelView.getPlotDataProviders());
 			}
-			org.apache.commons.configuration.Configuration pluginConf = XMAXconfiguration.getInstance().getConfigurationAt("SessionData.Plugins." + source.getText());
+			org.apache.commons.configuration.Configuration pluginConf = null;
+			try {
+				pluginConf = XMAXconfiguration.getInstance().getConfigurationAt("SessionData.Plugins." + source.getText());
+			} catch (IllegalArgumentException e1) {
+				// plugin has no session data
+			}
 			resp.transform(selectedChannels, graphPanel.getTimeRange(), graphPanel.getFilter(), pluginConf, getInstance());
 		} catch (ClassNotFoundException e1) {
 			// TODO Auto-generated catch block